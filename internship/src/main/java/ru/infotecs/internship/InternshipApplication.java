@@ -2,10 +2,13 @@ package ru.infotecs.internship;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import ru.infotecs.internship.config.StorageProperties;
 import ru.infotecs.internship.driver.StorageDriver;
 
 
 @SpringBootApplication
+@EnableConfigurationProperties(StorageProperties.class)
 public class InternshipApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,114 @@
+package ru.infotecs.internship.binary;
+
+import ru.infotecs.internship.storage.EnumStorageStatus;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Compact binary protocol of the storage for internal traffic, served by {@link BinaryProtocolServer}
+ * alongside REST.
+ * <p>
+ * A connection carries frames, every frame starts with its length (4 bytes, not counting the length itself).
+ * Numbers are big-endian, strings are UTF-8. A request frame contains the {@link EnumBinaryOperation operation}
+ * (1 byte), the length of the key (4 bytes), the key, the TTL in milliseconds (8 bytes, {@link #NO_TTL}
+ * for the default TTL) and the value up to the end of the frame (only for {@link EnumBinaryOperation#SET}).
+ * A response frame contains the {@link EnumStorageStatus status} of the operation (1 byte, its code),
+ * the remaining TTL of the record in milliseconds (8 bytes, {@link #NO_TTL} if there is no record)
+ * and the value up to the end of the frame (only for {@link EnumStorageStatus#VALUE_GET_OK} and
+ * {@link EnumStorageStatus#VALUE_REMOVE_OK}). A request with an empty key (except {@link EnumBinaryOperation#PING})
+ * is answered with {@link EnumStorageStatus#KEY_EMPTY} and a value to set which is not valid UTF-8
+ * with {@link EnumStorageStatus#VALUE_INVALID}, as REST cannot serve such records.
+ * <p>
+ * Requests may be sent without waiting for responses, responses are sent in the order of the requests.
+ * The codes of operations and statuses are fixed by {@link EnumBinaryOperation#getCode()} and
+ * {@link #statusToCode(EnumStorageStatus)}, so they do not change when the enums are reordered; a peer answers
+ * an unknown operation with {@link EnumStorageStatus#OPERATION_UNSUPPORTED}.
+ */
+public final class BinaryProtocol {
+
+    /**
+     * Maximum length of a frame in bytes, a connection sending a longer frame is closed.
+     */
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Length of a request frame without the key and the value.
+     */
+    public static final int REQUEST_HEADER_SIZE = 1 + 4 + 8;
+
+    /**
+     * Length of a response frame without the value.
+     */
+    public static final int RESPONSE_HEADER_SIZE = 1 + 8;
+
+    /**
+     * TTL of a request setting the default TTL, or of a response without a record.
+     */
+    public static final long NO_TTL = -1L;
+
+    /**
+     * Statuses by their codes, null for unknown codes.
+     */
+    private static final EnumStorageStatus[] STATUSES = new EnumStorageStatus[256];
+
+    /**
+     * Codes of the statuses sent by the protocol.
+     */
+    private static final Map<EnumStorageStatus, Byte> STATUS_CODES = new EnumMap<>(EnumStorageStatus.class);
+
+    static {
+        registerStatus(EnumStorageStatus.CONNECTION_TEST_OK, 0);
+        registerStatus(EnumStorageStatus.KEY_EMPTY, 1);
+        registerStatus(EnumStorageStatus.INTERNAL_SERVER_ERROR, 2);
+        registerStatus(EnumStorageStatus.VALUE_NOT_EXIST, 3);
+        registerStatus(EnumStorageStatus.VALUE_GET_OK, 4);
+        registerStatus(EnumStorageStatus.VALUE_SET_OK, 5);
+        registerStatus(EnumStorageStatus.VALUE_SET_UPDATE_OK, 6);
+        registerStatus(EnumStorageStatus.VALUE_REMOVE_OK, 7);
+        registerStatus(EnumStorageStatus.OPERATION_UNSUPPORTED, 10);
+        registerStatus(EnumStorageStatus.VALUE_INVALID, 11);
+    }
+
+    /**
+     * Utility class.
+     */
+    private BinaryProtocol() {
+    }
+
+    /**
+     * Registers the code of a status sent by the protocol.
+     *
+     * @param status the status
+     * @param code   the code of the status in a response frame
+     */
+    private static void registerStatus(EnumStorageStatus status, int code) {
+        STATUSES[code] = status;
+        STATUS_CODES.put(status, (byte) code);
+    }
+
+    /**
+     * Gets the code of the status in a response frame.
+     *
+     * @param status the status, must be sent by the protocol
+     * @return the code of the status
+     * @throws IllegalArgumentException if the status is not sent by the protocol
+     */
+    public static byte statusToCode(EnumStorageStatus status) {
+        Byte code = STATUS_CODES.get(status);
+        if (code == null) {
+            throw new IllegalArgumentException("Status is not sent by binary protocol: " + status);
+        }
+        return code;
+    }
+
+    /**
+     * Gets the status by its code in a response frame.
+     *
+     * @param code the code of the status, unsigned
+     * @return the status or null if the code is unknown
+     */
+    public static EnumStorageStatus statusFromCode(int code) {
+        return code >= 0 && code < STATUSES.length ? STATUSES[code] : null;
+    }
+}
@@ -0,0 +1,637 @@
+package ru.infotecs.internship.binary;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ru.infotecs.internship.config.StorageProperties;
+import ru.infotecs.internship.storage.EnumStorageStatus;
+import ru.infotecs.internship.storage.RecordValue;
+import ru.infotecs.internship.storage.StorageMap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Listener of the {@link BinaryProtocol binary protocol}, executing requests directly on the {@link StorageMap}
+ * without HTTP and JSON. Enabled by the {@code storage.binary-port} property.
+ * <p>
+ * Connections are accepted by one thread and spread over event loops (one per processor), every event loop
+ * serves its connections by a selector with non-blocking I/O. Requests are executed in the order they arrive,
+ * their responses are gathered in the output buffer of the connection and written together. Reads are executed
+ * on the event loop. Mutations may wait for the write-ahead log, so at a mutation the connection is suspended
+ * and passed to a worker, which executes the received requests from the mutation on, then passes
+ * the connection back to the event loop to write the responses. When the client does not read responses,
+ * the connection is not read either.
+ */
+@Component
+public class BinaryProtocolServer {
+
+    /**
+     * Initial size of the input and output buffers of a connection.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Size of the unwritten responses of a connection at which execution of its requests is suspended.
+     */
+    private static final int OUTPUT_LIMIT = 1024 * 1024;
+
+    /**
+     * Time to wait for mutations in flight on stop in seconds.
+     */
+    private static final long STOP_TIMEOUT_SECONDS = 10L;
+
+    /**
+     * The key-value database with TTL.
+     */
+    private final StorageMap storage;
+
+    /**
+     * Configured port, 0 for any free port, negative if the listener is disabled.
+     */
+    private final int configuredPort;
+
+    /**
+     * Channel accepting connections, null if the listener is disabled.
+     */
+    private ServerSocketChannel serverChannel;
+
+    /**
+     * Event loops serving connections.
+     */
+    private EventLoop[] eventLoops;
+
+    /**
+     * Thread accepting connections.
+     */
+    private Thread acceptor;
+
+    /**
+     * Workers executing requests of suspended connections, at most one per connection.
+     */
+    private ExecutorService workers;
+
+    /**
+     * Set while the listener is running.
+     */
+    private volatile boolean isRunning;
+
+    /**
+     * Constructs the listener.
+     *
+     * @param storage    the storage to execute requests on
+     * @param properties configuration of the storage containing the port of the listener
+     */
+    @Autowired
+    public BinaryProtocolServer(StorageMap storage, StorageProperties properties) {
+        this.storage = storage;
+        this.configuredPort = properties.getBinaryPort();
+    }
+
+    /**
+     * Starts listening if the port is configured.
+     *
+     * @throws UncheckedIOException if the port cannot be listened
+     */
+    @PostConstruct
+    public void start() {
+        if (configuredPort < 0) {
+            return;
+        }
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(configuredPort));
+            eventLoops = new EventLoop[Runtime.getRuntime().availableProcessors()];
+            for (int i = 0; i < eventLoops.length; i++) {
+                eventLoops[i] = new EventLoop(Selector.open(), "storage-binary-" + i);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot listen binary protocol on port " + configuredPort, e);
+        }
+        AtomicInteger workerNumber = new AtomicInteger();
+        workers = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "storage-binary-worker-" + workerNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        isRunning = true;
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.thread.start();
+        }
+        acceptor = new Thread(this::acceptLoop, "storage-binary-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Gets the port the listener is bound to.
+     *
+     * @return the port or -1 if the listener is disabled
+     */
+    public int getPort() {
+        return serverChannel == null ? -1 : serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops listening, closes all connections and waits for requests executed by workers.
+     */
+    @PreDestroy
+    public void stop() {
+        if (serverChannel == null || !isRunning) {
+            return;
+        }
+        isRunning = false;
+        try {
+            serverChannel.close();
+        } catch (IOException ignored) {
+            // the channel is closed anyway
+        }
+        try {
+            acceptor.join();
+            for (EventLoop eventLoop : eventLoops) {
+                eventLoop.selector.wakeup();
+                eventLoop.thread.join();
+            }
+            workers.shutdown();
+            workers.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Accepts connections and passes them to event loops in turn until the listener is stopped.
+     */
+    private void acceptLoop() {
+        int next = 0;
+        while (isRunning) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                eventLoops[next].register(channel);
+                next = (next + 1) % eventLoops.length;
+            } catch (IOException e) {
+                if (!serverChannel.isOpen()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Thread serving connections by a selector.
+     */
+    private final class EventLoop {
+
+        /**
+         * Selector of the connections.
+         */
+        private final Selector selector;
+
+        /**
+         * Thread of the event loop.
+         */
+        private final Thread thread;
+
+        /**
+         * Accepted connections waiting to be registered with the selector.
+         */
+        private final Queue<SocketChannel> acceptedChannels = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Suspended connections passed back by workers.
+         */
+        private final Queue<Connection> resumedConnections = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Constructs the event loop.
+         *
+         * @param selector selector of the connections
+         * @param name     name of the thread
+         */
+        private EventLoop(Selector selector, String name) {
+            this.selector = selector;
+            this.thread = new Thread(this::run, name);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Passes an accepted connection to the event loop.
+         *
+         * @param channel the accepted connection
+         */
+        private void register(SocketChannel channel) {
+            acceptedChannels.add(channel);
+            selector.wakeup();
+        }
+
+        /**
+         * Passes a suspended connection back to the event loop.
+         *
+         * @param connection the suspended connection
+         */
+        private void resume(Connection connection) {
+            resumedConnections.add(connection);
+            selector.wakeup();
+        }
+
+        /**
+         * Serves connections until the listener is stopped, then closes them.
+         */
+        private void run() {
+            try {
+                while (isRunning) {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = acceptedChannels.poll()) != null) {
+                        Connection connection = new Connection(channel, this);
+                        try {
+                            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                        } catch (IOException e) {
+                            connection.close();
+                        }
+                    }
+                    Connection resumedConnection;
+                    while ((resumedConnection = resumedConnections.poll()) != null) {
+                        try {
+                            resumedConnection.onResumed();
+                        } catch (IOException | RuntimeException e) {
+                            resumedConnection.close();
+                        }
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                connection.onReadable();
+                            } else if (key.isWritable()) {
+                                connection.executeAndWrite();
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            connection.close();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Binary protocol event loop failed", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    ((Connection) key.attachment()).close();
+                }
+                SocketChannel channel;
+                while ((channel = acceptedChannels.poll()) != null) {
+                    new Connection(channel, this).close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                    // the selector is closed anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * Connection with a client, used only by its event loop, or by a worker while the connection is suspended.
+     */
+    private final class Connection {
+
+        /**
+         * Channel of the connection.
+         */
+        private final SocketChannel channel;
+
+        /**
+         * Event loop serving the connection.
+         */
+        private final EventLoop eventLoop;
+
+        /**
+         * Registration of the channel with the selector.
+         */
+        private SelectionKey key;
+
+        /**
+         * Set when the next request is a mutation to be executed by a worker.
+         */
+        private boolean isMutationNext;
+
+        /**
+         * Set while the connection is suspended and its requests are executed by a worker.
+         */
+        private boolean isOnWorker;
+
+        /**
+         * Error of the requests executed by a worker, null if there is no error.
+         */
+        private Exception workerFailure;
+
+        /**
+         * Decoder checking that values to set are valid UTF-8.
+         */
+        private final CharsetDecoder utf8Decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+        /**
+         * Reused output of {@link #utf8Decoder}, the decoded characters are discarded.
+         */
+        private final CharBuffer utf8Chars = CharBuffer.allocate(4096);
+
+        /**
+         * Received bytes not executed yet, in write mode.
+         */
+        private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+
+        /**
+         * Responses not written yet, in write mode.
+         */
+        private ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+
+        /**
+         * Constructs the connection.
+         *
+         * @param channel   channel of the connection
+         * @param eventLoop event loop serving the connection
+         */
+        private Connection(SocketChannel channel, EventLoop eventLoop) {
+            this.channel = channel;
+            this.eventLoop = eventLoop;
+        }
+
+        /**
+         * Reads received bytes, then executes requests and writes responses.
+         *
+         * @throws IOException if an I/O error occurs or the client sends an invalid frame
+         */
+        private void onReadable() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            executeAndWrite();
+        }
+
+        /**
+         * Executes received requests on a worker from a mutation on, then passes the connection back
+         * to the event loop.
+         */
+        private void executeOnWorker() {
+            try {
+                execute();
+            } catch (IOException | RuntimeException e) {
+                workerFailure = e;
+            }
+            eventLoop.resume(this);
+        }
+
+        /**
+         * Writes the responses of the requests executed by a worker, then executes the next requests.
+         *
+         * @throws IOException if an I/O error occurs or a worker has failed
+         */
+        private void onResumed() throws IOException {
+            isOnWorker = false;
+            if (workerFailure != null) {
+                throw new IOException("Binary protocol worker failed", workerFailure);
+            }
+            if (channel.isOpen()) {
+                executeAndWrite();
+            }
+        }
+
+        /**
+         * Executes received requests and writes their responses until all complete requests are executed,
+         * the connection is passed to a worker or the client stops reading responses.
+         *
+         * @throws IOException if an I/O error occurs or the client sends an invalid frame
+         */
+        private void executeAndWrite() throws IOException {
+            while (true) {
+                execute();
+                out.flip();
+                channel.write(out);
+                boolean isWritten = !out.hasRemaining();
+                out.compact();
+                if (!isWritten) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                if (out.capacity() > BUFFER_SIZE) {
+                    out = ByteBuffer.allocate(BUFFER_SIZE);
+                }
+                if (isMutationNext) {
+                    key.interestOps(0);
+                    isMutationNext = false;
+                    isOnWorker = true;
+                    workers.execute(this::executeOnWorker);
+                    return;
+                }
+                if (!hasFrame()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Checks if a complete request has been received.
+         *
+         * @return true if the input buffer contains a complete frame
+         */
+        private boolean hasFrame() {
+            return in.position() >= 4 && in.position() >= 4 + in.getInt(0);
+        }
+
+        /**
+         * Executes complete requests of the input buffer while unwritten responses are below the limit.
+         * On the event loop, execution stops before a mutation. The input buffer is enlarged
+         * if the incomplete request does not fit it.
+         *
+         * @throws IOException if the client sends an invalid frame
+         */
+        private void execute() throws IOException {
+            in.flip();
+            while (out.position() < OUTPUT_LIMIT && in.remaining() >= 4) {
+                int length = in.getInt(in.position());
+                if (length < BinaryProtocol.REQUEST_HEADER_SIZE || length > BinaryProtocol.MAX_FRAME_SIZE) {
+                    throw new IOException("Invalid frame length: " + length);
+                }
+                if (in.remaining() < 4 + length) {
+                    break;
+                }
+                if (!isOnWorker && isMutation(in.get(in.position() + 4))) {
+                    isMutationNext = true;
+                    break;
+                }
+                int end = in.position() + 4 + length;
+                in.position(in.position() + 4);
+                execute(end);
+                in.position(end);
+            }
+            in.compact();
+            if (in.position() == 0 && in.capacity() > BUFFER_SIZE) {
+                in = ByteBuffer.allocate(BUFFER_SIZE);
+            } else if (in.position() >= 4) {
+                int length = in.getInt(0);
+                if (length <= BinaryProtocol.MAX_FRAME_SIZE && 4 + length > in.capacity()) {
+                    in.flip();
+                    in = ByteBuffer.allocate(4 + length).put(in);
+                }
+            }
+        }
+
+        /**
+         * Checks if the operation of a request may wait for the write-ahead log.
+         *
+         * @param code the code of the operation
+         * @return true if the operation is a mutation
+         */
+        private boolean isMutation(byte code) {
+            EnumBinaryOperation operation = EnumBinaryOperation.fromCode(Byte.toUnsignedInt(code));
+            return operation == EnumBinaryOperation.SET || operation == EnumBinaryOperation.REMOVE;
+        }
+
+        /**
+         * Executes the request at the position of the input buffer and puts its response to the output buffer.
+         *
+         * @param end the position of the end of the request frame
+         * @throws IOException if the frame is invalid
+         */
+        private void execute(int end) throws IOException {
+            EnumBinaryOperation operation = EnumBinaryOperation.fromCode(Byte.toUnsignedInt(in.get()));
+            int keyLength = in.getInt();
+            if (keyLength < 0 || keyLength > end - in.position() - 8) {
+                throw new IOException("Invalid key length: " + keyLength);
+            }
+            String key = new String(in.array(), in.position(), keyLength, StandardCharsets.UTF_8);
+            in.position(in.position() + keyLength);
+            long ttlMs = in.getLong();
+            if (operation == null) {
+                respond(EnumStorageStatus.OPERATION_UNSUPPORTED, BinaryProtocol.NO_TTL, null);
+                return;
+            }
+            if (keyLength == 0 && operation != EnumBinaryOperation.PING) {
+                respond(EnumStorageStatus.KEY_EMPTY, BinaryProtocol.NO_TTL, null);
+                return;
+            }
+            try {
+                switch (operation) {
+                    case PING -> respond(EnumStorageStatus.CONNECTION_TEST_OK, BinaryProtocol.NO_TTL, null);
+                    case GET -> {
+                        RecordValue value = storage.getValue(key);
+                        if (value == null) {
+                            respond(EnumStorageStatus.VALUE_NOT_EXIST, BinaryProtocol.NO_TTL, null);
+                        } else {
+                            respond(EnumStorageStatus.VALUE_GET_OK, value.getTtlMs(), value.getValueUtf8());
+                        }
+                    }
+                    case SET -> {
+                        byte[] value = Arrays.copyOfRange(in.array(), in.position(), end);
+                        if (!isUtf8(value)) {
+                            respond(EnumStorageStatus.VALUE_INVALID, BinaryProtocol.NO_TTL, null);
+                            return;
+                        }
+                        boolean isValueAlreadyExists = storage.upsertValueTtlMs(key, value,
+                                ttlMs == BinaryProtocol.NO_TTL ? null : ttlMs);
+                        respond(isValueAlreadyExists ? EnumStorageStatus.VALUE_SET_UPDATE_OK
+                                : EnumStorageStatus.VALUE_SET_OK, BinaryProtocol.NO_TTL, null);
+                    }
+                    case REMOVE -> {
+                        RecordValue value = storage.removeValue(key);
+                        if (value == null) {
+                            respond(EnumStorageStatus.VALUE_NOT_EXIST, BinaryProtocol.NO_TTL, null);
+                        } else {
+                            respond(EnumStorageStatus.VALUE_REMOVE_OK, value.getTtlMs(), value.getValueUtf8());
+                        }
+                    }
+                    case TTL -> {
+                        RecordValue value = storage.getValue(key);
+                        if (value == null) {
+                            respond(EnumStorageStatus.VALUE_NOT_EXIST, BinaryProtocol.NO_TTL, null);
+                        } else {
+                            respond(EnumStorageStatus.VALUE_GET_OK, value.getTtlMs(), null);
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                respond(EnumStorageStatus.INTERNAL_SERVER_ERROR, BinaryProtocol.NO_TTL, null);
+            }
+        }
+
+        /**
+         * Checks that the value is valid UTF-8, so it can be written into JSON responses as it is.
+         *
+         * @param value the bytes of the value
+         * @return true if the value is valid UTF-8
+         */
+        private boolean isUtf8(byte[] value) {
+            ByteBuffer bytes = ByteBuffer.wrap(value);
+            utf8Decoder.reset();
+            CoderResult result;
+            do {
+                utf8Chars.clear();
+                result = utf8Decoder.decode(bytes, utf8Chars, true);
+            } while (result.isOverflow());
+            return !result.isError();
+        }
+
+        /**
+         * Puts a response frame to the output buffer, enlarging the buffer if needed.
+         *
+         * @param status the status of the operation
+         * @param ttlMs  the remaining TTL of the record in milliseconds
+         * @param value  UTF-8 bytes of the value (may be null)
+         */
+        private void respond(EnumStorageStatus status, long ttlMs, byte[] value) {
+            int length = BinaryProtocol.RESPONSE_HEADER_SIZE + (value == null ? 0 : value.length);
+            if (out.remaining() < 4 + length) {
+                out.flip();
+                out = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.remaining() + 4 + length)).put(out);
+            }
+            out.putInt(length).put(BinaryProtocol.statusToCode(status)).putLong(ttlMs);
+            if (value != null) {
+                out.put(value);
+            }
+        }
+
+        /**
+         * Closes the connection.
+         */
+        private void close() {
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // the channel is closed anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ru.infotecs.internship.binary;
+
+/**
+ * Represents operations of the {@link BinaryProtocol binary protocol}, every operation has a fixed code
+ * in a frame, so operations may be added or reordered without breaking older peers.
+ */
+public enum EnumBinaryOperation {
+
+    /**
+     * Tests the connection, the key is ignored.
+     */
+    PING(0),
+
+    /**
+     * Gets a value and its remaining TTL by key.
+     */
+    GET(1),
+
+    /**
+     * Sets a value by key with optional TTL.
+     */
+    SET(2),
+
+    /**
+     * Removes a value by key.
+     */
+    REMOVE(3),
+
+    /**
+     * Gets the remaining TTL of a value by key.
+     */
+    TTL(4);
+
+    /**
+     * Operations by their codes, null for unknown codes.
+     */
+    private static final EnumBinaryOperation[] OPERATIONS = new EnumBinaryOperation[256];
+
+    static {
+        for (EnumBinaryOperation operation : values()) {
+            OPERATIONS[operation.code] = operation;
+        }
+    }
+
+    /**
+     * Code of the operation in a frame.
+     */
+    private final byte code;
+
+    /**
+     * Constructs the operation with its code.
+     *
+     * @param code code of the operation in a frame
+     */
+    EnumBinaryOperation(int code) {
+        this.code = (byte) code;
+    }
+
+    /**
+     * Gets the code of the operation in a frame.
+     *
+     * @return the code of the operation
+     */
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * Gets the operation by its code in a frame.
+     *
+     * @param code the code of the operation, unsigned
+     * @return the operation or null if the code is unknown
+     */
+    public static EnumBinaryOperation fromCode(int code) {
+        return code >= 0 && code < OPERATIONS.length ? OPERATIONS[code] : null;
+    }
+}
@@ -0,0 +1,338 @@
+package ru.infotecs.internship.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import ru.infotecs.internship.storage.EnumEvictionPolicy;
+import ru.infotecs.internship.storage.EnumFsyncPolicy;
+import ru.infotecs.internship.storage.EnumStorageMode;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the key-value storage (properties with {@code storage} prefix).
+ */
+@ConfigurationProperties(prefix = "storage")
+public class StorageProperties {
+
+    /**
+     * Place where the storage keeps values of records.
+     */
+    private EnumStorageMode mode = EnumStorageMode.HEAP;
+
+    /**
+     * Maximum number of entries, 0 for unlimited.
+     */
+    private long maxEntries = 0L;
+
+    /**
+     * Maximum estimated memory usage of entries, 0 for unlimited.
+     */
+    private DataSize maxMemory = DataSize.ofBytes(0L);
+
+    /**
+     * Policy of choosing records to evict when the storage exceeds its limits.
+     */
+    private EnumEvictionPolicy evictionPolicy = EnumEvictionPolicy.LRU;
+
+    /**
+     * Number of shards of the storage, 0 for the number of available processors.
+     */
+    private int shards = 0;
+
+    /**
+     * Number of threads maintaining shards, 0 for the number of shards but not more than processors.
+     */
+    private int maintenanceThreads = 0;
+
+    /**
+     * Keep keys in an ordered index for range and prefix queries.
+     */
+    private boolean orderedIndex = false;
+
+    /**
+     * Directory of the write-ahead log, empty to keep the storage only in memory.
+     */
+    private String walDir = "";
+
+    /**
+     * Policy of flushing the write-ahead log to the disk.
+     */
+    private EnumFsyncPolicy walFsyncPolicy = EnumFsyncPolicy.INTERVAL;
+
+    /**
+     * Interval of flushing the write-ahead log to the disk for the interval policy.
+     */
+    private Duration walFsyncInterval = Duration.ofSeconds(1);
+
+    /**
+     * Size of the write-ahead log below which the log is not compacted.
+     */
+    private DataSize walCompactionMinSize = DataSize.ofMegabytes(64);
+
+    /**
+     * File of background snapshots, empty to disable snapshots.
+     */
+    private String snapshotPath = "";
+
+    /**
+     * Interval of background snapshots, 0 for snapshots only on demand.
+     */
+    private Duration snapshotInterval = Duration.ofMinutes(5);
+
+    /**
+     * Port of the binary protocol listener, 0 for any free port, negative to serve only REST.
+     */
+    private int binaryPort = -1;
+
+    /**
+     * Gets the place where the storage keeps values of records.
+     *
+     * @return the storage mode
+     */
+    public EnumStorageMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Sets the place where the storage keeps values of records.
+     *
+     * @param mode the storage mode
+     */
+    public void setMode(EnumStorageMode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Gets the maximum number of entries.
+     *
+     * @return the maximum number of entries, 0 for unlimited
+     */
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the maximum number of entries.
+     *
+     * @param maxEntries the maximum number of entries, 0 for unlimited
+     */
+    public void setMaxEntries(long maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Gets the maximum estimated memory usage of entries.
+     *
+     * @return the maximum memory usage, 0 for unlimited
+     */
+    public DataSize getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Sets the maximum estimated memory usage of entries.
+     *
+     * @param maxMemory the maximum memory usage, 0 for unlimited
+     */
+    public void setMaxMemory(DataSize maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Gets the policy of choosing records to evict.
+     *
+     * @return the eviction policy
+     */
+    public EnumEvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * Sets the policy of choosing records to evict.
+     *
+     * @param evictionPolicy the eviction policy
+     */
+    public void setEvictionPolicy(EnumEvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    /**
+     * Gets the number of shards of the storage.
+     *
+     * @return the number of shards, 0 for the number of available processors
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Sets the number of shards of the storage.
+     *
+     * @param shards the number of shards, 0 for the number of available processors
+     */
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * Gets the number of threads maintaining shards.
+     *
+     * @return the number of maintenance threads, 0 for default
+     */
+    public int getMaintenanceThreads() {
+        return maintenanceThreads;
+    }
+
+    /**
+     * Sets the number of threads maintaining shards.
+     *
+     * @param maintenanceThreads the number of maintenance threads, 0 for default
+     */
+    public void setMaintenanceThreads(int maintenanceThreads) {
+        this.maintenanceThreads = maintenanceThreads;
+    }
+
+    /**
+     * Checks if keys are kept in an ordered index for range and prefix queries.
+     *
+     * @return true if the ordered index is enabled
+     */
+    public boolean isOrderedIndex() {
+        return orderedIndex;
+    }
+
+    /**
+     * Sets if keys are kept in an ordered index for range and prefix queries.
+     *
+     * @param orderedIndex true to enable the ordered index
+     */
+    public void setOrderedIndex(boolean orderedIndex) {
+        this.orderedIndex = orderedIndex;
+    }
+
+    /**
+     * Gets the directory of the write-ahead log.
+     *
+     * @return the directory, empty if the log is disabled
+     */
+    public String getWalDir() {
+        return walDir;
+    }
+
+    /**
+     * Sets the directory of the write-ahead log.
+     *
+     * @param walDir the directory, empty to disable the log
+     */
+    public void setWalDir(String walDir) {
+        this.walDir = walDir;
+    }
+
+    /**
+     * Gets the policy of flushing the write-ahead log to the disk.
+     *
+     * @return the fsync policy
+     */
+    public EnumFsyncPolicy getWalFsyncPolicy() {
+        return walFsyncPolicy;
+    }
+
+    /**
+     * Sets the policy of flushing the write-ahead log to the disk.
+     *
+     * @param walFsyncPolicy the fsync policy
+     */
+    public void setWalFsyncPolicy(EnumFsyncPolicy walFsyncPolicy) {
+        this.walFsyncPolicy = walFsyncPolicy;
+    }
+
+    /**
+     * Gets the interval of flushing the write-ahead log to the disk.
+     *
+     * @return the fsync interval
+     */
+    public Duration getWalFsyncInterval() {
+        return walFsyncInterval;
+    }
+
+    /**
+     * Sets the interval of flushing the write-ahead log to the disk.
+     *
+     * @param walFsyncInterval the fsync interval
+     */
+    public void setWalFsyncInterval(Duration walFsyncInterval) {
+        this.walFsyncInterval = walFsyncInterval;
+    }
+
+    /**
+     * Gets the size of the write-ahead log below which the log is not compacted.
+     *
+     * @return the minimal size for compaction
+     */
+    public DataSize getWalCompactionMinSize() {
+        return walCompactionMinSize;
+    }
+
+    /**
+     * Sets the size of the write-ahead log below which the log is not compacted.
+     *
+     * @param walCompactionMinSize the minimal size for compaction
+     */
+    public void setWalCompactionMinSize(DataSize walCompactionMinSize) {
+        this.walCompactionMinSize = walCompactionMinSize;
+    }
+
+    /**
+     * Gets the file of background snapshots.
+     *
+     * @return the file, empty if snapshots are disabled
+     */
+    public String getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    /**
+     * Sets the file of background snapshots.
+     *
+     * @param snapshotPath the file, empty to disable snapshots
+     */
+    public void setSnapshotPath(String snapshotPath) {
+        this.snapshotPath = snapshotPath;
+    }
+
+    /**
+     * Gets the interval of background snapshots.
+     *
+     * @return the interval, 0 for snapshots only on demand
+     */
+    public Duration getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    /**
+     * Sets the interval of background snapshots.
+     *
+     * @param snapshotInterval the interval, 0 for snapshots only on demand
+     */
+    public void setSnapshotInterval(Duration snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Gets the port of the binary protocol listener.
+     *
+     * @return the port, 0 for any free port, negative if the listener is disabled
+     */
+    public int getBinaryPort() {
+        return binaryPort;
+    }
+
+    /**
+     * Sets the port of the binary protocol listener.
+     *
+     * @param binaryPort the port, 0 for any free port, negative to disable the listener
+     */
+    public void setBinaryPort(int binaryPort) {
+        this.binaryPort = binaryPort;
+    }
+}
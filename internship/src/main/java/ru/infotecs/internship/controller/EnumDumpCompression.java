@@ -0,0 +1,178 @@
+package ru.infotecs.internship.controller;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Represents compressions of the storage dump, named as HTTP content codings.
+ */
+public enum EnumDumpCompression {
+
+    /**
+     * No compression.
+     */
+    IDENTITY("identity", ""),
+
+    /**
+     * Gzip format (RFC 1952).
+     */
+    GZIP("gzip", ".gz"),
+
+    /**
+     * Zlib format (RFC 1950), named {@code deflate} in HTTP.
+     */
+    DEFLATE("deflate", ".zz");
+
+    /**
+     * Size of the compression buffer in bytes.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Name of the content coding.
+     */
+    private final String encoding;
+
+    /**
+     * Extension appended to the name of the dump file.
+     */
+    private final String fileExtension;
+
+    /**
+     * Constructs an {@code EnumDumpCompression} with the specified content coding.
+     *
+     * @param encoding      the name of the content coding
+     * @param fileExtension the extension of the dump file
+     */
+    EnumDumpCompression(String encoding, String fileExtension) {
+        this.encoding = encoding;
+        this.fileExtension = fileExtension;
+    }
+
+    /**
+     * Gets the name of the content coding.
+     *
+     * @return the name of the content coding
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Gets the extension appended to the name of the dump file.
+     *
+     * @return the extension, empty for no compression
+     */
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    /**
+     * Wraps the stream to compress the data written to it. Closing the returned stream finishes
+     * the compressed data, releases the native memory of the compressor and closes the wrapped stream.
+     *
+     * @param out the stream to write compressed data to
+     * @return the stream to write uncompressed data to
+     * @throws IOException if an I/O error occurs
+     */
+    public OutputStream compress(OutputStream out) throws IOException {
+        return switch (this) {
+            case IDENTITY -> out;
+            case GZIP -> new GZIPOutputStream(out, BUFFER_SIZE);
+            case DEFLATE -> new DeflaterOutputStream(out, new Deflater(), BUFFER_SIZE) {
+                // the stream does not end a deflater passed to it, its native memory is freed here
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        def.end();
+                    }
+                }
+            };
+        };
+    }
+
+    /**
+     * Finds the compression by the name of the content coding, ignoring case.
+     *
+     * @param encoding the name of the content coding
+     * @return the compression or null if it is not supported
+     */
+    public static EnumDumpCompression fromEncoding(String encoding) {
+        for (EnumDumpCompression compression : values()) {
+            if (compression.encoding.equalsIgnoreCase(encoding.trim())) {
+                return compression;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Chooses the compression with the highest quality value in the {@code Accept-Encoding} header,
+     * preferring gzip on ties.
+     *
+     * @param acceptEncoding the value of the header (may be null)
+     * @return the chosen compression, {@link #IDENTITY} if none is acceptable
+     */
+    public static EnumDumpCompression negotiate(String acceptEncoding) {
+        EnumDumpCompression chosen = IDENTITY;
+        double chosenQuality = 0;
+        if (acceptEncoding == null) {
+            return chosen;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            EnumDumpCompression compression = fromEncoding(parts[0]);
+            if (compression == null || compression == IDENTITY) {
+                continue;
+            }
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (quality > chosenQuality || (quality == chosenQuality && compression.ordinal() < chosen.ordinal())) {
+                chosen = compression;
+                chosenQuality = quality;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Wraps the stream of an uploaded dump to decompress it if it is in gzip or zlib format.
+     * The format is recognized by the first bytes, which differ from the magic number of the snapshot.
+     *
+     * @param in the stream of the uploaded dump
+     * @return the stream of the uncompressed dump
+     * @throws IOException if an I/O error occurs
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream bufferedIn = new BufferedInputStream(in, BUFFER_SIZE);
+        bufferedIn.mark(2);
+        int first = bufferedIn.read();
+        int second = bufferedIn.read();
+        bufferedIn.reset();
+        if (first == 0x1F && second == 0x8B) {
+            return new BufferedInputStream(new GZIPInputStream(bufferedIn, BUFFER_SIZE), BUFFER_SIZE);
+        }
+        if (first >= 0 && second >= 0 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0) {
+            return new BufferedInputStream(new InflaterInputStream(bufferedIn), BUFFER_SIZE);
+        }
+        return bufferedIn;
+    }
+}
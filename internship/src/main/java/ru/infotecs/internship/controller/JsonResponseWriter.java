@@ -0,0 +1,219 @@
+package ru.infotecs.internship.controller;
+
+import ru.infotecs.internship.json.JsonResponse;
+import ru.infotecs.internship.json.JsonResponseExtended;
+import ru.infotecs.internship.storage.EnumStorageStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * Writes the JSON of {@link JsonResponse} and {@link JsonResponseExtended} for frequent requests
+ * without creating response objects and without Jackson.
+ * <p>
+ * The beginning of the JSON of every status is encoded once. The timestamp is encoded once per
+ * {@link #TIMESTAMP_REFRESH_MS}, so timestamps of responses are coarse-grained. UTF-8 bytes of a value
+ * are copied into the response as they are stored, only quotes, backslashes and control characters
+ * are escaped. The written JSON has the same fields as Jackson writes for the response objects.
+ */
+class JsonResponseWriter {
+
+    /**
+     * Time the encoded timestamp is reused in milliseconds.
+     */
+    static final long TIMESTAMP_REFRESH_MS = 100L;
+
+    /**
+     * UTF-8 bytes of the beginning of the JSON of every status, up to the value of the timestamp.
+     */
+    private static final byte[][] PREFIXES = new byte[EnumStorageStatus.values().length][];
+
+    static {
+        for (EnumStorageStatus status : EnumStorageStatus.values()) {
+            PREFIXES[status.ordinal()] = ("{\"status\":\"" + status.name() + "\",\"timestamp\":\"")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * End of the JSON of a response without data.
+     */
+    private static final byte[] SUFFIX = "\"}".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Beginning of the data field, closing the timestamp.
+     */
+    private static final byte[] DATA_FIELD = "\",\"data\":".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Null value of the data field.
+     */
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Hexadecimal digits for escaping control characters.
+     */
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Encoded timestamp and the time until which it is reused.
+     */
+    private static final class Timestamp {
+
+        /**
+         * UTF-8 bytes of the timestamp.
+         */
+        private final byte[] bytes;
+
+        /**
+         * Time until which the timestamp is reused in milliseconds since the epoch.
+         */
+        private final long refreshTime;
+
+        /**
+         * Constructs a timestamp.
+         *
+         * @param bytes       UTF-8 bytes of the timestamp
+         * @param refreshTime time until which the timestamp is reused
+         */
+        private Timestamp(byte[] bytes, long refreshTime) {
+            this.bytes = bytes;
+            this.refreshTime = refreshTime;
+        }
+    }
+
+    /**
+     * Last encoded timestamp.
+     */
+    private volatile Timestamp timestamp = new Timestamp(new byte[0], Long.MIN_VALUE);
+
+    /**
+     * Writes the JSON of {@link JsonResponse} with the status.
+     *
+     * @param status the status of the response
+     * @return UTF-8 bytes of the JSON
+     */
+    byte[] write(EnumStorageStatus status) {
+        byte[] prefix = PREFIXES[status.ordinal()];
+        byte[] timestampBytes = timestamp();
+        byte[] json = new byte[prefix.length + timestampBytes.length + SUFFIX.length];
+        int position = put(json, 0, prefix);
+        position = put(json, position, timestampBytes);
+        put(json, position, SUFFIX);
+        return json;
+    }
+
+    /**
+     * Writes the JSON of {@link JsonResponseExtended} with the status and the value as data.
+     *
+     * @param status the status of the response
+     * @param value  UTF-8 bytes of the value (may be null)
+     * @return UTF-8 bytes of the JSON
+     */
+    byte[] writeExtended(EnumStorageStatus status, byte[] value) {
+        byte[] prefix = PREFIXES[status.ordinal()];
+        byte[] timestampBytes = timestamp();
+        int dataLength = value == null ? NULL.length : quotedLength(value);
+        byte[] json = new byte[prefix.length + timestampBytes.length + DATA_FIELD.length + dataLength + 1];
+        int position = put(json, 0, prefix);
+        position = put(json, position, timestampBytes);
+        position = put(json, position, DATA_FIELD);
+        if (value == null) {
+            position = put(json, position, NULL);
+        } else if (dataLength == value.length + 2) {
+            json[position++] = '"';
+            position = put(json, position, value);
+            json[position++] = '"';
+        } else {
+            position = putEscaped(json, position, value);
+        }
+        json[position] = '}';
+        return json;
+    }
+
+    /**
+     * Gets the encoded timestamp, encoding the current time if the last timestamp is too old.
+     *
+     * @return UTF-8 bytes of the timestamp
+     */
+    private byte[] timestamp() {
+        Timestamp current = timestamp;
+        long currentTime = System.currentTimeMillis();
+        if (currentTime >= current.refreshTime) {
+            current = new Timestamp(LocalDateTime.now().toString().getBytes(StandardCharsets.UTF_8),
+                    currentTime + TIMESTAMP_REFRESH_MS);
+            timestamp = current;
+        }
+        return current.bytes;
+    }
+
+    /**
+     * Copies the bytes into the JSON.
+     *
+     * @param json     the JSON being written
+     * @param position the position to copy to
+     * @param bytes    the bytes to copy
+     * @return the position after the copied bytes
+     */
+    private static int put(byte[] json, int position, byte[] bytes) {
+        System.arraycopy(bytes, 0, json, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    /**
+     * Counts the length of the value as a JSON string with quotes and escapes.
+     *
+     * @param value UTF-8 bytes of the value
+     * @return the length in bytes
+     */
+    private static int quotedLength(byte[] value) {
+        int length = value.length + 2;
+        for (byte b : value) {
+            if (b == '"' || b == '\\' || b == '\n' || b == '\r' || b == '\t') {
+                length += 1;
+            } else if (b >= 0 && b < 0x20) {
+                length += 5;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes the value as a JSON string with quotes and escapes.
+     * Bytes of multibyte UTF-8 characters are negative and are copied as they are.
+     *
+     * @param json     the JSON being written
+     * @param position the position to write to
+     * @param value    UTF-8 bytes of the value
+     * @return the position after the written string
+     */
+    private static int putEscaped(byte[] json, int position, byte[] value) {
+        json[position++] = '"';
+        for (byte b : value) {
+            if (b == '"' || b == '\\') {
+                json[position++] = '\\';
+                json[position++] = b;
+            } else if (b == '\n') {
+                json[position++] = '\\';
+                json[position++] = 'n';
+            } else if (b == '\r') {
+                json[position++] = '\\';
+                json[position++] = 'r';
+            } else if (b == '\t') {
+                json[position++] = '\\';
+                json[position++] = 't';
+            } else if (b >= 0 && b < 0x20) {
+                json[position++] = '\\';
+                json[position++] = 'u';
+                json[position++] = '0';
+                json[position++] = '0';
+                json[position++] = HEX_DIGITS[b >> 4];
+                json[position++] = HEX_DIGITS[b & 0x0F];
+            } else {
+                json[position++] = b;
+            }
+        }
+        json[position++] = '"';
+        return position;
+    }
+}
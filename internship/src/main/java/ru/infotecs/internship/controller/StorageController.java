@@ -10,58 +10,135 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.parameters.*;
 
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 
+import ru.infotecs.internship.json.JsonBatchResult;
+import ru.infotecs.internship.json.JsonPipelineRequest;
 import ru.infotecs.internship.json.JsonRequest;
+import ru.infotecs.internship.json.JsonScanEntry;
 import ru.infotecs.internship.json.JsonResponse;
+import ru.infotecs.internship.json.JsonResponseBatch;
+import ru.infotecs.internship.json.JsonResponseCount;
 import ru.infotecs.internship.json.JsonResponseExtended;
+import ru.infotecs.internship.json.JsonResponseRange;
+import ru.infotecs.internship.json.JsonResponseScan;
+import ru.infotecs.internship.json.JsonResponseStats;
+import ru.infotecs.internship.storage.EnumLoadMode;
 import ru.infotecs.internship.storage.EnumStorageStatus;
 import ru.infotecs.internship.storage.RecordValue;
 import ru.infotecs.internship.storage.StorageMap;
+import ru.infotecs.internship.storage.StorageRangePage;
+import ru.infotecs.internship.storage.StorageScanPage;
 
 import java.io.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * REST controller for managing the storage operations.
- * Provides methods to get, set, remove, dump, and load values from the storage.
+ * Provides methods to get, set, remove (one by one, in batches or pipelined), scan, list ordered ranges,
+ * dump, and load values from the storage.
  */
 @RestController
 public class StorageController {
 
+    /**
+     * Maximum number of keys in one batch request.
+     */
+    public static final int MAX_BATCH_SIZE = 10_000;
+
+    /**
+     * Default number of entries examined for one page of a scan.
+     */
+    public static final int DEFAULT_SCAN_COUNT = 100;
+
+    /**
+     * Default number of keys of one page of an ordered range.
+     */
+    public static final int DEFAULT_RANGE_LIMIT = 100;
+
+    /**
+     * Header of the response to get a value, containing the remaining TTL of the record in milliseconds.
+     */
+    public static final String TTL_HEADER = "X-Ttl-Ms";
+
     /**
      * The key-value database with TTL
      */
     @Autowired
-    private volatile StorageMap storage;
+    private StorageMap storage;
+
+    /**
+     * Mapper reading and writing streamed JSON of pipelined requests.
+     */
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Writer of responses to single-key requests and connection tests without response objects.
+     */
+    private final JsonResponseWriter responseWriter = new JsonResponseWriter();
 
     /**
      * Gets a value from the storage by key.
+     * The response has an entity tag of the record, which changes when the value or the expiration time
+     * changes, so a client caching the value can check that it is still current.
      *
-     * @param key the key of the record to get
+     * @param key         the key of the record to get
+     * @param ifNoneMatch the entity tag of the cached record (may be null)
      * @return a {@link ResponseEntity} containing the {@link JsonResponseExtended} that
-     * contains the record value and the results of operation and timestamp.
+     * contains the record value and the results of operation and timestamp, with the remaining TTL
+     * of the record in the {@value #TTL_HEADER} header, or an empty response with status 304
+     * if the entity tag of the record matches {@code ifNoneMatch}.
      */
-    @Operation(summary = "Gets a value from the storage", description = "Retrieves a value by key from the storage.")
+    @Operation(summary = "Gets a value from the storage", description = "Retrieves a value by key from the storage. "
+            + "A cached value can be revalidated by the If-None-Match header.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Value retrieved successfully",
                     content = @Content(schema = @Schema(implementation = JsonResponseExtended.class))),
+            @ApiResponse(responseCode = "304", description = "Cached value is current"),
             @ApiResponse(responseCode = "404", description = "Value not found",
                     content = @Content(schema = @Schema(implementation = JsonResponseExtended.class)))
     })
     @GetMapping("/storage/{key}")
     public ResponseEntity<?> getValue(@Parameter(name = "key", description = "The key for the value to get",
-            required = true, example = "myKey") @PathVariable String key) {
-        RecordValue value;
-        value = storage.getValue(key);
+            required = true, example = "myKey") @PathVariable String key,
+                                      @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false)
+                                      String ifNoneMatch) {
+        RecordValue value = storage.getValue(key);
         if (value == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
-                    new JsonResponseExtended(EnumStorageStatus.VALUE_NOT_EXIST));
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).contentType(MediaType.APPLICATION_JSON)
+                    .body(responseWriter.writeExtended(EnumStorageStatus.VALUE_NOT_EXIST, null));
         }
-        return ResponseEntity.status(HttpStatus.OK).body(
-                new JsonResponseExtended(EnumStorageStatus.VALUE_GET_OK, value.getValue()));
+        String entityTag = entityTag(value);
+        if (entityTag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(entityTag).build();
+        }
+        return ResponseEntity.status(HttpStatus.OK).eTag(entityTag)
+                .header(TTL_HEADER, Long.toString(value.getTtlMs())).contentType(MediaType.APPLICATION_JSON)
+                .body(responseWriter.writeExtended(EnumStorageStatus.VALUE_GET_OK, value.getValueUtf8()));
+    }
+
+    /**
+     * Creates the entity tag of the record from its expiration time and its version,
+     * every write of the key gives a new version.
+     *
+     * @param value the record
+     * @return the quoted entity tag
+     */
+    private static String entityTag(RecordValue value) {
+        return "\"" + Long.toHexString(value.getExpirationTime()) + "-" + Long.toHexString(value.getVersion()) + "\"";
     }
 
     /**
@@ -96,28 +173,22 @@ public class StorageController {
     })
     @PostMapping("/storage")
     public ResponseEntity<?> setValue(@org.springframework.web.bind.annotation.RequestBody JsonRequest requestBody) {
-        boolean isValueAlreadyExists = false;
-
         String key = requestBody.getKey();
         String value = requestBody.getValue();
         Long ttl = requestBody.getTtlSeconds();
         if (key == null) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
-                    new JsonResponse(EnumStorageStatus.KEY_EMPTY));
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).contentType(MediaType.APPLICATION_JSON)
+                    .body(responseWriter.write(EnumStorageStatus.KEY_EMPTY));
         }
         if (value == null) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
-                    new JsonResponse(EnumStorageStatus.VALUE_NOT_EXIST));
-        }
-        isValueAlreadyExists = storage.isKeyValid(key);
-        if (ttl == null) {
-            storage.putValue(key, value);
-        } else {
-            storage.putValue(key, value, ttl);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).contentType(MediaType.APPLICATION_JSON)
+                    .body(responseWriter.write(EnumStorageStatus.VALUE_NOT_EXIST));
         }
+        boolean isValueAlreadyExists = storage.upsertValue(key, value, ttl);
         EnumStorageStatus okStatus = isValueAlreadyExists ?
                 EnumStorageStatus.VALUE_SET_UPDATE_OK : EnumStorageStatus.VALUE_SET_OK;
-        return ResponseEntity.status(HttpStatus.OK).body(new JsonResponse(okStatus));
+        return ResponseEntity.status(HttpStatus.OK).contentType(MediaType.APPLICATION_JSON)
+                .body(responseWriter.write(okStatus));
     }
 
     /**
@@ -144,27 +215,305 @@ public class StorageController {
     @DeleteMapping("/storage/{key}")
     public ResponseEntity<?> removeValue(@Parameter(name = "key", description = "The key for the value to remove",
             required = true, example = "myKey") @PathVariable String key) {
-        if (!storage.isKeyValid(key)) {
-            return ResponseEntity.status(HttpStatus.OK).body(
-                    new JsonResponseExtended(EnumStorageStatus.VALUE_NOT_EXIST));
-        }
         RecordValue value = storage.removeValue(key);
+        if (value == null) {
+            return ResponseEntity.status(HttpStatus.OK).contentType(MediaType.APPLICATION_JSON)
+                    .body(responseWriter.writeExtended(EnumStorageStatus.VALUE_NOT_EXIST, null));
+        }
+        return ResponseEntity.status(HttpStatus.OK).contentType(MediaType.APPLICATION_JSON)
+                .body(responseWriter.writeExtended(EnumStorageStatus.VALUE_REMOVE_OK, value.getValueUtf8()));
+    }
+
+    /**
+     * Gets values from the storage by keys in one request.
+     *
+     * @param keys the keys of the records to get
+     * @return a {@link ResponseEntity} containing the {@link JsonResponseBatch} that
+     * contains the record values and statuses in the order of the keys, the result of operation and timestamp.
+     */
+    @Operation(
+            summary = "Gets values from the storage by keys",
+            description = "Retrieves values by a list of keys in one request (MGET). "
+                    + "The status and value of every key are returned in the order of the keys.",
+            requestBody = @RequestBody(
+                    description = "List of keys, at most " + MAX_BATCH_SIZE,
+                    required = true,
+                    content = @Content(examples = @ExampleObject(name = "Request Example",
+                            value = "[\"myKey\",\"otherKey\"]"))
+            ),
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Batch processed",
+                            content = @Content(schema = @Schema(implementation = JsonResponseBatch.class),
+                                    examples = @ExampleObject(name = "Request Example",
+                                            value = "{\"status\":\"BATCH_OK\",\"timestamp\":\"...\",\"results\":["
+                                                    + "{\"key\":\"myKey\",\"status\":\"VALUE_GET_OK\",\"data\":\"myValue\"},"
+                                                    + "{\"key\":\"otherKey\",\"status\":\"VALUE_NOT_EXIST\",\"data\":null}]}"))),
+                    @ApiResponse(responseCode = "400", description = "Too many keys",
+                            content = @Content(schema = @Schema(implementation = JsonResponse.class),
+                                    examples = @ExampleObject(name = "Request Example",
+                                            value = "{\"status\":\"BATCH_TOO_LARGE\",\"timestamp\":\"...\"}")))
+            }
+    )
+    @PostMapping("/storage/mget")
+    public ResponseEntity<?> getValues(@org.springframework.web.bind.annotation.RequestBody List<String> keys) {
+        if (keys.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
+                    new JsonResponse(EnumStorageStatus.BATCH_TOO_LARGE));
+        }
+        List<JsonBatchResult> results = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            results.add(getResult(key));
+        }
         return ResponseEntity.status(HttpStatus.OK).body(
-                new JsonResponseExtended(EnumStorageStatus.VALUE_REMOVE_OK, value.getValue()));
+                new JsonResponseBatch(EnumStorageStatus.BATCH_OK, results));
+    }
+
+    /**
+     * Sets values in the storage in one request.
+     *
+     * @param requestBodies the requests containing key, value, and optional TTL
+     * @return a {@link ResponseEntity} containing the {@link JsonResponseBatch} that
+     * contains the statuses in the order of the requests, the result of operation and timestamp.
+     */
+    @Operation(
+            summary = "Sets values in the storage",
+            description = "Sets or updates values with optional TTLs in one request (MSET). "
+                    + "The status of every request is returned in the order of the requests.",
+            requestBody = @RequestBody(
+                    description = "List of requests containing key, value, and optional TTL, at most "
+                            + MAX_BATCH_SIZE,
+                    required = true,
+                    content = @Content(examples = @ExampleObject(name = "Request Example",
+                            value = "[{\"key\":\"myKey\",\"value\":\"myValue\",\"ttl\":10}]"))
+            ),
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Batch processed",
+                            content = @Content(schema = @Schema(implementation = JsonResponseBatch.class),
+                                    examples = @ExampleObject(name = "Request Example",
+                                            value = "{\"status\":\"BATCH_OK\",\"timestamp\":\"...\",\"results\":["
+                                                    + "{\"key\":\"myKey\",\"status\":\"VALUE_SET_OK\",\"data\":null}]}"))),
+                    @ApiResponse(responseCode = "400", description = "Too many requests in the batch",
+                            content = @Content(schema = @Schema(implementation = JsonResponse.class),
+                                    examples = @ExampleObject(name = "Request Example",
+                                            value = "{\"status\":\"BATCH_TOO_LARGE\",\"timestamp\":\"...\"}")))
+            }
+    )
+    @PostMapping("/storage/mset")
+    public ResponseEntity<?> setValues(
+            @org.springframework.web.bind.annotation.RequestBody List<JsonRequest> requestBodies) {
+        if (requestBodies.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
+                    new JsonResponse(EnumStorageStatus.BATCH_TOO_LARGE));
+        }
+        List<JsonBatchResult> results = new ArrayList<>(requestBodies.size());
+        for (JsonRequest requestBody : requestBodies) {
+            results.add(setResult(requestBody));
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(
+                new JsonResponseBatch(EnumStorageStatus.BATCH_OK, results));
+    }
+
+    /**
+     * Removes values from the storage by keys in one request.
+     *
+     * @param keys the keys of the records to remove
+     * @return a {@link ResponseEntity} containing the {@link JsonResponseBatch} that
+     * contains the removed values and statuses in the order of the keys, the result of operation and timestamp.
+     */
+    @Operation(
+            summary = "Removes values from the storage by keys",
+            description = "Removes values by a list of keys in one request (MDEL). "
+                    + "The status and removed value of every key are returned in the order of the keys.",
+            requestBody = @RequestBody(
+                    description = "List of keys, at most " + MAX_BATCH_SIZE,
+                    required = true,
+                    content = @Content(examples = @ExampleObject(name = "Request Example",
+                            value = "[\"myKey\",\"otherKey\"]"))
+            ),
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Batch processed",
+                            content = @Content(schema = @Schema(implementation = JsonResponseBatch.class),
+                                    examples = @ExampleObject(name = "Request Example",
+                                            value = "{\"status\":\"BATCH_OK\",\"timestamp\":\"...\",\"results\":["
+                                                    + "{\"key\":\"myKey\",\"status\":\"VALUE_REMOVE_OK\",\"data\":\"myValue\"}]}"))),
+                    @ApiResponse(responseCode = "400", description = "Too many keys",
+                            content = @Content(schema = @Schema(implementation = JsonResponse.class),
+                                    examples = @ExampleObject(name = "Request Example",
+                                            value = "{\"status\":\"BATCH_TOO_LARGE\",\"timestamp\":\"...\"}")))
+            }
+    )
+    @PostMapping("/storage/mdel")
+    public ResponseEntity<?> removeValues(@org.springframework.web.bind.annotation.RequestBody List<String> keys) {
+        if (keys.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
+                    new JsonResponse(EnumStorageStatus.BATCH_TOO_LARGE));
+        }
+        List<JsonBatchResult> results = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            results.add(removeResult(key));
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(
+                new JsonResponseBatch(EnumStorageStatus.BATCH_OK, results));
+    }
+
+    /**
+     * Executes a stream of get, set and remove operations in one request.
+     * The operations are read from the request one by one and executed in order, their results are
+     * written to the response as they are produced, so the size of the stream is not limited.
+     * If an operation cannot be read, the following operations are not executed and the status of
+     * the response is {@link EnumStorageStatus#PIPELINE_ABORTED}.
+     *
+     * @param inputStream stream containing a JSON array of operations
+     * @param response    the response to write the results to
+     * @throws IOException if an I/O error occurs while writing the response
+     */
+    @Operation(
+            summary = "Executes pipelined operations",
+            description = "Executes a stream of get, set and remove operations in order in one request. "
+                    + "Results are written as a stream in the order of the operations, "
+                    + "the status follows the results.",
+            requestBody = @RequestBody(
+                    description = "JSON array of operations",
+                    required = true,
+                    content = @Content(examples = @ExampleObject(name = "Request Example",
+                            value = "[{\"op\":\"SET\",\"key\":\"myKey\",\"value\":\"myValue\",\"ttl\":10},"
+                                    + "{\"op\":\"GET\",\"key\":\"myKey\"}]"))
+            ),
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Pipeline processed",
+                            content = @Content(schema = @Schema(implementation = JsonResponseBatch.class),
+                                    examples = @ExampleObject(name = "Request Example",
+                                            value = "{\"results\":["
+                                                    + "{\"key\":\"myKey\",\"status\":\"VALUE_SET_OK\",\"data\":null},"
+                                                    + "{\"key\":\"myKey\",\"status\":\"VALUE_GET_OK\",\"data\":\"myValue\"}],"
+                                                    + "\"status\":\"BATCH_OK\",\"timestamp\":\"...\"}")))
+            }
+    )
+    @PostMapping("/storage/pipeline")
+    public void executePipeline(InputStream inputStream,
+                                @Parameter(hidden = true) HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        EnumStorageStatus status = EnumStorageStatus.BATCH_OK;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("results");
+            try (MappingIterator<JsonPipelineRequest> operations = objectMapper
+                    .readerFor(JsonPipelineRequest.class)
+                    .with(DeserializationFeature.READ_UNKNOWN_ENUM_VALUES_AS_NULL)
+                    .readValues(inputStream)) {
+                while (operations.hasNextValue()) {
+                    generator.writeObject(executeOperation(operations.nextValue()));
+                }
+            } catch (JacksonException e) {
+                status = EnumStorageStatus.PIPELINE_ABORTED;
+            }
+            generator.writeEndArray();
+            generator.writeObjectField("status", status);
+            generator.writeStringField("timestamp", LocalDateTime.now().toString());
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Executes one operation of a pipelined request.
+     *
+     * @param request the operation with its key, value and TTL
+     * @return the result of the operation
+     */
+    private JsonBatchResult executeOperation(JsonPipelineRequest request) {
+        if (request == null || request.getOperation() == null) {
+            return new JsonBatchResult(request == null ? null : request.getKey(),
+                    EnumStorageStatus.OPERATION_UNSUPPORTED);
+        }
+        return switch (request.getOperation()) {
+            case GET -> getResult(request.getKey());
+            case SET -> setResult(request);
+            case REMOVE -> removeResult(request.getKey());
+        };
+    }
+
+    /**
+     * Gets a value from the storage by key for a batch request.
+     *
+     * @param key the key of the record to get
+     * @return the result containing the record value
+     */
+    private JsonBatchResult getResult(String key) {
+        if (key == null) {
+            return new JsonBatchResult(null, EnumStorageStatus.KEY_EMPTY);
+        }
+        RecordValue value = storage.getValue(key);
+        if (value == null) {
+            return new JsonBatchResult(key, EnumStorageStatus.VALUE_NOT_EXIST);
+        }
+        return new JsonBatchResult(key, EnumStorageStatus.VALUE_GET_OK, value.getValue());
+    }
+
+    /**
+     * Sets a value in the storage for a batch request.
+     *
+     * @param requestBody the request containing key, value, and optional TTL
+     * @return the result of setting the value
+     */
+    private JsonBatchResult setResult(JsonRequest requestBody) {
+        String key = requestBody == null ? null : requestBody.getKey();
+        if (key == null) {
+            return new JsonBatchResult(null, EnumStorageStatus.KEY_EMPTY);
+        }
+        if (requestBody.getValue() == null) {
+            return new JsonBatchResult(key, EnumStorageStatus.VALUE_NOT_EXIST);
+        }
+        boolean isValueAlreadyExists = storage.upsertValue(key, requestBody.getValue(), requestBody.getTtlSeconds());
+        return new JsonBatchResult(key, isValueAlreadyExists ?
+                EnumStorageStatus.VALUE_SET_UPDATE_OK : EnumStorageStatus.VALUE_SET_OK);
+    }
+
+    /**
+     * Removes a value from the storage by key for a batch request.
+     *
+     * @param key the key of the record to remove
+     * @return the result containing the removed value
+     */
+    private JsonBatchResult removeResult(String key) {
+        if (key == null) {
+            return new JsonBatchResult(null, EnumStorageStatus.KEY_EMPTY);
+        }
+        RecordValue value = storage.removeValue(key);
+        if (value == null) {
+            return new JsonBatchResult(key, EnumStorageStatus.VALUE_NOT_EXIST);
+        }
+        return new JsonBatchResult(key, EnumStorageStatus.VALUE_REMOVE_OK, value.getValue());
     }
 
     /**
      * Dumps the current storage data to a file to download.
+     * The dump is written to the response (chunked) while the storage is read, so only small buffers
+     * are kept in memory whatever the size of the storage. An error after the start of the response
+     * aborts the connection.
      *
-     * @return a {@link ResponseEntity} containing the storage data as a file attachment or
-     * {@link JsonResponse} that contains the error status and timestamp.
+     * @param compression    the compression of the dump file (may be null)
+     * @param acceptEncoding the value of the {@code Accept-Encoding} header, used if {@code compression} is null
+     * @param response       the response to write the storage data to as a file attachment
+     * @return null if the storage data is written to the response, otherwise a {@link ResponseEntity}
+     * containing the {@link JsonResponse} that contains the error status and timestamp.
+     * @throws IOException if an I/O error occurs after the start of the response
      */
     @Operation(
             summary = "Dump storage data",
-            description = "Download the current storage data as a file.",
+            description = "Download the current storage data as a file. The dump may be compressed as a file "
+                    + "(compression parameter) or as a content coding negotiated by the Accept-Encoding header.",
+            parameters = {
+                    @Parameter(name = "compression", description = "Compression of the dump file",
+                            schema = @Schema(allowableValues = {"identity", "gzip", "deflate"}))
+            },
             responses = {
                     @ApiResponse(responseCode = "200", description = "Storage data dumped successfully",
                             content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM_VALUE)),
+                    @ApiResponse(responseCode = "400", description = "Unsupported compression",
+                            content = @Content(schema = @Schema(implementation = JsonResponse.class),
+                                    examples = @ExampleObject(name = "Request Example",
+                                            value = "{\"status\":\"DUMP_COMPRESSION_UNSUPPORTED\",\"timestamp\":\"...\"}"))),
                     @ApiResponse(responseCode = "500", description = "Error while dumping storage",
                             content = @Content(schema = @Schema(implementation = JsonResponse.class),
                                     examples = @ExampleObject(name = "Request Example",
@@ -172,34 +521,63 @@ public class StorageController {
             }
     )
     @GetMapping("/dump")
-    public ResponseEntity<?> dumpStorage() {
-        try (ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-             ObjectOutputStream out = new ObjectOutputStream(byteStream)) {
-            out.writeObject(storage);
-            byte[] data = byteStream.toByteArray();
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentLength(data.length);
-            headers.setContentDispositionFormData("attachment", "storage.dat"); // for browser
-            return new ResponseEntity<>(data, headers, HttpStatus.OK);
+    public ResponseEntity<?> dumpStorage(
+            @RequestParam(name = "compression", required = false) String compression,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @Parameter(hidden = true) HttpServletResponse response) throws IOException {
+        EnumDumpCompression dumpCompression;
+        String fileName = "storage.dat";
+        if (compression != null) {
+            dumpCompression = EnumDumpCompression.fromEncoding(compression);
+            if (dumpCompression == null) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
+                        new JsonResponse(EnumStorageStatus.DUMP_COMPRESSION_UNSUPPORTED));
+            }
+            fileName += dumpCompression.getFileExtension();
+        } else {
+            dumpCompression = EnumDumpCompression.negotiate(acceptEncoding);
+            if (dumpCompression != EnumDumpCompression.IDENTITY) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, dumpCompression.getEncoding());
+            }
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.formData()
+                .name("attachment").filename(fileName).build().toString()); // for browser
+        try (OutputStream out = dumpCompression.compress(response.getOutputStream())) {
+            storage.dump(out);
         } catch (IOException e) {
+            if (response.isCommitted()) {
+                throw e;
+            }
+            response.reset();
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
                     new JsonResponse(EnumStorageStatus.VALUE_DUMP_ERROR));
         }
+        return null;
     }
 
     /**
      * Loads storage data from an uploaded file.
+     * The file is read incrementally; in replace mode the loaded records are swapped in atomically
+     * after the whole file is read, requests are served from the previous records until then.
      *
-     * @param inputStream stream containing serialized storage data
+     * @param mode        the mode of loading, {@code replace} (default) or {@code merge}
+     * @param inputStream stream containing storage data in the binary snapshot format
      * @return a {@link ResponseEntity} containing the {@link JsonResponse} that
      * contains the results of operation and timestamp.
      */
     @Operation(
             summary = "Loads storage data",
-            description = "Loads storage data from an uploaded file.",
+            description = "Loads storage data from an uploaded file, replacing the storage "
+                    + "or merging the file into it.",
+            parameters = {
+                    @Parameter(name = "mode", description = "Mode of loading",
+                            schema = @Schema(allowableValues = {"replace", "merge"}, defaultValue = "replace"))
+            },
             requestBody = @RequestBody(
-                    description = "File containing serialized storage data",
+                    description = "File containing storage data, plain or compressed by gzip or deflate",
                     required = true,
                     content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM_VALUE)
             ),
@@ -208,26 +586,309 @@ public class StorageController {
                             content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM_VALUE,
                                     examples = @ExampleObject(name = "Request Example",
                                             value = "{\"status\":\"VALUE_LOAD_OK\",\"timestamp\":\"...\"}"))),
-                    @ApiResponse(responseCode = "500", description = "Error while loading storage",
+                    @ApiResponse(responseCode = "400", description = "Error while loading storage or unsupported mode",
                             content = @Content(schema = @Schema(implementation = JsonResponse.class),
                                     examples = @ExampleObject(name = "Request Example",
                                             value = "{\"status\":\"VALUE_LOAD_ERROR\",\"timestamp\":\"...\"}")))
             }
     )
     @PutMapping("/load")
-    public ResponseEntity<?> loadStorage(InputStream inputStream) {
-        storage.stopTrim();
-        try (ObjectInputStream in = new ObjectInputStream(inputStream)) {
-            storage = (StorageMap) in.readObject();
+    public ResponseEntity<?> loadStorage(@RequestParam(name = "mode", required = false) String mode,
+                                         InputStream inputStream) {
+        EnumLoadMode loadMode = EnumLoadMode.REPLACE;
+        if (mode != null) {
+            try {
+                loadMode = EnumLoadMode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
+                        new JsonResponse(EnumStorageStatus.LOAD_MODE_UNSUPPORTED));
+            }
+        }
+        try (InputStream in = EnumDumpCompression.decompress(inputStream)) {
+            storage.load(in, loadMode);
             return ResponseEntity.status(HttpStatus.CREATED).body(
                     new JsonResponse(EnumStorageStatus.VALUE_LOAD_OK));
-        } catch (IOException | ClassNotFoundException e) {
-            storage.startTrim();
+        } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
                     new JsonResponse(EnumStorageStatus.VALUE_LOAD_ERROR));
         }
     }
 
+    /**
+     * Starts writing a snapshot of the storage to the local file in the background.
+     *
+     * @return a {@link ResponseEntity} containing the {@link JsonResponse} that
+     * contains the results of operation and timestamp.
+     */
+    @Operation(
+            summary = "Starts a background snapshot",
+            description = "Starts writing a point-in-time snapshot of the storage to the configured local file. "
+                    + "Duration, size and time of the last successful snapshot are shown in the statistics.",
+            responses = {
+                    @ApiResponse(responseCode = "202", description = "Snapshot started",
+                            content = @Content(schema = @Schema(implementation = JsonResponse.class),
+                                    examples = @ExampleObject(name = "Success Example",
+                                            value = "{\"status\":\"SNAPSHOT_STARTED\",\"timestamp\":\"...\"}"))),
+                    @ApiResponse(responseCode = "400", description = "Snapshots are disabled",
+                            content = @Content(schema = @Schema(implementation = JsonResponse.class),
+                                    examples = @ExampleObject(name = "Request Example",
+                                            value = "{\"status\":\"SNAPSHOT_DISABLED\",\"timestamp\":\"...\"}")))
+            }
+    )
+    @PostMapping("/snapshot")
+    public ResponseEntity<?> startSnapshot() {
+        if (!storage.requestSnapshot()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
+                    new JsonResponse(EnumStorageStatus.SNAPSHOT_DISABLED));
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(
+                new JsonResponse(EnumStorageStatus.SNAPSHOT_STARTED));
+    }
+
+    /**
+     * Reads a page of keys of valid records (SCAN). The scan does not lock the storage and is weakly consistent:
+     * records existing during the whole scan are returned once, records put or removed during the scan
+     * may be returned or not.
+     *
+     * @param cursor   0 to start a new scan, or the cursor returned with the previous page
+     * @param match    glob pattern of keys, {@code *} for any characters and {@code ?} for one character
+     *                 (may be null)
+     * @param count    number of entries to examine, the page may have fewer keys (may be null)
+     * @param isValues true to return values and remaining TTL of the records (may be null)
+     * @return a {@link ResponseEntity} containing the {@link JsonResponseScan} that contains the records
+     * of the page, the cursor of the next page (0 if the scan is complete), the result of operation and timestamp.
+     */
+    @Operation(
+            summary = "Scans keys of the storage",
+            description = "Returns a page of keys of valid records matching the pattern and the cursor of the next "
+                    + "page, 0 when the scan is complete. A page may be empty while the cursor is not 0. "
+                    + "Cursors unused for a minute are closed.",
+            parameters = {
+                    @Parameter(name = "cursor", description = "0 to start a scan or the cursor of the previous page",
+                            example = "0"),
+                    @Parameter(name = "match", description = "Glob pattern of keys with * and ?",
+                            example = "tenant:*"),
+                    @Parameter(name = "count", description = "Number of entries to examine, at most "
+                            + MAX_BATCH_SIZE, example = "100"),
+                    @Parameter(name = "values", description = "Return values and remaining TTL of records",
+                            example = "false")
+            },
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Page scanned",
+                            content = @Content(schema = @Schema(implementation = JsonResponseScan.class),
+                                    examples = @ExampleObject(name = "Success Example",
+                                            value = "{\"status\":\"SCAN_OK\",\"timestamp\":\"...\",\"cursor\":1,"
+                                                    + "\"entries\":[{\"key\":\"myKey\",\"value\":null,\"ttlMs\":null}]}"))),
+                    @ApiResponse(responseCode = "400", description = "Count is out of range",
+                            content = @Content(schema = @Schema(implementation = JsonResponse.class))),
+                    @ApiResponse(responseCode = "404", description = "Cursor is unknown or closed",
+                            content = @Content(schema = @Schema(implementation = JsonResponse.class)))
+            }
+    )
+    @GetMapping("/scan")
+    public ResponseEntity<?> scan(@RequestParam(name = "cursor", defaultValue = "0") long cursor,
+                                  @RequestParam(name = "match", required = false) String match,
+                                  @RequestParam(name = "count", required = false) Integer count,
+                                  @RequestParam(name = "values", required = false) Boolean isValues) {
+        int scanCount = count == null ? DEFAULT_SCAN_COUNT : count;
+        if (scanCount < 1 || scanCount > MAX_BATCH_SIZE) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
+                    new JsonResponse(EnumStorageStatus.SCAN_COUNT_INVALID));
+        }
+        boolean isWithValues = Boolean.TRUE.equals(isValues);
+        StorageScanPage page = storage.scan(cursor, match, scanCount, isWithValues);
+        if (page == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
+                    new JsonResponse(EnumStorageStatus.SCAN_CURSOR_NOT_FOUND));
+        }
+        List<JsonScanEntry> entries = new ArrayList<>(page.getKeys().size());
+        for (int i = 0; i < page.getKeys().size(); i++) {
+            if (isWithValues) {
+                RecordValue recordValue = page.getValues().get(i);
+                entries.add(new JsonScanEntry(page.getKeys().get(i), recordValue.getValue(),
+                        recordValue.getTtlMs()));
+            } else {
+                entries.add(new JsonScanEntry(page.getKeys().get(i), null, null));
+            }
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(
+                new JsonResponseScan(EnumStorageStatus.SCAN_OK, page.getCursor(), entries));
+    }
+
+    /**
+     * Reads a page of keys of valid records of an ordered range, restricted to keys starting with the prefix.
+     * The listing does not block writers and is weakly consistent: records existing during the whole listing
+     * are returned, records put or removed during the listing may be returned or not.
+     *
+     * @param prefix   prefix of keys (may be null)
+     * @param from     the lowest key of the range, inclusive (may be null)
+     * @param to       the highest key of the range, exclusive (may be null)
+     * @param limit    maximum number of keys of the page (may be null)
+     * @param isValues true to return values and remaining TTL of the records (may be null)
+     * @return a {@link ResponseEntity} containing the {@link JsonResponseRange} that contains the records
+     * of the page in ascending order of keys, the lowest key of the next page (null if the range is complete),
+     * the result of operation and timestamp.
+     */
+    @Operation(
+            summary = "Lists an ordered range of keys",
+            description = "Returns a page of keys of valid records in ascending order and the lowest key of the "
+                    + "next page, which is passed as 'from' to get the next page; null when the range is complete. "
+                    + "Requires the ordered index (storage.ordered-index).",
+            parameters = {
+                    @Parameter(name = "prefix", description = "Prefix of keys", example = "tenant:entity:"),
+                    @Parameter(name = "from", description = "The lowest key, inclusive", example = "tenant:a"),
+                    @Parameter(name = "to", description = "The highest key, exclusive", example = "tenant:b"),
+                    @Parameter(name = "limit", description = "Maximum number of keys, at most "
+                            + MAX_BATCH_SIZE, example = "100"),
+                    @Parameter(name = "values", description = "Return values and remaining TTL of records",
+                            example = "false")
+            },
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Page listed",
+                            content = @Content(schema = @Schema(implementation = JsonResponseRange.class),
+                                    examples = @ExampleObject(name = "Success Example",
+                                            value = "{\"status\":\"RANGE_OK\",\"timestamp\":\"...\","
+                                                    + "\"nextKey\":null,\"entries\":[{\"key\":\"tenant:a\","
+                                                    + "\"value\":null,\"ttlMs\":null}]}"))),
+                    @ApiResponse(responseCode = "400", description = "Limit is out of range or ordered index "
+                            + "is disabled", content = @Content(schema = @Schema(implementation = JsonResponse.class)))
+            }
+    )
+    @GetMapping("/keys")
+    public ResponseEntity<?> range(@RequestParam(name = "prefix", required = false) String prefix,
+                                   @RequestParam(name = "from", required = false) String from,
+                                   @RequestParam(name = "to", required = false) String to,
+                                   @RequestParam(name = "limit", required = false) Integer limit,
+                                   @RequestParam(name = "values", required = false) Boolean isValues) {
+        if (!storage.isOrdered()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
+                    new JsonResponse(EnumStorageStatus.ORDERED_INDEX_DISABLED));
+        }
+        int rangeLimit = limit == null ? DEFAULT_RANGE_LIMIT : limit;
+        if (rangeLimit < 1 || rangeLimit > MAX_BATCH_SIZE) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
+                    new JsonResponse(EnumStorageStatus.RANGE_LIMIT_INVALID));
+        }
+        String fromKey = from;
+        String toKey = to;
+        if (prefix != null && !prefix.isEmpty()) {
+            if (fromKey == null || fromKey.compareTo(prefix) < 0) {
+                fromKey = prefix;
+            }
+            String prefixEnd = StorageMap.prefixEnd(prefix);
+            if (prefixEnd != null && (toKey == null || toKey.compareTo(prefixEnd) > 0)) {
+                toKey = prefixEnd;
+            }
+        }
+        boolean isWithValues = Boolean.TRUE.equals(isValues);
+        StorageRangePage page = storage.range(fromKey, toKey, rangeLimit, isWithValues);
+        List<JsonScanEntry> entries = new ArrayList<>(page.getKeys().size());
+        for (int i = 0; i < page.getKeys().size(); i++) {
+            if (isWithValues) {
+                RecordValue recordValue = page.getValues().get(i);
+                entries.add(new JsonScanEntry(page.getKeys().get(i), recordValue.getValue(),
+                        recordValue.getTtlMs()));
+            } else {
+                entries.add(new JsonScanEntry(page.getKeys().get(i), null, null));
+            }
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(
+                new JsonResponseRange(EnumStorageStatus.RANGE_OK, page.getNextKey(), entries));
+    }
+
+    /**
+     * Counts keys of valid records starting with the prefix without blocking writers.
+     *
+     * @param prefix prefix of keys, empty or null for all keys
+     * @return a {@link ResponseEntity} containing the {@link JsonResponseCount} that
+     * contains the number of keys, the result of operation and timestamp.
+     */
+    @Operation(
+            summary = "Counts keys by prefix",
+            description = "Counts keys of valid records starting with the prefix. "
+                    + "Requires the ordered index (storage.ordered-index).",
+            parameters = @Parameter(name = "prefix", description = "Prefix of keys", example = "tenant:entity:"),
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Keys counted",
+                            content = @Content(schema = @Schema(implementation = JsonResponseCount.class),
+                                    examples = @ExampleObject(name = "Success Example",
+                                            value = "{\"status\":\"RANGE_COUNT_OK\",\"timestamp\":\"...\","
+                                                    + "\"count\":1}"))),
+                    @ApiResponse(responseCode = "400", description = "Ordered index is disabled",
+                            content = @Content(schema = @Schema(implementation = JsonResponse.class)))
+            }
+    )
+    @GetMapping("/keys/count")
+    public ResponseEntity<?> countPrefix(@RequestParam(name = "prefix", defaultValue = "") String prefix) {
+        if (!storage.isOrdered()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
+                    new JsonResponse(EnumStorageStatus.ORDERED_INDEX_DISABLED));
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(
+                new JsonResponseCount(EnumStorageStatus.RANGE_COUNT_OK, storage.countPrefix(prefix)));
+    }
+
+    /**
+     * Removes records whose keys start with the prefix. Records are removed one by one, so records put
+     * with the prefix during the removal may stay in the storage.
+     *
+     * @param prefix prefix of keys, must not be empty
+     * @return a {@link ResponseEntity} containing the {@link JsonResponseCount} that
+     * contains the number of removed valid records, the result of operation and timestamp.
+     */
+    @Operation(
+            summary = "Removes keys by prefix",
+            description = "Removes records whose keys start with the prefix, one by one. "
+                    + "Requires the ordered index (storage.ordered-index).",
+            parameters = @Parameter(name = "prefix", description = "Prefix of keys, not empty",
+                    example = "tenant:entity:"),
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Keys removed",
+                            content = @Content(schema = @Schema(implementation = JsonResponseCount.class),
+                                    examples = @ExampleObject(name = "Success Example",
+                                            value = "{\"status\":\"RANGE_REMOVE_OK\",\"timestamp\":\"...\","
+                                                    + "\"count\":1}"))),
+                    @ApiResponse(responseCode = "400", description = "Prefix is empty or ordered index is disabled",
+                            content = @Content(schema = @Schema(implementation = JsonResponse.class)))
+            }
+    )
+    @DeleteMapping("/keys")
+    public ResponseEntity<?> removePrefix(@RequestParam(name = "prefix", defaultValue = "") String prefix) {
+        if (!storage.isOrdered()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
+                    new JsonResponse(EnumStorageStatus.ORDERED_INDEX_DISABLED));
+        }
+        if (prefix.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
+                    new JsonResponse(EnumStorageStatus.KEY_EMPTY));
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(
+                new JsonResponseCount(EnumStorageStatus.RANGE_REMOVE_OK, storage.removePrefix(prefix)));
+    }
+
+    /**
+     * Gets statistics of the storage (number of entries, memory usage, evictions).
+     *
+     * @return a {@link ResponseEntity} containing the {@link JsonResponseStats} that
+     * contains the statistics, the result of operation and timestamp.
+     */
+    @Operation(
+            summary = "Gets storage statistics",
+            description = "Gets the number of entries, estimated memory usage and number of evictions.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Statistics retrieved successfully",
+                            content = @Content(schema = @Schema(implementation = JsonResponseStats.class),
+                                    examples = @ExampleObject(name = "Success Example",
+                                            value = "{\"status\":\"STATS_GET_OK\",\"timestamp\":\"...\","
+                                                    + "\"stats\":{\"entries\":1,\"evictions\":0}}")))
+            }
+    )
+    @GetMapping("/stats")
+    public ResponseEntity<?> getStats() {
+        return ResponseEntity.status(HttpStatus.OK).body(
+                new JsonResponseStats(EnumStorageStatus.STATS_GET_OK, storage.getStats()));
+    }
+
     /**
      * Notifies the client that the server is working properly (used in the driver).
      *
@@ -248,8 +909,8 @@ public class StorageController {
     )
     @GetMapping("/test")
     public ResponseEntity<?> test() {
-        return ResponseEntity.status(HttpStatus.OK).body(
-                new JsonResponse(EnumStorageStatus.CONNECTION_TEST_OK));
+        return ResponseEntity.status(HttpStatus.OK).contentType(MediaType.APPLICATION_JSON)
+                .body(responseWriter.write(EnumStorageStatus.CONNECTION_TEST_OK));
     }
 
     /**
@@ -0,0 +1,332 @@
+package ru.infotecs.internship.driver;
+
+import ru.infotecs.internship.binary.BinaryProtocol;
+import ru.infotecs.internship.binary.EnumBinaryOperation;
+import ru.infotecs.internship.storage.EnumStorageStatus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Connection with server by the {@link BinaryProtocol binary protocol}, shared by threads of {@link StorageDriver}.
+ * Senders only encode requests and queue them, so they never block on the socket: a writer thread writes
+ * the queued requests and flushes them together, a reader thread completes their futures in order
+ * as responses arrive. After an I/O error the connection is broken: requests in flight and further
+ * requests fail.
+ */
+class BinaryConnection {
+
+    /**
+     * Size of the buffers of the socket streams.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Response of server to a request.
+     */
+    static final class Response {
+
+        /**
+         * Status of the operation, null if unknown.
+         */
+        private final EnumStorageStatus status;
+
+        /**
+         * Remaining TTL of the record in milliseconds.
+         */
+        private final long ttlMs;
+
+        /**
+         * UTF-8 bytes of the value, empty if the response has no value.
+         */
+        private final byte[] value;
+
+        /**
+         * Constructs a response.
+         *
+         * @param status status of the operation
+         * @param ttlMs  remaining TTL of the record
+         * @param value  UTF-8 bytes of the value
+         */
+        private Response(EnumStorageStatus status, long ttlMs, byte[] value) {
+            this.status = status;
+            this.ttlMs = ttlMs;
+            this.value = value;
+        }
+
+        /**
+         * Gets status of the operation.
+         *
+         * @return status of the operation, null if the status is unknown
+         */
+        EnumStorageStatus getStatus() {
+            return status;
+        }
+
+        /**
+         * Gets remaining TTL of the record.
+         *
+         * @return remaining TTL in milliseconds, {@link BinaryProtocol#NO_TTL} if there is no record
+         */
+        long getTtlMs() {
+            return ttlMs;
+        }
+
+        /**
+         * Gets the value of the record.
+         *
+         * @return UTF-8 bytes of the value, empty if the response has no value
+         */
+        byte[] getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Encoded request waiting to be written.
+     */
+    private static final class Request {
+
+        /**
+         * The frame of the request.
+         */
+        private final byte[] frame;
+
+        /**
+         * Future of the response.
+         */
+        private final CompletableFuture<Response> response;
+
+        /**
+         * Constructs a request.
+         *
+         * @param frame    the frame of the request
+         * @param response future of the response
+         */
+        private Request(byte[] frame, CompletableFuture<Response> response) {
+            this.frame = frame;
+            this.response = response;
+        }
+    }
+
+    /**
+     * Socket of the connection.
+     */
+    private final Socket socket;
+
+    /**
+     * Stream of requests, written by the writer thread.
+     */
+    private final OutputStream out;
+
+    /**
+     * Stream of responses, read by the reader thread.
+     */
+    private final DataInputStream in;
+
+    /**
+     * Requests queued by senders and not written yet.
+     */
+    private final BlockingQueue<Request> outgoingRequests = new LinkedBlockingQueue<>();
+
+    /**
+     * Futures of written requests in the order of the requests.
+     */
+    private final Queue<CompletableFuture<Response>> pendingResponses = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Error which broke the connection, null while the connection works.
+     */
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+    /**
+     * Thread writing the queued requests.
+     */
+    private final Thread writer;
+
+    /**
+     * Constructs the connection and starts its writer and reader threads.
+     *
+     * @param socket connected socket
+     * @throws IOException if the streams of the socket cannot be opened
+     */
+    private BinaryConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        this.out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        writer = new Thread(this::writeRequests, "storage-binary-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Thread reader = new Thread(this::readResponses, "storage-binary-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Connects to server, blocking the calling thread until the connection is established.
+     *
+     * @param address          address of the binary protocol listener of server
+     * @param connectTimeoutMs timeout for establishing the connection in milliseconds, 0 for infinite timeout
+     * @return new connection
+     * @throws IOException if the connection cannot be established
+     */
+    static BinaryConnection open(InetSocketAddress address, int connectTimeoutMs) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(address, connectTimeoutMs);
+            return new BinaryConnection(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Queues a request without waiting for it to be written or for the responses of the previous requests.
+     *
+     * @param operation the operation
+     * @param key       the key of the record
+     * @param ttlMs     the TTL in milliseconds, {@link BinaryProtocol#NO_TTL} for the default TTL
+     * @param value     UTF-8 bytes of the value (may be null)
+     * @return future of the response, completed by the reader thread or exceptionally with {@link IOException}
+     * if the connection is broken
+     */
+    CompletableFuture<Response> send(EnumBinaryOperation operation, String key, long ttlMs, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long length = (long) BinaryProtocol.REQUEST_HEADER_SIZE + keyBytes.length + (value == null ? 0 : value.length);
+        if (length > BinaryProtocol.MAX_FRAME_SIZE) {
+            return CompletableFuture.failedFuture(new IOException("Request is too large: " + length + " bytes"));
+        }
+        ByteBuffer frame = ByteBuffer.allocate(4 + (int) length);
+        frame.putInt((int) length).put(operation.getCode()).putInt(keyBytes.length).put(keyBytes)
+                .putLong(ttlMs);
+        if (value != null) {
+            frame.put(value);
+        }
+        IOException error = failure.get();
+        if (error != null) {
+            return CompletableFuture.failedFuture(error);
+        }
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        outgoingRequests.add(new Request(frame.array(), response));
+        if (failure.get() != null) { // the connection broke while the request was queued
+            failOutgoingRequests();
+        }
+        return response;
+    }
+
+    /**
+     * Checks if the connection is broken by an error or closed.
+     *
+     * @return true if requests cannot be sent
+     */
+    boolean isBroken() {
+        return failure.get() != null;
+    }
+
+    /**
+     * Closes the connection, requests in flight fail.
+     */
+    void close() {
+        fail(new IOException("Connection to the server is closed"));
+    }
+
+    /**
+     * Writes queued requests until the connection is broken. Requests queued while a batch is written
+     * are written and flushed as the next batch.
+     */
+    private void writeRequests() {
+        List<Request> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(outgoingRequests.take());
+                outgoingRequests.drainTo(batch);
+                for (Request request : batch) {
+                    pendingResponses.add(request.response);
+                    out.write(request.frame);
+                }
+                out.flush();
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // the connection is broken
+        } catch (IOException e) {
+            fail(e);
+        }
+        for (Request request : batch) {
+            request.response.completeExceptionally(failure.get());
+        }
+    }
+
+    /**
+     * Reads responses and completes futures of the requests in order until the connection is broken.
+     */
+    private void readResponses() {
+        try {
+            while (true) {
+                int length = in.readInt();
+                if (length < BinaryProtocol.RESPONSE_HEADER_SIZE || length > BinaryProtocol.MAX_FRAME_SIZE) {
+                    throw new IOException("Invalid frame length: " + length);
+                }
+                EnumStorageStatus status = BinaryProtocol.statusFromCode(in.readUnsignedByte());
+                long ttlMs = in.readLong();
+                byte[] value = new byte[length - BinaryProtocol.RESPONSE_HEADER_SIZE];
+                in.readFully(value);
+                CompletableFuture<Response> response = pendingResponses.poll();
+                if (response == null) {
+                    throw new IOException("Response without request");
+                }
+                response.complete(new Response(status, ttlMs, value));
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Breaks the connection: closes the socket, stops the writer and fails queued requests and requests
+     * in flight. The socket is closed first, so a writer blocked by server is released.
+     *
+     * @param e the error which broke the connection
+     */
+    private void fail(IOException e) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // the socket is closed anyway
+        }
+        failure.compareAndSet(null, e);
+        writer.interrupt();
+        failOutgoingRequests();
+        CompletableFuture<Response> response;
+        while ((response = pendingResponses.poll()) != null) {
+            response.completeExceptionally(failure.get());
+        }
+    }
+
+    /**
+     * Fails the requests which are queued but not written, the connection is broken.
+     */
+    private void failOutgoingRequests() {
+        Request request;
+        while ((request = outgoingRequests.poll()) != null) {
+            request.response.completeExceptionally(failure.get());
+        }
+    }
+}
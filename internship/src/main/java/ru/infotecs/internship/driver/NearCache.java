@@ -0,0 +1,385 @@
+package ru.infotecs.internship.driver;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded in-process cache of values got by {@link StorageDriver}.
+ * <p>
+ * An entry never outlives the record on server: it expires after the remaining TTL reported by server,
+ * counted from the moment the request was sent. An entry is served without requests to server
+ * for the maximum staleness, then it is revalidated by its entity tag (or got again if it has no entity tag,
+ * as values got by the binary protocol), so writes by other clients are seen
+ * after at most the maximum staleness. Writes by the driver itself invalidate the entry at once,
+ * and a value got by a request in flight during an invalidation of its key is not cached; invalidations
+ * are counted per stripe of keys, so writes to other keys rarely keep a value from being cached.
+ * When the cache is full, a few entries are sampled by a cursor walking the cache like a clock hand
+ * (as {@code StorageEvictor} samples records) and the one got or revalidated least recently is evicted;
+ * the entry just put is never the victim.
+ */
+class NearCache {
+
+    /**
+     * Cached value of a record.
+     */
+    static final class Entry {
+
+        /**
+         * Value of the record.
+         */
+        private final String value;
+
+        /**
+         * Entity tag of the record given by server, null if the entry is revalidated by getting the value again.
+         */
+        private final String entityTag;
+
+        /**
+         * Time when the record expires, by {@link System#nanoTime()}.
+         */
+        private final long expirationNanos;
+
+        /**
+         * Time until which the entry is served without revalidation, by {@link System#nanoTime()}.
+         */
+        private volatile long freshUntilNanos;
+
+        /**
+         * Constructs an entry.
+         *
+         * @param value           value of the record
+         * @param entityTag       entity tag of the record
+         * @param expirationNanos time when the record expires
+         * @param freshUntilNanos time until which the entry is served without revalidation
+         */
+        private Entry(String value, String entityTag, long expirationNanos, long freshUntilNanos) {
+            this.value = value;
+            this.entityTag = entityTag;
+            this.expirationNanos = expirationNanos;
+            this.freshUntilNanos = freshUntilNanos;
+        }
+
+        /**
+         * Gets value of the record.
+         *
+         * @return value of the record
+         */
+        String getValue() {
+            return value;
+        }
+
+        /**
+         * Gets entity tag of the record.
+         *
+         * @return entity tag of the record, null if there is no entity tag
+         */
+        String getEntityTag() {
+            return entityTag;
+        }
+
+        /**
+         * Checks if the entry can be served without revalidation.
+         *
+         * @param currentNanos the current time by {@link System#nanoTime()}
+         * @return true if the entry is fresh
+         */
+        boolean isFresh(long currentNanos) {
+            return currentNanos - freshUntilNanos < 0;
+        }
+    }
+
+    /**
+     * Number of entries sampled to choose one victim.
+     */
+    static final int SAMPLE_SIZE = 5;
+
+    /**
+     * Minimum number of stripes of invalidation counters.
+     */
+    static final int MIN_INVALIDATION_STRIPES = 1 << 10;
+
+    /**
+     * Maximum number of stripes of invalidation counters.
+     */
+    static final int MAX_INVALIDATION_STRIPES = 1 << 16;
+
+    /**
+     * Cached entries by keys.
+     */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Maximum number of entries.
+     */
+    private final int maxEntries;
+
+    /**
+     * Time an entry is served without revalidation in nanoseconds.
+     */
+    private final long maxStalenessNanos;
+
+    /**
+     * Numbers of invalidations by stripes of keys, an entry got by a request is cached only if there were no
+     * invalidations of its stripe while the request was in flight. The number of stripes is a power of two.
+     */
+    private final AtomicLongArray invalidationSequences;
+
+    /**
+     * Guards the cursor of sampling.
+     */
+    private final ReentrantLock cursorLock = new ReentrantLock();
+
+    /**
+     * Cursor of sampling, guarded by {@link #cursorLock}.
+     */
+    private Iterator<Map.Entry<String, Entry>> cursor;
+
+    /**
+     * Number of values served from the cache without requests.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Number of values requested from server without a cached entry.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Number of revalidations of cached entries.
+     */
+    private final LongAdder revalidations = new LongAdder();
+
+    /**
+     * Number of cached entries removed by writes or found changed by revalidation.
+     */
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Constructs the cache.
+     *
+     * @param maxEntries      maximum number of entries
+     * @param maxStalenessMs  time an entry is served without revalidation in milliseconds
+     */
+    NearCache(int maxEntries, long maxStalenessMs) {
+        this.maxEntries = maxEntries;
+        this.maxStalenessNanos = maxStalenessMs * 1_000_000L;
+        int stripeCount = Math.min(MAX_INVALIDATION_STRIPES, Math.max(MIN_INVALIDATION_STRIPES, maxEntries));
+        this.invalidationSequences = new AtomicLongArray(Integer.highestOneBit(stripeCount - 1) << 1);
+    }
+
+    /**
+     * Gets the stripe of invalidation counters of the key.
+     *
+     * @param key the key of the record
+     * @return index of the stripe
+     */
+    private int stripe(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (invalidationSequences.length() - 1);
+    }
+
+    /**
+     * Gets the entry of the key, removing it if the record has expired.
+     *
+     * @param key          the key of the record
+     * @param currentNanos the current time by {@link System#nanoTime()}
+     * @return the entry or null if there is no entry of a valid record
+     */
+    Entry get(String key, long currentNanos) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (currentNanos - entry.expirationNanos >= 0) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the current number of invalidations of the key, to be passed to {@link #put} after the request.
+     *
+     * @param key the key of the record
+     * @return the number of invalidations
+     */
+    long getInvalidationSequence(String key) {
+        return invalidationSequences.get(stripe(key));
+    }
+
+    /**
+     * Caches the value got by a request unless the key was invalidated while the request was in flight.
+     *
+     * @param key                the key of the record
+     * @param value              the value of the record
+     * @param entityTag          the entity tag of the record (may be null)
+     * @param ttlMs              the remaining TTL of the record in milliseconds
+     * @param requestNanos       the time the request was sent by {@link System#nanoTime()}
+     * @param invalidationNumber the number of invalidations of the key before the request
+     */
+    void put(String key, String value, String entityTag, long ttlMs, long requestNanos, long invalidationNumber) {
+        int stripe = stripe(key);
+        if (ttlMs <= 0 || invalidationSequences.get(stripe) != invalidationNumber) {
+            return;
+        }
+        Entry entry = new Entry(value, entityTag, requestNanos + ttlMs * 1_000_000L, requestNanos + maxStalenessNanos);
+        entries.put(key, entry);
+        if (invalidationSequences.get(stripe) != invalidationNumber) {
+            entries.remove(key, entry);
+            return;
+        }
+        while (entries.size() > maxEntries) {
+            if (!evictSampled(key)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Evicts the entry got or revalidated least recently among the sampled ones.
+     *
+     * @param keptKey the key which must not be evicted
+     * @return true if an entry was evicted, false if no other entry was found
+     */
+    private boolean evictSampled(String keptKey) {
+        Map.Entry<String, Entry> victim = null;
+        cursorLock.lock();
+        try {
+            boolean isCursorRestarted = false;
+            int sampleCount = 0;
+            while (sampleCount < SAMPLE_SIZE) {
+                if (cursor == null || !cursor.hasNext()) {
+                    if (isCursorRestarted) {
+                        break;
+                    }
+                    cursor = entries.entrySet().iterator();
+                    isCursorRestarted = true;
+                    if (!cursor.hasNext()) {
+                        break;
+                    }
+                }
+                Map.Entry<String, Entry> sample = cursor.next();
+                if (sample.getKey().equals(keptKey)) {
+                    continue;
+                }
+                sampleCount++;
+                if (victim == null || sample.getValue().freshUntilNanos - victim.getValue().freshUntilNanos < 0) {
+                    victim = sample;
+                }
+            }
+        } finally {
+            cursorLock.unlock();
+        }
+        if (victim == null) {
+            return false;
+        }
+        entries.remove(victim.getKey(), victim.getValue());
+        return true;
+    }
+
+    /**
+     * Marks the entry as current after server has confirmed its entity tag.
+     *
+     * @param entry        the revalidated entry
+     * @param requestNanos the time the request was sent by {@link System#nanoTime()}
+     */
+    void revalidated(Entry entry, long requestNanos) {
+        entry.freshUntilNanos = requestNanos + maxStalenessNanos;
+    }
+
+    /**
+     * Removes the entry of the key, the record is written or found changed.
+     * Values got by requests in flight are not cached.
+     *
+     * @param key the key of the record
+     */
+    void invalidate(String key) {
+        invalidationSequences.incrementAndGet(stripe(key));
+        if (entries.remove(key) != null) {
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * Removes the entries of keys starting with the prefix, the records of the prefix are removed.
+     *
+     * @param prefix the prefix of keys
+     */
+    void invalidatePrefix(String prefix) {
+        invalidateStripes();
+        for (String key : entries.keySet()) {
+            if (key.startsWith(prefix) && entries.remove(key) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries, the storage is replaced.
+     */
+    void invalidateAll() {
+        invalidateStripes();
+        for (String key : entries.keySet()) {
+            if (entries.remove(key) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Counts an invalidation of every stripe, values got by requests in flight are not cached.
+     */
+    private void invalidateStripes() {
+        for (int i = 0; i < invalidationSequences.length(); i++) {
+            invalidationSequences.incrementAndGet(i);
+        }
+    }
+
+    /**
+     * Counts a value served from the cache.
+     */
+    void countHit() {
+        hits.increment();
+    }
+
+    /**
+     * Counts a value requested without a cached entry.
+     */
+    void countMiss() {
+        misses.increment();
+    }
+
+    /**
+     * Counts a revalidation of a cached entry.
+     */
+    void countRevalidation() {
+        revalidations.increment();
+    }
+
+    /**
+     * Counts a cached entry found changed by revalidation and replaced.
+     */
+    void countInvalidation() {
+        invalidations.increment();
+    }
+
+    /**
+     * Gets statistics of the cache.
+     *
+     * @return statistics names and values
+     */
+    Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("entries", (long) entries.size());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("revalidations", revalidations.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+}
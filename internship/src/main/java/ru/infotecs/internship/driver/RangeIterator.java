@@ -0,0 +1,108 @@
+package ru.infotecs.internship.driver;
+
+import ru.infotecs.internship.json.JsonResponseRange;
+import ru.infotecs.internship.json.JsonScanEntry;
+import ru.infotecs.internship.storage.StorageException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * Iterator of an ordered range of keys of the storage, fetching the next page from server only when the records of the previous
+ * pages are consumed. Failures of requests are thrown as {@link UncheckedIOException}, incorrect responses
+ * as {@link IllegalStateException}.
+ */
+class RangeIterator implements Iterator<JsonScanEntry> {
+
+    /**
+     * Driver sending the requests.
+     */
+    private final StorageDriver driver;
+
+    /**
+     * Prefix of keys, null for keys with any prefix.
+     */
+    private final String prefix;
+
+    /**
+     * The highest key of the range (exclusive), null for no upper bound.
+     */
+    private final String toKey;
+
+    /**
+     * Maximum number of keys of one page.
+     */
+    private final int limit;
+
+    /**
+     * True to fetch values and remaining TTL of the records.
+     */
+    private final boolean isWithValues;
+
+    /**
+     * Records of the fetched pages which are not consumed yet.
+     */
+    private final Queue<JsonScanEntry> entries = new ArrayDeque<>();
+
+    /**
+     * The lowest key of the next page, null for no lower bound.
+     */
+    private String nextKey;
+
+    /**
+     * Set when the last page is fetched.
+     */
+    private boolean isComplete;
+
+    /**
+     * Constructs the iterator, no request is sent until the first record is requested.
+     *
+     * @param driver       driver sending the requests
+     * @param prefix       prefix of keys, null for keys with any prefix
+     * @param fromKey      the lowest key of the range (inclusive), null for no lower bound
+     * @param toKey        the highest key of the range (exclusive), null for no upper bound
+     * @param limit        maximum number of keys of one page
+     * @param isWithValues true to fetch values and remaining TTL of the records
+     */
+    RangeIterator(StorageDriver driver, String prefix, String fromKey, String toKey, int limit,
+                  boolean isWithValues) {
+        this.driver = driver;
+        this.prefix = prefix;
+        this.nextKey = fromKey;
+        this.toKey = toKey;
+        this.limit = limit;
+        this.isWithValues = isWithValues;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (entries.isEmpty() && !isComplete) {
+            JsonResponseRange page;
+            try {
+                page = driver.rangePage(prefix, nextKey, toKey, limit, isWithValues);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (StorageException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            if (page.getEntries() != null) {
+                entries.addAll(page.getEntries());
+            }
+            nextKey = page.getNextKey();
+            isComplete = nextKey == null;
+        }
+        return !entries.isEmpty();
+    }
+
+    @Override
+    public JsonScanEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return entries.poll();
+    }
+}
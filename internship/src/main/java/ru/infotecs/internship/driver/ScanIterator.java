@@ -0,0 +1,98 @@
+package ru.infotecs.internship.driver;
+
+import ru.infotecs.internship.json.JsonResponseScan;
+import ru.infotecs.internship.json.JsonScanEntry;
+import ru.infotecs.internship.storage.StorageException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * Iterator of a scan of the storage, fetching the next page from server only when the records of the previous
+ * pages are consumed. Failures of requests are thrown as {@link UncheckedIOException}, incorrect responses
+ * as {@link IllegalStateException}.
+ */
+class ScanIterator implements Iterator<JsonScanEntry> {
+
+    /**
+     * Driver sending the requests.
+     */
+    private final StorageDriver driver;
+
+    /**
+     * Glob pattern of keys, null to match all keys.
+     */
+    private final String pattern;
+
+    /**
+     * Number of entries examined by server for one page.
+     */
+    private final int count;
+
+    /**
+     * True to fetch values and remaining TTL of the records.
+     */
+    private final boolean isWithValues;
+
+    /**
+     * Records of the fetched pages which are not consumed yet.
+     */
+    private final Queue<JsonScanEntry> entries = new ArrayDeque<>();
+
+    /**
+     * Cursor of the next page.
+     */
+    private long cursor;
+
+    /**
+     * Set when the last page is fetched.
+     */
+    private boolean isComplete;
+
+    /**
+     * Constructs the iterator, no request is sent until the first record is requested.
+     *
+     * @param driver       driver sending the requests
+     * @param pattern      glob pattern of keys, null to match all keys
+     * @param count        number of entries examined by server for one page
+     * @param isWithValues true to fetch values and remaining TTL of the records
+     */
+    ScanIterator(StorageDriver driver, String pattern, int count, boolean isWithValues) {
+        this.driver = driver;
+        this.pattern = pattern;
+        this.count = count;
+        this.isWithValues = isWithValues;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (entries.isEmpty() && !isComplete) {
+            JsonResponseScan page;
+            try {
+                page = driver.scanPage(cursor, pattern, count, isWithValues);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (StorageException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            if (page.getEntries() != null) {
+                entries.addAll(page.getEntries());
+            }
+            cursor = page.getCursor();
+            isComplete = cursor == 0;
+        }
+        return !entries.isEmpty();
+    }
+
+    @Override
+    public JsonScanEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return entries.poll();
+    }
+}
@@ -1,24 +1,74 @@
 package ru.infotecs.internship.driver;
 
 import com.fasterxml.jackson.core.JacksonException;
+import ru.infotecs.internship.binary.BinaryProtocol;
+import ru.infotecs.internship.binary.EnumBinaryOperation;
+import ru.infotecs.internship.json.EnumPipelineOperation;
+import ru.infotecs.internship.json.JsonBatchResult;
+import ru.infotecs.internship.json.JsonPipelineRequest;
 import ru.infotecs.internship.json.JsonRequest;
 import ru.infotecs.internship.json.JsonResponse;
+import ru.infotecs.internship.json.JsonResponseBatch;
+import ru.infotecs.internship.json.JsonResponseCount;
 import ru.infotecs.internship.json.JsonResponseExtended;
+import ru.infotecs.internship.json.JsonResponseRange;
+import ru.infotecs.internship.json.JsonResponseScan;
+import ru.infotecs.internship.json.JsonScanEntry;
 import ru.infotecs.internship.storage.EnumStorageStatus;
 import ru.infotecs.internship.storage.StorageException;
+import ru.infotecs.internship.storage.StorageMap;
 
 import java.io.*;
 import java.net.*;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.net.HttpURLConnection;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
 
 import static ru.infotecs.internship.json.util.JsonProcessor.parseJson;
+import static ru.infotecs.internship.json.util.JsonProcessor.toJsonBytes;
 
 /**
  * Driver for developed key-value database.
+ * Requests are sent by one HTTP client which keeps connections alive and reuses them,
+ * so one driver should be shared by all threads of the application (see {@link StorageDriverConfig}).
+ * Every operation has a non-blocking variant returning {@link CompletableFuture}, which does not occupy
+ * a thread while the request is in flight. Got values may be cached by the driver
+ * (see {@link StorageDriverConfig#setNearCacheMaxEntries(int)}). Single-key operations may be sent
+ * by the binary protocol of server instead of HTTP (see {@link StorageDriverConfig#setBinaryPort(int)}).
  */
-public class StorageDriver {
+public class StorageDriver implements AutoCloseable {
 
     /**
      * Default inputStream
@@ -26,15 +76,117 @@ public class StorageDriver {
     public static int DEFAULT_TIMEOUT_MS = 1000;
 
     /**
-     * Text representation of server root URL
+     * Maximum number of keys in one batch request, larger batches are split into several requests.
      */
-    private String serverURL;
+    public static final int BATCH_SIZE = 1000;
+
+    /**
+     * Number of entries examined by server for one page of a scan.
+     */
+    public static final int DEFAULT_SCAN_COUNT = 1000;
+
+    /**
+     * Maximum number of keys of one page of an ordered range.
+     */
+    public static final int DEFAULT_RANGE_LIMIT = 1000;
+
+    /**
+     * Handler of response bodies containing JSON, which is parsed from the received UTF-8 bytes.
+     */
+    private static final HttpResponse.BodyHandler<byte[]> JSON_BODY = HttpResponse.BodyHandlers.ofByteArray();
+
+    /**
+     * Server root URI.
+     */
+    private URI serverURI;
 
     /**
      * Timeout for operations with server.
      */
     private int timeoutMs;
 
+    /**
+     * HTTP client keeping the pool of connections with server.
+     */
+    private HttpClient httpClient;
+
+    /**
+     * Permits for requests in flight, bounds the number of connections with server.
+     */
+    private Semaphore connections;
+
+    /**
+     * Cache of got values, null if disabled.
+     */
+    private NearCache nearCache;
+
+    /**
+     * Requests waiting for a permit, sent when requests in flight complete.
+     */
+    private final Queue<Runnable> pendingRequests = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Address of the binary protocol listener of server, null if only HTTP is used.
+     */
+    private InetSocketAddress binaryAddress;
+
+    /**
+     * Timeout for establishing a connection in milliseconds, 0 for infinite timeout.
+     */
+    private int connectTimeoutMs;
+
+    /**
+     * Connections by the binary protocol (completed when established), opened on first use and reopened
+     * when broken. Null if only HTTP is used.
+     */
+    private AtomicReferenceArray<CompletableFuture<BinaryConnection>> binaryConnections;
+
+    /**
+     * Threads establishing connections by the binary protocol, so callers are not blocked by connecting.
+     * Null if only HTTP is used.
+     */
+    private ExecutorService binaryConnector;
+
+    /**
+     * Counter choosing the binary connection for the next request in turn.
+     */
+    private final AtomicInteger nextBinaryConnection = new AtomicInteger();
+
+    /**
+     * Creates a request to send.
+     */
+    @FunctionalInterface
+    private interface RequestFactory {
+
+        /**
+         * Creates the request.
+         *
+         * @return the request
+         * @throws IOException if the request cannot be created
+         */
+        HttpRequest create() throws IOException;
+    }
+
+    /**
+     * Converts server response to the result of an operation.
+     *
+     * @param <T> the type of the response body
+     * @param <R> the type of the result
+     */
+    @FunctionalInterface
+    private interface ResponseParser<T, R> {
+
+        /**
+         * Converts the response.
+         *
+         * @param response server response
+         * @return the result of the operation
+         * @throws IOException if problems with processing the response
+         * @throws StorageException if server sends an incorrect response
+         */
+        R parse(HttpResponse<T> response) throws IOException, StorageException;
+    }
+
     /**
      * Private constructor. Use factory method connectStorage to create new instance.
      */
@@ -65,30 +217,64 @@ public class StorageDriver {
      */
     public static StorageDriver connectStorage(String host, int port, boolean isConnectionChecked,
                                                int timeoutMs) throws StorageException {
+        StorageDriverConfig config = new StorageDriverConfig();
+        config.setTimeoutMs(timeoutMs);
+        return connectStorage(host, port, isConnectionChecked, config);
+    }
+
+    /**
+     * Factory method for creating new instance of StorageDriver class with the configuration of connections.
+     * @param host server address
+     * @param port server port
+     * @param isConnectionChecked needing for checking connection with server in method
+     * @param config configuration of connections with server
+     * @return new instance of StorageDriver class
+     * @throws StorageException if connection check failed
+     */
+    public static StorageDriver connectStorage(String host, int port, boolean isConnectionChecked,
+                                               StorageDriverConfig config) throws StorageException {
         StorageDriver driver = new StorageDriver();
-        HttpURLConnection connection = null;
-        driver.timeoutMs = timeoutMs >= 0 ? timeoutMs : DEFAULT_TIMEOUT_MS;
+        driver.timeoutMs = config.getTimeoutMs() >= 0 ? config.getTimeoutMs() : DEFAULT_TIMEOUT_MS;
         try {
-            URI uri = new URI("http", null, host, port, null, null, null);
-            driver.serverURL = uri.toString();
-
-            if (!isConnectionChecked) {
-                return driver;
-            }
+            driver.serverURI = new URI("http", null, host, port, null, null, null);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        HttpClient.Builder clientBuilder = HttpClient.newBuilder()
+                .version(config.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1);
+        if (config.getConnectTimeoutMs() > 0) {
+            clientBuilder.connectTimeout(Duration.ofMillis(config.getConnectTimeoutMs()));
+        }
+        driver.httpClient = clientBuilder.build();
+        driver.connections = new Semaphore(Math.max(1, config.getMaxConnections()));
+        if (config.getNearCacheMaxEntries() > 0) {
+            driver.nearCache = new NearCache(config.getNearCacheMaxEntries(), config.getNearCacheMaxStalenessMs());
+        }
+        if (config.getBinaryPort() > 0) {
+            driver.binaryAddress = new InetSocketAddress(host, config.getBinaryPort());
+            driver.connectTimeoutMs = Math.max(0, config.getConnectTimeoutMs());
+            driver.binaryConnections = new AtomicReferenceArray<>(Math.max(1,
+                    Math.min(config.getMaxConnections(), Runtime.getRuntime().availableProcessors())));
+            driver.binaryConnector = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "storage-binary-connector");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
 
-            //Connection check block
-            URL testUrl = new URL(driver.serverURL + "/test");
-            connection = (HttpURLConnection) testUrl.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setReadTimeout(timeoutMs);
+        if (!isConnectionChecked) {
+            return driver;
+        }
 
-            int responseCode = connection.getResponseCode();
-            if (responseCode != HttpURLConnection.HTTP_OK) {
+        //Connection check block
+        try {
+            HttpResponse<byte[]> response = await(driver.sendAsync(() -> driver.request("/test").GET().build(),
+                    JSON_BODY));
+            if (response.statusCode() != HttpURLConnection.HTTP_OK) {
                 throw new StorageException("Server connection test failed! Response code is not 200!");
             }
 
-            String response = getResponse(connection);
-            JsonResponse jsonResponse = parseJson(response, JsonResponse.class);
+            JsonResponse jsonResponse = parseJson(response.body(), JsonResponse.class);
 
             if (jsonResponse.getStatus() != EnumStorageStatus.CONNECTION_TEST_OK) {
                 throw new StorageException(
@@ -96,8 +282,6 @@ public class StorageDriver {
                                 EnumStorageStatus.CONNECTION_TEST_OK));
             }
 
-        } catch (URISyntaxException e) {
-            return null;
         } catch (IOException e) {
             if (e instanceof JacksonException) {
                 throw new StorageException("Server connection test failed! JSON response is not valid!");
@@ -105,35 +289,277 @@ public class StorageDriver {
             if (e instanceof ConnectException) {
                 throw new StorageException("Connection refused!");
             }
-        } finally {
-            if (connection != null)
-                 connection.disconnect();
+        }
+        if (driver.binaryConnections != null) {
+            try {
+                BinaryConnection.Response response = await(driver.sendBinaryAsync(EnumBinaryOperation.PING, "",
+                        BinaryProtocol.NO_TTL, null));
+                if (response.getStatus() != EnumStorageStatus.CONNECTION_TEST_OK) {
+                    throw new StorageException(
+                            String.format("Server connection test failed! Binary status is not %s!",
+                                    EnumStorageStatus.CONNECTION_TEST_OK));
+                }
+            } catch (IOException e) {
+                if (e instanceof ConnectException) {
+                    throw new StorageException("Binary protocol connection refused!");
+                }
+            }
         }
         return driver;
     }
 
     /**
-     * Gets String representation of server response
+     * Creates a request to the server with the timeout for operations with server.
      *
-     * @param connection connection with server
-     * @return string representation of server response
-     * @throws IOException if response process failed
+     * @param path path of the request (not encoded)
+     * @return builder of the request
+     * @throws IOException if the path is not valid
      */
-    private static String getResponse(HttpURLConnection connection) throws IOException {
-        StringBuilder response = new StringBuilder();
-        InputStream inputStream = null;
-        if (connection.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
-            inputStream = connection.getErrorStream();
-        } else {
-            inputStream = connection.getInputStream();
+    private HttpRequest.Builder request(String path) throws IOException {
+        return request(path, timeoutMs);
+    }
+
+    /**
+     * Creates a request to the server.
+     *
+     * @param path             path of the request (not encoded)
+     * @param requestTimeoutMs timeout of the request in milliseconds, 0 for infinite timeout
+     * @return builder of the request
+     * @throws IOException if the path is not valid
+     */
+    private HttpRequest.Builder request(String path, int requestTimeoutMs) throws IOException {
+        return request(path, null, requestTimeoutMs);
+    }
+
+    /**
+     * Creates a request to the server with a query.
+     *
+     * @param path             path of the request (not encoded)
+     * @param query            encoded query of the request (may be null)
+     * @param requestTimeoutMs timeout of the request in milliseconds, 0 for infinite timeout
+     * @return builder of the request
+     * @throws IOException if the path is not valid
+     */
+    private HttpRequest.Builder request(String path, String query, int requestTimeoutMs) throws IOException {
+        try {
+            URI uri = new URI(serverURI.getScheme(), null, serverURI.getHost(), serverURI.getPort(), path,
+                    null, null);
+            if (query != null) {
+                uri = new URI(uri + "?" + query);
+            }
+            HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+            if (requestTimeoutMs > 0) {
+                builder.timeout(Duration.ofMillis(requestTimeoutMs));
+            }
+            return builder;
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid request path: " + path, e);
+        }
+    }
+
+    /**
+     * Sends the request without blocking. If the maximum number of requests is in flight, the request waits
+     * in the queue and is sent when a request in flight completes. The timeout of the request covers
+     * both waiting in the queue and the exchange with server.
+     *
+     * @param requestFactory creator of the request to send
+     * @param bodyHandler    handler of the response body
+     * @param <T>            the type of the response body
+     * @return future of server response, completed exceptionally with {@link IOException} if problems
+     * with the connection or {@link HttpTimeoutException} if the timeout of the request elapses
+     */
+    private <T> CompletableFuture<HttpResponse<T>> sendAsync(RequestFactory requestFactory,
+                                                             HttpResponse.BodyHandler<T> bodyHandler) {
+        HttpRequest request;
+        try {
+            request = requestFactory.create();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
         }
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(inputStream))) {
-            String inputLine;
-            while ((inputLine = in.readLine()) != null) {
-                response.append(inputLine);
+        CompletableFuture<HttpResponse<T>> exchange = new CompletableFuture<>();
+        request.timeout().ifPresent(timeout -> exchange.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS));
+        pendingRequests.add(() -> {
+            if (exchange.isDone()) { //timed out in the queue
+                connections.release();
+                return;
             }
+            httpClient.sendAsync(request, bodyHandler).whenComplete((response, e) -> {
+                connections.release();
+                startPendingRequests();
+                if (e != null) {
+                    exchange.completeExceptionally(e);
+                } else {
+                    exchange.complete(response);
+                }
+            });
+        });
+        startPendingRequests();
+        return exchange.exceptionally(e -> {
+            if (e instanceof TimeoutException) {
+                throw new CompletionException(new HttpTimeoutException("Request to the server timed out"));
+            }
+            throw e instanceof CompletionException completionException
+                    ? completionException : new CompletionException(e);
+        });
+    }
+
+    /**
+     * Sends requests waiting in the queue while there are permits for requests in flight.
+     */
+    private void startPendingRequests() {
+        while (!pendingRequests.isEmpty() && connections.tryAcquire()) {
+            Runnable pendingRequest = pendingRequests.poll();
+            if (pendingRequest == null) {
+                connections.release();
+            } else {
+                pendingRequest.run();
+            }
+        }
+    }
+
+    /**
+     * Waits for the result of an asynchronous operation and rethrows its failure.
+     *
+     * @param future the future of the operation
+     * @param <T>    the type of the result
+     * @return the result of the operation
+     * @throws IOException if problems with the connection
+     * @throws StorageException if server sends an incorrect response
+     */
+    private static <T> T await(CompletableFuture<T> future) throws IOException, StorageException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request to the server was interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof StorageException storageException) {
+                throw storageException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Converts the parser of server response to a function for completion stages,
+     * wrapping its checked exceptions in {@link CompletionException}.
+     *
+     * @param parser the parser of server response
+     * @param <T>    the type of the response body
+     * @param <R>    the type of the result
+     * @return the function applying the parser
+     */
+    private static <T, R> Function<HttpResponse<T>, R> parsing(ResponseParser<T, R> parser) {
+        return response -> {
+            try {
+                return parser.parse(response);
+            } catch (IOException | StorageException e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    /**
+     * Sends the request by the binary protocol without blocking and without waiting for the responses
+     * of the previous requests. The connection is opened on first use by a connector thread, the request
+     * is queued when the connection is established. The timeout of the request covers connecting.
+     *
+     * @param operation the operation
+     * @param key       the key of the record
+     * @param ttlMs     the TTL in milliseconds, {@link BinaryProtocol#NO_TTL} for the default TTL
+     * @param value     UTF-8 bytes of the value (may be null)
+     * @return future of server response, completed exceptionally with {@link IOException} if problems
+     * with the connection or {@link HttpTimeoutException} if the timeout of the request elapses
+     */
+    private CompletableFuture<BinaryConnection.Response> sendBinaryAsync(EnumBinaryOperation operation, String key,
+                                                                        long ttlMs, byte[] value) {
+        CompletableFuture<BinaryConnection.Response> exchange = binaryConnection()
+                .thenCompose(connection -> connection.send(operation, key, ttlMs, value));
+        if (timeoutMs > 0) {
+            exchange.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
         }
-        return response.toString();
+        return exchange.exceptionally(e -> {
+            if (e instanceof TimeoutException) {
+                throw new CompletionException(new HttpTimeoutException("Request to the server timed out"));
+            }
+            throw e instanceof CompletionException completionException
+                    ? completionException : new CompletionException(e);
+        });
+    }
+
+    /**
+     * Chooses the binary connection for the next request in turn, starting to open it on a connector thread
+     * if it is not open, failed to open or broken.
+     *
+     * @return future of the connection, completed exceptionally with {@link IOException}
+     * if the connection cannot be established
+     */
+    private CompletableFuture<BinaryConnection> binaryConnection() {
+        int index = Math.floorMod(nextBinaryConnection.getAndIncrement(), binaryConnections.length());
+        while (true) {
+            CompletableFuture<BinaryConnection> connection = binaryConnections.get(index);
+            if (connection != null && !isBroken(connection)) {
+                return connection;
+            }
+            CompletableFuture<BinaryConnection> openedConnection = new CompletableFuture<>();
+            if (binaryConnections.compareAndSet(index, connection, openedConnection)) {
+                try {
+                    binaryConnector.execute(() -> {
+                        try {
+                            openedConnection.complete(BinaryConnection.open(binaryAddress, connectTimeoutMs));
+                        } catch (IOException e) {
+                            openedConnection.completeExceptionally(e);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    openedConnection.completeExceptionally(new IOException("Driver is closed", e));
+                }
+                return openedConnection;
+            }
+        }
+    }
+
+    /**
+     * Checks if the binary connection failed to open or is broken.
+     *
+     * @param connection future of the connection
+     * @return true if the connection must be reopened, false if it works or is being opened
+     */
+    private static boolean isBroken(CompletableFuture<BinaryConnection> connection) {
+        return connection.isDone() && (connection.isCompletedExceptionally() || connection.join().isBroken());
+    }
+
+    /**
+     * Gets the status of the response by the binary protocol.
+     *
+     * @param response server response
+     * @return the status
+     * @throws CompletionException with {@link StorageException} if the status is unknown
+     */
+    private static EnumStorageStatus binaryStatus(BinaryConnection.Response response) {
+        if (response.getStatus() == null) {
+            throw new CompletionException(new StorageException("Binary response is not valid!"));
+        }
+        return response.getStatus();
+    }
+
+    /**
+     * Gets the value of the response by the binary protocol.
+     *
+     * @param response server response
+     * @param okStatus status of the response containing the value
+     * @return the value or null if the status is another status
+     * @throws CompletionException with {@link StorageException} if the status is unknown
+     */
+    private static String binaryValue(BinaryConnection.Response response, EnumStorageStatus okStatus) {
+        return binaryStatus(response) == okStatus ? new String(response.getValue(), StandardCharsets.UTF_8) : null;
     }
 
     /**
@@ -145,14 +571,73 @@ public class StorageDriver {
      * @throws StorageException if server sends an incorrect response
      */
     public String get(String key) throws IOException, StorageException {
-        URL url = new URL(serverURL + "/storage/" + key);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("GET");
-        connection.setReadTimeout(DEFAULT_TIMEOUT_MS);
+        return await(getAsync(key));
+    }
 
-        String response = getResponse(connection);
-        JsonResponseExtended jsonResponseExtended = parseJson(response, JsonResponseExtended.class);
-        return jsonResponseExtended.getData();
+    /**
+     * Gets value by key from the database without blocking.
+     *
+     * @param key key for record in database
+     * @return future of value by key, completed exceptionally as {@link #get(String)} throws
+     */
+    public CompletableFuture<String> getAsync(String key) {
+        if (nearCache == null && binaryConnections != null) {
+            return sendBinaryAsync(EnumBinaryOperation.GET, key, BinaryProtocol.NO_TTL, null)
+                    .thenApply(response -> binaryValue(response, EnumStorageStatus.VALUE_GET_OK));
+        }
+        if (nearCache == null) {
+            return sendAsync(() -> request("/storage/" + key).GET().build(), JSON_BODY)
+                    .thenApply(parsing(response -> parseJson(response.body(), JsonResponseExtended.class).getData()));
+        }
+        long requestNanos = System.nanoTime();
+        NearCache.Entry entry = nearCache.get(key, requestNanos);
+        if (entry != null && entry.isFresh(requestNanos)) {
+            nearCache.countHit();
+            return CompletableFuture.completedFuture(entry.getValue());
+        }
+        if (entry != null) {
+            nearCache.countRevalidation();
+        } else {
+            nearCache.countMiss();
+        }
+        long invalidationNumber = nearCache.getInvalidationSequence(key);
+        if (binaryConnections != null) {
+            return sendBinaryAsync(EnumBinaryOperation.GET, key, BinaryProtocol.NO_TTL, null).thenApply(response -> {
+                String value = binaryValue(response, EnumStorageStatus.VALUE_GET_OK);
+                if (value != null) {
+                    nearCache.put(key, value, null, response.getTtlMs(), requestNanos, invalidationNumber);
+                    if (entry != null && !value.equals(entry.getValue())) {
+                        nearCache.countInvalidation();
+                    }
+                } else if (entry != null) {
+                    nearCache.invalidate(key);
+                }
+                return value;
+            });
+        }
+        return sendAsync(() -> {
+            HttpRequest.Builder builder = request("/storage/" + key).GET();
+            if (entry != null && entry.getEntityTag() != null) {
+                builder.header("If-None-Match", entry.getEntityTag());
+            }
+            return builder.build();
+        }, JSON_BODY).thenApply(parsing(response -> {
+            if (entry != null && response.statusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                nearCache.revalidated(entry, requestNanos);
+                return entry.getValue();
+            }
+            JsonResponseExtended jsonResponse = parseJson(response.body(), JsonResponseExtended.class);
+            if (jsonResponse.getStatus() == EnumStorageStatus.VALUE_GET_OK) {
+                nearCache.put(key, jsonResponse.getData(), response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValueAsLong("X-Ttl-Ms").orElse(0L), requestNanos, invalidationNumber);
+                if (entry != null && !jsonResponse.getData().equals(entry.getValue())) {
+                    nearCache.countInvalidation();
+                }
+            } else if (entry != null) {
+                nearCache.invalidate(key);
+            }
+            return jsonResponse.getData();
+        }));
     }
 
     /**
@@ -166,25 +651,44 @@ public class StorageDriver {
      * @throws StorageException if server sends an incorrect response
      */
     public boolean set(String key, String value, Long ttlSeconds) throws IOException, StorageException {
-        URL url = new URL(serverURL + "/storage");
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json; utf-8");
-        connection.setDoOutput(true);
-
-        JsonRequest jsonRequest = new JsonRequest(key, value, ttlSeconds);
+        return await(setAsync(key, value, ttlSeconds));
+    }
 
-        try (OutputStream os = connection.getOutputStream()) {
-            byte[] input = jsonRequest.toString().getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
+    /**
+     * Sets value by key for database without blocking.
+     *
+     * @param key key for record in database
+     * @param value value for setting record
+     * @param ttlSeconds time to live for record in seconds (null for default TTL)
+     * @return future of true if value set successfully, false otherwise,
+     * completed exceptionally as {@link #set(String, String, Long)} throws
+     */
+    public CompletableFuture<Boolean> setAsync(String key, String value, Long ttlSeconds) {
+        if (binaryConnections != null) {
+            if (value == null) {
+                return CompletableFuture.completedFuture(false);
+            }
+            long ttlMs = ttlSeconds == null || ttlSeconds > StorageMap.MAX_TTL_MS
+                    ? BinaryProtocol.NO_TTL : ttlSeconds * 1000L;
+            return invalidating(List.of(key), sendBinaryAsync(EnumBinaryOperation.SET, key, ttlMs,
+                    value.getBytes(StandardCharsets.UTF_8)))
+                    .thenApply(response -> {
+                        EnumStorageStatus status = binaryStatus(response);
+                        return status == EnumStorageStatus.VALUE_SET_OK
+                                || status == EnumStorageStatus.VALUE_SET_UPDATE_OK;
+                    });
         }
+        JsonRequest jsonRequest = new JsonRequest(key, value, ttlSeconds);
 
-        String response = getResponse(connection);
-        connection.disconnect();
-        JsonResponse jsonResponse = parseJson(response, JsonResponse.class);
-
-        return jsonResponse.getStatus() == EnumStorageStatus.VALUE_SET_OK
-                || jsonResponse.getStatus() == EnumStorageStatus.VALUE_SET_UPDATE_OK;
+        return invalidating(List.of(key), sendAsync(() -> request("/storage")
+                .header("Content-Type", "application/json; utf-8")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(toJsonBytes(jsonRequest)))
+                .build(), JSON_BODY))
+                .thenApply(parsing(response -> {
+                    JsonResponse jsonResponse = parseJson(response.body(), JsonResponse.class);
+                    return jsonResponse.getStatus() == EnumStorageStatus.VALUE_SET_OK
+                            || jsonResponse.getStatus() == EnumStorageStatus.VALUE_SET_UPDATE_OK;
+                }));
     }
 
     /**
@@ -196,17 +700,424 @@ public class StorageDriver {
      * @throws StorageException if server sends an incorrect response
      */
     public String remove(String key) throws IOException, StorageException {
-        URL url = new URL(serverURL + "/storage/" + key);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("DELETE");
-        String response = getResponse(connection);
-        JsonResponseExtended jsonResponse = parseJson(response, JsonResponseExtended.class);
-        connection.disconnect();
-        return jsonResponse.getData();
+        return await(removeAsync(key));
     }
 
     /**
-     * Dumps database from server to selected file on your host.
+     * Removes value by key from database without blocking.
+     *
+     * @param key key for record in database
+     * @return future of removed value or null if value did not be removed,
+     * completed exceptionally as {@link #remove(String)} throws
+     */
+    public CompletableFuture<String> removeAsync(String key) {
+        if (binaryConnections != null) {
+            return invalidating(List.of(key), sendBinaryAsync(EnumBinaryOperation.REMOVE, key,
+                    BinaryProtocol.NO_TTL, null))
+                    .thenApply(response -> binaryValue(response, EnumStorageStatus.VALUE_REMOVE_OK));
+        }
+        return invalidating(List.of(key), sendAsync(() -> request("/storage/" + key).DELETE().build(), JSON_BODY))
+                .thenApply(parsing(response -> parseJson(response.body(), JsonResponseExtended.class).getData()));
+    }
+
+    /**
+     * Gets the remaining TTL of the record by key from the database.
+     *
+     * @param key key for record in database
+     * @return remaining TTL in milliseconds or null if the record does not exist
+     * @throws IOException if problems with the connection
+     * @throws StorageException if server sends an incorrect response
+     */
+    public Long getTtlMs(String key) throws IOException, StorageException {
+        return await(getTtlMsAsync(key));
+    }
+
+    /**
+     * Gets the remaining TTL of the record by key from the database without blocking.
+     * The near cache is not used.
+     *
+     * @param key key for record in database
+     * @return future of remaining TTL in milliseconds or null if the record does not exist,
+     * completed exceptionally as {@link #getTtlMs(String)} throws
+     */
+    public CompletableFuture<Long> getTtlMsAsync(String key) {
+        if (binaryConnections != null) {
+            return sendBinaryAsync(EnumBinaryOperation.TTL, key, BinaryProtocol.NO_TTL, null)
+                    .thenApply(response -> binaryStatus(response) == EnumStorageStatus.VALUE_GET_OK
+                            ? response.getTtlMs() : null);
+        }
+        return sendAsync(() -> request("/storage/" + key).GET().build(), JSON_BODY)
+                .thenApply(parsing(response -> {
+                    JsonResponseExtended jsonResponse = parseJson(response.body(), JsonResponseExtended.class);
+                    if (jsonResponse.getStatus() != EnumStorageStatus.VALUE_GET_OK) {
+                        return null;
+                    }
+                    return response.headers().firstValueAsLong("X-Ttl-Ms").orElseThrow(() ->
+                            new StorageException("Server response has no TTL!"));
+                }));
+    }
+
+    /**
+     * Gets values by keys from the database, sending at most {@link #BATCH_SIZE} keys in one request.
+     *
+     * @param keys keys for records in database
+     * @return values by keys, keys of not existing records are absent
+     * @throws IOException if problems with the connection
+     * @throws StorageException if server sends an incorrect response
+     */
+    public Map<String, String> getAll(Collection<String> keys) throws IOException, StorageException {
+        return await(getAllAsync(keys));
+    }
+
+    /**
+     * Gets values by keys from the database without blocking.
+     *
+     * @param keys keys for records in database
+     * @return future of values by keys, completed exceptionally as {@link #getAll(Collection)} throws
+     */
+    public CompletableFuture<Map<String, String>> getAllAsync(Collection<String> keys) {
+        return sendBatchesAsync("/storage/mget", new ArrayList<>(keys))
+                .thenApply(results -> collectData(results, EnumStorageStatus.VALUE_GET_OK));
+    }
+
+    /**
+     * Sets values by keys for database, sending at most {@link #BATCH_SIZE} records in one request.
+     *
+     * @param values values by keys for setting records
+     * @param ttlSeconds time to live for records in seconds (null for default TTL)
+     * @return for every key true if value set successfully, false otherwise
+     * @throws IOException if problems with the connection
+     * @throws StorageException if server sends an incorrect response
+     */
+    public Map<String, Boolean> setAll(Map<String, String> values, Long ttlSeconds)
+            throws IOException, StorageException {
+        return await(setAllAsync(values, ttlSeconds));
+    }
+
+    /**
+     * Sets values by keys for database without blocking.
+     *
+     * @param values values by keys for setting records
+     * @param ttlSeconds time to live for records in seconds (null for default TTL)
+     * @return future of true for every key if value set successfully, false otherwise,
+     * completed exceptionally as {@link #setAll(Map, Long)} throws
+     */
+    public CompletableFuture<Map<String, Boolean>> setAllAsync(Map<String, String> values, Long ttlSeconds) {
+        List<JsonRequest> jsonRequests = new ArrayList<>(values.size());
+        values.forEach((key, value) -> jsonRequests.add(new JsonRequest(key, value, ttlSeconds)));
+
+        return invalidating(values.keySet(), sendBatchesAsync("/storage/mset", jsonRequests)).thenApply(results -> {
+            Map<String, Boolean> isSet = new LinkedHashMap<>();
+            for (int i = 0; i < results.size(); i++) {
+                EnumStorageStatus status = results.get(i).getStatus();
+                isSet.put(jsonRequests.get(i).getKey(), status == EnumStorageStatus.VALUE_SET_OK
+                        || status == EnumStorageStatus.VALUE_SET_UPDATE_OK);
+            }
+            return isSet;
+        });
+    }
+
+    /**
+     * Removes values by keys from database, sending at most {@link #BATCH_SIZE} keys in one request.
+     *
+     * @param keys keys for records in database
+     * @return removed values by keys, keys of not removed records are absent
+     * @throws IOException if problems with the connection
+     * @throws StorageException if server sends an incorrect response
+     */
+    public Map<String, String> removeAll(Collection<String> keys) throws IOException, StorageException {
+        return await(removeAllAsync(keys));
+    }
+
+    /**
+     * Removes values by keys from database without blocking.
+     *
+     * @param keys keys for records in database
+     * @return future of removed values by keys, completed exceptionally as {@link #removeAll(Collection)} throws
+     */
+    public CompletableFuture<Map<String, String>> removeAllAsync(Collection<String> keys) {
+        return invalidating(keys, sendBatchesAsync("/storage/mdel", new ArrayList<>(keys)))
+                .thenApply(results -> collectData(results, EnumStorageStatus.VALUE_REMOVE_OK));
+    }
+
+    /**
+     * Scans keys of the database lazily: pages are fetched from server while the stream is consumed.
+     * The scan is weakly consistent, records existing during the whole scan are returned once.
+     * Failures of requests are thrown by the stream as {@link UncheckedIOException},
+     * incorrect responses as {@link IllegalStateException}.
+     *
+     * @param pattern glob pattern of keys, {@code *} for any characters and {@code ?} for one character
+     *                (null to match all keys)
+     * @return stream of the keys
+     */
+    public Stream<String> scanKeys(String pattern) {
+        return scan(pattern, DEFAULT_SCAN_COUNT, false).map(JsonScanEntry::getKey);
+    }
+
+    /**
+     * Scans records of the database lazily: pages are fetched from server while the stream is consumed.
+     * The scan is weakly consistent, records existing during the whole scan are returned once.
+     * Failures of requests are thrown by the stream as {@link UncheckedIOException},
+     * incorrect responses as {@link IllegalStateException}.
+     *
+     * @param pattern      glob pattern of keys, {@code *} for any characters and {@code ?} for one character
+     *                     (null to match all keys)
+     * @param count        number of entries examined by server for one page
+     * @param isWithValues true to fetch values and remaining TTL of the records
+     * @return stream of the records
+     */
+    public Stream<JsonScanEntry> scan(String pattern, int count, boolean isWithValues) {
+        Iterator<JsonScanEntry> iterator = new ScanIterator(this, pattern, count, isWithValues);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Fetches one page of a scan of the database.
+     *
+     * @param cursor       0 to start a new scan, or the cursor returned with the previous page
+     * @param pattern      glob pattern of keys (null to match all keys)
+     * @param count        number of entries examined by server for the page
+     * @param isWithValues true to fetch values and remaining TTL of the records
+     * @return the page with the cursor of the next page, 0 if the scan is complete
+     * @throws IOException if problems with the connection
+     * @throws StorageException if the cursor is unknown or closed, or server sends an incorrect response
+     */
+    public JsonResponseScan scanPage(long cursor, String pattern, int count, boolean isWithValues)
+            throws IOException, StorageException {
+        StringBuilder query = new StringBuilder("cursor=").append(cursor).append("&count=").append(count)
+                .append("&values=").append(isWithValues);
+        if (pattern != null) {
+            query.append("&match=").append(URLEncoder.encode(pattern, StandardCharsets.UTF_8));
+        }
+        return await(sendAsync(() -> request("/scan", query.toString(), timeoutMs).GET().build(), JSON_BODY)
+                .thenApply(parsing(response -> {
+                    JsonResponseScan jsonResponse = parseJson(response.body(), JsonResponseScan.class);
+                    if (jsonResponse.getStatus() != EnumStorageStatus.SCAN_OK) {
+                        throw new StorageException(String.format("Scan failed! JSON status is %s!",
+                                jsonResponse.getStatus()));
+                    }
+                    return jsonResponse;
+                })));
+    }
+
+    /**
+     * Lists keys starting with the prefix in ascending order lazily: pages are fetched from server while
+     * the stream is consumed. Requires the ordered index on server. The listing is weakly consistent,
+     * records existing during the whole listing are returned.
+     * Failures of requests are thrown by the stream as {@link UncheckedIOException},
+     * incorrect responses as {@link IllegalStateException}.
+     *
+     * @param prefix prefix of keys (null for all keys)
+     * @return stream of the keys
+     */
+    public Stream<String> listKeys(String prefix) {
+        return range(prefix, null, null, DEFAULT_RANGE_LIMIT, false).map(JsonScanEntry::getKey);
+    }
+
+    /**
+     * Lists records of an ordered range restricted to keys starting with the prefix lazily: pages are fetched
+     * from server while the stream is consumed. Requires the ordered index on server.
+     * Failures of requests are thrown by the stream as {@link UncheckedIOException},
+     * incorrect responses as {@link IllegalStateException}.
+     *
+     * @param prefix       prefix of keys (null for keys with any prefix)
+     * @param fromKey      the lowest key of the range, inclusive (null for no lower bound)
+     * @param toKey        the highest key of the range, exclusive (null for no upper bound)
+     * @param limit        maximum number of keys of one page
+     * @param isWithValues true to fetch values and remaining TTL of the records
+     * @return stream of the records in ascending order of keys
+     */
+    public Stream<JsonScanEntry> range(String prefix, String fromKey, String toKey, int limit,
+                                       boolean isWithValues) {
+        Iterator<JsonScanEntry> iterator = new RangeIterator(this, prefix, fromKey, toKey, limit, isWithValues);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Fetches one page of an ordered range of the database.
+     *
+     * @param prefix       prefix of keys (null for keys with any prefix)
+     * @param fromKey      the lowest key of the page, inclusive: the next key of the previous page
+     *                     (null for no lower bound)
+     * @param toKey        the highest key of the range, exclusive (null for no upper bound)
+     * @param limit        maximum number of keys of the page
+     * @param isWithValues true to fetch values and remaining TTL of the records
+     * @return the page with the lowest key of the next page, null if the range is complete
+     * @throws IOException if problems with the connection
+     * @throws StorageException if the ordered index is disabled, or server sends an incorrect response
+     */
+    public JsonResponseRange rangePage(String prefix, String fromKey, String toKey, int limit, boolean isWithValues)
+            throws IOException, StorageException {
+        StringBuilder query = new StringBuilder("limit=").append(limit).append("&values=").append(isWithValues);
+        if (prefix != null) {
+            query.append("&prefix=").append(URLEncoder.encode(prefix, StandardCharsets.UTF_8));
+        }
+        if (fromKey != null) {
+            query.append("&from=").append(URLEncoder.encode(fromKey, StandardCharsets.UTF_8));
+        }
+        if (toKey != null) {
+            query.append("&to=").append(URLEncoder.encode(toKey, StandardCharsets.UTF_8));
+        }
+        return await(sendAsync(() -> request("/keys", query.toString(), timeoutMs).GET().build(), JSON_BODY)
+                .thenApply(parsing(response -> {
+                    JsonResponseRange jsonResponse = parseJson(response.body(), JsonResponseRange.class);
+                    if (jsonResponse.getStatus() != EnumStorageStatus.RANGE_OK) {
+                        throw new StorageException(String.format("Range failed! JSON status is %s!",
+                                jsonResponse.getStatus()));
+                    }
+                    return jsonResponse;
+                })));
+    }
+
+    /**
+     * Counts keys of valid records starting with the prefix. Requires the ordered index on server.
+     *
+     * @param prefix prefix of keys, empty for all keys
+     * @return the number of keys
+     * @throws IOException if problems with the connection
+     * @throws StorageException if the ordered index is disabled, or server sends an incorrect response
+     */
+    public long countKeys(String prefix) throws IOException, StorageException {
+        String query = "prefix=" + URLEncoder.encode(prefix, StandardCharsets.UTF_8);
+        return await(sendAsync(() -> request("/keys/count", query, timeoutMs).GET().build(), JSON_BODY)
+                .thenApply(parsing(response -> countOf(response.body(), EnumStorageStatus.RANGE_COUNT_OK))));
+    }
+
+    /**
+     * Removes records whose keys start with the prefix. Requires the ordered index on server.
+     * Records are removed one by one, records put with the prefix during the removal may stay in the database.
+     * Cached values of the prefix are invalidated.
+     *
+     * @param prefix prefix of keys, not empty
+     * @return the number of removed valid records
+     * @throws IOException if problems with the connection
+     * @throws StorageException if the prefix is empty, the ordered index is disabled,
+     *                          or server sends an incorrect response
+     */
+    public long removeKeys(String prefix) throws IOException, StorageException {
+        String query = "prefix=" + URLEncoder.encode(prefix, StandardCharsets.UTF_8);
+        CompletableFuture<Long> request = sendAsync(() -> request("/keys", query, timeoutMs).DELETE().build(),
+                JSON_BODY).thenApply(parsing(response -> countOf(response.body(), EnumStorageStatus.RANGE_REMOVE_OK)));
+        if (nearCache != null) {
+            nearCache.invalidatePrefix(prefix);
+            request = request.whenComplete((result, e) -> nearCache.invalidatePrefix(prefix));
+        }
+        return await(request);
+    }
+
+    /**
+     * Parses the number of records from the response.
+     *
+     * @param body           JSON of the response
+     * @param expectedStatus status of the successful response
+     * @return the number of records
+     * @throws StorageException if the response cannot be parsed or has another status
+     */
+    private static long countOf(byte[] body, EnumStorageStatus expectedStatus) throws StorageException {
+        JsonResponseCount jsonResponse = parseJson(body, JsonResponseCount.class);
+        if (jsonResponse.getStatus() != expectedStatus) {
+            throw new StorageException(String.format("Request failed! JSON status is %s!", jsonResponse.getStatus()));
+        }
+        return jsonResponse.getCount();
+    }
+
+    /**
+     * Sends the items to the batch endpoint in requests of at most {@link #BATCH_SIZE} items,
+     * the requests are sent concurrently.
+     *
+     * @param path  path of the batch endpoint
+     * @param items keys or records to send
+     * @return future of results for the items in their order
+     */
+    private CompletableFuture<List<JsonBatchResult>> sendBatchesAsync(String path, List<?> items) {
+        List<CompletableFuture<List<JsonBatchResult>>> batches = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += BATCH_SIZE) {
+            List<?> batch = items.subList(from, Math.min(items.size(), from + BATCH_SIZE));
+            batches.add(sendAsync(() -> request(path)
+                    .header("Content-Type", "application/json; utf-8")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(toJsonBytes(batch)))
+                    .build(), JSON_BODY)
+                    .thenApply(parsing(response -> {
+                        JsonResponseBatch jsonResponse = parseJson(response.body(), JsonResponseBatch.class);
+                        if (jsonResponse.getStatus() != EnumStorageStatus.BATCH_OK
+                                || jsonResponse.getResults() == null
+                                || jsonResponse.getResults().size() != batch.size()) {
+                            throw new StorageException(String.format("Batch request failed! JSON status is %s!",
+                                    jsonResponse.getStatus()));
+                        }
+                        return jsonResponse.getResults();
+                    })));
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<JsonBatchResult> results = new ArrayList<>(items.size());
+            for (CompletableFuture<List<JsonBatchResult>> batch : batches) {
+                results.addAll(batch.join());
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Creates a pipeline sending operations to server in frames without waiting for the result
+     * of each operation (see {@link StoragePipeline}).
+     *
+     * @return new pipeline
+     */
+    public StoragePipeline pipeline() {
+        return new StoragePipeline(this);
+    }
+
+    /**
+     * Sends a frame of pipelined operations, they are executed by server in order.
+     *
+     * @param operations operations of the frame
+     * @return future of results of the operations in their order, completed exceptionally with
+     * {@link StorageException} if server aborts the pipeline
+     */
+    CompletableFuture<List<JsonBatchResult>> sendPipelineAsync(List<JsonPipelineRequest> operations) {
+        List<String> writtenKeys = new ArrayList<>();
+        for (JsonPipelineRequest operation : operations) {
+            if (operation.getOperation() != EnumPipelineOperation.GET) {
+                writtenKeys.add(operation.getKey());
+            }
+        }
+        return invalidating(writtenKeys, sendAsync(() -> request("/storage/pipeline")
+                .header("Content-Type", "application/json; utf-8")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(toJsonBytes(operations)))
+                .build(), JSON_BODY))
+                .thenApply(parsing(response -> {
+                    JsonResponseBatch jsonResponse = parseJson(response.body(), JsonResponseBatch.class);
+                    if (jsonResponse.getStatus() != EnumStorageStatus.BATCH_OK
+                            || jsonResponse.getResults() == null
+                            || jsonResponse.getResults().size() != operations.size()) {
+                        throw new StorageException(String.format("Pipelined request failed! JSON status is %s!",
+                                jsonResponse.getStatus()));
+                    }
+                    return jsonResponse.getResults();
+                }));
+    }
+
+    /**
+     * Collects values of the results with the status.
+     *
+     * @param results  results of a batch request
+     * @param okStatus status of the results containing values
+     * @return values by keys
+     */
+    private static Map<String, String> collectData(List<JsonBatchResult> results, EnumStorageStatus okStatus) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (JsonBatchResult result : results) {
+            if (result.getStatus() == okStatus) {
+                values.put(result.getKey(), result.getData());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Dumps database from server to selected file on your host within the timeout for operations with server.
      *
      * @param dirPath path for dump on your host
      * @param fileName file name for dump
@@ -214,39 +1125,79 @@ public class StorageDriver {
      * or server does not send the dump.
      */
     public void dump(Path dirPath, String fileName) throws IOException {
-        URL url = new URL(serverURL + "/dump");
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("GET");
-
-        int responseCode = connection.getResponseCode(); //no JSON
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            try (InputStream inputStream = connection.getInputStream();
-                 ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
-
-                byte[] buffer = new byte[4096];
-                int bytesRead;
-
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    byteArrayOutputStream.write(buffer, 0, bytesRead);
-                }
-
-                File file = new File(dirPath.toString(), fileName);
+        dump(dirPath, fileName, timeoutMs);
+    }
 
-                 connection.disconnect();
+    /**
+     * Dumps database from server to selected file on your host.
+     *
+     * @param dirPath path for dump on your host
+     * @param fileName file name for dump
+     * @param dumpTimeoutMs timeout of the whole dump in milliseconds, 0 for infinite timeout
+     * @throws IOException if problems with the connection, processing file on host,
+     * or server does not send the dump; {@link HttpTimeoutException} if the timeout elapses
+     */
+    public void dump(Path dirPath, String fileName, int dumpTimeoutMs) throws IOException {
+        try {
+            await(dumpAsync(dirPath, fileName, dumpTimeoutMs));
+        } catch (StorageException e) {
+            throw new IOException(e);
+        }
+    }
 
-                if (!file.exists()) {
-                    file.createNewFile();
-                }
+    /**
+     * Dumps database from server to selected file on your host without blocking, within the timeout
+     * for operations with server.
+     *
+     * @param dirPath path for dump on your host
+     * @param fileName file name for dump
+     * @return future completed when the dump is written, completed exceptionally as {@link #dump(Path, String)}
+     * throws
+     */
+    public CompletableFuture<Void> dumpAsync(Path dirPath, String fileName) {
+        return dumpAsync(dirPath, fileName, timeoutMs);
+    }
 
-                try (FileOutputStream fos = new FileOutputStream(file)) {
-                    byteArrayOutputStream.writeTo(fos);
+    /**
+     * Dumps database from server to selected file on your host without blocking.
+     * The dump is written to the file as it arrives, a compressed dump is written to a temporary file
+     * next to it and decompressed when it has arrived.
+     *
+     * @param dirPath path for dump on your host
+     * @param fileName file name for dump
+     * @param dumpTimeoutMs timeout of the whole dump in milliseconds, including waiting for a connection,
+     *                      0 for infinite timeout
+     * @return future completed when the dump is written, completed exceptionally as
+     * {@link #dump(Path, String, int)} throws
+     */
+    public CompletableFuture<Void> dumpAsync(Path dirPath, String fileName, int dumpTimeoutMs) {
+        Path file = dirPath.resolve(fileName);
+        Path compressedFile = dirPath.resolve(fileName + ".gz.part");
+        return sendAsync(() -> request("/dump", dumpTimeoutMs)
+                .header("Accept-Encoding", "gzip")
+                .GET()
+                .build(), responseInfo -> {
+            if (responseInfo.statusCode() != HttpURLConnection.HTTP_OK) { //no JSON
+                return HttpResponse.BodySubscribers.replacing(null);
+            }
+            boolean isCompressed = responseInfo.headers().firstValue("Content-Encoding")
+                    .filter("gzip"::equalsIgnoreCase).isPresent();
+            return HttpResponse.BodySubscribers.ofFile(isCompressed ? compressedFile : file,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }).thenApply(parsing(response -> {
+            if (compressedFile.equals(response.body())) {
+                try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(compressedFile))) {
+                    Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(compressedFile);
                 }
             }
-        }
+            return null;
+        }));
     }
 
     /**
-     * Uploads dumped database file to server.
+     * Uploads dumped database file to server within the timeout for operations with server.
      * @param dirPath path to the directory containing dump on your host
      * @param fileName file name of the dump
      * @return true if the server accepts the file, false otherwise
@@ -254,36 +1205,104 @@ public class StorageDriver {
      * @throws StorageException if server sends an incorrect response
      */
     public boolean load(Path dirPath, String fileName) throws IOException, StorageException {
-        URL url = new URL(serverURL + "/load");
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("PUT");
-        connection.setDoOutput(true);
-        connection.setRequestProperty("Content-Type", "application/octet-stream");
-
-        File file = new File(dirPath.toString(), fileName);
-        if (!file.canRead()) {
-            throw new IOException("Cannot read file: " + file.getAbsoluteFile());
-        }
+        return load(dirPath, fileName, timeoutMs);
+    }
 
-        try (FileInputStream fis = new FileInputStream(file);
-             OutputStream os = connection.getOutputStream()) {
+    /**
+     * Uploads dumped database file to server.
+     * @param dirPath path to the directory containing dump on your host
+     * @param fileName file name of the dump
+     * @param loadTimeoutMs timeout of the whole upload in milliseconds, 0 for infinite timeout
+     * @return true if the server accepts the file, false otherwise
+     * @throws IOException if problems with the connection or processing file on host;
+     * {@link HttpTimeoutException} if the timeout elapses
+     * @throws StorageException if server sends an incorrect response
+     */
+    public boolean load(Path dirPath, String fileName, int loadTimeoutMs) throws IOException, StorageException {
+        return await(loadAsync(dirPath, fileName, loadTimeoutMs));
+    }
 
-            byte[] buffer = new byte[4096];
-            int bytesRead;
+    /**
+     * Uploads dumped database file to server without blocking, within the timeout for operations with server.
+     * @param dirPath path to the directory containing dump on your host
+     * @param fileName file name of the dump
+     * @return future of true if the server accepts the file, false otherwise,
+     * completed exceptionally as {@link #load(Path, String)} throws
+     */
+    public CompletableFuture<Boolean> loadAsync(Path dirPath, String fileName) {
+        return loadAsync(dirPath, fileName, timeoutMs);
+    }
 
+    /**
+     * Uploads dumped database file to server without blocking.
+     * @param dirPath path to the directory containing dump on your host
+     * @param fileName file name of the dump
+     * @param loadTimeoutMs timeout of the whole upload in milliseconds, including waiting for a connection,
+     *                      0 for infinite timeout
+     * @return future of true if the server accepts the file, false otherwise,
+     * completed exceptionally as {@link #load(Path, String, int)} throws
+     */
+    public CompletableFuture<Boolean> loadAsync(Path dirPath, String fileName, int loadTimeoutMs) {
+        File file = new File(dirPath.toString(), fileName);
 
-            while ((bytesRead = fis.read(buffer)) != -1) {
-                os.write(buffer, 0, bytesRead);
+        return sendAsync(() -> {
+            if (!file.canRead()) {
+                throw new IOException("Cannot read file: " + file.getAbsoluteFile());
             }
+            return request("/load", loadTimeoutMs)
+                    .header("Content-Type", "application/octet-stream")
+                    .PUT(HttpRequest.BodyPublishers.ofFile(file.toPath()))
+                    .build();
+        }, JSON_BODY).whenComplete((response, e) -> {
+            if (nearCache != null) {
+                nearCache.invalidateAll();
+            }
+        }).thenApply(parsing(response -> parseJson(response.body(), JsonResponse.class).getStatus()
+                == EnumStorageStatus.VALUE_LOAD_OK));
+    }
 
-            os.flush();
+    /**
+     * Invalidates cached values of the keys written by the request, when it is sent and when it completes,
+     * so values got while the request is in flight are not cached.
+     *
+     * @param keys    keys written by the request
+     * @param request future of the written request
+     * @param <T>     the type of the result of the request
+     * @return future of the result of the request, completed after the invalidation
+     */
+    private <T> CompletableFuture<T> invalidating(Collection<String> keys, CompletableFuture<T> request) {
+        if (nearCache == null) {
+            return request;
         }
+        keys.forEach(nearCache::invalidate);
+        return request.whenComplete((result, e) -> keys.forEach(nearCache::invalidate));
+    }
 
-        String response = getResponse(connection);
-        connection.disconnect();
-        JsonResponse jsonResponse = parseJson(response, JsonResponse.class);
+    /**
+     * Gets statistics of the near cache: number of entries, hits, misses, revalidations and invalidations.
+     *
+     * @return statistics names and values, empty if the near cache is disabled
+     */
+    public Map<String, Long> getNearCacheStats() {
+        return nearCache == null ? Map.of() : nearCache.getStats();
+    }
 
-        return jsonResponse.getStatus() == EnumStorageStatus.VALUE_LOAD_OK;
+    /**
+     * Closes connections by the binary protocol, requests in flight on them fail. HTTP connections
+     * are closed by the HTTP client when they are idle.
+     */
+    @Override
+    public void close() {
+        if (binaryConnections == null) {
+            return;
+        }
+        for (int i = 0; i < binaryConnections.length(); i++) {
+            CompletableFuture<BinaryConnection> connection = binaryConnections.getAndSet(i, null);
+            if (connection != null) {
+                connection.thenAccept(BinaryConnection::close);
+            }
+        }
+        binaryConnector.shutdown();
     }
 
     /**
@@ -0,0 +1,188 @@
+package ru.infotecs.internship.driver;
+
+/**
+ * Configuration of {@link StorageDriver} connections.
+ * <p>
+ * Connections are kept alive and reused by the HTTP client of the driver. Idle connections are closed
+ * by the client after the keep-alive timeout ({@code jdk.httpclient.keepalive.timeout} system property,
+ * in seconds) or when the server closes them.
+ */
+public class StorageDriverConfig {
+
+    /**
+     * Default maximum number of requests in flight.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+
+    /**
+     * Default time a cached value is served without checking server.
+     */
+    public static final long DEFAULT_NEAR_CACHE_MAX_STALENESS_MS = 1000L;
+
+    /**
+     * Timeout for operations with server in milliseconds, 0 for infinite timeout.
+     */
+    private int timeoutMs = StorageDriver.DEFAULT_TIMEOUT_MS;
+
+    /**
+     * Timeout for establishing a connection in milliseconds, 0 for the system default.
+     */
+    private int connectTimeoutMs = StorageDriver.DEFAULT_TIMEOUT_MS;
+
+    /**
+     * Maximum number of requests in flight, which bounds the number of connections to the server.
+     * Further requests wait in the queue of the driver.
+     */
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    /**
+     * Use of HTTP/2 without TLS (h2c), so requests are multiplexed over one connection.
+     */
+    private boolean http2;
+
+    /**
+     * Maximum number of values cached by the driver, 0 disables the near cache.
+     */
+    private int nearCacheMaxEntries;
+
+    /**
+     * Time a cached value is served without checking server in milliseconds, this bounds the time
+     * writes by other clients stay unseen.
+     */
+    private long nearCacheMaxStalenessMs = DEFAULT_NEAR_CACHE_MAX_STALENESS_MS;
+
+    /**
+     * Port of the binary protocol listener of server ({@code storage.binary-port}), 0 to use only HTTP.
+     */
+    private int binaryPort;
+
+    /**
+     * Gets timeout for operations with server.
+     *
+     * @return timeout in milliseconds, 0 for infinite timeout
+     */
+    public int getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    /**
+     * Sets timeout for operations with server.
+     *
+     * @param timeoutMs timeout in milliseconds, 0 for infinite timeout
+     */
+    public void setTimeoutMs(int timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Gets timeout for establishing a connection.
+     *
+     * @return timeout in milliseconds, 0 for the system default
+     */
+    public int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    /**
+     * Sets timeout for establishing a connection.
+     *
+     * @param connectTimeoutMs timeout in milliseconds, 0 for the system default
+     */
+    public void setConnectTimeoutMs(int connectTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
+    /**
+     * Gets the maximum number of requests in flight.
+     *
+     * @return the maximum number of requests
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the maximum number of requests in flight, which bounds the number of connections to the server.
+     *
+     * @param maxConnections the maximum number of requests
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Checks if HTTP/2 without TLS (h2c) is used.
+     *
+     * @return true if h2c is used, false for HTTP/1.1
+     */
+    public boolean isHttp2() {
+        return http2;
+    }
+
+    /**
+     * Sets use of HTTP/2 without TLS (h2c). If the server does not support h2c, HTTP/1.1 is used.
+     *
+     * @param http2 true to use h2c, false for HTTP/1.1
+     */
+    public void setHttp2(boolean http2) {
+        this.http2 = http2;
+    }
+
+    /**
+     * Gets the maximum number of values cached by the driver.
+     *
+     * @return the maximum number of values, 0 if the near cache is disabled
+     */
+    public int getNearCacheMaxEntries() {
+        return nearCacheMaxEntries;
+    }
+
+    /**
+     * Sets the maximum number of values cached by the driver. Cached values are returned by
+     * {@link StorageDriver#get(String)} without requests to server.
+     *
+     * @param nearCacheMaxEntries the maximum number of values, 0 to disable the near cache
+     */
+    public void setNearCacheMaxEntries(int nearCacheMaxEntries) {
+        this.nearCacheMaxEntries = nearCacheMaxEntries;
+    }
+
+    /**
+     * Gets the time a cached value is served without checking server.
+     *
+     * @return the time in milliseconds
+     */
+    public long getNearCacheMaxStalenessMs() {
+        return nearCacheMaxStalenessMs;
+    }
+
+    /**
+     * Sets the time a cached value is served without checking server. After it the value is revalidated
+     * by a conditional request, so writes by other clients are seen after at most this time.
+     *
+     * @param nearCacheMaxStalenessMs the time in milliseconds
+     */
+    public void setNearCacheMaxStalenessMs(long nearCacheMaxStalenessMs) {
+        this.nearCacheMaxStalenessMs = nearCacheMaxStalenessMs;
+    }
+
+    /**
+     * Gets the port of the binary protocol listener of server.
+     *
+     * @return the port, 0 if only HTTP is used
+     */
+    public int getBinaryPort() {
+        return binaryPort;
+    }
+
+    /**
+     * Sets the port of the binary protocol listener of server. If it is set, single-key operations
+     * (get, set, remove and TTL) are sent by the binary protocol over a few pipelined connections
+     * (one per processor, at most the maximum number of requests in flight), other operations use HTTP.
+     *
+     * @param binaryPort the port, 0 to use only HTTP
+     */
+    public void setBinaryPort(int binaryPort) {
+        this.binaryPort = binaryPort;
+    }
+}
@@ -0,0 +1,175 @@
+package ru.infotecs.internship.driver;
+
+import ru.infotecs.internship.json.EnumPipelineOperation;
+import ru.infotecs.internship.json.JsonBatchResult;
+import ru.infotecs.internship.json.JsonPipelineRequest;
+import ru.infotecs.internship.storage.EnumStorageStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Pipeline of operations with the database, for jobs where total throughput matters more than
+ * latency of one operation.
+ * <p>
+ * Operations are not sent one by one: they are collected into frames, and a frame is executed by server
+ * in one request. Frames of a pipeline are sent one after another, so operations are executed in
+ * the order they are added, and their results complete in the same order. An operation added while
+ * no frame is in flight is sent at once; while a frame is in flight, new operations are collected into
+ * the next frame, which is sent when the previous one completes or when it reaches {@link #MAX_FRAME_SIZE}
+ * operations. {@link #flush()} tells when all added operations have completed.
+ * <p>
+ * The pipeline is thread-safe. It does not limit the number of operations waiting for results,
+ * the caller should wait for results of earlier operations if it produces them faster than server
+ * executes them.
+ */
+public class StoragePipeline implements AutoCloseable {
+
+    /**
+     * Maximum number of operations in one frame.
+     */
+    public static final int MAX_FRAME_SIZE = 4096;
+
+    /**
+     * Driver sending the frames.
+     */
+    private final StorageDriver driver;
+
+    /**
+     * Operations of the next frame.
+     */
+    private List<JsonPipelineRequest> operations = new ArrayList<>();
+
+    /**
+     * Results of the operations of the next frame.
+     */
+    private List<CompletableFuture<JsonBatchResult>> results = new ArrayList<>();
+
+    /**
+     * Completion of the last sent frame, completed normally even if the frame fails.
+     */
+    private CompletableFuture<Void> lastFrame = CompletableFuture.completedFuture(null);
+
+    /**
+     * Number of sent frames whose results have not been completed.
+     */
+    private int framesInFlight;
+
+    /**
+     * Constructs a pipeline. Use {@link StorageDriver#pipeline()} to create new instance.
+     *
+     * @param driver driver sending the frames
+     */
+    StoragePipeline(StorageDriver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * Adds getting value by key.
+     *
+     * @param key key for record in database
+     * @return future of value by key, or null if the record does not exist
+     */
+    public CompletableFuture<String> get(String key) {
+        return add(new JsonPipelineRequest(EnumPipelineOperation.GET, key, null, null))
+                .thenApply(result -> result.getStatus() == EnumStorageStatus.VALUE_GET_OK ? result.getData() : null);
+    }
+
+    /**
+     * Adds setting value by key.
+     *
+     * @param key        key for record in database
+     * @param value      value for setting record
+     * @param ttlSeconds time to live for record in seconds (null for default TTL)
+     * @return future of true if value set successfully, false otherwise
+     */
+    public CompletableFuture<Boolean> set(String key, String value, Long ttlSeconds) {
+        return add(new JsonPipelineRequest(EnumPipelineOperation.SET, key, value, ttlSeconds))
+                .thenApply(result -> result.getStatus() == EnumStorageStatus.VALUE_SET_OK
+                        || result.getStatus() == EnumStorageStatus.VALUE_SET_UPDATE_OK);
+    }
+
+    /**
+     * Adds removing value by key.
+     *
+     * @param key key for record in database
+     * @return future of removed value, or null if value did not be removed
+     */
+    public CompletableFuture<String> remove(String key) {
+        return add(new JsonPipelineRequest(EnumPipelineOperation.REMOVE, key, null, null))
+                .thenApply(result -> result.getStatus() == EnumStorageStatus.VALUE_REMOVE_OK ? result.getData() : null);
+    }
+
+    /**
+     * Sends the collected operations without waiting for frames in flight.
+     *
+     * @return future completed when results of all operations added before are completed
+     */
+    public synchronized CompletableFuture<Void> flush() {
+        if (!operations.isEmpty()) {
+            sendFrame();
+        }
+        return lastFrame;
+    }
+
+    /**
+     * Sends the collected operations and waits for their results.
+     */
+    @Override
+    public void close() {
+        flush().join();
+    }
+
+    /**
+     * Adds the operation to the next frame, sending the frame if no frame is in flight or the frame is full.
+     *
+     * @param operation the operation to add
+     * @return future of the result of the operation
+     */
+    private synchronized CompletableFuture<JsonBatchResult> add(JsonPipelineRequest operation) {
+        CompletableFuture<JsonBatchResult> result = new CompletableFuture<>();
+        operations.add(operation);
+        results.add(result);
+        if (framesInFlight == 0 || operations.size() >= MAX_FRAME_SIZE) {
+            sendFrame();
+        }
+        return result;
+    }
+
+    /**
+     * Sends the collected operations as a frame after the last sent frame completes.
+     */
+    private void sendFrame() {
+        List<JsonPipelineRequest> frameOperations = operations;
+        List<CompletableFuture<JsonBatchResult>> frameResults = results;
+        operations = new ArrayList<>();
+        results = new ArrayList<>();
+        framesInFlight++;
+        lastFrame = lastFrame
+                .thenCompose(ignored -> driver.sendPipelineAsync(frameOperations))
+                .handle((frameResponse, e) -> {
+                    for (int i = 0; i < frameResults.size(); i++) {
+                        if (e != null) {
+                            frameResults.get(i).completeExceptionally(e instanceof CompletionException
+                                    && e.getCause() != null ? e.getCause() : e);
+                        } else {
+                            frameResults.get(i).complete(frameResponse.get(i));
+                        }
+                    }
+                    completeFrame();
+                    return null;
+                });
+    }
+
+    /**
+     * Marks a frame as completed, sending the operations collected while it was in flight.
+     */
+    private synchronized void completeFrame() {
+        framesInFlight--;
+        if (framesInFlight == 0 && !operations.isEmpty()) {
+            sendFrame();
+        }
+    }
+}
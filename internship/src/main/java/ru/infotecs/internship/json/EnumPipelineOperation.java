@@ -0,0 +1,22 @@
+package ru.infotecs.internship.json;
+
+/**
+ * Represents operations of a pipelined request.
+ */
+public enum EnumPipelineOperation {
+
+    /**
+     * Gets a value by key.
+     */
+    GET,
+
+    /**
+     * Sets a value by key with optional TTL.
+     */
+    SET,
+
+    /**
+     * Removes a value by key.
+     */
+    REMOVE
+}
@@ -0,0 +1,108 @@
+package ru.infotecs.internship.json;
+
+import ru.infotecs.internship.storage.EnumStorageStatus;
+
+/**
+ * Represents the result of an operation on one key of a batch request.
+ */
+public class JsonBatchResult {
+
+    /**
+     * Key associated with record.
+     */
+    private String key;
+
+    /**
+     * Represents the status of the operation on the key.
+     */
+    private EnumStorageStatus status;
+
+    /**
+     * Record value, or {@code null} if the operation does not return it.
+     */
+    private String data = null;
+
+    /**
+     * Default constructor. Needs for Jackson.
+     */
+    public JsonBatchResult() {
+    }
+
+    /**
+     * Constructs a new {@code JsonBatchResult} with the given key and status.
+     *
+     * @param key    key associated with record
+     * @param status the status of the operation on the key
+     */
+    public JsonBatchResult(String key, EnumStorageStatus status) {
+        this.key = key;
+        this.status = status;
+    }
+
+    /**
+     * Constructs a new {@code JsonBatchResult} with the given key, status and record value.
+     *
+     * @param key    key associated with record
+     * @param status the status of the operation on the key
+     * @param data   record value
+     */
+    public JsonBatchResult(String key, EnumStorageStatus status, String data) {
+        this.key = key;
+        this.status = status;
+        this.data = data;
+    }
+
+    /**
+     * Gets key associated with record.
+     *
+     * @return key associated with record
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Sets key associated with record.
+     *
+     * @param key key associated with record
+     */
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Gets the status of the operation on the key.
+     *
+     * @return the status of the operation
+     */
+    public EnumStorageStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Sets the status of the operation on the key.
+     *
+     * @param status the status of the operation
+     */
+    public void setStatus(EnumStorageStatus status) {
+        this.status = status;
+    }
+
+    /**
+     * Gets record value.
+     *
+     * @return record value, or {@code null} if the operation does not return it
+     */
+    public String getData() {
+        return data;
+    }
+
+    /**
+     * Sets record value.
+     *
+     * @param data record value
+     */
+    public void setData(String data) {
+        this.data = data;
+    }
+}
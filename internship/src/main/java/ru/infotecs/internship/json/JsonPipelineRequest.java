@@ -0,0 +1,52 @@
+package ru.infotecs.internship.json;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * JSON request of one operation of a pipelined request to server.
+ */
+public class JsonPipelineRequest extends JsonRequest {
+
+    /**
+     * Operation to execute.
+     */
+    @JsonProperty("op")
+    private EnumPipelineOperation operation = null;
+
+    /**
+     * Default constructor. Needs for Jackson.
+     */
+    public JsonPipelineRequest() {
+    }
+
+    /**
+     * Constructs a new {@code JsonPipelineRequest} with the operation, key-value pair and TTL.
+     *
+     * @param operation  operation to execute
+     * @param key        key associated with record
+     * @param value      record value (only for {@link EnumPipelineOperation#SET})
+     * @param ttlSeconds time to live in seconds (only for {@link EnumPipelineOperation#SET})
+     */
+    public JsonPipelineRequest(EnumPipelineOperation operation, String key, String value, Long ttlSeconds) {
+        super(key, value, ttlSeconds);
+        this.operation = operation;
+    }
+
+    /**
+     * Gets operation to execute.
+     *
+     * @return operation to execute
+     */
+    public EnumPipelineOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Sets operation to execute.
+     *
+     * @param operation operation to execute
+     */
+    public void setOperation(EnumPipelineOperation operation) {
+        this.operation = operation;
+    }
+}
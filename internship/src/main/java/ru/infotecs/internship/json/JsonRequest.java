@@ -1,6 +1,8 @@
 package ru.infotecs.internship.json;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import ru.infotecs.internship.json.util.JsonProcessor;
 
 /**
  * Basic JSON request to server (set value by key)
@@ -96,11 +98,17 @@ public class JsonRequest {
         this.ttlSeconds = ttlSeconds;
     }
 
+    /**
+     * Converts the request to JSON, the key and the value are escaped.
+     *
+     * @return string representation of JSON
+     */
     @Override
     public String toString() {
-        return String.format("{\"key\":\"%s\", \"value\":\"%s\", \"ttl\":%s}",
-                key != null ? key : "",
-                value != null ? value : "",
-                ttlSeconds != null ? ttlSeconds.toString() : "null");
+        try {
+            return JsonProcessor.toJson(this);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
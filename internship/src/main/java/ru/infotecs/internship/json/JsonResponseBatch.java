@@ -0,0 +1,53 @@
+package ru.infotecs.internship.json;
+
+import ru.infotecs.internship.storage.EnumStorageStatus;
+
+import java.util.List;
+
+/**
+ * Extends the {@link JsonResponse} class to include results of a batch request, one per key
+ * in the order of the request.
+ */
+public class JsonResponseBatch extends JsonResponse {
+
+    /**
+     * Results of the operations on the keys.
+     */
+    private List<JsonBatchResult> results = null;
+
+    /**
+     * Default constructor. Needs for Jackson.
+     */
+    public JsonResponseBatch() {
+        super();
+    }
+
+    /**
+     * Constructs a new {@code JsonResponseBatch} with the given status and results.
+     *
+     * @param status  the status of the response, indicating the result of an operation.
+     * @param results results of the operations on the keys.
+     */
+    public JsonResponseBatch(EnumStorageStatus status, List<JsonBatchResult> results) {
+        super(status);
+        this.results = results;
+    }
+
+    /**
+     * Gets results of the operations on the keys.
+     *
+     * @return results in the order of the request, or {@code null} if no results was provided.
+     */
+    public List<JsonBatchResult> getResults() {
+        return results;
+    }
+
+    /**
+     * Sets results of the operations on the keys.
+     *
+     * @param results results in the order of the request.
+     */
+    public void setResults(List<JsonBatchResult> results) {
+        this.results = results;
+    }
+}
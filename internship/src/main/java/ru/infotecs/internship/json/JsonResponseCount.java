@@ -0,0 +1,50 @@
+package ru.infotecs.internship.json;
+
+import ru.infotecs.internship.storage.EnumStorageStatus;
+
+/**
+ * Extends the {@link JsonResponse} class to include the number of counted or removed records.
+ */
+public class JsonResponseCount extends JsonResponse {
+
+    /**
+     * Number of counted or removed records.
+     */
+    private long count;
+
+    /**
+     * Default constructor. Needs for Jackson.
+     */
+    public JsonResponseCount() {
+        super();
+    }
+
+    /**
+     * Constructs a new {@code JsonResponseCount} with the given status and number of records.
+     *
+     * @param status the status of the response, indicating the result of an operation.
+     * @param count  number of counted or removed records.
+     */
+    public JsonResponseCount(EnumStorageStatus status, long count) {
+        super(status);
+        this.count = count;
+    }
+
+    /**
+     * Gets number of counted or removed records.
+     *
+     * @return number of records.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Sets number of counted or removed records.
+     *
+     * @param count number of records.
+     */
+    public void setCount(long count) {
+        this.count = count;
+    }
+}
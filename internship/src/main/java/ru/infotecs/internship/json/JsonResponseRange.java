@@ -0,0 +1,77 @@
+package ru.infotecs.internship.json;
+
+import ru.infotecs.internship.storage.EnumStorageStatus;
+
+import java.util.List;
+
+/**
+ * Extends the {@link JsonResponse} class to include a page of ordered keys and the lowest key of the next page.
+ */
+public class JsonResponseRange extends JsonResponse {
+
+    /**
+     * The lowest key of the next page, {@code null} if the range is complete.
+     */
+    private String nextKey = null;
+
+    /**
+     * Records of the page in ascending order of keys.
+     */
+    private List<JsonScanEntry> entries = null;
+
+    /**
+     * Default constructor. Needs for Jackson.
+     */
+    public JsonResponseRange() {
+        super();
+    }
+
+    /**
+     * Constructs a new {@code JsonResponseRange} with the given status, next key and records.
+     *
+     * @param status  the status of the response, indicating the result of an operation.
+     * @param nextKey the lowest key of the next page, {@code null} if the range is complete.
+     * @param entries records of the page in ascending order of keys.
+     */
+    public JsonResponseRange(EnumStorageStatus status, String nextKey, List<JsonScanEntry> entries) {
+        super(status);
+        this.nextKey = nextKey;
+        this.entries = entries;
+    }
+
+    /**
+     * Gets the lowest key of the next page.
+     *
+     * @return the lowest key of the next page, {@code null} if the range is complete.
+     */
+    public String getNextKey() {
+        return nextKey;
+    }
+
+    /**
+     * Sets the lowest key of the next page.
+     *
+     * @param nextKey the lowest key of the next page.
+     */
+    public void setNextKey(String nextKey) {
+        this.nextKey = nextKey;
+    }
+
+    /**
+     * Gets records of the page.
+     *
+     * @return records of the page, or {@code null} if no records was provided.
+     */
+    public List<JsonScanEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Sets records of the page.
+     *
+     * @param entries records of the page.
+     */
+    public void setEntries(List<JsonScanEntry> entries) {
+        this.entries = entries;
+    }
+}
@@ -0,0 +1,77 @@
+package ru.infotecs.internship.json;
+
+import ru.infotecs.internship.storage.EnumStorageStatus;
+
+import java.util.List;
+
+/**
+ * Extends the {@link JsonResponse} class to include a page of a scan and the cursor of the next page.
+ */
+public class JsonResponseScan extends JsonResponse {
+
+    /**
+     * Cursor of the next page, 0 if the scan is complete.
+     */
+    private long cursor;
+
+    /**
+     * Records of the page.
+     */
+    private List<JsonScanEntry> entries = null;
+
+    /**
+     * Default constructor. Needs for Jackson.
+     */
+    public JsonResponseScan() {
+        super();
+    }
+
+    /**
+     * Constructs a new {@code JsonResponseScan} with the given status, cursor and records.
+     *
+     * @param status  the status of the response, indicating the result of an operation.
+     * @param cursor  cursor of the next page, 0 if the scan is complete.
+     * @param entries records of the page.
+     */
+    public JsonResponseScan(EnumStorageStatus status, long cursor, List<JsonScanEntry> entries) {
+        super(status);
+        this.cursor = cursor;
+        this.entries = entries;
+    }
+
+    /**
+     * Gets cursor of the next page.
+     *
+     * @return cursor of the next page, 0 if the scan is complete.
+     */
+    public long getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Sets cursor of the next page.
+     *
+     * @param cursor cursor of the next page.
+     */
+    public void setCursor(long cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * Gets records of the page.
+     *
+     * @return records of the page, or {@code null} if no records was provided.
+     */
+    public List<JsonScanEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Sets records of the page.
+     *
+     * @param entries records of the page.
+     */
+    public void setEntries(List<JsonScanEntry> entries) {
+        this.entries = entries;
+    }
+}
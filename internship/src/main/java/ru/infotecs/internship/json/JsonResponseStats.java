@@ -0,0 +1,52 @@
+package ru.infotecs.internship.json;
+
+import ru.infotecs.internship.storage.EnumStorageStatus;
+
+import java.util.Map;
+
+/**
+ * Extends the {@link JsonResponse} class to include statistics of the storage.
+ */
+public class JsonResponseStats extends JsonResponse {
+
+    /**
+     * Statistics names and values.
+     */
+    private Map<String, Long> stats = null;
+
+    /**
+     * Default constructor. Needs for Jackson.
+     */
+    public JsonResponseStats() {
+        super();
+    }
+
+    /**
+     * Constructs a new {@code JsonResponseStats} with the given status and statistics.
+     *
+     * @param status the status of the response, indicating the result of an operation.
+     * @param stats  statistics names and values.
+     */
+    public JsonResponseStats(EnumStorageStatus status, Map<String, Long> stats) {
+        super(status);
+        this.stats = stats;
+    }
+
+    /**
+     * Gets statistics of the storage.
+     *
+     * @return statistics names and values, or {@code null} if no statistics was provided.
+     */
+    public Map<String, Long> getStats() {
+        return stats;
+    }
+
+    /**
+     * Sets statistics of the storage.
+     *
+     * @param stats statistics names and values.
+     */
+    public void setStats(Map<String, Long> stats) {
+        this.stats = stats;
+    }
+}
@@ -0,0 +1,95 @@
+package ru.infotecs.internship.json;
+
+/**
+ * Represents a record of a page of a scan.
+ */
+public class JsonScanEntry {
+
+    /**
+     * Key associated with record.
+     */
+    private String key;
+
+    /**
+     * Record value, or {@code null} if values were not requested.
+     */
+    private String value = null;
+
+    /**
+     * Remaining TTL of the record in milliseconds, or {@code null} if values were not requested.
+     */
+    private Long ttlMs = null;
+
+    /**
+     * Default constructor. Needs for Jackson.
+     */
+    public JsonScanEntry() {
+    }
+
+    /**
+     * Constructs a new {@code JsonScanEntry} with the given key, record value and remaining TTL.
+     *
+     * @param key   key associated with record
+     * @param value record value (may be null)
+     * @param ttlMs remaining TTL of the record in milliseconds (may be null)
+     */
+    public JsonScanEntry(String key, String value, Long ttlMs) {
+        this.key = key;
+        this.value = value;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Gets key associated with record.
+     *
+     * @return key associated with record
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Sets key associated with record.
+     *
+     * @param key key associated with record
+     */
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Gets record value.
+     *
+     * @return record value, or {@code null} if values were not requested
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Sets record value.
+     *
+     * @param value record value
+     */
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Gets remaining TTL of the record.
+     *
+     * @return remaining TTL in milliseconds, or {@code null} if values were not requested
+     */
+    public Long getTtlMs() {
+        return ttlMs;
+    }
+
+    /**
+     * Sets remaining TTL of the record.
+     *
+     * @param ttlMs remaining TTL in milliseconds
+     */
+    public void setTtlMs(Long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+}
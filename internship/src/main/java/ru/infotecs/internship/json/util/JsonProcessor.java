@@ -2,14 +2,40 @@ package ru.infotecs.internship.json.util;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import ru.infotecs.internship.storage.StorageException;
 import ru.infotecs.internship.json.JsonResponse;
 
+import java.io.IOException;
+
 /**
- * Utility class to process JSON
+ * Utility class to process JSON.
+ * One mapper is shared by all calls, readers and writers created from it are immutable and thread-safe,
+ * so their configuration and serializers are built once.
  */
 public class JsonProcessor {
 
+    /**
+     * Mapper shared by all calls, it is not reconfigured after creation.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Readers of the classes of responses.
+     */
+    private static final ClassValue<ObjectReader> READERS = new ClassValue<>() {
+        @Override
+        protected ObjectReader computeValue(Class<?> type) {
+            return MAPPER.readerFor(type);
+        }
+    };
+
+    /**
+     * Writer of requests.
+     */
+    private static final ObjectWriter WRITER = MAPPER.writer();
+
     /**
      * Private constructor, use static methods.
      */
@@ -27,11 +53,50 @@ public class JsonProcessor {
      */
     public static <T extends JsonResponse> T parseJson(String response,
                                                        Class<T> responseClass) throws StorageException {
-        ObjectMapper mapper = new ObjectMapper();
         try {
-            return mapper.readValue(response, responseClass);
+            return READERS.get(responseClass).readValue(response);
         } catch (JsonProcessingException e) {
             throw new StorageException("JSON response is not valid!");
         }
     }
+
+    /**
+     * Converts JSON in UTF-8 to related object without decoding it to a string first.
+     *
+     * @param response      UTF-8 bytes of JSON server response
+     * @param responseClass class of object to be created
+     * @param <T>           the type of class (must be JsonResponse or extend it)
+     * @return object representation of JSON
+     * @throws StorageException if the conversion failed
+     */
+    public static <T extends JsonResponse> T parseJson(byte[] response,
+                                                       Class<T> responseClass) throws StorageException {
+        try {
+            return READERS.get(responseClass).readValue(response);
+        } catch (IOException e) {
+            throw new StorageException("JSON response is not valid!");
+        }
+    }
+
+    /**
+     * Converts an object to JSON.
+     *
+     * @param request object to be converted
+     * @return string representation of JSON
+     * @throws JsonProcessingException if the conversion failed
+     */
+    public static String toJson(Object request) throws JsonProcessingException {
+        return WRITER.writeValueAsString(request);
+    }
+
+    /**
+     * Converts an object to JSON in UTF-8.
+     *
+     * @param request object to be converted
+     * @return UTF-8 bytes of JSON
+     * @throws JsonProcessingException if the conversion failed
+     */
+    public static byte[] toJsonBytes(Object request) throws JsonProcessingException {
+        return WRITER.writeValueAsBytes(request);
+    }
 }
@@ -0,0 +1,100 @@
+package ru.infotecs.internship.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ru.infotecs.internship.storage.StorageMap;
+import ru.infotecs.internship.storage.StorageMetrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Exposes counters of {@link StorageMap} as meters. Meters read the striped counters of the storage
+ * when they are published, so the operations of the storage do not touch the registry.
+ * Latencies of the endpoints are measured by Spring MVC as {@code http.server.requests}.
+ */
+@Component
+public class StorageMeterBinder implements MeterBinder {
+
+    /**
+     * The storage whose counters are exposed.
+     */
+    private final StorageMap storage;
+
+    /**
+     * Constructs the binder.
+     *
+     * @param storage the storage whose counters are exposed
+     */
+    @Autowired
+    public StorageMeterBinder(StorageMap storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Registers the meters of the storage.
+     *
+     * @param registry the registry to register the meters in
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        StorageMetrics metrics = storage.getMetrics();
+        counter(registry, "storage.reads", "Reads of records", "result", "hit", StorageMetrics::getHitCount);
+        counter(registry, "storage.reads", "Reads of records", "result", "miss", StorageMetrics::getMissCount);
+        counter(registry, "storage.writes", "Writes of records", "result", "created",
+                m -> m.getSetCount() - m.getOverwriteCount());
+        counter(registry, "storage.writes", "Writes of records", "result", "overwritten",
+                StorageMetrics::getOverwriteCount);
+        FunctionCounter.builder("storage.removes", metrics, StorageMetrics::getRemoveCount)
+                .description("Removals of valid records").register(registry);
+        FunctionCounter.builder("storage.expirations", metrics, StorageMetrics::getExpirationCount)
+                .description("Expired records removed by trims or by lookups").register(registry);
+        FunctionCounter.builder("storage.evictions", storage, StorageMap::getEvictionCount)
+                .description("Records evicted to fit the limits").register(registry);
+        FunctionTimer.builder("storage.trim", metrics, StorageMetrics::getTrimCount,
+                        StorageMetrics::getTrimTimeNs, TimeUnit.NANOSECONDS)
+                .description("Trim ticks").register(registry);
+        TimeGauge.builder("storage.trim.last.duration", metrics, TimeUnit.NANOSECONDS,
+                        StorageMetrics::getLastTrimDurationNs)
+                .description("Duration of the last trim tick").register(registry);
+        Gauge.builder("storage.trim.last.expired", metrics, StorageMetrics::getLastTrimExpiredCount)
+                .description("Expired records removed by the last trim tick").register(registry);
+        FunctionTimer.builder("storage.dumps", metrics, StorageMetrics::getDumpCount,
+                        StorageMetrics::getDumpTimeNs, TimeUnit.NANOSECONDS)
+                .description("Dumps of the storage").register(registry);
+        FunctionTimer.builder("storage.loads", metrics, StorageMetrics::getLoadCount,
+                        StorageMetrics::getLoadTimeNs, TimeUnit.NANOSECONDS)
+                .description("Loads into the storage").register(registry);
+        Gauge.builder("storage.entries", storage, StorageMap::size)
+                .description("Entries including expired ones which are not trimmed yet").register(registry);
+        Gauge.builder("storage.memory.usage", storage, StorageMap::getMemoryUsage)
+                .description("Estimated memory usage of records").baseUnit(BaseUnits.BYTES).register(registry);
+        Gauge.builder("storage.offheap.used", storage, StorageMap::getOffHeapUsedBytes)
+                .description("Off-heap memory occupied by values").baseUnit(BaseUnits.BYTES).register(registry);
+        Gauge.builder("storage.wal.size", storage, StorageMap::getWalSize)
+                .description("Size of the write-ahead log").baseUnit(BaseUnits.BYTES).register(registry);
+    }
+
+    /**
+     * Registers a counter of the storage metrics with a tag.
+     *
+     * @param registry    the registry to register the counter in
+     * @param name        the name of the counter
+     * @param description the description of the counter
+     * @param tagKey      the key of the tag
+     * @param tagValue    the value of the tag
+     * @param count       the function reading the count
+     */
+    private void counter(MeterRegistry registry, String name, String description, String tagKey, String tagValue,
+                         ToLongFunction<StorageMetrics> count) {
+        FunctionCounter.builder(name, storage.getMetrics(), metrics -> count.applyAsLong(metrics))
+                .description(description).tag(tagKey, tagValue).register(registry);
+    }
+}
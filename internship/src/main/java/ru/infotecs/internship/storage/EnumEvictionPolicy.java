@@ -0,0 +1,23 @@
+package ru.infotecs.internship.storage;
+
+/**
+ * Represents policies of choosing records to evict when the storage exceeds its limits.
+ */
+public enum EnumEvictionPolicy {
+
+    /**
+     * Evicts the least recently used record among sampled ones (approximate LRU).
+     */
+    LRU,
+
+    /**
+     * Evicts the least frequently used record among sampled ones
+     * (approximate LFU with logarithmic counters decaying over time).
+     */
+    LFU,
+
+    /**
+     * Evicts the record with the nearest expiration time.
+     */
+    VOLATILE_TTL
+}
@@ -0,0 +1,24 @@
+package ru.infotecs.internship.storage;
+
+/**
+ * Represents policies of flushing the write-ahead log of the storage to the disk.
+ */
+public enum EnumFsyncPolicy {
+
+    /**
+     * Every write is acknowledged only after the log is flushed to the disk.
+     * Concurrent writes are flushed together (group commit).
+     */
+    ALWAYS,
+
+    /**
+     * The log is flushed to the disk periodically (see {@code storage.wal-fsync-interval}),
+     * writes made since the last flush may be lost on a crash of the operating system.
+     */
+    INTERVAL,
+
+    /**
+     * The log is never flushed explicitly, the operating system decides when to write it to the disk.
+     */
+    OS
+}
@@ -0,0 +1,18 @@
+package ru.infotecs.internship.storage;
+
+/**
+ * Represents modes of loading a snapshot into the storage.
+ */
+public enum EnumLoadMode {
+
+    /**
+     * Loads the snapshot into new shards and atomically swaps them in, the previous records are dropped.
+     * Requests are served from the previous records until the swap.
+     */
+    REPLACE,
+
+    /**
+     * Adds or replaces records of the snapshot in the live storage, other records are kept.
+     */
+    MERGE
+}
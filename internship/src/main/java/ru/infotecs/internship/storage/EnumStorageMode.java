@@ -0,0 +1,17 @@
+package ru.infotecs.internship.storage;
+
+/**
+ * Represents places where the storage keeps values of records.
+ */
+public enum EnumStorageMode {
+
+    /**
+     * Values are kept as objects on the Java heap.
+     */
+    HEAP,
+
+    /**
+     * Values and expiration times are kept in off-heap slabs, the storage holds only compact handles.
+     */
+    OFF_HEAP
+}
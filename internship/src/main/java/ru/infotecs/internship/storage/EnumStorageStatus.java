@@ -13,9 +13,27 @@ public enum EnumStorageStatus {
     VALUE_SET_OK("Value set ok"),
     VALUE_SET_UPDATE_OK("Value update ok"),
     VALUE_REMOVE_OK("Value remove ok"),
+    VALUE_INVALID("Value is not valid UTF-8"),
+    BATCH_OK("Batch ok"),
+    BATCH_TOO_LARGE("Batch is too large"),
+    OPERATION_UNSUPPORTED("Unsupported operation"),
+    PIPELINE_ABORTED("Pipeline is aborted by invalid operation"),
     VALUE_DUMP_ERROR("Error while dump storage"),
+    DUMP_COMPRESSION_UNSUPPORTED("Unsupported dump compression"),
     VALUE_LOAD_OK("Value load ok"),
-    VALUE_LOAD_ERROR("Error while load storage");
+    VALUE_LOAD_ERROR("Error while load storage"),
+    LOAD_MODE_UNSUPPORTED("Unsupported load mode"),
+    STATS_GET_OK("Stats get ok"),
+    SCAN_OK("Scan ok"),
+    SCAN_CURSOR_NOT_FOUND("Scan cursor is unknown or closed"),
+    SCAN_COUNT_INVALID("Scan count is out of range"),
+    RANGE_OK("Range get ok"),
+    RANGE_LIMIT_INVALID("Range limit is out of range"),
+    RANGE_COUNT_OK("Range count ok"),
+    RANGE_REMOVE_OK("Range remove ok"),
+    ORDERED_INDEX_DISABLED("Ordered index is disabled"),
+    SNAPSHOT_STARTED("Snapshot started"),
+    SNAPSHOT_DISABLED("Snapshots are disabled");
 
     private final String status;
 
@@ -0,0 +1,159 @@
+package ru.infotecs.internship.storage;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Ordered deadline queue of keys used by the trim process.
+ * Each indexed key is stored together with its expiration time, so the trim process
+ * only touches the keys which are actually due instead of scanning the whole storage.
+ * <p>
+ * The index does not synchronize with the storage by itself: callers must update it
+ * while holding the lock of the corresponding storage entry (inside {@code compute} methods
+ * of the {@link java.util.concurrent.ConcurrentHashMap}).
+ */
+class ExpiryIndex {
+
+    /**
+     * Key and its expiration time, ordered by expiration time first.
+     */
+    static final class Deadline {
+
+        /**
+         * Order of deadlines: by expiration time, then by key.
+         */
+        private static final Comparator<Deadline> ORDER =
+                Comparator.comparingLong(Deadline::getExpirationTime).thenComparing(Deadline::getKey);
+
+        /**
+         * The expiration time in milliseconds since the epoch.
+         */
+        private final long expirationTime;
+
+        /**
+         * The key of the record.
+         */
+        private final String key;
+
+        /**
+         * Constructs a deadline for the key.
+         *
+         * @param expirationTime the expiration time in milliseconds since the epoch
+         * @param key            the key of the record
+         */
+        Deadline(long expirationTime, String key) {
+            this.expirationTime = expirationTime;
+            this.key = key;
+        }
+
+        /**
+         * Gets the expiration time.
+         *
+         * @return the expiration time in milliseconds since the epoch
+         */
+        long getExpirationTime() {
+            return expirationTime;
+        }
+
+        /**
+         * Gets the key of the record.
+         *
+         * @return the key of the record
+         */
+        String getKey() {
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Deadline that = (Deadline) o;
+            return expirationTime == that.expirationTime && key.equals(that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(expirationTime, key);
+        }
+    }
+
+    /**
+     * Deadlines sorted by expiration time.
+     */
+    private final ConcurrentSkipListSet<Deadline> deadlines = new ConcurrentSkipListSet<>(Deadline.ORDER);
+
+    /**
+     * Adds the key with its expiration time to the index.
+     *
+     * @param key            the key of the record
+     * @param expirationTime the expiration time in milliseconds since the epoch
+     */
+    void add(String key, long expirationTime) {
+        deadlines.add(new Deadline(expirationTime, key));
+    }
+
+    /**
+     * Removes the key with the given expiration time from the index.
+     *
+     * @param key            the key of the record
+     * @param expirationTime the expiration time the key was indexed with
+     */
+    void remove(String key, long expirationTime) {
+        deadlines.remove(new Deadline(expirationTime, key));
+    }
+
+    /**
+     * Retrieves and removes the earliest deadline if it is not later than the given time.
+     *
+     * @param currentTime the current time in milliseconds since the epoch
+     * @return the earliest due deadline or null if nothing is due
+     */
+    Deadline pollDue(long currentTime) {
+        while (true) {
+            Iterator<Deadline> iterator = deadlines.iterator();
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            Deadline first = iterator.next();
+            if (first.getExpirationTime() > currentTime) {
+                return null;
+            }
+            if (deadlines.remove(first)) {
+                return first;
+            }
+        }
+    }
+
+    /**
+     * Gets the earliest deadline without removing it.
+     *
+     * @return the earliest deadline or null if the index is empty
+     */
+    Deadline peekFirst() {
+        Iterator<Deadline> iterator = deadlines.iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * Gets the number of indexed deadlines.
+     *
+     * @return the number of deadlines in the index
+     */
+    int size() {
+        return deadlines.size();
+    }
+
+    /**
+     * Removes all deadlines from the index.
+     */
+    void clear() {
+        deadlines.clear();
+    }
+}
@@ -0,0 +1,127 @@
+package ru.infotecs.internship.storage;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Registry of mutations of the storage in progress.
+ * <p>
+ * Every mutation of a shard is registered in the current epoch before it takes the lock of the storage entry
+ * and unregistered after the new mapping is visible. {@link #advance()} starts a new epoch and waits until
+ * all mutations of the previous one have ended, so a consistent cut of the storage (a snapshot or a switch
+ * of the write-ahead log segment) can be taken without stopping writers.
+ * <p>
+ * While a snapshot is taken, the registry also holds pre-images: the records which keys had at the cut,
+ * saved by the first mutation of every key after the cut.
+ */
+class MutationEpochs {
+
+    /**
+     * Pre-image of a key which did not exist at the cut of the snapshot.
+     */
+    static final RecordValue ABSENT = new RecordValue();
+
+    /**
+     * Number of mutations in progress for each parity of {@link #epoch}.
+     */
+    private final LongAdder[] mutations = {new LongAdder(), new LongAdder()};
+
+    /**
+     * Number of the current epoch.
+     */
+    private volatile int epoch;
+
+    /**
+     * Pre-images of keys mutated since the cut of the current snapshot, or null if no snapshot is taken.
+     */
+    private volatile ConcurrentHashMap<String, RecordValue> preImages;
+
+    /**
+     * Serializes starts of epochs. A lock rather than a monitor, so a virtual thread waiting for mutations
+     * does not pin its carrier.
+     */
+    private final ReentrantLock advanceLock = new ReentrantLock();
+
+    /**
+     * Registers a mutation in the current epoch.
+     *
+     * @return the token for {@link #end(int)}
+     */
+    int begin() {
+        while (true) {
+            int currentEpoch = epoch;
+            mutations[currentEpoch & 1].increment();
+            if (epoch == currentEpoch) {
+                return currentEpoch;
+            }
+            mutations[currentEpoch & 1].decrement();
+        }
+    }
+
+    /**
+     * Unregisters a mutation.
+     *
+     * @param mutationEpoch the token returned by {@link #begin()}
+     */
+    void end(int mutationEpoch) {
+        mutations[mutationEpoch & 1].decrement();
+    }
+
+    /**
+     * Starts a new epoch and waits until every mutation registered in the previous epoch has ended.
+     * Concurrent calls are serialized, so only two epochs are in use at any time.
+     */
+    void advance() {
+        advanceLock.lock();
+        try {
+            int previousEpoch = epoch;
+            epoch = previousEpoch + 1;
+            while (mutations[previousEpoch & 1].sum() > 0) {
+                Thread.yield();
+            }
+        } finally {
+            advanceLock.unlock();
+        }
+    }
+
+    /**
+     * Makes the cut of a snapshot: starts saving pre-images and waits until every mutation
+     * which could have missed the start has ended.
+     *
+     * @return the map of pre-images, filled by mutations until {@link #endSnapshot()}
+     */
+    ConcurrentHashMap<String, RecordValue> beginSnapshot() {
+        advanceLock.lock();
+        try {
+            ConcurrentHashMap<String, RecordValue> snapshotPreImages = new ConcurrentHashMap<>();
+            preImages = snapshotPreImages;
+            advance();
+            return snapshotPreImages;
+        } finally {
+            advanceLock.unlock();
+        }
+    }
+
+    /**
+     * Stops saving pre-images.
+     */
+    void endSnapshot() {
+        preImages = null;
+    }
+
+    /**
+     * Saves the pre-image of the key if a snapshot is taken and the key has not been mutated since its cut.
+     * Must be called while holding the lock of the storage entry, before the record is changed.
+     *
+     * @param key         the key of the record
+     * @param storedValue the current record of the key (may be null)
+     */
+    void savePreImage(String key, StoredValue storedValue) {
+        ConcurrentHashMap<String, RecordValue> snapshotPreImages = preImages;
+        if (snapshotPreImages != null && !snapshotPreImages.containsKey(key)) {
+            RecordValue preImage = storedValue == null ? null : storedValue.toRecordValue();
+            snapshotPreImages.putIfAbsent(key, preImage == null ? ABSENT : preImage);
+        }
+    }
+}
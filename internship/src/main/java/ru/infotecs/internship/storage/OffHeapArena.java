@@ -0,0 +1,357 @@
+package ru.infotecs.internship.storage;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Slab allocator for record values kept outside the Java heap.
+ * <p>
+ * Memory is reserved in direct {@link ByteBuffer} slabs, each slab is split into slots of one size class
+ * (powers of two from {@link #MIN_SLOT_SIZE} to {@link #MAX_SLOT_SIZE}). A slot holds the header
+ * (stamp, value length, expiration time) and UTF-8 bytes of the value. Released slots are reused
+ * by later allocations of the same size class, memory is never returned to the operating system.
+ * <p>
+ * The stamp of a slot is incremented on every release, so readers without the lock of the storage entry
+ * can detect that the slot was reused while they were reading it (like {@link java.util.concurrent.locks.StampedLock}).
+ */
+class OffHeapArena {
+
+    /**
+     * Size of the slot header: stamp (4 bytes), value length (4 bytes), expiration time (8 bytes).
+     */
+    static final int HEADER_SIZE = 16;
+
+    /**
+     * Size of the smallest slot in bytes.
+     */
+    static final int MIN_SLOT_SIZE = 32;
+
+    /**
+     * Size of the largest slot in bytes. Larger values are kept on the heap.
+     */
+    static final int MAX_SLOT_SIZE = 1 << 20;
+
+    /**
+     * Size of one slab in bytes.
+     */
+    static final int SLAB_SIZE = 1 << 22;
+
+    /**
+     * Offset of the value length in the slot.
+     */
+    private static final int LENGTH_OFFSET = 4;
+
+    /**
+     * Offset of the expiration time in the slot.
+     */
+    private static final int EXPIRATION_TIME_OFFSET = 8;
+
+    /**
+     * Atomic access to the stamps of slots.
+     */
+    private static final VarHandle STAMP = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    /**
+     * Allocators of slots for each size class.
+     */
+    private final SizeClass[] sizeClasses;
+
+    /**
+     * All reserved slabs, the index in the array is a part of the slot address.
+     */
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+
+    /**
+     * Guards reserving of slabs. A lock rather than a monitor: reserving may wait for direct memory,
+     * and a virtual thread waiting in a monitor pins its carrier thread.
+     */
+    private final ReentrantLock slabLock = new ReentrantLock();
+
+    /**
+     * Number of bytes reserved in slabs.
+     */
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    /**
+     * Number of bytes in slots which are currently in use.
+     */
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    /**
+     * Constructs an empty arena. Slabs are reserved lazily.
+     */
+    OffHeapArena() {
+        int count = Integer.numberOfTrailingZeros(MAX_SLOT_SIZE) - Integer.numberOfTrailingZeros(MIN_SLOT_SIZE) + 1;
+        sizeClasses = new SizeClass[count];
+        for (int i = 0; i < count; i++) {
+            sizeClasses[i] = new SizeClass(MIN_SLOT_SIZE << i);
+        }
+    }
+
+    /**
+     * Checks if a value of the given size fits into a slot.
+     *
+     * @param valueSize size of the value in bytes
+     * @return true if the value can be allocated in the arena
+     */
+    static boolean fits(int valueSize) {
+        return valueSize <= MAX_SLOT_SIZE - HEADER_SIZE;
+    }
+
+    /**
+     * Copies the value and its expiration time into a free slot.
+     *
+     * @param value          UTF-8 bytes of the value (must {@link #fits(int)})
+     * @param expirationTime the expiration time in milliseconds since the epoch
+     * @return the record which refers to the allocated slot
+     */
+    OffHeapValue allocate(byte[] value, long expirationTime) {
+        SizeClass sizeClass = sizeClasses[sizeClassIndex(value.length + HEADER_SIZE)];
+        long address = sizeClass.allocate();
+        ByteBuffer slab = slab(address);
+        int offset = offset(address);
+        slab.putInt(offset + LENGTH_OFFSET, value.length);
+        slab.putLong(offset + EXPIRATION_TIME_OFFSET, expirationTime);
+        slab.put(offset + HEADER_SIZE, value, 0, value.length);
+        usedBytes.addAndGet(sizeClass.slotSize);
+        return new OffHeapValue(this, address, (int) STAMP.getAcquire(slab, offset));
+    }
+
+    /**
+     * Returns the slot to the free list of its size class.
+     * Must be called only once per allocation.
+     *
+     * @param address the address of the slot
+     */
+    void release(long address) {
+        ByteBuffer slab = slab(address);
+        int offset = offset(address);
+        SizeClass sizeClass = sizeClasses[sizeClassIndex(slab.getInt(offset + LENGTH_OFFSET) + HEADER_SIZE)];
+        STAMP.getAndAdd(slab, offset, 1);
+        usedBytes.addAndGet(-sizeClass.slotSize);
+        sizeClass.release(address);
+    }
+
+    /**
+     * Gets the size of the slot without validation.
+     *
+     * @param address the address of the slot
+     * @return the size of the slot in bytes
+     */
+    int slotSize(long address) {
+        int length = slab(address).getInt(offset(address) + LENGTH_OFFSET);
+        return sizeClasses[sizeClassIndex(length + HEADER_SIZE)].slotSize;
+    }
+
+    /**
+     * Reads the expiration time of the slot without validation.
+     *
+     * @param address the address of the slot
+     * @return the expiration time in milliseconds since the epoch
+     */
+    long expirationTime(long address) {
+        return slab(address).getLong(offset(address) + EXPIRATION_TIME_OFFSET);
+    }
+
+    /**
+     * Reads the expiration time of the slot if the slot was not released.
+     *
+     * @param address the address of the slot
+     * @param stamp   the stamp of the slot at the allocation
+     * @return the expiration time or {@link Long#MIN_VALUE} if the slot was released
+     */
+    long readExpirationTime(long address, int stamp) {
+        ByteBuffer slab = slab(address);
+        int offset = offset(address);
+        long expirationTime = slab.getLong(offset + EXPIRATION_TIME_OFFSET);
+        VarHandle.acquireFence();
+        return (int) STAMP.getAcquire(slab, offset) == stamp ? expirationTime : Long.MIN_VALUE;
+    }
+
+    /**
+     * Reads the value and the expiration time of the slot if the slot was not released.
+     *
+     * @param address the address of the slot
+     * @param stamp   the stamp of the slot at the allocation
+     * @return the heap copy of the record or null if the slot was released
+     */
+    RecordValue read(long address, int stamp) {
+        ByteBuffer slab = slab(address);
+        int offset = offset(address);
+        if ((int) STAMP.getAcquire(slab, offset) != stamp) {
+            return null;
+        }
+        int length = slab.getInt(offset + LENGTH_OFFSET);
+        if (length < 0 || length > MAX_SLOT_SIZE - HEADER_SIZE) {
+            return null;
+        }
+        long expirationTime = slab.getLong(offset + EXPIRATION_TIME_OFFSET);
+        byte[] value = new byte[length];
+        slab.get(offset + HEADER_SIZE, value, 0, length);
+        VarHandle.acquireFence();
+        if ((int) STAMP.getAcquire(slab, offset) != stamp) {
+            return null;
+        }
+        return RecordValue.fromUtf8(value, expirationTime);
+    }
+
+    /**
+     * Gets the number of bytes reserved in slabs.
+     *
+     * @return the number of reserved bytes
+     */
+    long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /**
+     * Gets the number of bytes in slots which are currently in use.
+     *
+     * @return the number of used bytes
+     */
+    long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * Gets the index of the smallest size class which fits the slot.
+     *
+     * @param slotSize required size of the slot in bytes
+     * @return the index of the size class
+     */
+    private static int sizeClassIndex(int slotSize) {
+        int size = Math.max(slotSize, MIN_SLOT_SIZE);
+        int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return shift - Integer.numberOfTrailingZeros(MIN_SLOT_SIZE);
+    }
+
+    /**
+     * Gets the slab of the slot.
+     *
+     * @param address the address of the slot
+     * @return the slab containing the slot
+     */
+    private ByteBuffer slab(long address) {
+        return slabs[(int) (address >>> 32)];
+    }
+
+    /**
+     * Gets the offset of the slot in its slab.
+     *
+     * @param address the address of the slot
+     * @return the offset of the slot in bytes
+     */
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    /**
+     * Reserves a new slab.
+     *
+     * @return the index of the new slab
+     */
+    private int reserveSlab() {
+        slabLock.lock();
+        try {
+            ByteBuffer slab = ByteBuffer.allocateDirect(SLAB_SIZE + Long.BYTES).alignedSlice(Long.BYTES)
+                    .order(ByteOrder.nativeOrder());
+            ByteBuffer[] newSlabs = Arrays.copyOf(slabs, slabs.length + 1);
+            newSlabs[slabs.length] = slab;
+            slabs = newSlabs;
+            reservedBytes.addAndGet(SLAB_SIZE);
+            return slabs.length - 1;
+        } finally {
+            slabLock.unlock();
+        }
+    }
+
+    /**
+     * Allocator of slots of the same size.
+     */
+    private final class SizeClass {
+
+        /**
+         * Size of the slot in bytes.
+         */
+        private final int slotSize;
+
+        /**
+         * Stack of addresses of released slots.
+         */
+        private long[] freeSlots = new long[16];
+
+        /**
+         * Number of addresses in the stack of released slots.
+         */
+        private int freeCount;
+
+        /**
+         * Index of the slab which is used for new slots, or -1 if there is no such slab.
+         */
+        private int currentSlab = -1;
+
+        /**
+         * Offset of the next new slot in the current slab.
+         */
+        private int nextOffset = SLAB_SIZE;
+
+        /**
+         * Guards the slots of the size class.
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Constructs an allocator of slots.
+         *
+         * @param slotSize size of the slot in bytes
+         */
+        private SizeClass(int slotSize) {
+            this.slotSize = slotSize;
+        }
+
+        /**
+         * Takes a released slot or a new slot from the current slab.
+         *
+         * @return the address of the slot
+         */
+        private long allocate() {
+            lock.lock();
+            try {
+                if (freeCount > 0) {
+                    return freeSlots[--freeCount];
+                }
+                if (nextOffset + slotSize > SLAB_SIZE) {
+                    currentSlab = reserveSlab();
+                    nextOffset = 0;
+                }
+                long address = ((long) currentSlab << 32) | nextOffset;
+                nextOffset += slotSize;
+                return address;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Puts the slot to the stack of released slots.
+         *
+         * @param address the address of the slot
+         */
+        private void release(long address) {
+            lock.lock();
+            try {
+                if (freeCount == freeSlots.length) {
+                    freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+                }
+                freeSlots[freeCount++] = address;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
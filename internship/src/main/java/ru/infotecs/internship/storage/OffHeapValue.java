@@ -0,0 +1,93 @@
+package ru.infotecs.internship.storage;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+/**
+ * Handle of a record which value and expiration time are kept in {@link OffHeapArena}.
+ * Serialized as a {@link RecordValue}.
+ */
+final class OffHeapValue extends StoredValue implements Serializable {
+
+    /**
+     * Estimated size in bytes of the handle object on the heap.
+     */
+    private static final long HANDLE_SIZE = 40L;
+
+    /**
+     * The arena containing the record.
+     */
+    private final transient OffHeapArena arena;
+
+    /**
+     * The address of the slot in the arena.
+     */
+    private final long address;
+
+    /**
+     * The stamp of the slot at the allocation.
+     */
+    private final int stamp;
+
+    /**
+     * Constructs a handle of the allocated slot.
+     *
+     * @param arena   the arena containing the record
+     * @param address the address of the slot in the arena
+     * @param stamp   the stamp of the slot at the allocation
+     */
+    OffHeapValue(OffHeapArena arena, long address, int stamp) {
+        this.arena = arena;
+        this.address = address;
+        this.stamp = stamp;
+    }
+
+    @Override
+    long expirationTime() {
+        return arena.expirationTime(address);
+    }
+
+    @Override
+    boolean isValid(long currentTime) {
+        return arena.readExpirationTime(address, stamp) > currentTime;
+    }
+
+    @Override
+    boolean isReleased() {
+        return arena.readExpirationTime(address, stamp) == Long.MIN_VALUE;
+    }
+
+    @Override
+    long memoryUsage() {
+        return HANDLE_SIZE + arena.slotSize(address);
+    }
+
+    @Override
+    RecordValue toRecordValue() {
+        RecordValue recordValue = arena.read(address, stamp);
+        if (recordValue != null) {
+            recordValue.version = version;
+        }
+        return recordValue;
+    }
+
+    @Override
+    void release() {
+        arena.release(address);
+    }
+
+    /**
+     * Replaces the handle with the heap copy of the record during serialization.
+     * The record released concurrently is written as an already expired one.
+     *
+     * @return the heap copy of the record
+     * @throws ObjectStreamException never, declared by the serialization contract
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        RecordValue recordValue = toRecordValue();
+        if (recordValue == null) {
+            return RecordValue.fromUtf8(new byte[0], 0L);
+        }
+        return recordValue;
+    }
+}
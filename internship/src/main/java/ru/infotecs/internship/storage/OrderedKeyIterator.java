@@ -0,0 +1,86 @@
+package ru.infotecs.internship.storage;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Iterator of the keys of a range over all shards in ascending order.
+ * Every key belongs to one shard, so the ordered indexes of the shards are merged by a heap of their
+ * current keys without checking duplicates. The indexes are read lazily and are weakly consistent.
+ */
+class OrderedKeyIterator implements Iterator<String> {
+
+    /**
+     * Current key of the index of a shard.
+     */
+    private static final class Head implements Comparable<Head> {
+
+        /**
+         * The current key.
+         */
+        private String key;
+
+        /**
+         * Remaining keys of the index.
+         */
+        private final Iterator<String> iterator;
+
+        /**
+         * Constructs the head at the first key of the index.
+         *
+         * @param iterator iterator of the index, must have the next key
+         */
+        private Head(Iterator<String> iterator) {
+            this.iterator = iterator;
+            this.key = iterator.next();
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            return key.compareTo(other.key);
+        }
+    }
+
+    /**
+     * Heads of the indexes which have keys left, the lowest key first.
+     */
+    private final PriorityQueue<Head> heads;
+
+    /**
+     * Constructs the iterator of the keys of the range.
+     *
+     * @param shards  the shards, must be ordered
+     * @param fromKey the lowest key of the range (inclusive), null for no lower bound
+     * @param toKey   the highest key of the range (exclusive), null for no upper bound; must be greater
+     *                than {@code fromKey}
+     */
+    OrderedKeyIterator(StorageShard[] shards, String fromKey, String toKey) {
+        heads = new PriorityQueue<>(Math.max(1, shards.length));
+        for (StorageShard shard : shards) {
+            Iterator<String> iterator = shard.keys(fromKey, toKey).iterator();
+            if (iterator.hasNext()) {
+                heads.add(new Head(iterator));
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public String next() {
+        Head head = heads.poll();
+        if (head == null) {
+            throw new NoSuchElementException();
+        }
+        String key = head.key;
+        if (head.iterator.hasNext()) {
+            head.key = head.iterator.next();
+            heads.add(head);
+        }
+        return key;
+    }
+}
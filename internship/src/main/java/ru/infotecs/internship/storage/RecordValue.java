@@ -1,26 +1,33 @@
 package ru.infotecs.internship.storage;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Represents a record with a value and an expiration time.
+ * The value is kept as UTF-8 bytes and the expiration time as a primitive,
+ * so the record costs one small object and one byte array.
  */
-public class RecordValue implements Serializable {
+public class RecordValue extends StoredValue implements Serializable {
 
     /**
-     * The value of the record.
+     * Estimated size in bytes of the record and the header of the value array.
      */
-    @JsonProperty("value")
-    private String value;
+    private static final long OBJECTS_SIZE = 56L;
+
+    /**
+     * UTF-8 bytes of the value of the record.
+     */
+    private byte[] value;
 
     /**
      * The expiration time of the record in milliseconds since the epoch.
-     * It represents the time when the record will expire.
+     * It represents the time when the record will expire, 0 if it is not set.
      */
-    @JsonProperty("expirationTime")
-    private Long expirationTime;
+    private long expirationTime;
 
     /**
      * Default constructor.
@@ -34,8 +41,8 @@ public class RecordValue implements Serializable {
      * @param value the value of the record
      * @param ttlMs the time to live in milliseconds
      */
-    public RecordValue(String value, Long ttlMs) {
-        this.value = value;
+    public RecordValue(String value, long ttlMs) {
+        setValue(value);
         setTtlMs(ttlMs);
     }
 
@@ -44,8 +51,9 @@ public class RecordValue implements Serializable {
      *
      * @return the value of the record
      */
+    @JsonProperty("value")
     public String getValue() {
-        return value;
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
     }
 
     /**
@@ -53,16 +61,28 @@ public class RecordValue implements Serializable {
      *
      * @param value the value to set
      */
+    @JsonProperty("value")
     public void setValue(String value) {
-        this.value = value;
+        this.value = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets UTF-8 bytes of the value of the record. The array is not copied and must not be modified.
+     *
+     * @return UTF-8 bytes of the value, or null if the value is not set
+     */
+    @JsonIgnore
+    public byte[] getValueUtf8() {
+        return value;
     }
 
     /**
      * Gets the expiration time of the record.
      *
-     * @return the expiration time in milliseconds since epoch, or null if it is not set by user
+     * @return the expiration time in milliseconds since epoch, or 0 if it is not set by user
      */
-    public Long getExpirationTime() {
+    @JsonProperty("expirationTime")
+    public long getExpirationTime() {
         return expirationTime;
     }
 
@@ -71,20 +91,38 @@ public class RecordValue implements Serializable {
      *
      * @param expirationTime the expiration time in milliseconds since epoch
      */
-    public void setExpirationTime(Long expirationTime) {
+    @JsonProperty("expirationTime")
+    public void setExpirationTime(long expirationTime) {
         this.expirationTime = expirationTime;
     }
 
+    /**
+     * Gets the version of the record, a new one is assigned by every write of the key.
+     *
+     * @return the version, or 0 if the record was not created by the storage
+     */
+    @JsonIgnore
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets the version of the record.
+     *
+     * @param version the version
+     */
+    @JsonIgnore
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     /**
      * Gets the TTL of the record in milliseconds.
      * TTL is the difference between the expiration time and the current time.
      *
-     * @return the TTL in milliseconds, or null if the expiration time is not set
+     * @return the TTL in milliseconds
      */
-    public Long getTtlMs() {
-        if (expirationTime == null) {
-            return null;
-        }
+    public long getTtlMs() {
         return expirationTime - System.currentTimeMillis();
     }
 
@@ -96,4 +134,39 @@ public class RecordValue implements Serializable {
     public void setTtlMs(long ttlMs) {
         this.expirationTime = System.currentTimeMillis() + ttlMs;
     }
+
+    /**
+     * Constructs a record from UTF-8 bytes of the value and the expiration time.
+     * The array is not copied.
+     *
+     * @param value          UTF-8 bytes of the value
+     * @param expirationTime the expiration time in milliseconds since epoch
+     * @return the new record
+     */
+    static RecordValue fromUtf8(byte[] value, long expirationTime) {
+        RecordValue recordValue = new RecordValue();
+        recordValue.value = value;
+        recordValue.expirationTime = expirationTime;
+        return recordValue;
+    }
+
+    @Override
+    long expirationTime() {
+        return expirationTime;
+    }
+
+    @Override
+    boolean isValid(long currentTime) {
+        return expirationTime > currentTime;
+    }
+
+    @Override
+    long memoryUsage() {
+        return OBJECTS_SIZE + (value == null ? 0 : value.length);
+    }
+
+    @Override
+    RecordValue toRecordValue() {
+        return this;
+    }
 }
@@ -0,0 +1,345 @@
+package ru.infotecs.internship.storage;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the storage within its limits of entries and memory by choosing records to evict.
+ * <p>
+ * Bookkeeping on reads and writes is a plain write of {@link StoredValue#accessInfo} and an update
+ * of striped counters, so it does not add locks to the common case. Victims are chosen like in Redis:
+ * a few records are sampled (the sampling cursor walks the storage like a clock hand) and the worst one
+ * according to the policy is evicted. Only writers which find the storage over its limits take the lock
+ * of the cursor, and only while the cursor is advanced; the samples are scored after the lock is released.
+ * A victim is evicted only if its key still maps to the sampled record, so a record written after sampling
+ * is never evicted in its place.
+ */
+class StorageEvictor {
+
+    /**
+     * Record chosen to be evicted.
+     */
+    static final class Victim {
+
+        /**
+         * The key of the record.
+         */
+        private final String key;
+
+        /**
+         * The sampled record, null if the key was not mapped when it was chosen.
+         */
+        private final StoredValue storedValue;
+
+        /**
+         * The deadline the record was chosen by, null if it was chosen by sampling.
+         */
+        private final ExpiryIndex.Deadline deadline;
+
+        /**
+         * Constructs the victim.
+         *
+         * @param key         the key of the record
+         * @param storedValue the sampled record
+         * @param deadline    the deadline the record was chosen by (may be null)
+         */
+        private Victim(String key, StoredValue storedValue, ExpiryIndex.Deadline deadline) {
+            this.key = key;
+            this.storedValue = storedValue;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Gets the key of the record.
+         *
+         * @return the key of the record
+         */
+        String getKey() {
+            return key;
+        }
+
+        /**
+         * Checks if the record mapped to the key now is the chosen one.
+         * Must be called only while holding the lock of the storage entry.
+         *
+         * @param currentValue the record mapped to the key
+         * @return true if the record may be evicted, false if the key was written after it was chosen
+         */
+        boolean isMapped(StoredValue currentValue) {
+            return currentValue != null && currentValue == storedValue
+                    && (deadline == null || currentValue.expirationTime() == deadline.getExpirationTime());
+        }
+    }
+
+    /**
+     * Number of records sampled to choose one victim.
+     */
+    static final int SAMPLE_SIZE = 5;
+
+    /**
+     * Estimated size in bytes of the storage entry without the record:
+     * the map node, the key string and the expiry index node.
+     */
+    static final long ENTRY_OVERHEAD = 136L;
+
+    /**
+     * Resolution of the LRU access clock in milliseconds (as a power of two).
+     */
+    private static final int LRU_CLOCK_SHIFT = 4;
+
+    /**
+     * Initial value of the LFU counter, so new records are not evicted immediately.
+     */
+    private static final int LFU_INIT_VALUE = 5;
+
+    /**
+     * Logarithmic factor of the LFU counter: the higher it is, the more accesses increment the counter.
+     */
+    private static final int LFU_LOG_FACTOR = 10;
+
+    /**
+     * Period in minutes after which the LFU counter is decremented by one.
+     */
+    private static final int LFU_DECAY_MINUTES = 1;
+
+    /**
+     * The policy of choosing victims.
+     */
+    private final EnumEvictionPolicy policy;
+
+    /**
+     * Maximum number of entries, 0 for unlimited.
+     */
+    private final long maxEntries;
+
+    /**
+     * Maximum estimated memory usage in bytes, 0 for unlimited.
+     */
+    private final long maxMemoryBytes;
+
+    /**
+     * Estimated memory usage of the storage in bytes.
+     */
+    private final LongAdder memoryUsage = new LongAdder();
+
+    /**
+     * Number of evicted records.
+     */
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Guards the cursor of sampling.
+     */
+    private final ReentrantLock cursorLock = new ReentrantLock();
+
+    /**
+     * Cursor of sampling, guarded by {@link #cursorLock}.
+     */
+    private Iterator<Map.Entry<String, StoredValue>> cursor;
+
+    /**
+     * Constructs the evictor.
+     *
+     * @param policy         the policy of choosing victims
+     * @param maxEntries     maximum number of entries, 0 for unlimited
+     * @param maxMemoryBytes maximum estimated memory usage in bytes, 0 for unlimited
+     */
+    StorageEvictor(EnumEvictionPolicy policy, long maxEntries, long maxMemoryBytes) {
+        this.policy = policy;
+        this.maxEntries = Math.max(maxEntries, 0L);
+        this.maxMemoryBytes = Math.max(maxMemoryBytes, 0L);
+    }
+
+    /**
+     * Gets the estimated memory usage of the storage entry.
+     * Must be called only while holding the lock of the storage entry.
+     *
+     * @param key         the key of the record
+     * @param storedValue the record
+     * @return the estimated memory usage in bytes
+     */
+    static long entryMemoryUsage(String key, StoredValue storedValue) {
+        return ENTRY_OVERHEAD + key.length() + storedValue.memoryUsage();
+    }
+
+    /**
+     * Initializes access information of the new record.
+     *
+     * @param storedValue the new record
+     */
+    void onCreate(StoredValue storedValue) {
+        if (policy == EnumEvictionPolicy.LFU) {
+            storedValue.accessInfo = (lfuClock() << 8) | LFU_INIT_VALUE;
+        } else {
+            storedValue.accessInfo = lruClock();
+        }
+    }
+
+    /**
+     * Updates access information of the record on read.
+     *
+     * @param storedValue the record which was read
+     */
+    void onAccess(StoredValue storedValue) {
+        if (policy == EnumEvictionPolicy.LFU) {
+            int counter = decayedCounter(storedValue.accessInfo);
+            storedValue.accessInfo = (lfuClock() << 8) | incrementedCounter(counter);
+        } else if (policy == EnumEvictionPolicy.LRU) {
+            storedValue.accessInfo = lruClock();
+        }
+    }
+
+    /**
+     * Accounts the change of the estimated memory usage.
+     *
+     * @param delta change in bytes
+     */
+    void addMemoryUsage(long delta) {
+        memoryUsage.add(delta);
+    }
+
+    /**
+     * Checks if the storage exceeds its limits.
+     *
+     * @param entries current number of entries in the storage
+     * @return true if some records must be evicted
+     */
+    boolean isOverLimit(long entries) {
+        return (maxEntries > 0 && entries > maxEntries)
+                || (maxMemoryBytes > 0 && memoryUsage.sum() > maxMemoryBytes);
+    }
+
+    /**
+     * Chooses the record to evict.
+     *
+     * @param storage     the storage
+     * @param expiryIndex the expiry index of the storage
+     * @return the record to evict or null if the storage is empty
+     */
+    Victim selectVictim(ConcurrentHashMap<String, StoredValue> storage, ExpiryIndex expiryIndex) {
+        if (policy == EnumEvictionPolicy.VOLATILE_TTL) {
+            ExpiryIndex.Deadline deadline = expiryIndex.peekFirst();
+            return deadline == null ? null : new Victim(deadline.getKey(), storage.get(deadline.getKey()), deadline);
+        }
+        @SuppressWarnings("unchecked")
+        Map.Entry<String, StoredValue>[] samples = new Map.Entry[SAMPLE_SIZE];
+        int sampleCount = 0;
+        cursorLock.lock();
+        try {
+            boolean isCursorRestarted = false;
+            while (sampleCount < SAMPLE_SIZE) {
+                if (cursor == null || !cursor.hasNext()) {
+                    if (isCursorRestarted) {
+                        break;
+                    }
+                    cursor = storage.entrySet().iterator();
+                    isCursorRestarted = true;
+                    if (!cursor.hasNext()) {
+                        break;
+                    }
+                }
+                samples[sampleCount++] = cursor.next();
+            }
+        } finally {
+            cursorLock.unlock();
+        }
+        Map.Entry<String, StoredValue> victim = null;
+        long victimScore = Long.MIN_VALUE;
+        for (int i = 0; i < sampleCount; i++) {
+            long score = evictionScore(samples[i].getValue());
+            if (victim == null || score > victimScore) {
+                victim = samples[i];
+                victimScore = score;
+            }
+        }
+        return victim == null ? null : new Victim(victim.getKey(), victim.getValue(), null);
+    }
+
+    /**
+     * Counts the evicted record.
+     */
+    void onEvict() {
+        evictionCount.increment();
+    }
+
+    /**
+     * Gets the estimated memory usage of the storage.
+     *
+     * @return the estimated memory usage in bytes
+     */
+    long getMemoryUsage() {
+        return memoryUsage.sum();
+    }
+
+    /**
+     * Gets the number of evicted records.
+     *
+     * @return the number of evictions
+     */
+    long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Calculates the score of the record: the greater the score, the better the record fits to be evicted.
+     *
+     * @param storedValue the sampled record
+     * @return the score of the record
+     */
+    private long evictionScore(StoredValue storedValue) {
+        if (policy == EnumEvictionPolicy.LFU) {
+            return 255 - decayedCounter(storedValue.accessInfo);
+        }
+        return Integer.toUnsignedLong(lruClock() - storedValue.accessInfo);
+    }
+
+    /**
+     * Gets the current value of the LRU clock.
+     *
+     * @return the current time with the LRU clock resolution
+     */
+    private static int lruClock() {
+        return (int) (System.currentTimeMillis() >>> LRU_CLOCK_SHIFT);
+    }
+
+    /**
+     * Gets the current value of the LFU decay clock (24 bits).
+     *
+     * @return the current time in minutes
+     */
+    private static int lfuClock() {
+        return (int) (System.currentTimeMillis() / 60_000L) & 0xFFFFFF;
+    }
+
+    /**
+     * Gets the LFU counter decremented by the number of decay periods since its last update.
+     *
+     * @param accessInfo the access information of the record
+     * @return the decayed counter
+     */
+    private static int decayedCounter(int accessInfo) {
+        int counter = accessInfo & 0xFF;
+        int elapsedMinutes = (lfuClock() - (accessInfo >>> 8)) & 0xFFFFFF;
+        int periods = elapsedMinutes / LFU_DECAY_MINUTES;
+        return Math.max(counter - periods, 0);
+    }
+
+    /**
+     * Increments the LFU counter with the probability decreasing logarithmically.
+     *
+     * @param counter the current counter
+     * @return the incremented counter
+     */
+    private static int incrementedCounter(int counter) {
+        if (counter == 255) {
+            return counter;
+        }
+        int baseValue = Math.max(counter - LFU_INIT_VALUE, 0);
+        double probability = 1.0 / (baseValue * LFU_LOG_FACTOR + 1);
+        return ThreadLocalRandom.current().nextDouble() < probability ? counter + 1 : counter;
+    }
+}
@@ -0,0 +1,147 @@
+package ru.infotecs.internship.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads records of a snapshot in the {@link StorageSnapshotFormat binary snapshot format} into shards.
+ * The stream is decoded on the calling thread, decoded records are put into shards in batches
+ * on a pool of threads. The number of batches in flight is bounded, so memory used by loading
+ * does not depend on the size of the snapshot.
+ */
+class StorageLoader {
+
+    /**
+     * Number of records in one batch.
+     */
+    static final int BATCH_SIZE = 4096;
+
+    /**
+     * Puts a decoded record into a shard.
+     */
+    interface RecordSink {
+
+        /**
+         * Puts a record.
+         *
+         * @param key            the key of the record
+         * @param value          UTF-8 bytes of the value (may be null)
+         * @param expirationTime the expiration time in milliseconds since the epoch
+         * @param currentTime    the time of the start of loading in milliseconds since the epoch
+         */
+        void put(String key, byte[] value, long expirationTime, long currentTime);
+    }
+
+    /**
+     * Decoded records waiting to be put.
+     */
+    private static final class Batch {
+
+        /**
+         * Keys of the records.
+         */
+        private final String[] keys = new String[BATCH_SIZE];
+
+        /**
+         * UTF-8 bytes of the values of the records.
+         */
+        private final byte[][] values = new byte[BATCH_SIZE][];
+
+        /**
+         * Expiration times of the records in milliseconds since the epoch.
+         */
+        private final long[] expirationTimes = new long[BATCH_SIZE];
+
+        /**
+         * Number of records in the batch.
+         */
+        private int size;
+    }
+
+    /**
+     * Number of threads putting records.
+     */
+    private final int threads;
+
+    /**
+     * Constructs the loader.
+     *
+     * @param threads number of threads putting records
+     */
+    StorageLoader(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Reads the snapshot and puts its records into the sink. TTL of records is counted from the start of loading,
+     * expired records are skipped. Returns after all records have been put. The stream is not closed.
+     *
+     * @param in   the stream to read from
+     * @param sink receiver of the records, called concurrently
+     * @return the number of read records
+     * @throws IOException if an I/O error occurs or the snapshot is corrupted
+     */
+    long load(InputStream in, RecordSink sink) throws IOException {
+        long referencePointTime = System.currentTimeMillis();
+        int maxBatchesInFlight = threads * 2;
+        Semaphore batchesInFlight = new Semaphore(maxBatchesInFlight);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Batch[] batch = {new Batch()};
+        try {
+            long recordCount = StorageSnapshotFormat.read(in, (key, value, remainingTtlMs) -> {
+                if (remainingTtlMs <= 0) {
+                    return;
+                }
+                Batch currentBatch = batch[0];
+                currentBatch.keys[currentBatch.size] = key;
+                currentBatch.values[currentBatch.size] = value;
+                currentBatch.expirationTimes[currentBatch.size] = referencePointTime + remainingTtlMs;
+                if (++currentBatch.size == BATCH_SIZE) {
+                    submit(pool, currentBatch, sink, referencePointTime, batchesInFlight, failure);
+                    batch[0] = new Batch();
+                }
+            });
+            submit(pool, batch[0], sink, referencePointTime, batchesInFlight, failure);
+            batchesInFlight.acquire(maxBatchesInFlight);
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            return recordCount;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Loading of the storage was interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Submits the batch to the pool, waiting while too many batches are in flight.
+     * Rethrows the failure of a previous batch, so reading stops.
+     */
+    private static void submit(ExecutorService pool, Batch batch, RecordSink sink, long currentTime,
+                               Semaphore batchesInFlight, AtomicReference<RuntimeException> failure) {
+        batchesInFlight.acquireUninterruptibly();
+        if (failure.get() != null) {
+            batchesInFlight.release();
+            throw failure.get();
+        }
+        pool.execute(() -> {
+            try {
+                for (int i = 0; i < batch.size; i++) {
+                    sink.put(batch.keys[i], batch.values[i], batch.expirationTimes[i], currentTime);
+                }
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                batchesInFlight.release();
+            }
+        });
+    }
+}
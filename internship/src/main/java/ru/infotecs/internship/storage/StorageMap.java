@@ -1,22 +1,45 @@
 package ru.infotecs.internship.storage;
 
 import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import ru.infotecs.internship.config.StorageProperties;
 
 import java.io.Externalizable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Storage for simple key-value database with TTL.
- * Implements {@link Externalizable} for custom serialization.
+ * Records are partitioned into {@link StorageShard shards} by key hash, maintenance of shards
+ * (trimming of expired records) runs in parallel on a bounded pool.
+ * If the directory of the {@link WriteAheadLog write-ahead log} is configured, mutations are logged,
+ * the log is replayed on construction and compacted in the background when it grows.
+ * If the ordered index is enabled, keys of every shard are also kept sorted, so ranges and prefixes of keys
+ * are listed, counted and removed without knowing the keys in advance.
+ * Serialization writes a point-in-time snapshot of the storage without stopping readers and writers,
+ * snapshots can also be written to a local file periodically and on demand.
+ * Implements {@link Externalizable} for custom serialization
+ * in the {@link StorageSnapshotFormat binary snapshot format}.
  */
 @Component
 public class StorageMap implements Externalizable {
@@ -44,17 +67,139 @@ public class StorageMap implements Externalizable {
     /**
      * Scheduled executor service for periodic trimming of expired records.
      */
-    private transient ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private transient ScheduledExecutorService scheduler;
 
     /**
-     * Simple key-value storage.
+     * Bounded pool for maintenance of shards.
      */
-    private ConcurrentHashMap<String, RecordValue> storage = new ConcurrentHashMap<>();
+    private transient ExecutorService maintenancePool;
 
     /**
-     * Default constructor that starts the trimming task.
+     * Number of threads in the maintenance pool.
+     */
+    private transient int maintenanceThreads;
+
+    /**
+     * Partitions of the storage, replaced as a whole by loading in {@link EnumLoadMode#REPLACE replace mode}.
+     */
+    private transient volatile StorageShard[] shards;
+
+    /**
+     * Place where shards keep values of records.
+     */
+    private transient EnumStorageMode mode;
+
+    /**
+     * Policy of choosing records to evict.
+     */
+    private transient EnumEvictionPolicy evictionPolicy;
+
+    /**
+     * Maximum number of entries of one shard, 0 for unlimited.
+     */
+    private transient long shardMaxEntries;
+
+    /**
+     * Maximum estimated memory usage of one shard, 0 for unlimited.
+     */
+    private transient long shardMaxMemoryBytes;
+
+    /**
+     * Set if shards keep their keys in the ordered index.
+     */
+    private transient boolean isOrdered;
+
+    /**
+     * Log of mutations, or null if the storage is kept only in memory.
+     */
+    private transient WriteAheadLog log;
+
+    /**
+     * Registry of mutations in progress, used to cut snapshots.
+     */
+    private transient MutationEpochs epochs;
+
+    /**
+     * Allows only one snapshot of the storage at a time, also held while shards are replaced.
+     */
+    private final transient ReentrantLock snapshotLock = new ReentrantLock();
+
+    /**
+     * Allows only one compaction of the write-ahead log at a time.
+     */
+    private final transient ReentrantLock compactionLock = new ReentrantLock();
+
+    /**
+     * Set if the write-ahead log must be compacted regardless of its size
+     * (it does not reflect replaced shards yet).
+     */
+    private transient volatile boolean isCompactionRequested;
+
+    /**
+     * Counters of operations of the storage.
+     */
+    private final transient StorageMetrics metrics = new StorageMetrics();
+
+    /**
+     * Open scans of the storage.
+     */
+    private final transient StorageScanner scanner = new StorageScanner();
+
+    /**
+     * Writer of snapshots to a local file, or null if snapshots are disabled.
+     */
+    private transient StorageSnapshotter snapshotter;
+
+    /**
+     * Interval of periodic snapshots in milliseconds, 0 for snapshots only on demand.
+     */
+    private transient long snapshotIntervalMs;
+
+    /**
+     * Default constructor that keeps values on the heap and starts the trimming task.
      */
     public StorageMap() {
+        this(new StorageProperties());
+    }
+
+    /**
+     * Constructs the storage with the given configuration, replays the write-ahead log (if configured)
+     * and starts the trimming task.
+     *
+     * @param properties configuration of the storage
+     * @throws UncheckedIOException if the write-ahead log cannot be replayed or opened
+     */
+    @Autowired
+    public StorageMap(StorageProperties properties) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int shardCount = properties.getShards() > 0 ? properties.getShards() : processors;
+        mode = properties.getMode();
+        evictionPolicy = properties.getEvictionPolicy();
+        isOrdered = properties.isOrderedIndex();
+        shardMaxEntries = divideLimit(properties.getMaxEntries(), shardCount);
+        shardMaxMemoryBytes = divideLimit(
+                properties.getMaxMemory() == null ? 0L : properties.getMaxMemory().toBytes(), shardCount);
+        epochs = new MutationEpochs();
+        if (properties.getWalDir() != null && !properties.getWalDir().isBlank()) {
+            log = new WriteAheadLog(Path.of(properties.getWalDir()), properties.getWalFsyncPolicy(),
+                    properties.getWalFsyncInterval().toMillis(), properties.getWalCompactionMinSize().toBytes(),
+                    epochs);
+        }
+        if (properties.getSnapshotPath() != null && !properties.getSnapshotPath().isBlank()) {
+            snapshotter = new StorageSnapshotter(Path.of(properties.getSnapshotPath()));
+            snapshotIntervalMs = properties.getSnapshotInterval().toMillis();
+        }
+        shards = createShards(shardCount, 16);
+        maintenanceThreads = properties.getMaintenanceThreads() > 0
+                ? properties.getMaintenanceThreads() : Math.min(shardCount, processors);
+        if (log != null) {
+            try {
+                replayLog();
+                log.open();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open write-ahead log in " + properties.getWalDir(), e);
+            }
+        }
         startTrim();
     }
 
@@ -70,6 +215,17 @@ public class StorageMap implements Externalizable {
         return (ttlMs != null) && (ttlMs <= MAX_TTL_MS);
     }
 
+    /**
+     * Splits the limit of the storage evenly between shards.
+     *
+     * @param limit      the limit of the storage, 0 for unlimited
+     * @param shardCount the number of shards
+     * @return the limit of one shard, 0 for unlimited
+     */
+    private static long divideLimit(long limit, int shardCount) {
+        return limit <= 0 ? 0L : (limit + shardCount - 1) / shardCount;
+    }
+
     /**
      * Adds a value to the storage with the default TTL.
      *
@@ -78,8 +234,7 @@ public class StorageMap implements Externalizable {
      * @throws NullPointerException if key or value is null
      */
     public void putValue(String key, String value) throws NullPointerException {
-        RecordValue newRecordValue = new RecordValue(value, DEFAULT_TTL_MS);
-        storage.put(key, newRecordValue);
+        putValueTtlMs(key, value, DEFAULT_TTL_MS);
     }
 
     /**
@@ -103,11 +258,7 @@ public class StorageMap implements Externalizable {
      * @throws NullPointerException if key or value is null
      */
     public void putValueTtlMs(String key, String value, Long ttlMs) throws NullPointerException {
-        if (!isTtlCorrect(ttlMs)) {
-            ttlMs = DEFAULT_TTL_MS;
-        }
-        RecordValue recordValue = new RecordValue(value, ttlMs);
-        storage.put(key, recordValue);
+        upsertValueTtlMs(key, value, ttlMs);
     }
 
     /**
@@ -119,34 +270,94 @@ public class StorageMap implements Externalizable {
      * @throws NullPointerException if key or value is null
      */
     public void putValueTtlSeconds(String key, String value, Long ttlSeconds) throws NullPointerException {
+        upsertValue(key, value, ttlSeconds);
+    }
+
+    /**
+     * Adds or replaces a value in the storage with the specified time to live in seconds
+     * using a single atomic operation on the storage.
+     *
+     * @param key        the key for the record
+     * @param value      the value to be stored
+     * @param ttlSeconds the time to live in seconds (null for default TTL)
+     * @return true if a valid (not expired) value was replaced, false otherwise
+     * @throws NullPointerException if key or value is null
+     */
+    public boolean upsertValue(String key, String value, Long ttlSeconds) throws NullPointerException {
         Long ttlMs = null;
         if (isTtlCorrect(ttlSeconds)) {
             ttlMs = ttlSeconds * 1000;
         }
-        putValueTtlMs(key, value, ttlMs);
+        return upsertValueTtlMs(key, value, ttlMs);
+    }
+
+    /**
+     * Adds or replaces a value in the storage with the specified time to live in milliseconds
+     * using a single atomic operation on the storage.
+     *
+     * @param key   the key for the record
+     * @param value the value to be stored
+     * @param ttlMs the time to live in milliseconds (null for default TTL)
+     * @return true if a valid (not expired) value was replaced, false otherwise
+     * @throws NullPointerException if key or value is null
+     */
+    public boolean upsertValueTtlMs(String key, String value, Long ttlMs) throws NullPointerException {
+        return upsertValueTtlMs(key, value == null ? null : value.getBytes(StandardCharsets.UTF_8), ttlMs);
+    }
+
+    /**
+     * Adds or replaces a value given as UTF-8 bytes in the storage with the specified time to live
+     * in milliseconds using a single atomic operation on the storage. The array is kept by the storage
+     * and must not be modified.
+     *
+     * @param key   the key for the record
+     * @param value UTF-8 bytes of the value to be stored
+     * @param ttlMs the time to live in milliseconds (null for default TTL)
+     * @return true if a valid (not expired) value was replaced, false otherwise
+     * @throws NullPointerException if key is null
+     */
+    public boolean upsertValueTtlMs(String key, byte[] value, Long ttlMs) throws NullPointerException {
+        Objects.requireNonNull(key);
+        if (!isTtlCorrect(ttlMs)) {
+            ttlMs = DEFAULT_TTL_MS;
+        }
+        long currentTime = System.currentTimeMillis();
+        boolean isValueReplaced = shardFor(key).upsert(key, value, currentTime + ttlMs, currentTime);
+        metrics.recordSet(isValueReplaced);
+        return isValueReplaced;
     }
 
     /**
      * Gets a value from the storage.
+     * An expired record found by the lookup is removed from the storage immediately.
      *
      * @param key the key for the record
      * @return the record value or null if the key is not valid or does not exist
      */
     public RecordValue getValue(String key) {
-        if (!isKeyValid(key)) {
+        if (key == null) {
             return null;
         }
-        return storage.get(key);
+        RecordValue recordValue = shardFor(key).get(key, System.currentTimeMillis());
+        metrics.recordRead(recordValue != null);
+        return recordValue;
     }
 
     /**
      * Removes a value from the storage.
      *
      * @param key the key for the record
-     * @return the removed record value or null if the key does not exist
+     * @return the removed record value or null if the key does not exist or the record is expired
      */
     public RecordValue removeValue(String key) {
-        return storage.remove(key);
+        if (key == null) {
+            return null;
+        }
+        RecordValue removedValue = shardFor(key).remove(key, System.currentTimeMillis());
+        if (removedValue != null) {
+            metrics.recordRemove();
+        }
+        return removedValue;
     }
 
     /**
@@ -156,19 +367,296 @@ public class StorageMap implements Externalizable {
      * @return true if the key is valid, false otherwise
      */
     public boolean isKeyValid(String key) {
-        return isKeyExist(key) && (storage.get(key).getExpirationTime() > System.currentTimeMillis());
+        if (key == null) {
+            return false;
+        }
+        return shardFor(key).isKeyValid(key, System.currentTimeMillis());
+    }
+
+    /**
+     * Reads the next page of keys of valid records without locking the storage or copying its key set.
+     * The scan is weakly consistent: records existing during the whole scan are returned once, records
+     * put or removed during the scan may be returned or not (see {@link StorageScanner}).
+     *
+     * @param cursor       0 to start a new scan, or the cursor returned with the previous page
+     * @param pattern      glob pattern of keys ({@code *} for any characters, {@code ?} for one character),
+     *                     null to match all keys
+     * @param count        number of entries to examine, the page may have fewer keys
+     * @param isWithValues true to return records of the keys
+     * @return the page, or null if the cursor is unknown or closed
+     */
+    public StorageScanPage scan(long cursor, String pattern, int count, boolean isWithValues) {
+        return scanner.scan(shards, cursor, pattern, count, isWithValues, System.currentTimeMillis());
+    }
+
+    /**
+     * Checks if keys are kept in the ordered index, so ranges and prefixes of keys can be queried.
+     *
+     * @return true if the ordered index is enabled
+     */
+    public boolean isOrdered() {
+        return isOrdered;
+    }
+
+    /**
+     * Reads a page of keys of valid records of the range in ascending order. The ordered indexes of the shards
+     * are merged lazily without locking the storage, so writers are not blocked. The listing is weakly
+     * consistent: records existing during the whole listing are returned, records put or removed during
+     * the listing may be returned or not.
+     *
+     * @param fromKey      the lowest key of the range (inclusive), null for no lower bound
+     * @param toKey        the highest key of the range (exclusive), null for no upper bound
+     * @param limit        maximum number of keys of the page
+     * @param isWithValues true to return records of the keys
+     * @return the page with the lowest key of the next page (null if the range is complete)
+     * @throws IllegalStateException if the ordered index is disabled
+     */
+    public StorageRangePage range(String fromKey, String toKey, int limit, boolean isWithValues) {
+        requireOrdered();
+        List<String> keys = new ArrayList<>();
+        List<RecordValue> values = isWithValues ? new ArrayList<>() : null;
+        if (isEmptyRange(fromKey, toKey)) {
+            return new StorageRangePage(null, keys, values);
+        }
+        long currentTime = System.currentTimeMillis();
+        StorageShard[] rangeShards = shards;
+        Iterator<String> iterator = new OrderedKeyIterator(rangeShards, fromKey, toKey);
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            StorageShard shard = shardFor(rangeShards, key);
+            RecordValue recordValue = null;
+            if (isWithValues) {
+                recordValue = shard.getRaw(key);
+                if (recordValue == null || !recordValue.isValid(currentTime)) {
+                    continue;
+                }
+            } else if (!shard.isKeyValid(key, currentTime)) {
+                continue;
+            }
+            if (keys.size() == limit) {
+                return new StorageRangePage(key, keys, values);
+            }
+            keys.add(key);
+            if (isWithValues) {
+                values.add(recordValue);
+            }
+        }
+        return new StorageRangePage(null, keys, values);
+    }
+
+    /**
+     * Counts keys of valid records of the range without locking the storage.
+     *
+     * @param fromKey the lowest key of the range (inclusive), null for no lower bound
+     * @param toKey   the highest key of the range (exclusive), null for no upper bound
+     * @return the number of keys
+     * @throws IllegalStateException if the ordered index is disabled
+     */
+    public long countRange(String fromKey, String toKey) {
+        requireOrdered();
+        if (isEmptyRange(fromKey, toKey)) {
+            return 0L;
+        }
+        long currentTime = System.currentTimeMillis();
+        StorageShard[] rangeShards = shards;
+        long count = 0;
+        Iterator<String> iterator = new OrderedKeyIterator(rangeShards, fromKey, toKey);
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            if (shardFor(rangeShards, key).isKeyValid(key, currentTime)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes records of the range one by one, as {@link #removeValue} does. The range is not removed
+     * atomically: records put to the range during the removal may stay in the storage.
+     *
+     * @param fromKey the lowest key of the range (inclusive), null for no lower bound
+     * @param toKey   the highest key of the range (exclusive), null for no upper bound
+     * @return the number of removed valid records
+     * @throws IllegalStateException if the ordered index is disabled
+     */
+    public long removeRange(String fromKey, String toKey) {
+        requireOrdered();
+        if (isEmptyRange(fromKey, toKey)) {
+            return 0L;
+        }
+        long removedCount = 0;
+        Iterator<String> iterator = new OrderedKeyIterator(shards, fromKey, toKey);
+        while (iterator.hasNext()) {
+            if (removeValue(iterator.next()) != null) {
+                removedCount++;
+            }
+        }
+        return removedCount;
+    }
+
+    /**
+     * Counts keys of valid records starting with the prefix.
+     *
+     * @param prefix the prefix of keys, empty for all keys
+     * @return the number of keys
+     * @throws IllegalStateException if the ordered index is disabled
+     */
+    public long countPrefix(String prefix) {
+        return countRange(prefix, prefixEnd(prefix));
+    }
+
+    /**
+     * Removes records whose keys start with the prefix (see {@link #removeRange}).
+     *
+     * @param prefix the prefix of keys, empty for all keys
+     * @return the number of removed valid records
+     * @throws IllegalStateException if the ordered index is disabled
+     */
+    public long removePrefix(String prefix) {
+        return removeRange(prefix, prefixEnd(prefix));
+    }
+
+    /**
+     * Gets the lowest key greater than all keys starting with the prefix, the exclusive upper bound
+     * of the range of the prefix.
+     *
+     * @param prefix the prefix of keys
+     * @return the upper bound, or null if keys of the prefix have no upper bound
+     */
+    public static String prefixEnd(String prefix) {
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return null;
+        }
+        return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+    }
+
+    /**
+     * Checks that the ordered index is enabled.
+     *
+     * @throws IllegalStateException if the ordered index is disabled
+     */
+    private void requireOrdered() {
+        if (!isOrdered) {
+            throw new IllegalStateException("Ordered index is disabled");
+        }
+    }
+
+    /**
+     * Checks if the range has no keys because its bounds are not ascending.
+     *
+     * @param fromKey the lowest key of the range (inclusive), null for no lower bound
+     * @param toKey   the highest key of the range (exclusive), null for no upper bound
+     * @return true if the range is empty
+     */
+    private static boolean isEmptyRange(String fromKey, String toKey) {
+        return fromKey != null && toKey != null && fromKey.compareTo(toKey) >= 0;
     }
 
     /**
-     * Serializes the state of this object.
+     * Writes the storage as it was at one point in time (see {@link #readSnapshot}) to the stream
+     * in the {@link StorageSnapshotFormat binary snapshot format}. The stream is not closed.
+     *
+     * @param out the stream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void dump(OutputStream out) throws IOException {
+        long startTime = System.nanoTime();
+        long cutTime = System.currentTimeMillis();
+        StorageSnapshotFormat.Writer writer = new StorageSnapshotFormat.Writer(out, cutTime);
+        readSnapshot(cutTime, (key, recordValue) ->
+                writer.write(key, recordValue.getValueUtf8(), recordValue.getExpirationTime()));
+        writer.finish();
+        metrics.recordDump(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Reads records from the stream in the {@link StorageSnapshotFormat binary snapshot format}
+     * and puts them to the storage in {@link EnumLoadMode#MERGE merge mode}.
+     * The stream is not closed.
+     *
+     * @param in the stream to read from
+     * @return the number of read records
+     * @throws IOException if an I/O error occurs or the snapshot is corrupted
+     */
+    public long load(InputStream in) throws IOException {
+        return load(in, EnumLoadMode.MERGE);
+    }
+
+    /**
+     * Reads records from the stream in the {@link StorageSnapshotFormat binary snapshot format}
+     * and puts them to the storage. TTL of records is counted from the start of loading.
+     * The stream is decoded incrementally and records are put on the maintenance threads.
+     * <p>
+     * In {@link EnumLoadMode#REPLACE replace mode} records are put into new shards, pre-sized for the current
+     * number of entries, which are swapped in after the whole stream is read; requests are served from
+     * the previous records until then, and the storage is not changed if loading fails. Memory for both
+     * sets of records is needed during loading. The write-ahead log (if any) is compacted after the swap.
+     * <p>
+     * In {@link EnumLoadMode#MERGE merge mode} records are upserted into the live storage and logged,
+     * so records read before a failure stay in the storage.
+     * The stream is not closed.
+     *
+     * @param in   the stream to read from
+     * @param mode the mode of loading
+     * @return the number of read records
+     * @throws IOException if an I/O error occurs or the snapshot is corrupted
+     */
+    public long load(InputStream in, EnumLoadMode mode) throws IOException {
+        long startTime = System.nanoTime();
+        StorageLoader loader = new StorageLoader(maintenanceThreads);
+        if (mode == EnumLoadMode.MERGE) {
+            long recordCount = loader.load(in, (key, value, expirationTime, currentTime) ->
+                    shardFor(key).upsert(key, value, expirationTime, currentTime));
+            metrics.recordLoad(System.nanoTime() - startTime);
+            return recordCount;
+        }
+        StorageShard[] loadedShards = createShards(shards.length,
+                (int) Math.min(Integer.MAX_VALUE, Math.max(16L, size() / shards.length)));
+        long recordCount = loader.load(in, (key, value, expirationTime, currentTime) ->
+                shardFor(loadedShards, key).restore(key, value, expirationTime, currentTime));
+        compactionLock.lock();
+        try {
+            snapshotLock.lock();
+            try {
+                shards = loadedShards;
+            } finally {
+                snapshotLock.unlock();
+            }
+            epochs.advance();
+            if (log != null) {
+                isCompactionRequested = true;
+                compactLog();
+            }
+        } finally {
+            compactionLock.unlock();
+        }
+        metrics.recordLoad(System.nanoTime() - startTime);
+        return recordCount;
+    }
+
+    /**
+     * Serializes the state of this object in the {@link StorageSnapshotFormat binary snapshot format}.
      *
      * @param out the output stream to write to
      * @throws IOException if an I/O error occurs
      */
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
-        out.writeObject(storage);
-        out.writeLong(System.currentTimeMillis());
+        dump(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+        });
     }
 
     /**
@@ -180,32 +668,71 @@ public class StorageMap implements Externalizable {
      */
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-        storage = new ConcurrentHashMap<>((ConcurrentHashMap<String, RecordValue>) in.readObject());
-        long oldReferencePointTime = in.readLong();
-        long referencePointTime = System.currentTimeMillis();
-        long deltaTime = referencePointTime - oldReferencePointTime;
-        for (RecordValue recordValue : storage.values()) {
-            recordValue.setExpirationTime(recordValue.getExpirationTime() + deltaTime);
-        }
-        scheduler = Executors.newScheduledThreadPool(1);
+        load(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return in.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return in.read(b, off, len);
+            }
+        });
     }
 
     /**
      * Starts the trimming process to remove expired records.
+     * The first trim is shifted by a half of the delay, so trim ticks do not coincide with
+     * expiration of records put with whole-second TTL right after the start.
      */
     public void startTrim() {
         if (scheduler == null || scheduler.isShutdown()) {
-            scheduler = Executors.newScheduledThreadPool(1);
+            scheduler = Executors.newScheduledThreadPool(2);
+        }
+        if (maintenancePool == null || maintenancePool.isShutdown()) {
+            maintenancePool = Executors.newFixedThreadPool(maintenanceThreads);
+        }
+        scheduler.scheduleAtFixedRate(this::trim, TRIM_DELAY_MS / 2, TRIM_DELAY_MS, TimeUnit.MILLISECONDS);
+        if (snapshotter != null && snapshotIntervalMs > 0) {
+            scheduler.scheduleWithFixedDelay(() -> snapshotter.run(this),
+                    snapshotIntervalMs, snapshotIntervalMs, TimeUnit.MILLISECONDS);
         }
-        scheduler.scheduleAtFixedRate(this::trim, TRIM_DELAY_MS, TRIM_DELAY_MS, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Stops the trimming process by shutting down the scheduler.
+     * Starts writing a snapshot to the local file in the background.
+     * If a snapshot is already being written, no new one is started.
+     *
+     * @return true if snapshots are enabled, false otherwise
+     */
+    public boolean requestSnapshot() {
+        if (snapshotter == null) {
+            return false;
+        }
+        scheduler.execute(() -> snapshotter.run(this));
+        return true;
+    }
+
+    /**
+     * Stops the trimming process by shutting down the scheduler and the maintenance pool.
      */
-    @PreDestroy
     public void stopTrim() {
         scheduler.shutdownNow();
+        maintenancePool.shutdownNow();
+    }
+
+    /**
+     * Stops the trimming process and closes the write-ahead log, flushing it to the disk.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        stopTrim();
+        if (log != null) {
+            log.close();
+        }
     }
 
     @Override
@@ -217,55 +744,331 @@ public class StorageMap implements Externalizable {
             return false;
         }
         StorageMap that = (StorageMap) o;
-        if (storage.size() != that.storage.size()) {
+        if (size() != that.size()) {
             return false;
         }
-        for (String key : storage.keySet()) {
-            if (!that.storage.containsKey(key)) {
-                return false;
-            }
-            RecordValue firstRecord = storage.get(key);
-            RecordValue secondRecord = that.storage.get(key);
-
-            if (firstRecord == null && secondRecord != null || firstRecord != null && secondRecord == null) {
-                return false;
-            }
+        for (StorageShard shard : shards) {
+            for (String key : shard.entries().keySet()) {
+                RecordValue firstRecord = shard.getRaw(key);
+                RecordValue secondRecord = that.shardFor(key).getRaw(key);
 
-            if (firstRecord != null) {
-                if (Math.abs(firstRecord.getTtlMs() - secondRecord.getTtlMs()) > DELTA_TIME_MS ||
-                        !Objects.equals(firstRecord.getValue(), secondRecord.getValue())) {
+                if (firstRecord == null && secondRecord != null || firstRecord != null && secondRecord == null) {
                     return false;
                 }
+
+                if (firstRecord != null) {
+                    if (Math.abs(firstRecord.getTtlMs() - secondRecord.getTtlMs()) > DELTA_TIME_MS ||
+                            !Objects.equals(firstRecord.getValue(), secondRecord.getValue())) {
+                        return false;
+                    }
+                }
             }
         }
         return true;
     }
 
     /**
-     * Checks if a key de-facto exists in the storage (but the key may not be valid).
+     * Gets the number of entries in the storage (including expired ones which are not trimmed yet).
      *
-     * @param key the key to check
-     * @return true if the key exists, false otherwise
+     * @return the number of entries
+     */
+    public long size() {
+        long size = 0;
+        for (StorageShard shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the number of shards of the storage.
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Gets the estimated memory usage of the entries.
+     *
+     * @return the estimated memory usage in bytes
+     */
+    public long getMemoryUsage() {
+        long memoryUsage = 0;
+        for (StorageShard shard : shards) {
+            memoryUsage += shard.getMemoryUsage();
+        }
+        return memoryUsage;
+    }
+
+    /**
+     * Gets the number of records evicted because the storage exceeded its limits.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount() {
+        long evictionCount = 0;
+        for (StorageShard shard : shards) {
+            evictionCount += shard.getEvictionCount();
+        }
+        return evictionCount;
+    }
+
+    /**
+     * Gets counters of operations of the storage.
+     *
+     * @return the counters
+     */
+    public StorageMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets statistics of the storage.
+     *
+     * @return statistics names and values
      */
-    private boolean isKeyExist(String key) {
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("entries", size());
+        stats.put("shards", (long) getShardCount());
+        stats.put("memoryUsageBytes", getMemoryUsage());
+        stats.put("evictions", getEvictionCount());
+        stats.put("hits", metrics.getHitCount());
+        stats.put("misses", metrics.getMissCount());
+        stats.put("sets", metrics.getSetCount());
+        stats.put("overwrites", metrics.getOverwriteCount());
+        stats.put("removes", metrics.getRemoveCount());
+        stats.put("expirations", metrics.getExpirationCount());
+        stats.put("offHeapReservedBytes", getOffHeapReservedBytes());
+        stats.put("offHeapUsedBytes", getOffHeapUsedBytes());
+        stats.put("walSizeBytes", getWalSize());
+        if (snapshotter != null) {
+            stats.put("snapshotDurationMs", snapshotter.getLastDurationMs());
+            stats.put("snapshotSizeBytes", snapshotter.getLastSizeBytes());
+            stats.put("snapshotLastSuccessTime", snapshotter.getLastSuccessTime());
+            stats.put("snapshotFailures", snapshotter.getFailureCount());
+        }
+        return stats;
+    }
+
+    /**
+     * Gets the size of the write-ahead log.
+     *
+     * @return the size of the log in bytes, or 0 if the storage is kept only in memory
+     */
+    public long getWalSize() {
+        return log == null ? 0L : log.getSize();
+    }
+
+    /**
+     * Gets the number of bytes of off-heap memory reserved for values.
+     *
+     * @return the number of reserved bytes, or 0 if values are kept on the heap
+     */
+    public long getOffHeapReservedBytes() {
+        long reservedBytes = 0;
+        for (StorageShard shard : shards) {
+            reservedBytes += shard.getOffHeapReservedBytes();
+        }
+        return reservedBytes;
+    }
+
+    /**
+     * Gets the number of bytes of off-heap memory occupied by values.
+     *
+     * @return the number of used bytes, or 0 if values are kept on the heap
+     */
+    public long getOffHeapUsedBytes() {
+        long usedBytes = 0;
+        for (StorageShard shard : shards) {
+            usedBytes += shard.getOffHeapUsedBytes();
+        }
+        return usedBytes;
+    }
+
+    /**
+     * Gets the number of deadlines in the expiry indexes of all shards.
+     *
+     * @return the number of indexed deadlines
+     */
+    long expiryIndexSize() {
+        long size = 0;
+        for (StorageShard shard : shards) {
+            size += shard.expiryIndexSize();
+        }
+        return size;
+    }
+
+    /**
+     * Trims expired records of all shards sequentially in the calling thread,
+     * without the maintenance pool.
+     */
+    void trimShards() {
+        for (StorageShard shard : shards) {
+            shard.trim();
+        }
+    }
+
+    /**
+     * Passes the records of the storage as they were at one point in time to the consumer.
+     * Readers and writers are not stopped: records mutated while the snapshot is read
+     * are taken from the pre-images saved by the mutations (see {@link MutationEpochs}).
+     * A record mutated during the snapshot may be passed twice with the same value.
+     * Only one snapshot is read at a time.
+     *
+     * @param cutTime  the time of the cut in milliseconds since the epoch, expired records are skipped
+     * @param consumer receiver of the records
+     * @throws IOException if the consumer fails
+     */
+    void readSnapshot(long cutTime, StorageShard.SnapshotConsumer consumer) throws IOException {
+        snapshotLock.lock();
         try {
-            return storage.containsKey(key);
-        } catch (NullPointerException e) {
-            return false;
+            Map<String, RecordValue> preImages = epochs.beginSnapshot();
+            try {
+                for (StorageShard shard : shards) {
+                    shard.readSnapshot(cutTime, preImages, consumer);
+                }
+                for (Map.Entry<String, RecordValue> entry : preImages.entrySet()) {
+                    RecordValue recordValue = entry.getValue();
+                    if (recordValue != MutationEpochs.ABSENT && recordValue.isValid(cutTime)) {
+                        consumer.accept(entry.getKey(), recordValue);
+                    }
+                }
+            } finally {
+                epochs.endSnapshot();
+            }
+        } finally {
+            snapshotLock.unlock();
         }
     }
 
     /**
-     * Trims expired records from the storage.
+     * Gets the shard responsible for the key.
+     * The shard is chosen by the high bits of the mixed hash, so keys of one shard still spread
+     * evenly over the buckets of its map.
+     *
+     * @param key the key for the record
+     * @return the shard of the key
      */
-    private void trim() {
+    private StorageShard shardFor(String key) {
+        return shardFor(shards, key);
+    }
+
+    /**
+     * Gets the shard responsible for the key among the given shards.
+     *
+     * @param shards the shards of the storage
+     * @param key    the key for the record
+     * @return the shard of the key
+     */
+    private static StorageShard shardFor(StorageShard[] shards, String key) {
+        long hash = (key.hashCode() * 0x9E3779B9L) & 0xFFFFFFFFL;
+        return shards[(int) ((hash * shards.length) >>> 32)];
+    }
+
+    /**
+     * Creates empty shards with the configured storage mode and limits.
+     *
+     * @param shardCount      the number of shards
+     * @param initialCapacity expected number of entries of one shard
+     * @return the new shards
+     */
+    private StorageShard[] createShards(int shardCount, int initialCapacity) {
+        StorageShard[] newShards = new StorageShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            OffHeapArena arena = mode == EnumStorageMode.OFF_HEAP ? new OffHeapArena() : null;
+            StorageEvictor evictor = new StorageEvictor(evictionPolicy, shardMaxEntries, shardMaxMemoryBytes);
+            newShards[i] = new StorageShard(arena, evictor, log, epochs, metrics, isOrdered, initialCapacity);
+        }
+        return newShards;
+    }
+
+    /**
+     * Rebuilds the storage from the write-ahead log.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void replayLog() throws IOException {
         long currentTime = System.currentTimeMillis();
-        for (Map.Entry<String, RecordValue> entry : storage.entrySet()) {
-            storage.computeIfPresent(entry.getKey(), (keyInternal, valueInternal) -> {
-                if (valueInternal.getExpirationTime() == null || valueInternal.getExpirationTime() < currentTime) {
-                    return null;
+        log.replay(new WriteAheadLog.Replayer() {
+            @Override
+            public void put(String key, byte[] value, long expirationTime) {
+                shardFor(key).restore(key, value, expirationTime, currentTime);
+            }
+
+            @Override
+            public void remove(String key) {
+                shardFor(key).restoreRemoval(key);
+            }
+
+            @Override
+            public void clear() {
+                for (StorageShard shard : shards) {
+                    shard.restoreClear();
+                }
+            }
+        });
+    }
+
+    /**
+     * Compacts the write-ahead log, writing valid records of all shards as the snapshot.
+     * Waits while the log is being compacted by another thread.
+     * If compaction fails, the log keeps its older segments and compaction is retried on a later tick.
+     */
+    void compactLog() {
+        compactionLock.lock();
+        try {
+            isCompactionRequested = false;
+            log.compact(writer -> {
+                long currentTime = System.currentTimeMillis();
+                for (StorageShard shard : shards) {
+                    for (Map.Entry<String, StoredValue> entry : shard.entries().entrySet()) {
+                        RecordValue recordValue = entry.getValue().toRecordValue();
+                        if (recordValue != null && recordValue.isValid(currentTime)) {
+                            writer.put(entry.getKey(), recordValue.getValueUtf8(), recordValue.getExpirationTime());
+                        }
+                    }
+                }
+            });
+        } catch (IOException e) {
+            // older segments are kept, compaction is retried later
+            isCompactionRequested = true;
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /**
+     * Trims expired records from all shards. Each shard is trimmed on the maintenance pool,
+     * a shard which is still being trimmed since the previous tick is skipped.
+     * The tick is recorded in the metrics when the last shard is trimmed. Idle scan cursors are closed.
+     * Starts compaction of the write-ahead log if it has grown enough or must reflect replaced shards.
+     */
+    private void trim() {
+        long startTime = System.nanoTime();
+        StorageShard[] tickShards = shards;
+        AtomicInteger remainingShards = new AtomicInteger(tickShards.length);
+        LongAdder expiredCount = new LongAdder();
+        for (StorageShard shard : tickShards) {
+            maintenancePool.execute(() -> {
+                expiredCount.add(shard.trim());
+                if (remainingShards.decrementAndGet() == 0) {
+                    metrics.recordTrim(System.nanoTime() - startTime, expiredCount.sum());
+                }
+            });
+        }
+        scanner.closeIdle(System.currentTimeMillis());
+        if (log != null && (isCompactionRequested || log.needsCompaction())) {
+            maintenancePool.execute(() -> {
+                if (compactionLock.tryLock()) { // skipped if the log is being compacted
+                    try {
+                        compactLog();
+                    } finally {
+                        compactionLock.unlock();
+                    }
                 }
-                return valueInternal;
             });
         }
     }
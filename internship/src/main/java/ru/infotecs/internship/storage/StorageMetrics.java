@@ -0,0 +1,277 @@
+package ru.infotecs.internship.storage;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of operations of {@link StorageMap}, shared by its shards.
+ * Counters are striped ({@link LongAdder}), so recording does not make threads contend;
+ * they are monotonic and are read by a metrics registry.
+ */
+public class StorageMetrics {
+
+    /**
+     * Number of reads which found a valid record.
+     */
+    private final LongAdder hitCount = new LongAdder();
+
+    /**
+     * Number of reads which found no valid record.
+     */
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Number of writes of records.
+     */
+    private final LongAdder setCount = new LongAdder();
+
+    /**
+     * Number of writes which replaced a valid record.
+     */
+    private final LongAdder overwriteCount = new LongAdder();
+
+    /**
+     * Number of removals of valid records.
+     */
+    private final LongAdder removeCount = new LongAdder();
+
+    /**
+     * Number of expired records removed by trims or by lookups.
+     */
+    private final LongAdder expirationCount = new LongAdder();
+
+    /**
+     * Number of trim ticks.
+     */
+    private final LongAdder trimCount = new LongAdder();
+
+    /**
+     * Total duration of trim ticks in nanoseconds.
+     */
+    private final LongAdder trimTimeNs = new LongAdder();
+
+    /**
+     * Duration of the last trim tick in nanoseconds.
+     */
+    private volatile long lastTrimDurationNs;
+
+    /**
+     * Number of expired records removed by the last trim tick.
+     */
+    private volatile long lastTrimExpiredCount;
+
+    /**
+     * Number of dumps of the storage.
+     */
+    private final LongAdder dumpCount = new LongAdder();
+
+    /**
+     * Total duration of dumps in nanoseconds.
+     */
+    private final LongAdder dumpTimeNs = new LongAdder();
+
+    /**
+     * Number of loads into the storage.
+     */
+    private final LongAdder loadCount = new LongAdder();
+
+    /**
+     * Total duration of loads in nanoseconds.
+     */
+    private final LongAdder loadTimeNs = new LongAdder();
+
+    /**
+     * Records a read.
+     *
+     * @param isHit true if a valid record was found
+     */
+    void recordRead(boolean isHit) {
+        (isHit ? hitCount : missCount).increment();
+    }
+
+    /**
+     * Records a write.
+     *
+     * @param isOverwrite true if a valid record was replaced
+     */
+    void recordSet(boolean isOverwrite) {
+        setCount.increment();
+        if (isOverwrite) {
+            overwriteCount.increment();
+        }
+    }
+
+    /**
+     * Records a removal of a valid record.
+     */
+    void recordRemove() {
+        removeCount.increment();
+    }
+
+    /**
+     * Records removals of expired records.
+     *
+     * @param count the number of removed records
+     */
+    void recordExpirations(long count) {
+        expirationCount.add(count);
+    }
+
+    /**
+     * Records a completed trim tick.
+     *
+     * @param durationNs   duration of the tick in nanoseconds
+     * @param expiredCount number of expired records removed by the tick
+     */
+    void recordTrim(long durationNs, long expiredCount) {
+        trimCount.increment();
+        trimTimeNs.add(durationNs);
+        lastTrimDurationNs = durationNs;
+        lastTrimExpiredCount = expiredCount;
+    }
+
+    /**
+     * Records a completed dump.
+     *
+     * @param durationNs duration of the dump in nanoseconds
+     */
+    void recordDump(long durationNs) {
+        dumpCount.increment();
+        dumpTimeNs.add(durationNs);
+    }
+
+    /**
+     * Records a completed load.
+     *
+     * @param durationNs duration of the load in nanoseconds
+     */
+    void recordLoad(long durationNs) {
+        loadCount.increment();
+        loadTimeNs.add(durationNs);
+    }
+
+    /**
+     * Gets the number of reads which found a valid record.
+     *
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Gets the number of reads which found no valid record.
+     *
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Gets the number of writes of records.
+     *
+     * @return the number of writes
+     */
+    public long getSetCount() {
+        return setCount.sum();
+    }
+
+    /**
+     * Gets the number of writes which replaced a valid record.
+     *
+     * @return the number of overwrites
+     */
+    public long getOverwriteCount() {
+        return overwriteCount.sum();
+    }
+
+    /**
+     * Gets the number of removals of valid records.
+     *
+     * @return the number of removals
+     */
+    public long getRemoveCount() {
+        return removeCount.sum();
+    }
+
+    /**
+     * Gets the number of expired records removed by trims or by lookups.
+     *
+     * @return the number of expirations
+     */
+    public long getExpirationCount() {
+        return expirationCount.sum();
+    }
+
+    /**
+     * Gets the number of completed trim ticks.
+     *
+     * @return the number of ticks
+     */
+    public long getTrimCount() {
+        return trimCount.sum();
+    }
+
+    /**
+     * Gets the total duration of trim ticks.
+     *
+     * @return the duration in nanoseconds
+     */
+    public long getTrimTimeNs() {
+        return trimTimeNs.sum();
+    }
+
+    /**
+     * Gets the duration of the last trim tick.
+     *
+     * @return the duration in nanoseconds, 0 before the first tick
+     */
+    public long getLastTrimDurationNs() {
+        return lastTrimDurationNs;
+    }
+
+    /**
+     * Gets the number of expired records removed by the last trim tick.
+     *
+     * @return the number of records
+     */
+    public long getLastTrimExpiredCount() {
+        return lastTrimExpiredCount;
+    }
+
+    /**
+     * Gets the number of completed dumps.
+     *
+     * @return the number of dumps
+     */
+    public long getDumpCount() {
+        return dumpCount.sum();
+    }
+
+    /**
+     * Gets the total duration of dumps.
+     *
+     * @return the duration in nanoseconds
+     */
+    public long getDumpTimeNs() {
+        return dumpTimeNs.sum();
+    }
+
+    /**
+     * Gets the number of completed loads.
+     *
+     * @return the number of loads
+     */
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    /**
+     * Gets the total duration of loads.
+     *
+     * @return the duration in nanoseconds
+     */
+    public long getLoadTimeNs() {
+        return loadTimeNs.sum();
+    }
+}
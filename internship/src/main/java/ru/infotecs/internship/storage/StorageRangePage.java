@@ -0,0 +1,64 @@
+package ru.infotecs.internship.storage;
+
+import java.util.List;
+
+/**
+ * Page of ordered keys returned by {@link StorageMap#range}.
+ */
+public class StorageRangePage {
+
+    /**
+     * The lowest key of the next page, null if the range is complete.
+     */
+    private final String nextKey;
+
+    /**
+     * Keys of valid records in ascending order.
+     */
+    private final List<String> keys;
+
+    /**
+     * Records of the keys in the same order, null if values were not requested.
+     */
+    private final List<RecordValue> values;
+
+    /**
+     * Constructs a page.
+     *
+     * @param nextKey the lowest key of the next page, null if the range is complete
+     * @param keys    keys of valid records in ascending order
+     * @param values  records of the keys in the same order, null if values were not requested
+     */
+    public StorageRangePage(String nextKey, List<String> keys, List<RecordValue> values) {
+        this.nextKey = nextKey;
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Gets the lowest key of the next page, it is passed as the lowest key of the range to get the next page.
+     *
+     * @return the key, null if the range is complete
+     */
+    public String getNextKey() {
+        return nextKey;
+    }
+
+    /**
+     * Gets the keys of the page.
+     *
+     * @return keys of valid records in ascending order
+     */
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    /**
+     * Gets the records of the keys.
+     *
+     * @return records of the keys in the same order, null if values were not requested
+     */
+    public List<RecordValue> getValues() {
+        return values;
+    }
+}
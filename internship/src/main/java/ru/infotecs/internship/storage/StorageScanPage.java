@@ -0,0 +1,64 @@
+package ru.infotecs.internship.storage;
+
+import java.util.List;
+
+/**
+ * Page of keys returned by {@link StorageMap#scan}.
+ */
+public class StorageScanPage {
+
+    /**
+     * Cursor of the next page, 0 if the scan is complete.
+     */
+    private final long cursor;
+
+    /**
+     * Keys of valid records matching the pattern.
+     */
+    private final List<String> keys;
+
+    /**
+     * Records of the keys in the same order, null if values were not requested.
+     */
+    private final List<RecordValue> values;
+
+    /**
+     * Constructs a page.
+     *
+     * @param cursor cursor of the next page, 0 if the scan is complete
+     * @param keys   keys of valid records matching the pattern
+     * @param values records of the keys in the same order, null if values were not requested
+     */
+    public StorageScanPage(long cursor, List<String> keys, List<RecordValue> values) {
+        this.cursor = cursor;
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Gets the cursor of the next page.
+     *
+     * @return the cursor, 0 if the scan is complete
+     */
+    public long getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Gets the keys of the page.
+     *
+     * @return keys of valid records matching the pattern
+     */
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    /**
+     * Gets the records of the keys.
+     *
+     * @return records of the keys in the same order, null if values were not requested
+     */
+    public List<RecordValue> getValues() {
+        return values;
+    }
+}
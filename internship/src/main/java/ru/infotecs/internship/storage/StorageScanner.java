@@ -0,0 +1,199 @@
+package ru.infotecs.internship.storage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Open scans of the storage by cursors. A cursor keeps the iterator of the map of the current shard, so a page
+ * continues where the previous one stopped without locking the maps or copying their key sets.
+ * Iteration is weakly consistent: records existing during the whole scan are returned once, records
+ * put or removed during the scan may be returned or not. A scan continues over the shards it started with,
+ * even if they are replaced by loading.
+ * <p>
+ * A cursor is owned by one request at a time: it is taken out of the registry for the page
+ * and put back after it. Cursors idle for {@link #CURSOR_TIMEOUT_MS} are closed, and the least recently used
+ * cursor is closed if {@link #MAX_CURSORS} are open.
+ */
+class StorageScanner {
+
+    /**
+     * Maximum number of open cursors.
+     */
+    static final int MAX_CURSORS = 1024;
+
+    /**
+     * Time after which an unused cursor is closed in milliseconds.
+     */
+    static final long CURSOR_TIMEOUT_MS = 60_000L;
+
+    /**
+     * Position of a scan.
+     */
+    private static final class Cursor {
+
+        /**
+         * Shards being scanned.
+         */
+        private final StorageShard[] shards;
+
+        /**
+         * Index of the shard being scanned.
+         */
+        private int shardIndex;
+
+        /**
+         * Iterator of the shard being scanned, null before the shard is started.
+         */
+        private Iterator<Map.Entry<String, StoredValue>> iterator;
+
+        /**
+         * Time of the last page in milliseconds since the epoch.
+         */
+        private volatile long lastAccessTime;
+
+        /**
+         * Constructs a cursor at the beginning of the shards.
+         *
+         * @param shards shards to scan
+         */
+        private Cursor(StorageShard[] shards) {
+            this.shards = shards;
+        }
+    }
+
+    /**
+     * Open cursors by their identifiers.
+     */
+    private final ConcurrentHashMap<Long, Cursor> cursors = new ConcurrentHashMap<>();
+
+    /**
+     * Last identifier given to a cursor.
+     */
+    private final AtomicLong lastCursorId = new AtomicLong();
+
+    /**
+     * Reads the next page of a scan.
+     *
+     * @param shards       shards to scan if a new scan is started
+     * @param cursorId     0 to start a new scan, or the cursor returned with the previous page
+     * @param pattern      glob pattern of keys (see {@link #matches}), null to match all keys
+     * @param count        number of entries to examine, the page may have fewer keys
+     * @param isWithValues true to return records of the keys
+     * @param currentTime  the current time in milliseconds since the epoch
+     * @return the page, or null if the cursor is unknown or closed
+     */
+    StorageScanPage scan(StorageShard[] shards, long cursorId, String pattern, int count, boolean isWithValues,
+                         long currentTime) {
+        Cursor cursor;
+        if (cursorId == 0) {
+            cursor = new Cursor(shards);
+        } else {
+            cursor = cursors.remove(cursorId);
+            if (cursor == null) {
+                return null;
+            }
+        }
+        List<String> keys = new ArrayList<>();
+        List<RecordValue> values = isWithValues ? new ArrayList<>() : null;
+        int examinedCount = 0;
+        while (examinedCount < count && cursor.shardIndex < cursor.shards.length) {
+            if (cursor.iterator == null) {
+                cursor.iterator = cursor.shards[cursor.shardIndex].iterator();
+            }
+            if (!cursor.iterator.hasNext()) {
+                cursor.shardIndex++;
+                cursor.iterator = null;
+                continue;
+            }
+            Map.Entry<String, StoredValue> entry = cursor.iterator.next();
+            examinedCount++;
+            String key = entry.getKey();
+            if (pattern != null && !matches(pattern, key)) {
+                continue;
+            }
+            if (isWithValues) {
+                RecordValue recordValue = entry.getValue().toRecordValue();
+                if (recordValue != null && recordValue.isValid(currentTime)) {
+                    keys.add(key);
+                    values.add(recordValue);
+                }
+            } else if (entry.getValue().isValid(currentTime)) {
+                keys.add(key);
+            }
+        }
+        if (cursor.shardIndex == cursor.shards.length) {
+            return new StorageScanPage(0L, keys, values);
+        }
+        long nextCursorId = cursorId == 0 ? lastCursorId.incrementAndGet() : cursorId;
+        cursor.lastAccessTime = currentTime;
+        if (cursors.size() >= MAX_CURSORS) {
+            closeLeastRecentlyUsed();
+        }
+        cursors.put(nextCursorId, cursor);
+        return new StorageScanPage(nextCursorId, keys, values);
+    }
+
+    /**
+     * Closes cursors which were not used for {@link #CURSOR_TIMEOUT_MS}.
+     *
+     * @param currentTime the current time in milliseconds since the epoch
+     */
+    void closeIdle(long currentTime) {
+        cursors.values().removeIf(cursor -> currentTime - cursor.lastAccessTime >= CURSOR_TIMEOUT_MS);
+    }
+
+    /**
+     * Closes the cursor which was not used for the longest time.
+     */
+    private void closeLeastRecentlyUsed() {
+        Long oldestCursorId = null;
+        long oldestAccessTime = Long.MAX_VALUE;
+        for (Map.Entry<Long, Cursor> entry : cursors.entrySet()) {
+            if (entry.getValue().lastAccessTime < oldestAccessTime) {
+                oldestAccessTime = entry.getValue().lastAccessTime;
+                oldestCursorId = entry.getKey();
+            }
+        }
+        if (oldestCursorId != null) {
+            cursors.remove(oldestCursorId);
+        }
+    }
+
+    /**
+     * Checks if the key matches the glob pattern: {@code *} matches any characters,
+     * {@code ?} matches one character, other characters match themselves.
+     *
+     * @param pattern the glob pattern
+     * @param key     the key to check
+     * @return true if the key matches the pattern
+     */
+    static boolean matches(String pattern, String key) {
+        int patternIndex = 0;
+        int keyIndex = 0;
+        int starIndex = -1;
+        int starKeyIndex = 0;
+        while (keyIndex < key.length()) {
+            if (patternIndex < pattern.length()
+                    && (pattern.charAt(patternIndex) == '?' || pattern.charAt(patternIndex) == key.charAt(keyIndex))) {
+                patternIndex++;
+                keyIndex++;
+            } else if (patternIndex < pattern.length() && pattern.charAt(patternIndex) == '*') {
+                starIndex = patternIndex++;
+                starKeyIndex = keyIndex;
+            } else if (starIndex >= 0) {
+                patternIndex = starIndex + 1;
+                keyIndex = ++starKeyIndex;
+            } else {
+                return false;
+            }
+        }
+        while (patternIndex < pattern.length() && pattern.charAt(patternIndex) == '*') {
+            patternIndex++;
+        }
+        return patternIndex == pattern.length();
+    }
+}
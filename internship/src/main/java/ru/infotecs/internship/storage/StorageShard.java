@@ -0,0 +1,605 @@
+package ru.infotecs.internship.storage;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One partition of {@link StorageMap}.
+ * Each shard has its own map, expiry index, off-heap arena and eviction bookkeeping,
+ * so maintenance of one shard does not touch the others.
+ * If the shard is ordered, its keys are also kept in a skip list, so keys of a range are listed in order
+ * without locking the map; the key is added while the record is put and removed while the record is removed
+ * (including trims of expired records), while holding the lock of the storage entry.
+ * Puts, removals and evictions are appended to the shared write-ahead log (if any)
+ * while holding the lock of the storage entry, so the log keeps the order of mutations of every key.
+ * <p>
+ * While a snapshot is taken, the first mutation of every key saves the previous record of the key
+ * (pre-image, see {@link MutationEpochs}), so the snapshot sees the shard as it was at the cut
+ * without stopping writers.
+ */
+class StorageShard {
+
+    /**
+     * Records of the shard.
+     */
+    private final ConcurrentHashMap<String, StoredValue> storage;
+
+    /**
+     * Expiration times of the records, so trim process touches only expired keys.
+     */
+    private final ExpiryIndex expiryIndex = new ExpiryIndex();
+
+    /**
+     * Ordered keys of the records, or null if the shard is not ordered.
+     */
+    private final ConcurrentSkipListSet<String> keyIndex;
+
+    /**
+     * Off-heap memory for values of records, or null if values are kept on the heap.
+     */
+    private final OffHeapArena arena;
+
+    /**
+     * Keeps the shard within its limits of entries and memory.
+     */
+    private final StorageEvictor evictor;
+
+    /**
+     * Log of mutations, or null if the storage is kept only in memory.
+     */
+    private final WriteAheadLog log;
+
+    /**
+     * Registry of mutations of the storage in progress.
+     */
+    private final MutationEpochs epochs;
+
+    /**
+     * Counters of operations of the storage.
+     */
+    private final StorageMetrics metrics;
+
+    /**
+     * Sequence of writes giving versions to new records. It starts from the current time shifted left,
+     * so versions do not repeat after a restart.
+     */
+    private final AtomicLong writeSequence = new AtomicLong(System.currentTimeMillis() << 20);
+
+    /**
+     * Set while the shard is being trimmed, so slow trims are not queued up.
+     */
+    private final AtomicBoolean isTrimming = new AtomicBoolean();
+
+    /**
+     * Constructs an empty shard.
+     *
+     * @param arena           off-heap memory for values, or null to keep values on the heap
+     * @param evictor         eviction bookkeeping of the shard
+     * @param log             log of mutations, or null to keep the shard only in memory
+     * @param epochs          registry of mutations of the storage
+     * @param metrics         counters of operations of the storage
+     * @param isOrdered       true to keep the keys in an ordered index
+     * @param initialCapacity expected number of entries
+     */
+    StorageShard(OffHeapArena arena, StorageEvictor evictor, WriteAheadLog log, MutationEpochs epochs,
+                 StorageMetrics metrics, boolean isOrdered, int initialCapacity) {
+        this.storage = new ConcurrentHashMap<>(initialCapacity);
+        this.keyIndex = isOrdered ? new ConcurrentSkipListSet<>() : null;
+        this.arena = arena;
+        this.evictor = evictor;
+        this.log = log;
+        this.epochs = epochs;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Adds or replaces a record using a single atomic operation on the map.
+     *
+     * @param key            the key for the record
+     * @param value          UTF-8 bytes of the value to be stored
+     * @param expirationTime the expiration time in milliseconds since the epoch
+     * @param currentTime    the current time in milliseconds since the epoch
+     * @return true if a valid (not expired) value was replaced, false otherwise
+     */
+    boolean upsert(String key, byte[] value, long expirationTime, long currentTime) {
+        StoredValue recordValue = createRecord(value, expirationTime);
+        evictor.onCreate(recordValue);
+        boolean[] isValueReplaced = new boolean[1];
+        long[] logSequence = new long[1];
+        if (log != null) {
+            log.awaitCapacity();
+        }
+        int epoch = epochs.begin();
+        try {
+            storage.compute(key, (keyInternal, oldRecordValue) -> {
+                if (log != null) {
+                    logSequence[0] = log.appendPut(keyInternal, value, expirationTime);
+                }
+                isValueReplaced[0] = oldRecordValue != null && oldRecordValue.isValid(currentTime);
+                detach(keyInternal, oldRecordValue);
+                attach(keyInternal, recordValue);
+                return recordValue;
+            });
+        } catch (RuntimeException e) {
+            recordValue.release();
+            throw e;
+        } finally {
+            epochs.end(epoch);
+        }
+        if (evictor.isOverLimit(storage.mappingCount())) {
+            logSequence[0] = Math.max(logSequence[0], evict());
+        }
+        if (log != null) {
+            log.awaitDurable(logSequence[0]);
+        }
+        return isValueReplaced[0];
+    }
+
+    /**
+     * Adds or replaces a record replayed from the log or loaded into a shard which is not visible yet.
+     * The record is neither logged nor saved as a pre-image. Expired records are skipped.
+     *
+     * @param key            the key for the record
+     * @param value          UTF-8 bytes of the value to be stored
+     * @param expirationTime the expiration time in milliseconds since the epoch
+     * @param currentTime    the current time in milliseconds since the epoch
+     */
+    void restore(String key, byte[] value, long expirationTime, long currentTime) {
+        if (expirationTime <= currentTime) {
+            restoreRemoval(key);
+            return;
+        }
+        StoredValue recordValue = createRecord(value, expirationTime);
+        evictor.onCreate(recordValue);
+        storage.compute(key, (keyInternal, oldRecordValue) -> {
+            unlink(keyInternal, oldRecordValue);
+            attach(keyInternal, recordValue);
+            return recordValue;
+        });
+        while (evictor.isOverLimit(storage.mappingCount())) {
+            StorageEvictor.Victim victim = evictor.selectVictim(storage, expiryIndex);
+            if (victim == null) {
+                return;
+            }
+            restoreRemoval(victim.getKey());
+        }
+    }
+
+    /**
+     * Removes a record replayed from the log.
+     *
+     * @param key the key for the record
+     */
+    void restoreRemoval(String key) {
+        storage.computeIfPresent(key, (keyInternal, recordValue) -> {
+            unlink(keyInternal, recordValue);
+            unindex(keyInternal);
+            return null;
+        });
+    }
+
+    /**
+     * Removes all records replayed from the log.
+     */
+    void restoreClear() {
+        for (String key : storage.keySet()) {
+            restoreRemoval(key);
+        }
+    }
+
+    /**
+     * Gets a valid record. An expired record found by the lookup is removed immediately.
+     *
+     * @param key         the key for the record
+     * @param currentTime the current time in milliseconds since the epoch
+     * @return the record value or null if the key is not valid or does not exist
+     */
+    RecordValue get(String key, long currentTime) {
+        StoredValue storedValue = storage.get(key);
+        while (storedValue != null) {
+            RecordValue recordValue = storedValue.toRecordValue();
+            if (recordValue != null) {
+                if (!recordValue.isValid(currentTime)) {
+                    evictExpired(key, storedValue);
+                    return null;
+                }
+                evictor.onAccess(storedValue);
+                return recordValue;
+            }
+            storedValue = remapped(key, storedValue);
+        }
+        return null;
+    }
+
+    /**
+     * Removes a record.
+     *
+     * @param key         the key for the record
+     * @param currentTime the current time in milliseconds since the epoch
+     * @return the removed record value or null if the key does not exist or the record is expired
+     */
+    RecordValue remove(String key, long currentTime) {
+        RecordValue[] removedRecordValue = new RecordValue[1];
+        long[] logSequence = new long[1];
+        if (log != null) {
+            log.awaitCapacity();
+        }
+        int epoch = epochs.begin();
+        try {
+            storage.computeIfPresent(key, (keyInternal, recordValue) -> {
+                if (log != null) {
+                    logSequence[0] = log.appendRemove(keyInternal);
+                }
+                if (recordValue.isValid(currentTime)) {
+                    removedRecordValue[0] = recordValue.toRecordValue();
+                }
+                detach(keyInternal, recordValue);
+                unindex(keyInternal);
+                return null;
+            });
+        } finally {
+            epochs.end(epoch);
+        }
+        if (log != null) {
+            log.awaitDurable(logSequence[0]);
+        }
+        return removedRecordValue[0];
+    }
+
+    /**
+     * Checks if a key is valid.
+     *
+     * @param key         the key to check
+     * @param currentTime the current time in milliseconds since the epoch
+     * @return true if the key is valid, false otherwise
+     */
+    boolean isKeyValid(String key, long currentTime) {
+        StoredValue storedValue = storage.get(key);
+        while (storedValue != null) {
+            if (storedValue.isValid(currentTime)) {
+                return true;
+            }
+            if (!storedValue.isReleased()) {
+                return false;
+            }
+            storedValue = remapped(key, storedValue);
+        }
+        return false;
+    }
+
+    /**
+     * Gets a record without checking its expiration.
+     *
+     * @param key the key for the record
+     * @return the record value or null if the key does not exist
+     */
+    RecordValue getRaw(String key) {
+        StoredValue storedValue = storage.get(key);
+        while (storedValue != null) {
+            RecordValue recordValue = storedValue.toRecordValue();
+            if (recordValue != null) {
+                return recordValue;
+            }
+            storedValue = remapped(key, storedValue);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the record mapped to the key after the record found by a lookup was released by a concurrent
+     * mutation. The mutation releases the record while holding the lock of the storage entry, so the released
+     * record stays mapped only until the mutation publishes its result; the lookup is repeated until then.
+     *
+     * @param key           the key for the record
+     * @param releasedValue the released record
+     * @return the record mapped to the key now, or null if the key was removed
+     */
+    private StoredValue remapped(String key, StoredValue releasedValue) {
+        StoredValue storedValue;
+        while ((storedValue = storage.get(key)) == releasedValue) {
+            Thread.onSpinWait();
+        }
+        return storedValue;
+    }
+
+    /**
+     * Gets the records of the shard for iteration.
+     * Values must be read with {@link StoredValue#toRecordValue()}.
+     *
+     * @return the map of the shard
+     */
+    Map<String, StoredValue> entries() {
+        return storage;
+    }
+
+    /**
+     * Receives records of the snapshot.
+     */
+    interface SnapshotConsumer {
+
+        /**
+         * Accepts a record of the snapshot.
+         *
+         * @param key         the key of the record
+         * @param recordValue the record value
+         * @throws IOException if an I/O error occurs
+         */
+        void accept(String key, RecordValue recordValue) throws IOException;
+    }
+
+    /**
+     * Passes the records of the shard as they were at the cut of the snapshot to the consumer.
+     * Keys mutated since the cut are skipped, their records are taken from the pre-images.
+     *
+     * @param cutTime   the time of the cut in milliseconds since the epoch, expired records are skipped
+     * @param preImages the pre-images of the snapshot
+     * @param consumer  receiver of the records
+     * @throws IOException if the consumer fails
+     */
+    void readSnapshot(long cutTime, Map<String, RecordValue> preImages, SnapshotConsumer consumer)
+            throws IOException {
+        for (Map.Entry<String, StoredValue> entry : storage.entrySet()) {
+            StoredValue storedValue = entry.getValue();
+            if (preImages.containsKey(entry.getKey())) {
+                continue;
+            }
+            RecordValue recordValue = storedValue.toRecordValue();
+            if (recordValue != null && recordValue.isValid(cutTime)) {
+                consumer.accept(entry.getKey(), recordValue);
+            }
+        }
+    }
+
+    /**
+     * Trims expired records. Does nothing if the shard is already being trimmed.
+     * Only the keys which are due according to the expiry index are checked.
+     *
+     * @return the number of removed expired records
+     */
+    long trim() {
+        if (!isTrimming.compareAndSet(false, true)) {
+            return 0L;
+        }
+        long[] expiredCount = new long[1];
+        try {
+            long currentTime = System.currentTimeMillis();
+            ExpiryIndex.Deadline deadline;
+            while ((deadline = expiryIndex.pollDue(currentTime)) != null) {
+                int epoch = epochs.begin();
+                try {
+                    storage.computeIfPresent(deadline.getKey(), (keyInternal, valueInternal) -> {
+                        if (!valueInternal.isValid(currentTime)) {
+                            detach(keyInternal, valueInternal);
+                            unindex(keyInternal);
+                            expiredCount[0]++;
+                            return null;
+                        }
+                        return valueInternal;
+                    });
+                } finally {
+                    epochs.end(epoch);
+                }
+            }
+        } finally {
+            isTrimming.set(false);
+            metrics.recordExpirations(expiredCount[0]);
+        }
+        return expiredCount[0];
+    }
+
+    /**
+     * Gets a weakly consistent iterator of the entries (including expired ones which are not trimmed yet).
+     * The map is neither locked nor copied.
+     *
+     * @return the iterator of the entries
+     */
+    Iterator<Map.Entry<String, StoredValue>> iterator() {
+        return storage.entrySet().iterator();
+    }
+
+    /**
+     * Gets the ordered keys of a range (including keys of expired records which are not trimmed yet).
+     * The view is weakly consistent and does not lock the map, so listing it does not block writers.
+     *
+     * @param fromKey the lowest key of the range (inclusive), null for no lower bound
+     * @param toKey   the highest key of the range (exclusive), null for no upper bound; must be greater
+     *                than {@code fromKey}
+     * @return the keys of the range
+     * @throws IllegalStateException if the shard is not ordered
+     */
+    NavigableSet<String> keys(String fromKey, String toKey) {
+        if (keyIndex == null) {
+            throw new IllegalStateException("Shard is not ordered");
+        }
+        if (fromKey == null) {
+            return toKey == null ? keyIndex : keyIndex.headSet(toKey, false);
+        }
+        return toKey == null ? keyIndex.tailSet(fromKey, true) : keyIndex.subSet(fromKey, true, toKey, false);
+    }
+
+    /**
+     * Gets the number of entries (including expired ones which are not trimmed yet).
+     *
+     * @return the number of entries
+     */
+    long size() {
+        return storage.mappingCount();
+    }
+
+    /**
+     * Gets the number of deadlines in the expiry index.
+     *
+     * @return the number of indexed deadlines
+     */
+    int expiryIndexSize() {
+        return expiryIndex.size();
+    }
+
+    /**
+     * Gets the estimated memory usage of the entries.
+     *
+     * @return the estimated memory usage in bytes
+     */
+    long getMemoryUsage() {
+        return evictor.getMemoryUsage();
+    }
+
+    /**
+     * Gets the number of evicted records.
+     *
+     * @return the number of evictions
+     */
+    long getEvictionCount() {
+        return evictor.getEvictionCount();
+    }
+
+    /**
+     * Gets the number of bytes of off-heap memory reserved for values.
+     *
+     * @return the number of reserved bytes, or 0 if values are kept on the heap
+     */
+    long getOffHeapReservedBytes() {
+        return arena == null ? 0L : arena.getReservedBytes();
+    }
+
+    /**
+     * Gets the number of bytes of off-heap memory occupied by values.
+     *
+     * @return the number of used bytes, or 0 if values are kept on the heap
+     */
+    long getOffHeapUsedBytes() {
+        return arena == null ? 0L : arena.getUsedBytes();
+    }
+
+    /**
+     * Creates a record with a new version in the storage mode of the shard.
+     * Values which do not fit into off-heap slots are kept on the heap.
+     *
+     * @param value          UTF-8 bytes of the value to be stored
+     * @param expirationTime the expiration time in milliseconds since the epoch
+     * @return the new record
+     */
+    private StoredValue createRecord(byte[] value, long expirationTime) {
+        StoredValue recordValue = arena != null && value != null && OffHeapArena.fits(value.length)
+                ? arena.allocate(value, expirationTime) : RecordValue.fromUtf8(value, expirationTime);
+        recordValue.version = writeSequence.incrementAndGet();
+        return recordValue;
+    }
+
+    /**
+     * Removes the expired record from the shard if it was not replaced concurrently.
+     *
+     * @param key         the key for the record
+     * @param storedValue the expired record found by the lookup
+     */
+    private void evictExpired(String key, StoredValue storedValue) {
+        int epoch = epochs.begin();
+        try {
+            storage.computeIfPresent(key, (keyInternal, valueInternal) -> {
+                if (valueInternal != storedValue) {
+                    return valueInternal;
+                }
+                detach(keyInternal, valueInternal);
+                unindex(keyInternal);
+                metrics.recordExpirations(1L);
+                return null;
+            });
+        } finally {
+            epochs.end(epoch);
+        }
+    }
+
+    /**
+     * Evicts records until the shard fits its limits. A victim whose key was written after it was chosen
+     * is kept, and another victim is chosen.
+     *
+     * @return the log sequence of the last logged eviction, 0 if no eviction was logged
+     */
+    private long evict() {
+        long[] logSequence = new long[1];
+        while (evictor.isOverLimit(storage.mappingCount())) {
+            StorageEvictor.Victim victim = evictor.selectVictim(storage, expiryIndex);
+            if (victim == null) {
+                break;
+            }
+            int epoch = epochs.begin();
+            try {
+                storage.computeIfPresent(victim.getKey(), (keyInternal, valueInternal) -> {
+                    if (!victim.isMapped(valueInternal)) {
+                        return valueInternal;
+                    }
+                    if (log != null) {
+                        logSequence[0] = log.appendRemove(keyInternal);
+                    }
+                    detach(keyInternal, valueInternal);
+                    unindex(keyInternal);
+                    evictor.onEvict();
+                    return null;
+                });
+            } finally {
+                epochs.end(epoch);
+            }
+        }
+        return logSequence[0];
+    }
+
+    /**
+     * Adds the new record to the expiry index, the ordered index (if any) and memory accounting.
+     * Must be called while holding the lock of the storage entry.
+     *
+     * @param key         the key of the record
+     * @param storedValue the record put to the shard
+     */
+    private void attach(String key, StoredValue storedValue) {
+        expiryIndex.add(key, storedValue.expirationTime());
+        if (keyIndex != null) {
+            keyIndex.add(key);
+        }
+        evictor.addMemoryUsage(StorageEvictor.entryMemoryUsage(key, storedValue));
+    }
+
+    /**
+     * Removes the key from the ordered index, the record of the key is removed from the shard.
+     * Must be called while holding the lock of the storage entry. A replaced record keeps its key in the index.
+     *
+     * @param key the key of the removed record
+     */
+    private void unindex(String key) {
+        if (keyIndex != null) {
+            keyIndex.remove(key);
+        }
+    }
+
+    /**
+     * Saves the pre-image of the key for the snapshot being taken (if any), then removes the record
+     * from the expiry index and memory accounting and releases its memory.
+     * Must be called while holding the lock of the storage entry for every mutation of the key.
+     *
+     * @param key         the key of the record
+     * @param storedValue the record removed from the shard (may be null)
+     */
+    private void detach(String key, StoredValue storedValue) {
+        epochs.savePreImage(key, storedValue);
+        unlink(key, storedValue);
+    }
+
+    /**
+     * Removes the record from the expiry index and memory accounting and releases its memory.
+     *
+     * @param key         the key of the record
+     * @param storedValue the record removed from the shard (may be null)
+     */
+    private void unlink(String key, StoredValue storedValue) {
+        if (storedValue != null) {
+            expiryIndex.remove(key, storedValue.expirationTime());
+            evictor.addMemoryUsage(-StorageEvictor.entryMemoryUsage(key, storedValue));
+            storedValue.release();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package ru.infotecs.internship.storage;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Binary format of snapshots of {@link StorageMap} used by dump, load and background snapshots.
+ * Snapshots are written and read as streams through a buffer of fixed size, so the whole snapshot
+ * is never kept in memory.
+ * <pre>
+ * header: magic "KVSN" (4 bytes), version (2 bytes), reserved (2 bytes), time of the cut (8 bytes)
+ * block:  payload length (4 bytes), number of records (4 bytes), CRC32 of the payload (4 bytes), payload
+ * end:    block with zero payload length, total number of records and zero CRC32
+ * record: key length (4 bytes), key, value length (4 bytes, -1 for null), value, remaining TTL in ms (8 bytes)
+ * </pre>
+ * Keys and values are UTF-8 bytes, numbers are big-endian. A record larger than the buffer is written
+ * as a block of its own.
+ */
+final class StorageSnapshotFormat {
+
+    /**
+     * Magic number of the snapshot ("KVSN").
+     */
+    static final int MAGIC = 0x4B56534E;
+
+    /**
+     * Version of the format.
+     */
+    static final short VERSION = 1;
+
+    /**
+     * Size of the block buffer in bytes.
+     */
+    static final int BLOCK_SIZE = 1 << 16;
+
+    /**
+     * Size of the block header: payload length, number of records and CRC32.
+     */
+    private static final int BLOCK_HEADER_SIZE = 12;
+
+    /**
+     * Maximum size of the block payload accepted on reading (a record with a large value).
+     */
+    private static final int MAX_BLOCK_SIZE = 1 << 30;
+
+    private StorageSnapshotFormat() {
+    }
+
+    /**
+     * Receives records of the snapshot on reading.
+     */
+    interface RecordHandler {
+
+        /**
+         * Accepts a record of the snapshot.
+         *
+         * @param key            the key of the record
+         * @param value          UTF-8 bytes of the value (may be null)
+         * @param remainingTtlMs the time to live of the record at the cut in milliseconds
+         */
+        void accept(String key, byte[] value, long remainingTtlMs);
+    }
+
+    /**
+     * Writes a snapshot to the output stream.
+     */
+    static final class Writer {
+
+        /**
+         * The stream to write to.
+         */
+        private final OutputStream out;
+
+        /**
+         * Time of the cut in milliseconds since the epoch, TTL of records is counted from it.
+         */
+        private final long cutTime;
+
+        /**
+         * Payload of the current block.
+         */
+        private final ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+
+        /**
+         * Checksum of blocks.
+         */
+        private final CRC32 crc = new CRC32();
+
+        /**
+         * Number of records in the current block.
+         */
+        private int blockRecordCount;
+
+        /**
+         * Total number of written records.
+         */
+        private int recordCount;
+
+        /**
+         * Constructs the writer and writes the header of the snapshot.
+         *
+         * @param out     the stream to write to
+         * @param cutTime the time of the cut in milliseconds since the epoch
+         * @throws IOException if an I/O error occurs
+         */
+        Writer(OutputStream out, long cutTime) throws IOException {
+            this.out = out;
+            this.cutTime = cutTime;
+            ByteBuffer header = ByteBuffer.allocate(16);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(cutTime);
+            out.write(header.array());
+        }
+
+        /**
+         * Writes a record.
+         *
+         * @param key            the key of the record
+         * @param value          UTF-8 bytes of the value (may be null)
+         * @param expirationTime the expiration time in milliseconds since the epoch
+         * @throws IOException if an I/O error occurs
+         */
+        void write(String key, byte[] value, long expirationTime) throws IOException {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            int recordSize = 4 + keyBytes.length + 4 + (value == null ? 0 : value.length) + 8;
+            if (block.remaining() < recordSize) {
+                flushBlock();
+            }
+            if (block.remaining() < recordSize) {
+                ByteBuffer largeBlock = ByteBuffer.allocate(recordSize);
+                putRecord(largeBlock, keyBytes, value, expirationTime - cutTime);
+                writeBlock(largeBlock, 1);
+            } else {
+                putRecord(block, keyBytes, value, expirationTime - cutTime);
+                blockRecordCount++;
+            }
+            recordCount++;
+        }
+
+        /**
+         * Writes the remaining records and the end of the snapshot. Does not close the stream.
+         *
+         * @throws IOException if an I/O error occurs
+         */
+        void finish() throws IOException {
+            flushBlock();
+            ByteBuffer end = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+            end.putInt(0).putInt(recordCount).putInt(0);
+            out.write(end.array());
+            out.flush();
+        }
+
+        private void flushBlock() throws IOException {
+            if (blockRecordCount > 0) {
+                writeBlock(block, blockRecordCount);
+            }
+            block.clear();
+            blockRecordCount = 0;
+        }
+
+        private void writeBlock(ByteBuffer payload, int count) throws IOException {
+            crc.reset();
+            crc.update(payload.array(), 0, payload.position());
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+            header.putInt(payload.position()).putInt(count).putInt((int) crc.getValue());
+            out.write(header.array());
+            out.write(payload.array(), 0, payload.position());
+        }
+
+        private static void putRecord(ByteBuffer buffer, byte[] key, byte[] value, long remainingTtlMs) {
+            buffer.putInt(key.length).put(key);
+            if (value == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(value.length).put(value);
+            }
+            buffer.putLong(remainingTtlMs);
+        }
+    }
+
+    /**
+     * Reads a snapshot from the input stream block by block.
+     *
+     * @param in      the stream to read from
+     * @param handler receiver of the records
+     * @return the number of read records
+     * @throws IOException if an I/O error occurs or the snapshot is corrupted or has unsupported version
+     */
+    static long read(InputStream in, RecordHandler handler) throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
+        try {
+            if (dataIn.readInt() != MAGIC) {
+                throw new IOException("Not a storage snapshot");
+            }
+            short version = dataIn.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported storage snapshot version " + version);
+            }
+            dataIn.readShort();
+            dataIn.readLong();
+            CRC32 crc = new CRC32();
+            byte[] payload = new byte[BLOCK_SIZE];
+            long recordCount = 0;
+            while (true) {
+                int payloadLength = dataIn.readInt();
+                int blockRecordCount = dataIn.readInt();
+                int expectedCrc = dataIn.readInt();
+                if (payloadLength == 0) {
+                    if (blockRecordCount != recordCount) {
+                        throw new IOException("Storage snapshot has " + recordCount
+                                + " records instead of " + blockRecordCount);
+                    }
+                    return recordCount;
+                }
+                if (payloadLength < 0 || payloadLength > MAX_BLOCK_SIZE || blockRecordCount <= 0) {
+                    throw new IOException("Corrupted storage snapshot block");
+                }
+                if (payload.length < payloadLength) {
+                    payload = new byte[payloadLength];
+                }
+                dataIn.readFully(payload, 0, payloadLength);
+                crc.reset();
+                crc.update(payload, 0, payloadLength);
+                if ((int) crc.getValue() != expectedCrc) {
+                    throw new IOException("Checksum mismatch in storage snapshot block");
+                }
+                readBlock(ByteBuffer.wrap(payload, 0, payloadLength), blockRecordCount, handler);
+                recordCount += blockRecordCount;
+            }
+        } catch (EOFException e) {
+            throw new IOException("Unexpected end of storage snapshot", e);
+        }
+    }
+
+    private static void readBlock(ByteBuffer payload, int count, RecordHandler handler) throws IOException {
+        try {
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[payload.getInt()];
+                payload.get(key);
+                int valueLength = payload.getInt();
+                byte[] value = null;
+                if (valueLength >= 0) {
+                    value = new byte[valueLength];
+                    payload.get(value);
+                }
+                handler.accept(new String(key, StandardCharsets.UTF_8), value, payload.getLong());
+            }
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("Corrupted storage snapshot block", e);
+        }
+        if (payload.hasRemaining()) {
+            throw new IOException("Corrupted storage snapshot block");
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package ru.infotecs.internship.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes snapshots of {@link StorageMap} to a local file in the same format as the {@code /dump} endpoint
+ * ({@link StorageSnapshotFormat}).
+ * The snapshot is written to a temporary file, flushed to the disk and atomically renamed,
+ * so the file always holds a complete snapshot. Duration, size and time of the last successful
+ * snapshot are kept for monitoring.
+ */
+class StorageSnapshotter {
+
+    /**
+     * Size of the output buffer in bytes.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * File of the snapshot.
+     */
+    private final Path path;
+
+    /**
+     * Set while a snapshot is being written, so requests are not queued up.
+     */
+    private final AtomicBoolean isRunning = new AtomicBoolean();
+
+    /**
+     * Number of failed snapshots.
+     */
+    private final AtomicLong failureCount = new AtomicLong();
+
+    /**
+     * Duration of the last successful snapshot in milliseconds.
+     */
+    private volatile long lastDurationMs;
+
+    /**
+     * Size of the last successful snapshot in bytes.
+     */
+    private volatile long lastSizeBytes;
+
+    /**
+     * Time of the last successful snapshot in milliseconds since the epoch, 0 if there was none.
+     */
+    private volatile long lastSuccessTime;
+
+    /**
+     * Constructs the snapshotter writing to the file.
+     *
+     * @param path file of the snapshot
+     */
+    StorageSnapshotter(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Writes a snapshot of the storage. Does nothing if a snapshot is already being written.
+     * Failures are counted and do not affect the previous snapshot file.
+     *
+     * @param storage the storage to write
+     */
+    void run(StorageMap storage) {
+        if (!isRunning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            write(storage);
+        } catch (IOException | RuntimeException e) {
+            failureCount.incrementAndGet();
+        } finally {
+            isRunning.set(false);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the storage to the temporary file and renames it to the snapshot file.
+     *
+     * @param storage the storage to write
+     * @throws IOException if an I/O error occurs
+     */
+    void write(StorageMap storage) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                 OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)) {
+                storage.dump(out);
+                channel.force(true);
+            }
+            long size = Files.size(temporary);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long currentTime = System.currentTimeMillis();
+            lastDurationMs = currentTime - startTime;
+            lastSizeBytes = size;
+            lastSuccessTime = currentTime;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Gets the duration of the last successful snapshot.
+     *
+     * @return the duration in milliseconds
+     */
+    long getLastDurationMs() {
+        return lastDurationMs;
+    }
+
+    /**
+     * Gets the size of the last successful snapshot.
+     *
+     * @return the size in bytes
+     */
+    long getLastSizeBytes() {
+        return lastSizeBytes;
+    }
+
+    /**
+     * Gets the time of the last successful snapshot.
+     *
+     * @return the time in milliseconds since the epoch, 0 if there was none
+     */
+    long getLastSuccessTime() {
+        return lastSuccessTime;
+    }
+
+    /**
+     * Gets the number of failed snapshots.
+     *
+     * @return the number of failures
+     */
+    long getFailureCount() {
+        return failureCount.get();
+    }
+}
@@ -0,0 +1,71 @@
+package ru.infotecs.internship.storage;
+
+/**
+ * Record as it is kept inside {@link StorageMap}.
+ * The record may live on the Java heap ({@link RecordValue}) or in off-heap memory ({@link OffHeapValue}).
+ */
+abstract class StoredValue {
+
+    /**
+     * Access information used by eviction: the access time for LRU or
+     * the decrement time and the logarithmic access counter for LFU (see {@link StorageEvictor}).
+     * Updated without synchronization, so the value is approximate.
+     */
+    int accessInfo;
+
+    /**
+     * Version of the record, assigned from the write sequence of its shard when the record is created,
+     * so every write of a key gives a new version. 0 for records not created by the storage.
+     */
+    long version;
+
+    /**
+     * Gets the expiration time of the record.
+     * Must be called only while holding the lock of the storage entry.
+     *
+     * @return the expiration time in milliseconds since epoch, or 0 if it is not set
+     */
+    abstract long expirationTime();
+
+    /**
+     * Checks if the record is not expired at the given time.
+     * Safe to call without holding the lock of the storage entry.
+     *
+     * @param currentTime the current time in milliseconds since the epoch
+     * @return true if the record is valid, false if it is expired or was released concurrently
+     */
+    abstract boolean isValid(long currentTime);
+
+    /**
+     * Checks if the record was released by a concurrent mutation of its key.
+     * Safe to call without holding the lock of the storage entry.
+     *
+     * @return true if the record was released
+     */
+    boolean isReleased() {
+        return false;
+    }
+
+    /**
+     * Gets the heap representation of the record.
+     * Safe to call without holding the lock of the storage entry.
+     *
+     * @return the record value or null if the record was released concurrently
+     */
+    abstract RecordValue toRecordValue();
+
+    /**
+     * Gets the estimated number of bytes occupied by the record and its value.
+     * Must be called only while holding the lock of the storage entry.
+     *
+     * @return the estimated memory usage in bytes
+     */
+    abstract long memoryUsage();
+
+    /**
+     * Releases memory held by the record after it has been removed from the storage.
+     * Must be called only while holding the lock of the storage entry.
+     */
+    void release() {
+    }
+}
@@ -0,0 +1,898 @@
+package ru.infotecs.internship.storage;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of mutations of {@link StorageMap}, used to rebuild the storage after a restart.
+ * <p>
+ * The log is a sequence of numbered segment files in one directory. Each record is framed by its length
+ * and CRC32, so a record torn by a crash is detected and cut off on replay. Writers only encode records
+ * into a shared buffer; a single writer thread drains the buffer with one {@link FileChannel} write and
+ * flushes the file according to the {@link EnumFsyncPolicy}, so concurrent writes are committed together.
+ * <p>
+ * Compaction switches appending to a new segment and replaces the older segments with a snapshot
+ * of the storage, which starts with a record clearing everything replayed before it.
+ * Before taking the snapshot, compaction {@link MutationEpochs#advance() waits} until every mutation
+ * logged into the old segments is visible in the storage.
+ */
+class WriteAheadLog implements Closeable {
+
+    /**
+     * Type of the record which puts a value.
+     */
+    private static final byte TYPE_PUT = 1;
+
+    /**
+     * Type of the record which removes a value.
+     */
+    private static final byte TYPE_REMOVE = 2;
+
+    /**
+     * Type of the record which removes all values.
+     */
+    private static final byte TYPE_CLEAR = 3;
+
+    /**
+     * Size of the record frame: payload length (4 bytes) and CRC32 of the payload (4 bytes).
+     */
+    private static final int FRAME_HEADER_SIZE = 8;
+
+    /**
+     * Initial size of the buffers of records in bytes.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Size of pending records in bytes after which writers wait for the writer thread
+     * in {@link #awaitCapacity()}. Records are appended while holding the lock of the storage entry
+     * without waiting, so the limit is soft.
+     */
+    private static final int MAX_PENDING_BYTES = 1 << 26;
+
+    /**
+     * Prefix of names of segment files.
+     */
+    private static final String SEGMENT_PREFIX = "wal-";
+
+    /**
+     * Suffix of names of segment files.
+     */
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Directory of segment files.
+     */
+    private final Path directory;
+
+    /**
+     * Policy of flushing the log to the disk.
+     */
+    private final EnumFsyncPolicy fsyncPolicy;
+
+    /**
+     * Interval of flushing the log to the disk in milliseconds for {@link EnumFsyncPolicy#INTERVAL}.
+     */
+    private final long fsyncIntervalMs;
+
+    /**
+     * Size of the log in bytes below which the log is not compacted.
+     */
+    private final long compactionMinSize;
+
+    /**
+     * Guards the segment file, held by the writer thread while it writes records.
+     * Must be acquired before {@link #bufferLock}.
+     */
+    private final ReentrantLock fileLock = new ReentrantLock();
+
+    /**
+     * Guards the buffer of pending records and sequence numbers.
+     */
+    private final ReentrantLock bufferLock = new ReentrantLock();
+
+    /**
+     * Signalled when records are appended or the log is closed.
+     */
+    private final Condition hasPending = bufferLock.newCondition();
+
+    /**
+     * Signalled when pending records are taken by the writer thread or flushed to the disk.
+     */
+    private final Condition isFlushed = bufferLock.newCondition();
+
+    /**
+     * Checksum of records, guarded by {@link #bufferLock}.
+     */
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Registry of mutations of the storage in progress.
+     */
+    private final MutationEpochs epochs;
+
+    /**
+     * Set while the log is being compacted.
+     */
+    private final AtomicBoolean isCompacting = new AtomicBoolean();
+
+    /**
+     * Records appended but not taken by the writer thread yet, guarded by {@link #bufferLock}.
+     */
+    private ByteBuffer pending = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+
+    /**
+     * Records being written by the writer thread, guarded by {@link #fileLock}.
+     */
+    private ByteBuffer writing = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+
+    /**
+     * Number of appended records, guarded by {@link #bufferLock}.
+     */
+    private long appendedSequence;
+
+    /**
+     * Number of records flushed to the disk, guarded by {@link #bufferLock}.
+     */
+    private long durableSequence;
+
+    /**
+     * Set when the log is closed, guarded by {@link #bufferLock}.
+     */
+    private boolean isClosed;
+
+    /**
+     * Error of writing to the segment file, the log does not accept records after it.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Segment file which records are appended to, guarded by {@link #fileLock}.
+     */
+    private FileChannel channel;
+
+    /**
+     * Number of the segment which records are appended to, guarded by {@link #fileLock}.
+     */
+    private long segmentNumber;
+
+    /**
+     * Set if records were written but not flushed to the disk, changed only while holding {@link #fileLock}.
+     */
+    private volatile boolean isDirty;
+
+    /**
+     * Time of the last flush to the disk in milliseconds since the epoch.
+     */
+    private volatile long lastSyncTime;
+
+    /**
+     * Total size of segment files in bytes.
+     */
+    private volatile long size;
+
+    /**
+     * Size of the log in bytes right after the last compaction.
+     */
+    private volatile long compactedSize;
+
+    /**
+     * Thread writing pending records to the segment file.
+     */
+    private Thread writer;
+
+    /**
+     * Constructs the log kept in the directory. The log must be {@link #replay(Replayer) replayed}
+     * and then {@link #open() opened} before records can be appended.
+     *
+     * @param directory         directory of segment files
+     * @param fsyncPolicy       policy of flushing the log to the disk
+     * @param fsyncIntervalMs   interval of flushing in milliseconds for {@link EnumFsyncPolicy#INTERVAL}
+     * @param compactionMinSize size of the log in bytes below which the log is not compacted
+     * @param epochs            registry of mutations of the storage
+     */
+    WriteAheadLog(Path directory, EnumFsyncPolicy fsyncPolicy, long fsyncIntervalMs, long compactionMinSize,
+                  MutationEpochs epochs) {
+        this.directory = directory;
+        this.epochs = epochs;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.compactionMinSize = compactionMinSize;
+    }
+
+    /**
+     * Receives records of the log on replay.
+     */
+    interface Replayer {
+
+        /**
+         * Puts a value.
+         *
+         * @param key            the key for the record
+         * @param value          UTF-8 bytes of the value
+         * @param expirationTime the expiration time in milliseconds since the epoch
+         */
+        void put(String key, byte[] value, long expirationTime);
+
+        /**
+         * Removes a value.
+         *
+         * @param key the key for the record
+         */
+        void remove(String key);
+
+        /**
+         * Removes all values.
+         */
+        void clear();
+    }
+
+    /**
+     * Writes a snapshot of the storage on compaction.
+     */
+    interface SnapshotSource {
+
+        /**
+         * Writes all records of the storage.
+         *
+         * @param writer the writer of the snapshot
+         * @throws IOException if an I/O error occurs
+         */
+        void writeTo(SnapshotWriter writer) throws IOException;
+    }
+
+    /**
+     * Writes records of the snapshot to a file.
+     */
+    static final class SnapshotWriter {
+
+        /**
+         * File of the snapshot.
+         */
+        private final FileChannel channel;
+
+        /**
+         * Checksum of records.
+         */
+        private final CRC32 crc = new CRC32();
+
+        /**
+         * Records not written to the file yet.
+         */
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+
+        private SnapshotWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Writes a value to the snapshot.
+         *
+         * @param key            the key for the record
+         * @param value          UTF-8 bytes of the value
+         * @param expirationTime the expiration time in milliseconds since the epoch
+         * @throws IOException if an I/O error occurs
+         */
+        void put(String key, byte[] value, long expirationTime) throws IOException {
+            write(TYPE_PUT, key.getBytes(StandardCharsets.UTF_8), value, expirationTime);
+        }
+
+        private void write(byte type, byte[] key, byte[] value, long expirationTime) throws IOException {
+            int recordSize = recordSize(type, key, value);
+            if (buffer.remaining() < recordSize) {
+                flush();
+                if (buffer.capacity() < recordSize) {
+                    buffer = ByteBuffer.allocateDirect(recordSize);
+                }
+            }
+            putRecord(buffer, crc, type, key, value, expirationTime);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Replays all segments of the log in order. A torn record at the end of the last segment
+     * (left by a crash) is cut off.
+     *
+     * @param replayer receiver of the records
+     * @throws IOException if an I/O error occurs or a segment other than the last one is corrupted
+     */
+    void replay(Replayer replayer) throws IOException {
+        Files.createDirectories(directory);
+        List<Long> segmentNumbers = listSegmentNumbers();
+        for (int i = 0; i < segmentNumbers.size(); i++) {
+            Path segment = segmentPath(segmentNumbers.get(i));
+            long validSize = replaySegment(segment, replayer);
+            if (validSize < Files.size(segment)) {
+                if (i != segmentNumbers.size() - 1) {
+                    throw new IOException("Corrupted write-ahead log segment " + segment);
+                }
+                try (FileChannel segmentChannel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                    segmentChannel.truncate(validSize);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the last segment for appending and starts the writer thread.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Long> segmentNumbers = listSegmentNumbers();
+        long totalSize = 0;
+        for (long number : segmentNumbers) {
+            totalSize += Files.size(segmentPath(number));
+        }
+        fileLock.lock();
+        try {
+            segmentNumber = segmentNumbers.isEmpty() ? 1 : segmentNumbers.get(segmentNumbers.size() - 1);
+            channel = openSegment(segmentNumber);
+            size = totalSize;
+        } finally {
+            fileLock.unlock();
+        }
+        lastSyncTime = System.currentTimeMillis();
+        writer = new Thread(this::writeLoop, "storage-wal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Appends a record putting a value.
+     * Must be called while holding the lock of the storage entry.
+     *
+     * @param key            the key for the record
+     * @param value          UTF-8 bytes of the value
+     * @param expirationTime the expiration time in milliseconds since the epoch
+     * @return the sequence number of the record for {@link #awaitDurable(long)}
+     * @throws UncheckedIOException if the log failed to write previous records
+     */
+    long appendPut(String key, byte[] value, long expirationTime) {
+        return append(TYPE_PUT, key.getBytes(StandardCharsets.UTF_8), value, expirationTime);
+    }
+
+    /**
+     * Appends a record removing a value.
+     * Must be called while holding the lock of the storage entry.
+     *
+     * @param key the key for the record
+     * @return the sequence number of the record for {@link #awaitDurable(long)}
+     * @throws UncheckedIOException if the log failed to write previous records
+     */
+    long appendRemove(String key) {
+        return append(TYPE_REMOVE, key.getBytes(StandardCharsets.UTF_8), null, 0L);
+    }
+
+    /**
+     * Waits while pending records exceed their limit.
+     * Must be called before taking the lock of the storage entry: the lock is the monitor of a bin
+     * of the map, and waiting while holding a monitor pins the carrier of a virtual thread.
+     *
+     * @throws UncheckedIOException if the log failed to write previous records
+     */
+    void awaitCapacity() {
+        bufferLock.lock();
+        try {
+            while (pending.position() >= MAX_PENDING_BYTES && !isClosed) {
+                checkFailure();
+                isFlushed.awaitUninterruptibly();
+            }
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the record is flushed to the disk if the policy is {@link EnumFsyncPolicy#ALWAYS},
+     * returns immediately otherwise.
+     *
+     * @param sequence the sequence number of the record
+     * @throws UncheckedIOException if the log failed to write the record
+     */
+    void awaitDurable(long sequence) {
+        if (fsyncPolicy != EnumFsyncPolicy.ALWAYS) {
+            return;
+        }
+        bufferLock.lock();
+        try {
+            while (durableSequence < sequence) {
+                checkFailure();
+                isFlushed.awaitUninterruptibly();
+            }
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    /**
+     * Checks if the log has grown enough since the last compaction (twice, but not less than the minimal size).
+     *
+     * @return true if the log should be compacted
+     */
+    boolean needsCompaction() {
+        return failure == null && size >= Math.max(compactionMinSize, 2 * compactedSize);
+    }
+
+    /**
+     * Compacts the log: switches appending to a new segment and replaces older segments with a snapshot.
+     * Does nothing if the log is already being compacted. If the snapshot cannot be written,
+     * older segments are kept.
+     *
+     * @param source writer of the snapshot of the storage
+     * @throws IOException if an I/O error occurs
+     */
+    void compact(SnapshotSource source) throws IOException {
+        if (!isCompacting.compareAndSet(false, true)) {
+            return;
+        }
+        Path temporary = directory.resolve(SEGMENT_PREFIX + "snapshot" + SEGMENT_SUFFIX + ".tmp");
+        try {
+            long snapshotNumber;
+            fileLock.lock();
+            try {
+                flush(true);
+                snapshotNumber = segmentNumber;
+                channel.close();
+                segmentNumber++;
+                channel = openSegment(segmentNumber);
+            } finally {
+                fileLock.unlock();
+            }
+            epochs.advance();
+
+            try (FileChannel snapshotChannel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                SnapshotWriter snapshotWriter = new SnapshotWriter(snapshotChannel);
+                snapshotWriter.write(TYPE_CLEAR, null, null, 0L);
+                source.writeTo(snapshotWriter);
+                snapshotWriter.flush();
+                snapshotChannel.force(true);
+            }
+            Files.move(temporary, segmentPath(snapshotNumber),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (long number : listSegmentNumbers()) {
+                if (number < snapshotNumber) {
+                    Files.deleteIfExists(segmentPath(number));
+                }
+            }
+
+            fileLock.lock();
+            try {
+                long snapshotSize = Files.size(segmentPath(snapshotNumber));
+                size = snapshotSize + channel.size();
+                compactedSize = snapshotSize;
+            } finally {
+                fileLock.unlock();
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+            isCompacting.set(false);
+        }
+    }
+
+    /**
+     * Gets the total size of segment files.
+     *
+     * @return the size of the log in bytes
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * Writes all pending records, flushes them to the disk and closes the segment file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        bufferLock.lock();
+        try {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            hasPending.signal();
+        } finally {
+            bufferLock.unlock();
+        }
+        if (writer != null) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        fileLock.lock();
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            fileLock.unlock();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Appends an encoded record to the pending buffer.
+     *
+     * @param type           the type of the record
+     * @param key            UTF-8 bytes of the key
+     * @param value          UTF-8 bytes of the value (may be null)
+     * @param expirationTime the expiration time in milliseconds since the epoch
+     * @return the sequence number of the record
+     */
+    private long append(byte type, byte[] key, byte[] value, long expirationTime) {
+        int recordSize = recordSize(type, key, value);
+        bufferLock.lock();
+        try {
+            checkFailure();
+            if (isClosed) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+            if (pending.remaining() < recordSize) {
+                ByteBuffer grown = ByteBuffer.allocateDirect(
+                        Math.max(pending.capacity() * 2, pending.position() + recordSize));
+                grown.put(pending.flip());
+                pending = grown;
+            }
+            putRecord(pending, crc, type, key, value, expirationTime);
+            appendedSequence++;
+            hasPending.signal();
+            return appendedSequence;
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    /**
+     * Writes pending records to the segment file until the log is closed or fails.
+     */
+    private void writeLoop() {
+        while (true) {
+            boolean isFinal = awaitPending();
+            fileLock.lock();
+            try {
+                flush(isFinal);
+            } catch (IOException e) {
+                failure = e;
+                bufferLock.lock();
+                try {
+                    isFlushed.signalAll();
+                } finally {
+                    bufferLock.unlock();
+                }
+                return;
+            } finally {
+                fileLock.unlock();
+            }
+            if (isFinal) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits until there are pending records, the periodic flush is due or the log is closed.
+     *
+     * @return true if the log is closed
+     */
+    private boolean awaitPending() {
+        bufferLock.lock();
+        try {
+            while (pending.position() == 0 && !isClosed) {
+                if (fsyncPolicy == EnumFsyncPolicy.INTERVAL && isDirty) {
+                    long remaining = lastSyncTime + fsyncIntervalMs - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    hasPending.awaitNanos(TimeUnit.MILLISECONDS.toNanos(remaining));
+                } else {
+                    hasPending.await();
+                }
+            }
+            return isClosed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    /**
+     * Writes pending records to the segment file with one write and flushes the file if the policy requires.
+     * Must be called while holding {@link #fileLock}.
+     *
+     * @param isForced true to flush the file to the disk regardless of the policy
+     * @throws IOException if an I/O error occurs
+     */
+    private void flush(boolean isForced) throws IOException {
+        long sequence;
+        bufferLock.lock();
+        try {
+            sequence = takePending();
+        } finally {
+            bufferLock.unlock();
+        }
+        write(sequence, isForced);
+    }
+
+    /**
+     * Swaps the buffer of pending records with the buffer being written.
+     * Must be called while holding {@link #fileLock} and {@link #bufferLock}.
+     *
+     * @return the sequence number of the last taken record
+     */
+    private long takePending() {
+        ByteBuffer taken = pending;
+        pending = writing;
+        writing = taken;
+        isFlushed.signalAll();
+        return appendedSequence;
+    }
+
+    /**
+     * Writes taken records to the segment file with one write and flushes the file if the policy requires.
+     * Must be called while holding {@link #fileLock}.
+     *
+     * @param sequence the sequence number of the last taken record
+     * @param isForced true to flush the file to the disk regardless of the policy
+     * @throws IOException if an I/O error occurs
+     */
+    private void write(long sequence, boolean isForced) throws IOException {
+        writing.flip();
+        long written = 0;
+        while (writing.hasRemaining()) {
+            written += channel.write(writing);
+        }
+        writing.clear();
+        if (written > 0) {
+            size += written;
+            isDirty = true;
+        }
+        long currentTime = System.currentTimeMillis();
+        boolean isSyncDue = fsyncPolicy == EnumFsyncPolicy.ALWAYS
+                || fsyncPolicy == EnumFsyncPolicy.INTERVAL && currentTime - lastSyncTime >= fsyncIntervalMs;
+        if (isDirty && (isForced || isSyncDue)) {
+            channel.force(false);
+            isDirty = false;
+            lastSyncTime = currentTime;
+        }
+        if (!isDirty) {
+            bufferLock.lock();
+            try {
+                durableSequence = sequence;
+                isFlushed.signalAll();
+            } finally {
+                bufferLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Throws the error of writing to the segment file if there was one.
+     */
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Write-ahead log failed", failure);
+        }
+    }
+
+    /**
+     * Replays one segment.
+     *
+     * @param segment  the path of the segment file
+     * @param replayer receiver of the records
+     * @return the size in bytes of the valid part of the segment
+     * @throws IOException if an I/O error occurs
+     */
+    private static long replaySegment(Path segment, Replayer replayer) throws IOException {
+        long validSize = 0;
+        CRC32 checksum = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    int expectedChecksum = in.readInt();
+                    if (length <= 0) {
+                        return validSize;
+                    }
+                    payload = in.readNBytes(length);
+                    if (payload.length < length) {
+                        return validSize;
+                    }
+                    checksum.reset();
+                    checksum.update(payload);
+                    if ((int) checksum.getValue() != expectedChecksum) {
+                        return validSize;
+                    }
+                } catch (EOFException e) {
+                    return validSize;
+                }
+                applyRecord(ByteBuffer.wrap(payload), replayer);
+                validSize += FRAME_HEADER_SIZE + payload.length;
+            }
+        }
+    }
+
+    /**
+     * Decodes a record and passes it to the replayer.
+     *
+     * @param payload  the payload of the record
+     * @param replayer receiver of the record
+     */
+    private static void applyRecord(ByteBuffer payload, Replayer replayer) {
+        byte type = payload.get();
+        if (type == TYPE_CLEAR) {
+            replayer.clear();
+            return;
+        }
+        String key = new String(getBytes(payload), StandardCharsets.UTF_8);
+        if (type == TYPE_PUT) {
+            byte[] value = getBytes(payload);
+            replayer.put(key, value, payload.getLong());
+        } else if (type == TYPE_REMOVE) {
+            replayer.remove(key);
+        }
+    }
+
+    /**
+     * Gets the size of the encoded record with its frame.
+     *
+     * @param type  the type of the record
+     * @param key   UTF-8 bytes of the key
+     * @param value UTF-8 bytes of the value (may be null)
+     * @return the size in bytes
+     */
+    private static int recordSize(byte type, byte[] key, byte[] value) {
+        int size = FRAME_HEADER_SIZE + 1;
+        if (type != TYPE_CLEAR) {
+            size += 4 + key.length;
+        }
+        if (type == TYPE_PUT) {
+            size += 4 + (value == null ? 0 : value.length) + 8;
+        }
+        return size;
+    }
+
+    /**
+     * Encodes the record with its frame into the buffer, which must have enough space.
+     *
+     * @param buffer         the buffer to write to
+     * @param checksum       the checksum to compute the CRC32 of the payload with
+     * @param type           the type of the record
+     * @param key            UTF-8 bytes of the key
+     * @param value          UTF-8 bytes of the value (may be null)
+     * @param expirationTime the expiration time in milliseconds since the epoch
+     */
+    private static void putRecord(ByteBuffer buffer, CRC32 checksum, byte type,
+                                  byte[] key, byte[] value, long expirationTime) {
+        int start = buffer.position();
+        buffer.position(start + FRAME_HEADER_SIZE);
+        buffer.put(type);
+        if (type != TYPE_CLEAR) {
+            putBytes(buffer, key);
+        }
+        if (type == TYPE_PUT) {
+            putBytes(buffer, value);
+            buffer.putLong(expirationTime);
+        }
+        int end = buffer.position();
+        checksum.reset();
+        checksum.update(buffer.duplicate().position(start + FRAME_HEADER_SIZE).limit(end));
+        buffer.putInt(start, end - start - FRAME_HEADER_SIZE);
+        buffer.putInt(start + 4, (int) checksum.getValue());
+    }
+
+    /**
+     * Writes the length-prefixed byte array (-1 length for null).
+     *
+     * @param buffer the buffer to write to
+     * @param bytes  the bytes to write (may be null)
+     */
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Reads the length-prefixed byte array written by {@link #putBytes(ByteBuffer, byte[])}.
+     *
+     * @param buffer the buffer to read from
+     * @return the bytes read (may be null)
+     */
+    private static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Lists numbers of segment files in ascending order.
+     *
+     * @return the numbers of segments
+     * @throws IOException if an I/O error occurs
+     */
+    private List<Long> listSegmentNumbers() throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    String number = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+                    if (!number.isEmpty() && number.chars().allMatch(Character::isDigit)) {
+                        numbers.add(Long.parseLong(number));
+                    }
+                }
+            });
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    /**
+     * Gets the path of the segment file.
+     *
+     * @param number the number of the segment
+     * @return the path of the segment file
+     */
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Opens the segment file for appending.
+     *
+     * @param number the number of the segment
+     * @return the channel positioned at the end of the file
+     * @throws IOException if an I/O error occurs
+     */
+    private FileChannel openSegment(long number) throws IOException {
+        FileChannel segmentChannel = FileChannel.open(segmentPath(number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        segmentChannel.position(segmentChannel.size());
+        return segmentChannel;
+    }
+}
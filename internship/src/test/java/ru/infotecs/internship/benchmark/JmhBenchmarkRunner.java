@@ -0,0 +1,56 @@
+package ru.infotecs.internship.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of the project and writes the results as JSON, so results of engine changes
+ * can be compared (for example, with JMH Visualizer).
+ * <p>
+ * Accepts the usual JMH command line options, for example:
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="StorageMapBenchmark.mixed -t 4 -p keyCount=10000"}.
+ * Without a benchmark pattern all benchmarks are run, without {@code -rf} and {@code -rff} the results
+ * are written to {@value #DEFAULT_RESULT_FILE}.
+ */
+public class JmhBenchmarkRunner {
+
+    /**
+     * Pattern of all benchmarks of the project.
+     */
+    private static final String ALL_BENCHMARKS = "ru\\.infotecs\\.internship\\..*Benchmark\\.";
+
+    /**
+     * File the results are written to by default.
+     */
+    private static final String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+
+    /**
+     * Private constructor, use main method.
+     */
+    private JmhBenchmarkRunner() {
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args JMH command line options
+     * @throws Exception if the options are invalid or the benchmarks fail
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+        if (commandLineOptions.getIncludes().isEmpty()) {
+            options.include(ALL_BENCHMARKS);
+        }
+        if (!commandLineOptions.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+            if (!commandLineOptions.getResult().hasValue()) {
+                options.result(DEFAULT_RESULT_FILE);
+            }
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,571 @@
+package ru.infotecs.internship.benchmark;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.infotecs.internship.InternshipApplication;
+import ru.infotecs.internship.binary.BinaryProtocolServer;
+import ru.infotecs.internship.driver.StorageDriver;
+import ru.infotecs.internship.driver.StorageDriverConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a workload through the whole stack ({@link StorageDriver}, HTTP and the controller or the binary
+ * protocol, and the storage) and reports throughput and latency percentiles per operation. With both
+ * transports the workload is run over REST, then over the binary protocol, and their p99 latencies are compared.
+ * <p>
+ * Keys are chosen by a Zipfian distribution, value sizes and TTL are chosen from weighted lists.
+ * Worker threads share several driver instances. With a target rate requests are sent on a fixed schedule
+ * and the corrected latency is measured from the time a request was intended to be sent, so stalls
+ * of the service are not hidden by the clients waiting for them (coordinated omission). Without a rate
+ * every worker sends its next request when the previous one completes, and the corrected latency
+ * is estimated by HdrHistogram with the mean latency as the expected interval.
+ * <p>
+ * Without {@code --port} the service is started in this JVM on a free port. Run with options
+ * {@code --name=value}, for example:
+ * {@code mvn -Pload test-compile exec:exec -Dload.args="--threads=32 --rate=20000 --transport=both"}.
+ */
+public class LoadGenerator {
+
+    /**
+     * Operations of the workload.
+     */
+    private enum EnumOperation {
+        GET, SET, REMOVE
+    }
+
+    /**
+     * Transports of the requests.
+     */
+    private enum EnumTransport {
+        REST, BINARY
+    }
+
+    /**
+     * Host of the service.
+     */
+    private final String host;
+
+    /**
+     * Port of the service, 0 to start the service in this JVM.
+     */
+    private final int port;
+
+    /**
+     * Port of the binary protocol of the service, negative if it is unknown.
+     */
+    private final int binaryPort;
+
+    /**
+     * Transports to run the workload over, one after another.
+     */
+    private final List<EnumTransport> transports = new ArrayList<>();
+
+    /**
+     * Number of driver instances.
+     */
+    private final int drivers;
+
+    /**
+     * Number of worker threads, shared evenly by the drivers.
+     */
+    private final int threads;
+
+    /**
+     * Target rate of all workers in operations per second, 0 for closed-loop workers.
+     */
+    private final long rate;
+
+    /**
+     * Warmup time in seconds, not recorded.
+     */
+    private final long warmupSeconds;
+
+    /**
+     * Measurement time in seconds.
+     */
+    private final long durationSeconds;
+
+    /**
+     * Number of distinct keys.
+     */
+    private final int keyCount;
+
+    /**
+     * Chooses indexes of keys.
+     */
+    private final ZipfianGenerator keyGenerator;
+
+    /**
+     * Percentage of reads.
+     */
+    private final int readPercent;
+
+    /**
+     * Percentage of removes, other operations are writes.
+     */
+    private final int removePercent;
+
+    /**
+     * Chooses lengths of values.
+     */
+    private final WeightedChoice valueSizes;
+
+    /**
+     * Chooses TTL of values in seconds.
+     */
+    private final WeightedChoice ttlSeconds;
+
+    /**
+     * Values with every length of {@link #valueSizes}.
+     */
+    private final Map<Long, String> values = new HashMap<>();
+
+    /**
+     * Constructs the generator from options.
+     *
+     * @param options options by name
+     */
+    private LoadGenerator(Map<String, String> options) {
+        host = options.getOrDefault("host", "localhost");
+        port = Integer.parseInt(options.getOrDefault("port", "0"));
+        binaryPort = Integer.parseInt(options.getOrDefault("binary-port", "-1"));
+        String transport = options.getOrDefault("transport", "rest");
+        if (transport.equalsIgnoreCase("both")) {
+            transports.addAll(List.of(EnumTransport.values()));
+        } else {
+            transports.add(EnumTransport.valueOf(transport.toUpperCase(Locale.ROOT)));
+        }
+        drivers = Integer.parseInt(options.getOrDefault("drivers", "4"));
+        threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        rate = Long.parseLong(options.getOrDefault("rate", "0"));
+        warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "5"));
+        durationSeconds = Long.parseLong(options.getOrDefault("duration", "30"));
+        keyCount = Integer.parseInt(options.getOrDefault("keys", "100000"));
+        keyGenerator = new ZipfianGenerator(keyCount, Double.parseDouble(options.getOrDefault("zipf", "0.99")));
+        readPercent = Integer.parseInt(options.getOrDefault("reads", "90"));
+        removePercent = Integer.parseInt(options.getOrDefault("removes", "0"));
+        valueSizes = new WeightedChoice(options.getOrDefault("value-sizes", "16:60,256:30,4096:10"));
+        ttlSeconds = new WeightedChoice(options.getOrDefault("ttls", "600:90,1:10"));
+        for (long size : valueSizes.choices) {
+            values.put(size, "v".repeat((int) size));
+        }
+    }
+
+    /**
+     * Runs the workload and prints the report.
+     *
+     * @param args options {@code --name=value}: {@code host}, {@code port}, {@code binary-port},
+     *             {@code transport} ({@code rest}, {@code binary} or {@code both}), {@code drivers}, {@code threads},
+     *             {@code rate}, {@code warmup} and {@code duration} in seconds, {@code keys}, {@code zipf}
+     *             (exponent, 0 for uniform keys), {@code reads} and {@code removes} in percent,
+     *             {@code value-sizes} and {@code ttls} as weighted lists {@code value:weight,...}
+     * @throws Exception if the service cannot be started or a worker fails
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Option must be --name=value: " + arg);
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        LoadGenerator generator = new LoadGenerator(options);
+        ConfigurableApplicationContext context = null;
+        int port = generator.port;
+        int binaryPort = generator.binaryPort;
+        if (port == 0) {
+            context = SpringApplication.run(InternshipApplication.class, "--server.port=0",
+                    "--storage.binary-port=0");
+            port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            binaryPort = context.getBean(BinaryProtocolServer.class).getPort();
+        }
+        try {
+            generator.run(port, binaryPort);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    /**
+     * Runs the workload over every transport and compares their latencies.
+     *
+     * @param port       port of the service
+     * @param binaryPort port of the binary protocol of the service, negative if it is unknown
+     * @throws Exception if a worker fails
+     */
+    private void run(int port, int binaryPort) throws Exception {
+        Map<EnumTransport, Recording> recordings = new EnumMap<>(EnumTransport.class);
+        for (EnumTransport transport : transports) {
+            if (transport == EnumTransport.BINARY && binaryPort < 0) {
+                throw new IllegalArgumentException("Binary transport needs --binary-port");
+            }
+            recordings.put(transport, run(transport, port, binaryPort));
+        }
+        if (recordings.size() > 1) {
+            printComparison(recordings);
+        }
+    }
+
+    /**
+     * Preloads all keys, runs the workers over the transport and prints the report.
+     *
+     * @param transport  transport of the requests
+     * @param port       port of the service
+     * @param binaryPort port of the binary protocol of the service
+     * @return latencies of all workers
+     * @throws Exception if a worker fails
+     */
+    private Recording run(EnumTransport transport, int port, int binaryPort) throws Exception {
+        StorageDriver[] storageDrivers = new StorageDriver[drivers];
+        for (int i = 0; i < drivers; i++) {
+            StorageDriverConfig config = new StorageDriverConfig();
+            config.setTimeoutMs(0);
+            if (transport == EnumTransport.BINARY) {
+                config.setBinaryPort(binaryPort);
+            }
+            storageDrivers[i] = StorageDriver.connectStorage(host, port, true, config);
+        }
+        for (int i = 0; i < keyCount; i++) {
+            storageDrivers[i % drivers].set(key(i), values.get(valueSizes.next()), ttlSeconds.next());
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long intervalNs = rate > 0 ? TimeUnit.SECONDS.toNanos(threads) / rate : 0L;
+        long startTime = System.nanoTime();
+        long measurementStart = startTime + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long measurementEnd = measurementStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+        List<Future<Recording>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            StorageDriver storageDriver = storageDrivers[i % drivers];
+            long firstTime = startTime + (intervalNs * i) / threads;
+            futures.add(pool.submit(() -> work(storageDriver, firstTime, intervalNs, measurementStart,
+                    measurementEnd)));
+        }
+        Recording total = new Recording();
+        for (Future<Recording> future : futures) {
+            total.add(future.get());
+        }
+        double elapsedSeconds = (System.nanoTime() - measurementStart) / 1e9;
+        pool.shutdown();
+        for (StorageDriver storageDriver : storageDrivers) {
+            storageDriver.close();
+        }
+        print(transport, total, rate > 0, elapsedSeconds);
+        return total;
+    }
+
+    /**
+     * Sends requests until the end of the measurement.
+     *
+     * @param storageDriver    driver of the worker
+     * @param firstTime        time of the first request in nanoseconds
+     * @param intervalNs       interval between requests of the worker, 0 for a closed loop
+     * @param measurementStart time the recording starts in nanoseconds
+     * @param measurementEnd   time the worker stops in nanoseconds
+     * @return latencies recorded by the worker
+     */
+    private Recording work(StorageDriver storageDriver, long firstTime, long intervalNs, long measurementStart,
+                           long measurementEnd) {
+        Recording recording = new Recording();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long intendedTime = firstTime;
+        while (intendedTime < measurementEnd) {
+            if (intervalNs > 0) {
+                long delay;
+                while ((delay = intendedTime - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+            } else {
+                intendedTime = System.nanoTime();
+            }
+            String key = key(keyGenerator.next(random));
+            int choice = random.nextInt(100);
+            EnumOperation operation = choice < readPercent ? EnumOperation.GET
+                    : choice < readPercent + removePercent ? EnumOperation.REMOVE : EnumOperation.SET;
+            long sendTime = System.nanoTime();
+            boolean isFailed = false;
+            try {
+                switch (operation) {
+                    case GET -> storageDriver.get(key);
+                    case REMOVE -> storageDriver.remove(key);
+                    default -> storageDriver.set(key, values.get(valueSizes.next()), ttlSeconds.next());
+                }
+            } catch (Exception e) {
+                isFailed = true;
+            }
+            long endTime = System.nanoTime();
+            if (intendedTime >= measurementStart) {
+                recording.record(operation, endTime - sendTime, endTime - intendedTime, isFailed);
+            }
+            intendedTime = intervalNs > 0 ? intendedTime + intervalNs : endTime;
+        }
+        return recording;
+    }
+
+    /**
+     * Prints throughput and percentiles of every operation.
+     *
+     * @param transport      transport of the requests
+     * @param total          latencies of all workers
+     * @param isScheduled    true if requests were sent on a schedule
+     * @param elapsedSeconds time from the start of the measurement until all workers stopped
+     */
+    private void print(EnumTransport transport, Recording total, boolean isScheduled, double elapsedSeconds) {
+        System.out.printf("%s, %d drivers, %d threads, rate %s, %d keys, zipf %s, reads %d%%, removes %d%%%n",
+                transport, drivers, threads, isScheduled ? rate + " ops/sec" : "unlimited", keyCount,
+                keyGenerator.exponent, readPercent, removePercent);
+        System.out.printf("%-7s %10s %8s %12s %10s %10s %10s %10s%n", "op", "latency", "errors", "ops/sec",
+                "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (EnumOperation operation : EnumOperation.values()) {
+            Histogram uncorrected = total.uncorrected[operation.ordinal()];
+            if (uncorrected.getTotalCount() == 0) {
+                continue;
+            }
+            Histogram corrected = total.getCorrected(operation, isScheduled);
+            long errors = total.errors[operation.ordinal()];
+            printRow(operation, "measured", uncorrected, errors, elapsedSeconds);
+            printRow(operation, "corrected", corrected, errors, elapsedSeconds);
+        }
+    }
+
+    /**
+     * Prints the p99 latencies of every operation by transport.
+     *
+     * @param recordings latencies of all workers by transport
+     */
+    private void printComparison(Map<EnumTransport, Recording> recordings) {
+        System.out.printf("%-7s %10s", "op", "latency");
+        for (EnumTransport transport : recordings.keySet()) {
+            System.out.printf(" %14s", transport + " p99 ms");
+        }
+        System.out.println();
+        for (EnumOperation operation : EnumOperation.values()) {
+            if (recordings.values().stream().anyMatch(
+                    recording -> recording.uncorrected[operation.ordinal()].getTotalCount() == 0)) {
+                continue;
+            }
+            System.out.printf("%-7s %10s", operation, "measured");
+            for (Recording recording : recordings.values()) {
+                System.out.printf(" %14.3f",
+                        recording.uncorrected[operation.ordinal()].getValueAtPercentile(99.0) / 1e6);
+            }
+            System.out.printf("%n%-7s %10s", operation, "corrected");
+            for (Recording recording : recordings.values()) {
+                System.out.printf(" %14.3f",
+                        recording.getCorrected(operation, rate > 0).getValueAtPercentile(99.0) / 1e6);
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * Prints a row of the report.
+     *
+     * @param operation      the operation
+     * @param name           the kind of latency
+     * @param histogram      the latencies in nanoseconds
+     * @param errors         the number of failed requests
+     * @param elapsedSeconds time from the start of the measurement until all workers stopped
+     */
+    private void printRow(EnumOperation operation, String name, Histogram histogram, long errors,
+                          double elapsedSeconds) {
+        System.out.printf("%-7s %10s %8d %12.0f %10.3f %10.3f %10.3f %10.3f%n", operation, name, errors,
+                histogram.getTotalCount() / elapsedSeconds,
+                histogram.getValueAtPercentile(50.0) / 1e6, histogram.getValueAtPercentile(99.0) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6, histogram.getMaxValue() / 1e6);
+    }
+
+    /**
+     * Gets the key with the index.
+     *
+     * @param index the index of the key
+     * @return the key
+     */
+    private static String key(int index) {
+        return "load:" + index;
+    }
+
+    /**
+     * Latencies of a worker by operation.
+     */
+    private static final class Recording {
+
+        /**
+         * Latencies from sending of requests in nanoseconds.
+         */
+        private final Histogram[] uncorrected = new Histogram[EnumOperation.values().length];
+
+        /**
+         * Latencies from the intended time of requests in nanoseconds.
+         */
+        private final Histogram[] corrected = new Histogram[EnumOperation.values().length];
+
+        /**
+         * Numbers of failed requests.
+         */
+        private final long[] errors = new long[EnumOperation.values().length];
+
+        /**
+         * Constructs empty histograms.
+         */
+        private Recording() {
+            for (int i = 0; i < uncorrected.length; i++) {
+                uncorrected[i] = new Histogram(3);
+                corrected[i] = new Histogram(3);
+            }
+        }
+
+        /**
+         * Records a request.
+         *
+         * @param operation   the operation of the request
+         * @param latencyNs   the latency from sending of the request
+         * @param correctedNs the latency from the intended time of the request
+         * @param isFailed    true if the request failed
+         */
+        private void record(EnumOperation operation, long latencyNs, long correctedNs, boolean isFailed) {
+            uncorrected[operation.ordinal()].recordValue(latencyNs);
+            corrected[operation.ordinal()].recordValue(correctedNs);
+            if (isFailed) {
+                errors[operation.ordinal()]++;
+            }
+        }
+
+        /**
+         * Gets the latencies of the operation corrected for coordinated omission.
+         *
+         * @param operation   the operation
+         * @param isScheduled true if requests were sent on a schedule
+         * @return the corrected latencies, estimated by the mean latency for requests sent without a schedule
+         */
+        private Histogram getCorrected(EnumOperation operation, boolean isScheduled) {
+            Histogram measured = uncorrected[operation.ordinal()];
+            return isScheduled ? corrected[operation.ordinal()]
+                    : measured.copyCorrectedForCoordinatedOmission((long) measured.getMean());
+        }
+
+        /**
+         * Adds the latencies of another worker.
+         *
+         * @param other latencies of the other worker
+         */
+        private void add(Recording other) {
+            for (int i = 0; i < uncorrected.length; i++) {
+                uncorrected[i].add(other.uncorrected[i]);
+                corrected[i].add(other.corrected[i]);
+                errors[i] += other.errors[i];
+            }
+        }
+    }
+
+    /**
+     * Chooses indexes {@code 0..n-1} with probability proportional to {@code 1 / (index + 1)^exponent}.
+     */
+    private static final class ZipfianGenerator {
+
+        /**
+         * Exponent of the distribution, 0 for the uniform distribution.
+         */
+        private final double exponent;
+
+        /**
+         * Cumulative probabilities of the indexes.
+         */
+        private final double[] cumulative;
+
+        /**
+         * Constructs the generator.
+         *
+         * @param n        number of indexes
+         * @param exponent exponent of the distribution
+         */
+        private ZipfianGenerator(int n, double exponent) {
+            this.exponent = exponent;
+            cumulative = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, exponent);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cumulative[i] /= sum;
+            }
+        }
+
+        /**
+         * Chooses an index.
+         *
+         * @param random source of randomness
+         * @return the index
+         */
+        private int next(ThreadLocalRandom random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+        }
+    }
+
+    /**
+     * Chooses numbers from a weighted list {@code value:weight,...} (the weight is 1 if omitted).
+     */
+    private static final class WeightedChoice {
+
+        /**
+         * Numbers to choose from.
+         */
+        private final long[] choices;
+
+        /**
+         * Cumulative weights of the numbers.
+         */
+        private final long[] cumulativeWeights;
+
+        /**
+         * Parses the list.
+         *
+         * @param list the weighted list
+         */
+        private WeightedChoice(String list) {
+            String[] entries = list.split(",");
+            choices = new long[entries.length];
+            cumulativeWeights = new long[entries.length];
+            long sum = 0;
+            for (int i = 0; i < entries.length; i++) {
+                String[] parts = entries[i].trim().split(":");
+                choices[i] = Long.parseLong(parts[0]);
+                sum += parts.length > 1 ? Long.parseLong(parts[1]) : 1L;
+                cumulativeWeights[i] = sum;
+            }
+        }
+
+        /**
+         * Chooses a number.
+         *
+         * @return the number
+         */
+        private long next() {
+            long weight = ThreadLocalRandom.current().nextLong(cumulativeWeights[cumulativeWeights.length - 1]);
+            int i = 0;
+            while (cumulativeWeights[i] <= weight) {
+                i++;
+            }
+            return choices[i];
+        }
+    }
+}
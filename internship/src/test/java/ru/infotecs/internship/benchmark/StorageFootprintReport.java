@@ -0,0 +1,92 @@
+package ru.infotecs.internship.benchmark;
+
+import ru.infotecs.internship.storage.StorageMap;
+
+/**
+ * Reports heap bytes per entry of {@link StorageMap} filled with small records.
+ * <p>
+ * Run with enough heap for the largest key count, for example:
+ * {@code java -Xmx4g -cp <test classpath> ru.infotecs.internship.benchmark.StorageFootprintReport 1000000 10000000}
+ */
+public class StorageFootprintReport {
+
+    /**
+     * Default numbers of keys to measure.
+     */
+    private static final long[] DEFAULT_KEY_COUNTS = {1_000_000L, 10_000_000L};
+
+    /**
+     * Length of every value in characters.
+     */
+    private static final int VALUE_LENGTH = 16;
+
+    /**
+     * Private constructor, use main method.
+     */
+    private StorageFootprintReport() {
+    }
+
+    /**
+     * Measures the footprint for each key count given in arguments.
+     *
+     * @param args numbers of keys (1M and 10M by default)
+     */
+    public static void main(String[] args) {
+        long[] keyCounts = DEFAULT_KEY_COUNTS;
+        if (args.length > 0) {
+            keyCounts = new long[args.length];
+            for (int i = 0; i < args.length; i++) {
+                keyCounts[i] = Long.parseLong(args[i]);
+            }
+        }
+        System.out.printf("%12s %16s %16s%n", "keys", "heap bytes", "bytes/entry");
+        for (long keyCount : keyCounts) {
+            long heapBytes = measure(keyCount);
+            System.out.printf("%12d %16d %16.1f%n", keyCount, heapBytes, (double) heapBytes / keyCount);
+        }
+    }
+
+    /**
+     * Fills a new storage and measures the growth of the used heap.
+     *
+     * @param keyCount number of keys to put
+     * @return number of heap bytes retained by the filled storage
+     */
+    private static long measure(long keyCount) {
+        long before = usedHeap();
+        StorageMap storageMap = new StorageMap();
+        storageMap.stopTrim();
+        String padding = "v".repeat(VALUE_LENGTH);
+        for (long i = 0; i < keyCount; i++) {
+            String suffix = Long.toString(i);
+            String value = padding.substring(suffix.length()) + suffix;
+            storageMap.putValueTtlMs("key:" + suffix, value, StorageMap.MAX_TTL_MS);
+        }
+        long after = usedHeap();
+        if (!storageMap.isKeyValid("key:0")) {
+            throw new IllegalStateException("Storage lost the first key");
+        }
+        return after - before;
+    }
+
+    /**
+     * Gets the used heap after full garbage collections.
+     *
+     * @return the number of used heap bytes
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,73 @@
+package ru.infotecs.internship.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.infotecs.internship.json.JsonResponse;
+import ru.infotecs.internship.json.JsonResponseExtended;
+import ru.infotecs.internship.storage.EnumStorageStatus;
+import ru.infotecs.internship.storage.RecordValue;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of writing a response body in the controller, comparing response objects written by a shared mapper
+ * (as the controller did before) and the templates of {@link JsonResponseWriter}. Allocation per call
+ * is reported by the GC profiler:
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="JsonResponseWriterBenchmark -prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonResponseWriterBenchmark {
+
+    private ObjectMapper mapper;
+
+    private JsonResponseWriter writer;
+
+    private RecordValue value;
+
+    /**
+     * Creates the mapper, the writer and the record to write.
+     */
+    @Setup
+    public void setUp() {
+        mapper = new ObjectMapper();
+        writer = new JsonResponseWriter();
+        value = new RecordValue("myValue é\" of a typical length for the storage", 60_000L);
+    }
+
+    @Benchmark
+    public void setResponseObjectAndMapper(Blackhole blackhole) throws JsonProcessingException {
+        blackhole.consume(mapper.writeValueAsBytes(new JsonResponse(EnumStorageStatus.VALUE_SET_OK)));
+    }
+
+    @Benchmark
+    public void setTemplate(Blackhole blackhole) {
+        blackhole.consume(writer.write(EnumStorageStatus.VALUE_SET_OK));
+    }
+
+    @Benchmark
+    public void getResponseObjectAndMapper(Blackhole blackhole) throws JsonProcessingException {
+        blackhole.consume(mapper.writeValueAsBytes(
+                new JsonResponseExtended(EnumStorageStatus.VALUE_GET_OK, value.getValue())));
+    }
+
+    @Benchmark
+    public void getTemplateAndValueBytes(Blackhole blackhole) {
+        blackhole.consume(writer.writeExtended(EnumStorageStatus.VALUE_GET_OK, value.getValueUtf8()));
+    }
+}
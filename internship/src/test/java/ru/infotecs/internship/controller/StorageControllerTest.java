@@ -1,5 +1,8 @@
 package ru.infotecs.internship.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -8,12 +11,23 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import ru.infotecs.internship.json.JsonRequest;
+import ru.infotecs.internship.json.JsonResponseExtended;
+import ru.infotecs.internship.storage.EnumLoadMode;
 import ru.infotecs.internship.storage.EnumStorageStatus;
 import ru.infotecs.internship.storage.RecordValue;
 import ru.infotecs.internship.storage.StorageMap;
+import ru.infotecs.internship.storage.StorageRangePage;
+import ru.infotecs.internship.storage.StorageScanPage;
 
 import java.io.*;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -44,6 +58,34 @@ public class StorageControllerTest {
                 .andExpect(jsonPath("$.data").value(value));
     }
 
+    @Test
+    public void getValueWithSpecialCharactersShouldBeEscaped() throws Exception {
+        String key = "key";
+        String value = "quote\" backslash\\ line\n tab\t control\u0001 unicode ж€😀";
+        when(storageMap.getValue(key)).thenReturn(new RecordValue(value, 1000L));
+
+        mockMvc.perform(get("/storage/{key}", key))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.VALUE_GET_OK.name()))
+                .andExpect(jsonPath("$.timestamp").isNotEmpty())
+                .andExpect(jsonPath("$.data").value(value));
+    }
+
+    @Test
+    public void responseTemplateShouldMatchResponseObject() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        RecordValue value = new RecordValue("myValue é\" of a typical length for the storage", 60_000L);
+
+        JsonNode expected = mapper.readTree(mapper.writeValueAsBytes(
+                new JsonResponseExtended(EnumStorageStatus.VALUE_GET_OK, value.getValue())));
+        JsonNode actual = mapper.readTree(new JsonResponseWriter().writeExtended(EnumStorageStatus.VALUE_GET_OK,
+                value.getValueUtf8()));
+        ((ObjectNode) expected).remove("timestamp");
+        ((ObjectNode) actual).remove("timestamp");
+        assertEquals(expected, actual);
+    }
+
     @Test
     public void getNotExistingValueShouldBeCorrect() throws Exception {
         String key = "key";
@@ -55,14 +97,57 @@ public class StorageControllerTest {
                 .andExpect(jsonPath("$.data").doesNotExist());
     }
 
+    @Test
+    public void getValueWithCurrentEntityTagShouldReturnNotModified() throws Exception {
+        String key = "key";
+        RecordValue recordValue = new RecordValue("value", 10_000L);
+        recordValue.setVersion(1L);
+        when(storageMap.getValue(key)).thenReturn(recordValue);
+
+        String entityTag = mockMvc.perform(get("/storage/{key}", key))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(header().exists(StorageController.TTL_HEADER))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/storage/{key}", key).header(HttpHeaders.IF_NONE_MATCH, entityTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        RecordValue otherValue = new RecordValue("otherValue", 10_000L);
+        otherValue.setVersion(2L);
+        when(storageMap.getValue(key)).thenReturn(otherValue);
+        mockMvc.perform(get("/storage/{key}", key).header(HttpHeaders.IF_NONE_MATCH, entityTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data").value("otherValue"));
+    }
+
+    @Test
+    public void getValueRewrittenWithSameExpirationShouldNotReturnNotModified() throws Exception {
+        String key = "key";
+        RecordValue recordValue = new RecordValue("Aa", 10_000L);
+        recordValue.setVersion(1L);
+        when(storageMap.getValue(key)).thenReturn(recordValue);
+
+        String entityTag = mockMvc.perform(get("/storage/{key}", key))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        RecordValue rewrittenValue = new RecordValue("BB", 10_000L);
+        rewrittenValue.setExpirationTime(recordValue.getExpirationTime());
+        rewrittenValue.setVersion(2L);
+        when(storageMap.getValue(key)).thenReturn(rewrittenValue);
+        mockMvc.perform(get("/storage/{key}", key).header(HttpHeaders.IF_NONE_MATCH, entityTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data").value("BB"));
+    }
+
     @Test
     public void setNotExistingValueShouldCreateNewRecord() throws Exception {
         String key = "key";
         String value = "value";
 
-        RecordValue recordValue = new RecordValue(value, 1000L);
-        when(storageMap.isKeyValid(key)).thenReturn(false);
-        when(storageMap.getValue(key)).thenReturn(recordValue);
+        when(storageMap.upsertValue(key, value, null)).thenReturn(false);
 
         JsonRequest jsonRequest = new JsonRequest();
         jsonRequest.setKey(key);
@@ -80,9 +165,7 @@ public class StorageControllerTest {
         String key = "key";
         String value = "value";
 
-        RecordValue recordValue = new RecordValue(value, 1L);
-        when(storageMap.isKeyValid(key)).thenReturn(true);
-        when(storageMap.getValue(key)).thenReturn(recordValue);
+        when(storageMap.upsertValue(key, value, null)).thenReturn(true);
 
         JsonRequest jsonRequest = new JsonRequest();
         jsonRequest.setKey(key);
@@ -100,8 +183,7 @@ public class StorageControllerTest {
         String key = "key";
         String value = "value";
 
-        RecordValue recordValue = new RecordValue(value, 1L);
-        when(storageMap.isKeyValid(key)).thenReturn(true);
+        RecordValue recordValue = new RecordValue(value, 1000L);
         when(storageMap.removeValue(key)).thenReturn(recordValue);
 
         mockMvc.perform(delete("/storage/{key}", key))
@@ -113,10 +195,7 @@ public class StorageControllerTest {
     @Test
     public void removeNotExistingValueShouldReturnNull() throws Exception {
         String key = "key";
-        String value = "value";
 
-        RecordValue recordValue = new RecordValue(value, 1L);
-        when(storageMap.isKeyValid(key)).thenReturn(false);
         when(storageMap.removeValue(key)).thenReturn(null);
 
         mockMvc.perform(delete("/storage/{key}", key))
@@ -125,29 +204,327 @@ public class StorageControllerTest {
                 .andExpect(jsonPath("$.data").doesNotExist());
     }
 
+    @Test
+    public void getValuesShouldReturnStatusPerKey() throws Exception {
+        when(storageMap.getValue("key")).thenReturn(new RecordValue("value", 1000L));
+        when(storageMap.getValue("missingKey")).thenReturn(null);
+
+        mockMvc.perform(post("/storage/mget")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[\"key\",\"missingKey\",null]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.BATCH_OK.name()))
+                .andExpect(jsonPath("$.results[0].key").value("key"))
+                .andExpect(jsonPath("$.results[0].status").value(EnumStorageStatus.VALUE_GET_OK.name()))
+                .andExpect(jsonPath("$.results[0].data").value("value"))
+                .andExpect(jsonPath("$.results[1].status").value(EnumStorageStatus.VALUE_NOT_EXIST.name()))
+                .andExpect(jsonPath("$.results[2].status").value(EnumStorageStatus.KEY_EMPTY.name()));
+    }
+
+    @Test
+    public void setValuesShouldReturnStatusPerRequest() throws Exception {
+        when(storageMap.upsertValue("key", "value", 10L)).thenReturn(false);
+        when(storageMap.upsertValue("existingKey", "value", null)).thenReturn(true);
+
+        mockMvc.perform(post("/storage/mset")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + new JsonRequest("key", "value", 10L) + ","
+                                + new JsonRequest("existingKey", "value", null) + ",{\"key\":\"key\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.BATCH_OK.name()))
+                .andExpect(jsonPath("$.results[0].status").value(EnumStorageStatus.VALUE_SET_OK.name()))
+                .andExpect(jsonPath("$.results[1].status").value(EnumStorageStatus.VALUE_SET_UPDATE_OK.name()))
+                .andExpect(jsonPath("$.results[2].status").value(EnumStorageStatus.VALUE_NOT_EXIST.name()));
+    }
+
+    @Test
+    public void removeValuesShouldReturnRemovedValues() throws Exception {
+        when(storageMap.removeValue("key")).thenReturn(new RecordValue("value", 1000L));
+        when(storageMap.removeValue("missingKey")).thenReturn(null);
+
+        mockMvc.perform(post("/storage/mdel")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[\"key\",\"missingKey\"]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].status").value(EnumStorageStatus.VALUE_REMOVE_OK.name()))
+                .andExpect(jsonPath("$.results[0].data").value("value"))
+                .andExpect(jsonPath("$.results[1].status").value(EnumStorageStatus.VALUE_NOT_EXIST.name()));
+    }
+
+    @Test
+    public void tooLargeBatchShouldReturnError() throws Exception {
+        String keys = "[" + "\"key\",".repeat(StorageController.MAX_BATCH_SIZE) + "\"key\"]";
+
+        mockMvc.perform(post("/storage/mget")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(keys))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.BATCH_TOO_LARGE.name()));
+        verify(storageMap, never()).getValue(anyString());
+    }
+
+    @Test
+    public void pipelineShouldExecuteOperationsInOrder() throws Exception {
+        when(storageMap.upsertValue("key", "value", 10L)).thenReturn(false);
+        when(storageMap.getValue("key")).thenReturn(new RecordValue("value", 1000L));
+
+        mockMvc.perform(post("/storage/pipeline")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"op\":\"SET\",\"key\":\"key\",\"value\":\"value\",\"ttl\":10},"
+                                + "{\"op\":\"GET\",\"key\":\"key\"},"
+                                + "{\"op\":\"UNKNOWN\",\"key\":\"key\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.BATCH_OK.name()))
+                .andExpect(jsonPath("$.results[0].status").value(EnumStorageStatus.VALUE_SET_OK.name()))
+                .andExpect(jsonPath("$.results[1].status").value(EnumStorageStatus.VALUE_GET_OK.name()))
+                .andExpect(jsonPath("$.results[1].data").value("value"))
+                .andExpect(jsonPath("$.results[2].status").value(EnumStorageStatus.OPERATION_UNSUPPORTED.name()));
+    }
+
+    @Test
+    public void malformedPipelineShouldBeAborted() throws Exception {
+        mockMvc.perform(post("/storage/pipeline")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"op\":\"REMOVE\",\"key\":\"key\"},{\"op\":"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.PIPELINE_ABORTED.name()))
+                .andExpect(jsonPath("$.results.length()").value(1))
+                .andExpect(jsonPath("$.results[0].status").value(EnumStorageStatus.VALUE_NOT_EXIST.name()));
+    }
+
     @Test
     public void dumpStorageShouldReturnCorrectResponse() throws Exception {
         String fileName = "storage.dat";
+        byte[] data = "storage data".getBytes();
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(0).write(data);
+            return null;
+        }).when(storageMap).dump(any());
 
         mockMvc.perform(get("/dump"))
                 .andExpect(status().isOk())  // Ожидаем статус 200 OK
                 .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM))
                 .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION,
-                        "form-data; name=\"attachment\"; filename=\"" + fileName + "\""));
+                        "form-data; name=\"attachment\"; filename=\"" + fileName + "\""))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().bytes(data));
+    }
+
+    @Test
+    public void dumpStorageShouldBeCompressedByParameter() throws Exception {
+        byte[] data = "storage data".repeat(100).getBytes();
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(0).write(data);
+            return null;
+        }).when(storageMap).dump(any());
+
+        byte[] compressed = mockMvc.perform(get("/dump").param("compression", "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION,
+                        "form-data; name=\"attachment\"; filename=\"storage.dat.gz\""))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andReturn().getResponse().getContentAsByteArray();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void dumpStorageShouldBeCompressedByAcceptEncoding() throws Exception {
+        byte[] data = "storage data".repeat(100).getBytes();
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(0).write(data);
+            return null;
+        }).when(storageMap).dump(any());
+
+        byte[] compressed = mockMvc.perform(get("/dump")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "br;q=1.0, deflate;q=0.9, gzip;q=0.5"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "deflate"))
+                .andReturn().getResponse().getContentAsByteArray();
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void failedDumpStorageShouldReturnError() throws Exception {
+        doThrow(new IOException()).when(storageMap).dump(any());
+
+        mockMvc.perform(get("/dump"))
+                .andExpect(status().isInternalServerError())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.VALUE_DUMP_ERROR.name()));
+    }
+
+    @Test
+    public void dumpStorageWithUnsupportedCompressionShouldReturnError() throws Exception {
+        mockMvc.perform(get("/dump").param("compression", "zstd"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.DUMP_COMPRESSION_UNSUPPORTED.name()));
     }
 
     @Test
     public void loadStorageShouldReturnCorrectResponse() throws Exception {
-        try (ByteArrayOutputStream byteOutStream = new ByteArrayOutputStream();
-             ObjectOutputStream objectOutStream = new ObjectOutputStream(byteOutStream)) {
-            objectOutStream.writeObject(new StorageMap());
+        StorageMap dumpedStorageMap = new StorageMap();
+        dumpedStorageMap.putValue("key", "value");
+        dumpedStorageMap.stopTrim();
+        try (ByteArrayOutputStream byteOutStream = new ByteArrayOutputStream()) {
+            dumpedStorageMap.dump(byteOutStream);
 
             mockMvc.perform(put("/load")
                             .content(byteOutStream.toByteArray())
                             .contentType(MediaType.APPLICATION_OCTET_STREAM))
                     .andExpect(status().isCreated())
                     .andExpect(jsonPath("$.status").value(EnumStorageStatus.VALUE_LOAD_OK.name()));
+            verify(storageMap).load(any(), eq(EnumLoadMode.REPLACE));
+        }
+    }
+
+    @Test
+    public void loadStorageInMergeModeShouldReturnCorrectResponse() throws Exception {
+        mockMvc.perform(put("/load").param("mode", "merge")
+                        .content(new byte[0])
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.VALUE_LOAD_OK.name()));
+        verify(storageMap).load(any(), eq(EnumLoadMode.MERGE));
+    }
+
+    @Test
+    public void loadStorageWithUnsupportedModeShouldReturnError() throws Exception {
+        mockMvc.perform(put("/load").param("mode", "append")
+                        .content(new byte[0])
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.LOAD_MODE_UNSUPPORTED.name()));
+        verify(storageMap, never()).load(any(), any());
+    }
+
+    @Test
+    public void loadCompressedStorageShouldReturnCorrectResponse() throws Exception {
+        byte[] data = "storage data".repeat(100).getBytes();
+        ByteArrayOutputStream byteOutStream = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(byteOutStream)) {
+            out.write(data);
         }
+        doAnswer(invocation -> {
+            assertArrayEquals(data, invocation.<InputStream>getArgument(0).readAllBytes());
+            return 1L;
+        }).when(storageMap).load(any(), any());
+
+        mockMvc.perform(put("/load")
+                        .content(byteOutStream.toByteArray())
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.VALUE_LOAD_OK.name()));
+    }
+
+    @Test
+    public void loadCorruptedStorageShouldReturnError() throws Exception {
+        doThrow(new IOException()).when(storageMap).load(any(), any());
+
+        mockMvc.perform(put("/load")
+                        .content(new byte[]{1, 2, 3, 4})
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.VALUE_LOAD_ERROR.name()));
+    }
+
+    @Test
+    public void getStatsShouldReturnStorageStatistics() throws Exception {
+        when(storageMap.getStats()).thenReturn(Map.of("entries", 1L, "evictions", 0L));
+
+        mockMvc.perform(get("/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.STATS_GET_OK.name()))
+                .andExpect(jsonPath("$.stats.entries").value(1));
+    }
+
+    @Test
+    public void scanShouldReturnPageAndCursor() throws Exception {
+        when(storageMap.scan(0L, "tenant:*", 10, true)).thenReturn(new StorageScanPage(7L,
+                List.of("tenant:1"), List.of(new RecordValue("value", 1000L))));
+
+        mockMvc.perform(get("/scan").param("cursor", "0").param("match", "tenant:*")
+                        .param("count", "10").param("values", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.SCAN_OK.name()))
+                .andExpect(jsonPath("$.cursor").value(7))
+                .andExpect(jsonPath("$.entries[0].key").value("tenant:1"))
+                .andExpect(jsonPath("$.entries[0].value").value("value"));
+    }
+
+    @Test
+    public void scanWithUnknownCursorShouldBeNotFound() throws Exception {
+        when(storageMap.scan(5L, null, StorageController.DEFAULT_SCAN_COUNT, false)).thenReturn(null);
+
+        mockMvc.perform(get("/scan").param("cursor", "5"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.SCAN_CURSOR_NOT_FOUND.name()));
+        mockMvc.perform(get("/scan").param("count", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.SCAN_COUNT_INVALID.name()));
+    }
+
+    @Test
+    public void rangeShouldReturnPageOfPrefixAndNextKey() throws Exception {
+        when(storageMap.isOrdered()).thenReturn(true);
+        when(storageMap.range("tenant:b", "tenant;", 10, true)).thenReturn(new StorageRangePage("tenant:c",
+                List.of("tenant:b"), List.of(new RecordValue("value", 1000L))));
+
+        mockMvc.perform(get("/keys").param("prefix", "tenant:").param("from", "tenant:b")
+                        .param("limit", "10").param("values", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.RANGE_OK.name()))
+                .andExpect(jsonPath("$.nextKey").value("tenant:c"))
+                .andExpect(jsonPath("$.entries[0].key").value("tenant:b"))
+                .andExpect(jsonPath("$.entries[0].value").value("value"));
+    }
+
+    @Test
+    public void prefixCountAndRemoveShouldReturnCount() throws Exception {
+        when(storageMap.isOrdered()).thenReturn(true);
+        when(storageMap.countPrefix("tenant:")).thenReturn(3L);
+        when(storageMap.removePrefix("tenant:")).thenReturn(2L);
+
+        mockMvc.perform(get("/keys/count").param("prefix", "tenant:"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.RANGE_COUNT_OK.name()))
+                .andExpect(jsonPath("$.count").value(3));
+        mockMvc.perform(delete("/keys").param("prefix", "tenant:"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.RANGE_REMOVE_OK.name()))
+                .andExpect(jsonPath("$.count").value(2));
+        mockMvc.perform(delete("/keys"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.KEY_EMPTY.name()));
+    }
+
+    @Test
+    public void rangeWithoutOrderedIndexShouldBeBadRequest() throws Exception {
+        when(storageMap.isOrdered()).thenReturn(false);
+
+        mockMvc.perform(get("/keys").param("prefix", "tenant:"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.ORDERED_INDEX_DISABLED.name()));
+    }
+
+    @Test
+    public void startSnapshotShouldBeAccepted() throws Exception {
+        when(storageMap.requestSnapshot()).thenReturn(true);
+
+        mockMvc.perform(post("/snapshot"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.SNAPSHOT_STARTED.name()));
+    }
+
+    @Test
+    public void startDisabledSnapshotShouldReturnError() throws Exception {
+        when(storageMap.requestSnapshot()).thenReturn(false);
+
+        mockMvc.perform(post("/snapshot"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(EnumStorageStatus.SNAPSHOT_DISABLED.name()));
     }
 
-}
\ No newline at end of file
+}
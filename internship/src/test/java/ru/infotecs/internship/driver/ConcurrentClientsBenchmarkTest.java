@@ -0,0 +1,129 @@
+package ru.infotecs.internship.driver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Throughput and p99 latency of the controller with many concurrent clients, in the request execution mode
+ * set by the {@code virtualThreads} system property (virtual threads take effect on Java 21 or later only).
+ * Runs only on demand:
+ * {@code mvn test -Dtest=ConcurrentClientsBenchmarkTest -Dbenchmark=true -DvirtualThreads=true},
+ * the number of clients is set by the {@code clients} system property.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.threads.virtual.enabled=${virtualThreads:false}",
+        "server.tomcat.max-connections=${clients:10000}",
+        "server.tomcat.accept-count=${clients:10000}"})
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class ConcurrentClientsBenchmarkTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrentClientsBenchmarkTest.class);
+
+    private static final int CLIENTS = Integer.getInteger("clients", 10_000);
+
+    private static final long WARMUP_MS = 5_000L;
+
+    private static final long MEASUREMENT_MS = 20_000L;
+
+    private static final long BUCKET_NS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static final int BUCKETS = 100_000;
+
+    @LocalServerPort
+    private int port;
+
+    @Value("${spring.threads.virtual.enabled}")
+    private boolean isVirtualThreadsEnabled;
+
+    @Test
+    public void concurrentClientsThroughput() throws Exception {
+        StorageDriverConfig config = new StorageDriverConfig();
+        config.setTimeoutMs(0);
+        config.setConnectTimeoutMs(0);
+        config.setMaxConnections(CLIENTS);
+        try (StorageDriver storageDriver = StorageDriver.connectStorage("localhost", port, true, config)) {
+            for (int i = 0; i < CLIENTS; i++) {
+                storageDriver.setAsync("clientKey" + i, "value" + i, 600L).join();
+            }
+            run(storageDriver, WARMUP_MS);
+            Result result = run(storageDriver, MEASUREMENT_MS);
+            LOGGER.info("Java {}, virtual threads {}, {} clients: {} ops/sec, p50 {} ms, p99 {} ms",
+                    Runtime.version().feature(), isVirtualThreadsEnabled
+                            && Runtime.version().feature() >= 21 ? "on" : "off",
+                    CLIENTS, result.operations * 1000L / MEASUREMENT_MS, result.percentileMs(0.5),
+                    result.percentileMs(0.99));
+        }
+    }
+
+    private static final class Result {
+
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        private long operations;
+
+        private void record(long latencyNs) {
+            histogram.incrementAndGet((int) Math.min(latencyNs / BUCKET_NS, BUCKETS - 1));
+        }
+
+        private double percentileMs(double percentile) {
+            long rank = (long) Math.ceil(operations * percentile);
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += histogram.get(i);
+                if (count >= rank) {
+                    return (i + 1) * BUCKET_NS / 1_000_000.0;
+                }
+            }
+            return BUCKETS * BUCKET_NS / 1_000_000.0;
+        }
+    }
+
+    /**
+     * Runs closed-loop clients: every client sends its next request when the response to the previous one
+     * is received.
+     */
+    private static Result run(StorageDriver storageDriver, long durationMs) throws InterruptedException {
+        Result result = new Result();
+        AtomicBoolean isRunning = new AtomicBoolean(true);
+        AtomicLong operations = new AtomicLong();
+        AtomicLong activeClients = new AtomicLong(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            request(storageDriver, "clientKey" + i, result, isRunning, operations, activeClients);
+        }
+        Thread.sleep(durationMs);
+        isRunning.set(false);
+        while (activeClients.get() > 0) {
+            Thread.sleep(10L);
+        }
+        result.operations = operations.get();
+        return result;
+    }
+
+    private static void request(StorageDriver storageDriver, String key, Result result, AtomicBoolean isRunning,
+                                AtomicLong operations, AtomicLong activeClients) {
+        long startTime = System.nanoTime();
+        storageDriver.getAsync(key).whenComplete((value, e) -> {
+            if (e != null) {
+                LOGGER.warn("Client of {} failed", key, e);
+            } else if (isRunning.get()) {
+                result.record(System.nanoTime() - startTime);
+                operations.incrementAndGet();
+            }
+            if (e == null && isRunning.get()) {
+                request(storageDriver, key, result, isRunning, operations, activeClients);
+            } else {
+                activeClients.decrementAndGet();
+            }
+        });
+    }
+}
@@ -0,0 +1,175 @@
+package ru.infotecs.internship.driver;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import ru.infotecs.internship.binary.BinaryProtocolServer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Throughput of a single driver shared by many threads against a local server.
+ * Runs only on demand: {@code mvn test -Dtest=StorageDriverBenchmarkTest -Dbenchmark=true},
+ * the number of threads is set by the {@code threads} system property.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "storage.binary-port=0")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class StorageDriverBenchmarkTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StorageDriverBenchmarkTest.class);
+
+    private static final int THREADS = Integer.getInteger("threads", 64);
+
+    private static final long WARMUP_MS = 3_000L;
+
+    private static final long MEASUREMENT_MS = 10_000L;
+
+    private static final int BATCH_KEYS = 100;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private BinaryProtocolServer binaryProtocolServer;
+
+    @Test
+    public void sharedDriverThroughput() throws Exception {
+        StorageDriverConfig config = new StorageDriverConfig();
+        config.setTimeoutMs(0);
+        StorageDriver storageDriver = StorageDriver.connectStorage("localhost", port, true, config);
+        LOGGER.info("Shared HTTP/1.1 driver, {} threads: {} ops/sec", THREADS, measure(storageDriver));
+    }
+
+    @Test
+    public void sharedHttp2DriverThroughput() throws Exception {
+        StorageDriverConfig config = new StorageDriverConfig();
+        config.setTimeoutMs(0);
+        config.setHttp2(true);
+        StorageDriver storageDriver = StorageDriver.connectStorage("localhost", port, true, config);
+        LOGGER.info("Shared h2c driver, {} threads: {} ops/sec", THREADS, measure(storageDriver));
+    }
+
+    @Test
+    public void sharedBinaryDriverThroughput() throws Exception {
+        StorageDriverConfig config = new StorageDriverConfig();
+        config.setTimeoutMs(0);
+        config.setBinaryPort(binaryProtocolServer.getPort());
+        try (StorageDriver storageDriver = StorageDriver.connectStorage("localhost", port, true, config)) {
+            LOGGER.info("Shared binary protocol driver, {} threads: {} ops/sec", THREADS, measure(storageDriver));
+        }
+    }
+
+    @Test
+    public void sharedDriverBatchThroughput() throws Exception {
+        StorageDriverConfig config = new StorageDriverConfig();
+        config.setTimeoutMs(0);
+        StorageDriver storageDriver = StorageDriver.connectStorage("localhost", port, true, config);
+        Worker worker = (driver, key, iteration) -> {
+            Map<String, String> values = new LinkedHashMap<>();
+            for (int i = 0; i < BATCH_KEYS; i++) {
+                values.put(key + "_" + i, "value" + iteration);
+            }
+            driver.setAll(values, 60L);
+            Assertions.assertEquals(BATCH_KEYS, driver.getAll(values.keySet()).size());
+            return BATCH_KEYS * 2;
+        };
+        LOGGER.info("Shared HTTP/1.1 driver, batches of {} keys, {} threads: {} keys/sec",
+                BATCH_KEYS, THREADS, measure(storageDriver, worker));
+    }
+
+    @Test
+    public void nearCacheHotKeyThroughput() throws Exception {
+        StorageDriverConfig config = new StorageDriverConfig();
+        config.setTimeoutMs(0);
+        config.setNearCacheMaxEntries(1000);
+        StorageDriver storageDriver = StorageDriver.connectStorage("localhost", port, true, config);
+        storageDriver.set("hotKey", "value", 600L);
+        LOGGER.info("Near cache, hot key, {} threads: {} ops/sec", THREADS, measure(storageDriver,
+                (driver, key, iteration) -> {
+                    Assertions.assertNotNull(driver.get("hotKey"));
+                    return 1;
+                }));
+        LOGGER.info("Near cache stats: {}", storageDriver.getNearCacheStats());
+    }
+
+    @Test
+    public void pipelinedIngestionThroughput() throws Exception {
+        StorageDriverConfig config = new StorageDriverConfig();
+        config.setTimeoutMs(0);
+        StorageDriver storageDriver = StorageDriver.connectStorage("localhost", port, true, config);
+        ingest(storageDriver, WARMUP_MS);
+        LOGGER.info("Pipelined ingestion, 1 thread: {} ops/sec", ingest(storageDriver, MEASUREMENT_MS));
+    }
+
+    private static long ingest(StorageDriver storageDriver, long durationMs) {
+        Semaphore outstanding = new Semaphore(StoragePipeline.MAX_FRAME_SIZE * 4);
+        long startTime = System.currentTimeMillis();
+        long deadline = startTime + durationMs;
+        long operations = 0;
+        try (StoragePipeline pipeline = storageDriver.pipeline()) {
+            while (System.currentTimeMillis() < deadline) {
+                outstanding.acquireUninterruptibly();
+                pipeline.set("ingestionKey" + (operations % 100_000), "value" + operations, 60L)
+                        .whenComplete((isSet, e) -> outstanding.release());
+                operations++;
+            }
+        }
+        return operations * 1000L / (System.currentTimeMillis() - startTime);
+    }
+
+    private interface Worker {
+        long run(StorageDriver storageDriver, String key, long iteration) throws Exception;
+    }
+
+    private static long measure(StorageDriver storageDriver) throws Exception {
+        return measure(storageDriver, (driver, key, iteration) -> {
+            driver.set(key, "value" + iteration, 60L);
+            Assertions.assertNotNull(driver.get(key));
+            return 2;
+        });
+    }
+
+    private static long measure(StorageDriver storageDriver, Worker worker) throws Exception {
+        run(storageDriver, worker, WARMUP_MS);
+        return run(storageDriver, worker, MEASUREMENT_MS) * 1000L / MEASUREMENT_MS;
+    }
+
+    private static long run(StorageDriver storageDriver, Worker worker, long durationMs) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        AtomicBoolean isRunning = new AtomicBoolean(true);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            String key = "benchmarkKey" + i;
+            futures.add(pool.submit(() -> {
+                long operations = 0;
+                for (long iteration = 0; isRunning.get(); iteration++) {
+                    operations += worker.run(storageDriver, key, iteration);
+                }
+                return operations;
+            }));
+        }
+        Thread.sleep(durationMs);
+        isRunning.set(false);
+        long operations = 0;
+        for (Future<Long> future : futures) {
+            operations += future.get();
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+        return operations;
+    }
+}
@@ -3,15 +3,34 @@ package ru.infotecs.internship.driver;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
+import ru.infotecs.internship.binary.BinaryProtocol;
+import ru.infotecs.internship.binary.BinaryProtocolServer;
+import ru.infotecs.internship.binary.EnumBinaryOperation;
+import ru.infotecs.internship.json.JsonScanEntry;
+import ru.infotecs.internship.storage.EnumStorageStatus;
 import ru.infotecs.internship.storage.StorageException;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.http.HttpTimeoutException;
 import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {"storage.binary-port=0", "storage.ordered-index=true"})
 public class StorageDriverTest {
 
     private static final long DEFAULT_TESTING_TTL_SECONDS = 1;
@@ -19,6 +38,9 @@ public class StorageDriverTest {
     @LocalServerPort
     private int port;
 
+    @Autowired
+    private BinaryProtocolServer binaryProtocolServer;
+
     private StorageDriver storageDriver;
 
     @BeforeEach
@@ -72,4 +94,263 @@ public class StorageDriverTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testScanShouldFetchPagesLazily() throws StorageException, IOException {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < 50; i++) {
+            values.put("scanTest:" + i, "value" + i);
+        }
+        storageDriver.setAll(values, DEFAULT_TESTING_TTL_SECONDS);
+        Assertions.assertEquals(values.keySet(), storageDriver.scanKeys("scanTest:*").collect(Collectors.toSet()));
+        List<JsonScanEntry> entries = storageDriver.scan("scanTest:1?", 7, true).toList();
+        Assertions.assertEquals(10, entries.size());
+        for (JsonScanEntry entry : entries) {
+            Assertions.assertEquals(values.get(entry.getKey()), entry.getValue());
+            Assertions.assertTrue(entry.getTtlMs() > 0);
+        }
+        Assertions.assertEquals(List.of("scanTest:0"), storageDriver.scanKeys("scanTest:0").toList());
+    }
+
+    @Test
+    public void testRangeShouldListPrefixInOrder() throws StorageException, IOException {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < 50; i++) {
+            values.put(String.format("rangeTest:%02d", i), "value" + i);
+        }
+        storageDriver.setAll(values, DEFAULT_TESTING_TTL_SECONDS);
+        Assertions.assertEquals(new ArrayList<>(values.keySet()), storageDriver.listKeys("rangeTest:").toList());
+        List<JsonScanEntry> entries = storageDriver.range("rangeTest:", "rangeTest:10", "rangeTest:20", 3, true)
+                .toList();
+        Assertions.assertEquals(10, entries.size());
+        Assertions.assertEquals("rangeTest:10", entries.get(0).getKey());
+        Assertions.assertEquals("value19", entries.get(9).getValue());
+        Assertions.assertEquals(50, storageDriver.countKeys("rangeTest:"));
+        Assertions.assertEquals(10, storageDriver.removeKeys("rangeTest:1"));
+        Assertions.assertEquals(40, storageDriver.countKeys("rangeTest:"));
+        Assertions.assertNull(storageDriver.get("rangeTest:15"));
+    }
+
+    @Test
+    public void testAsyncSetGetAndRemoveShouldBeCorrect() throws ExecutionException, InterruptedException {
+        Assertions.assertTrue(storageDriver.setAsync("myKey", "myValue", DEFAULT_TESTING_TTL_SECONDS).get());
+        Assertions.assertEquals("myValue", storageDriver.getAsync("myKey").get());
+        Assertions.assertEquals("myValue", storageDriver.removeAsync("myKey").get());
+        Assertions.assertNull(storageDriver.getAsync("myKey").get());
+    }
+
+    @Test
+    public void testAsyncRequestsShouldTimeOut() throws StorageException, IOException {
+        try (ServerSocket silentServer = new ServerSocket(0)) {
+            StorageDriverConfig config = new StorageDriverConfig();
+            config.setTimeoutMs(200);
+            config.setMaxConnections(1);
+            StorageDriver silentDriver = StorageDriver.connectStorage("localhost", silentServer.getLocalPort(),
+                    false, config);
+            CompletableFuture<String> inFlight = silentDriver.getAsync("myKey");
+            CompletableFuture<String> queued = silentDriver.getAsync("myKey");
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class, inFlight::get);
+            Assertions.assertInstanceOf(HttpTimeoutException.class, e.getCause());
+            e = Assertions.assertThrows(ExecutionException.class, queued::get);
+            Assertions.assertInstanceOf(HttpTimeoutException.class, e.getCause());
+            Assertions.assertThrows(HttpTimeoutException.class, () -> silentDriver.get("myKey"));
+            Path tempFile = Files.createTempFile("storage", ".dat");
+            try {
+                Assertions.assertThrows(HttpTimeoutException.class,
+                        () -> silentDriver.dump(tempFile.getParent(), tempFile.getFileName().toString()));
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    @Test
+    public void testBinaryRequestsShouldTimeOutWithoutBlockingCaller() throws StorageException, IOException {
+        try (ServerSocket silentServer = new ServerSocket(0)) {
+            StorageDriverConfig config = new StorageDriverConfig();
+            config.setTimeoutMs(200);
+            config.setBinaryPort(silentServer.getLocalPort());
+            try (StorageDriver silentDriver = StorageDriver.connectStorage("localhost", port, false, config)) {
+                long startTime = System.nanoTime();
+                CompletableFuture<Boolean> isSet = silentDriver.setAsync("myKey", "myValue", null);
+                Assertions.assertTrue(System.nanoTime() - startTime < 100_000_000L);
+                ExecutionException e = Assertions.assertThrows(ExecutionException.class, isSet::get);
+                Assertions.assertInstanceOf(HttpTimeoutException.class, e.getCause());
+                Assertions.assertThrows(HttpTimeoutException.class, () -> silentDriver.get("myKey"));
+            }
+        }
+    }
+
+    @Test
+    public void testSetAllGetAllAndRemoveAllShouldBeCorrect() throws StorageException, IOException {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < StorageDriver.BATCH_SIZE * 2 + 1; i++) {
+            values.put("myKey" + i, "myValue" + i);
+        }
+        Map<String, Boolean> isSet = storageDriver.setAll(values, DEFAULT_TESTING_TTL_SECONDS);
+        Assertions.assertEquals(values.size(), isSet.size());
+        Assertions.assertFalse(isSet.containsValue(false));
+
+        Assertions.assertEquals(values, storageDriver.getAll(values.keySet()));
+        Assertions.assertEquals(Map.of("myKey0", "myValue0"), storageDriver.getAll(List.of("myKey0", "otherKey")));
+        Assertions.assertEquals(values, storageDriver.removeAll(values.keySet()));
+        Assertions.assertTrue(storageDriver.getAll(values.keySet()).isEmpty());
+    }
+
+    @Test
+    public void testPipelineShouldExecuteOperationsInOrder() throws ExecutionException, InterruptedException {
+        List<CompletableFuture<Boolean>> isSet = new ArrayList<>();
+        CompletableFuture<String> value;
+        CompletableFuture<String> removedValue;
+        CompletableFuture<String> missingValue;
+        try (StoragePipeline pipeline = storageDriver.pipeline()) {
+            for (int i = 0; i < StoragePipeline.MAX_FRAME_SIZE + 1; i++) {
+                isSet.add(pipeline.set("myKey", "myValue" + i, DEFAULT_TESTING_TTL_SECONDS));
+            }
+            value = pipeline.get("myKey");
+            removedValue = pipeline.remove("myKey");
+            missingValue = pipeline.get("myKey");
+        }
+        for (CompletableFuture<Boolean> future : isSet) {
+            Assertions.assertTrue(future.get());
+        }
+        Assertions.assertEquals("myValue" + StoragePipeline.MAX_FRAME_SIZE, value.get());
+        Assertions.assertEquals("myValue" + StoragePipeline.MAX_FRAME_SIZE, removedValue.get());
+        Assertions.assertNull(missingValue.get());
+    }
+
+    @Test
+    public void testNearCacheShouldServeHotKeysAndSeeWrites() throws StorageException, IOException,
+            InterruptedException {
+        StorageDriverConfig config = new StorageDriverConfig();
+        config.setNearCacheMaxEntries(100);
+        config.setNearCacheMaxStalenessMs(200);
+        StorageDriver cachingDriver = StorageDriver.connectStorage("localhost", port, true, config);
+
+        cachingDriver.set("myKey", "myValue", 60L);
+        Assertions.assertEquals("myValue", cachingDriver.get("myKey"));
+        Assertions.assertEquals("myValue", cachingDriver.get("myKey"));
+        Assertions.assertEquals(1L, cachingDriver.getNearCacheStats().get("hits"));
+        Assertions.assertEquals(1L, cachingDriver.getNearCacheStats().get("misses"));
+
+        cachingDriver.set("myKey", "ownValue", 60L);
+        Assertions.assertEquals("ownValue", cachingDriver.get("myKey"));
+        Assertions.assertEquals(1L, cachingDriver.getNearCacheStats().get("invalidations"));
+
+        storageDriver.set("myKey", "otherValue", 60L);
+        Thread.sleep(300);
+        Assertions.assertEquals("otherValue", cachingDriver.get("myKey"));
+        Assertions.assertEquals(1L, cachingDriver.getNearCacheStats().get("revalidations"));
+        Assertions.assertEquals(2L, cachingDriver.getNearCacheStats().get("invalidations"));
+
+        Thread.sleep(300);
+        Assertions.assertEquals("otherValue", cachingDriver.get("myKey"));
+        Assertions.assertEquals(2L, cachingDriver.getNearCacheStats().get("revalidations"));
+        Assertions.assertEquals(2L, cachingDriver.getNearCacheStats().get("invalidations"));
+
+        storageDriver.set("myKey", "otherValue", 120L);
+        Thread.sleep(300);
+        Assertions.assertEquals("otherValue", cachingDriver.get("myKey"));
+        Assertions.assertEquals(3L, cachingDriver.getNearCacheStats().get("revalidations"));
+        Assertions.assertEquals(2L, cachingDriver.getNearCacheStats().get("invalidations"));
+    }
+
+    @Test
+    public void testNearCacheShouldNotOutliveRecord() throws StorageException, IOException, InterruptedException {
+        StorageDriverConfig config = new StorageDriverConfig();
+        config.setNearCacheMaxEntries(100);
+        config.setNearCacheMaxStalenessMs(60_000L);
+        StorageDriver cachingDriver = StorageDriver.connectStorage("localhost", port, true, config);
+
+        cachingDriver.set("myKey", "myValue", DEFAULT_TESTING_TTL_SECONDS);
+        Assertions.assertEquals("myValue", cachingDriver.get("myKey"));
+        Thread.sleep(DEFAULT_TESTING_TTL_SECONDS * 1000L + 100L);
+        Assertions.assertNull(cachingDriver.get("myKey"));
+        Assertions.assertEquals(0L, cachingDriver.getNearCacheStats().get("hits"));
+    }
+
+    @Test
+    public void testGetTtlMsShouldBeCorrect() throws StorageException, IOException {
+        storageDriver.set("myKey", "myValue", DEFAULT_TESTING_TTL_SECONDS);
+        Long ttlMs = storageDriver.getTtlMs("myKey");
+        Assertions.assertNotNull(ttlMs);
+        Assertions.assertTrue(ttlMs > 0 && ttlMs <= DEFAULT_TESTING_TTL_SECONDS * 1000L);
+        Assertions.assertNull(storageDriver.getTtlMs("otherKey"));
+    }
+
+    @Test
+    public void testBinaryProtocolShouldBeCorrect() throws StorageException, IOException {
+        StorageDriverConfig config = new StorageDriverConfig();
+        config.setBinaryPort(binaryProtocolServer.getPort());
+        try (StorageDriver binaryDriver = StorageDriver.connectStorage("localhost", port, true, config)) {
+            String largeValue = "ж".repeat(100_000);
+            Assertions.assertTrue(binaryDriver.set("myKey", "myValue €", DEFAULT_TESTING_TTL_SECONDS));
+            Assertions.assertTrue(binaryDriver.set("largeKey", largeValue, DEFAULT_TESTING_TTL_SECONDS));
+            Assertions.assertTrue(binaryDriver.set("emptyKey", "", null));
+            Assertions.assertEquals("myValue €", binaryDriver.get("myKey"));
+            Assertions.assertEquals("myValue €", storageDriver.get("myKey"));
+            Assertions.assertEquals(largeValue, binaryDriver.get("largeKey"));
+            Assertions.assertEquals("", binaryDriver.get("emptyKey"));
+            Long ttlMs = binaryDriver.getTtlMs("myKey");
+            Assertions.assertNotNull(ttlMs);
+            Assertions.assertTrue(ttlMs > 0 && ttlMs <= DEFAULT_TESTING_TTL_SECONDS * 1000L);
+
+            Assertions.assertEquals("myValue €", binaryDriver.remove("myKey"));
+            Assertions.assertNull(binaryDriver.remove("myKey"));
+            Assertions.assertNull(binaryDriver.get("myKey"));
+            Assertions.assertNull(binaryDriver.getTtlMs("myKey"));
+        }
+    }
+
+    @Test
+    public void testBinaryProtocolShouldPipelineRequestsInOrder() throws StorageException, ExecutionException,
+            InterruptedException {
+        StorageDriverConfig config = new StorageDriverConfig();
+        config.setBinaryPort(binaryProtocolServer.getPort());
+        config.setMaxConnections(1);
+        try (StorageDriver binaryDriver = StorageDriver.connectStorage("localhost", port, true, config)) {
+            List<CompletableFuture<Boolean>> isSet = new ArrayList<>();
+            List<CompletableFuture<String>> values = new ArrayList<>();
+            for (int i = 0; i < 10_000; i++) {
+                isSet.add(binaryDriver.setAsync("myKey" + i, "myValue" + i, DEFAULT_TESTING_TTL_SECONDS));
+                values.add(binaryDriver.getAsync("myKey" + i));
+            }
+            for (int i = 0; i < values.size(); i++) {
+                Assertions.assertTrue(isSet.get(i).get());
+                Assertions.assertEquals("myValue" + i, values.get(i).get());
+            }
+        }
+    }
+
+    @Test
+    public void testBinaryProtocolShouldRejectEmptyKeysAndInvalidValues() throws IOException, StorageException {
+        try (Socket socket = new Socket("localhost", binaryProtocolServer.getPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            Assertions.assertEquals(EnumStorageStatus.KEY_EMPTY,
+                    sendBinary(out, in, "", "myValue".getBytes(StandardCharsets.UTF_8)));
+            Assertions.assertEquals(EnumStorageStatus.VALUE_INVALID,
+                    sendBinary(out, in, "invalidValueKey", new byte[]{(byte) 0xC3, 0x28}));
+            Assertions.assertEquals(EnumStorageStatus.VALUE_INVALID,
+                    sendBinary(out, in, "invalidValueKey", new byte[]{'a', (byte) 0xE2, (byte) 0x82}));
+            Assertions.assertEquals(EnumStorageStatus.VALUE_SET_OK,
+                    sendBinary(out, in, "invalidValueKey", "значение".getBytes(StandardCharsets.UTF_8)));
+        }
+        Assertions.assertEquals("значение", storageDriver.get("invalidValueKey"));
+    }
+
+    private static EnumStorageStatus sendBinary(DataOutputStream out, DataInputStream in, String key, byte[] value)
+            throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(BinaryProtocol.REQUEST_HEADER_SIZE + keyBytes.length + value.length);
+        out.writeByte(EnumBinaryOperation.SET.getCode());
+        out.writeInt(keyBytes.length);
+        out.write(keyBytes);
+        out.writeLong(BinaryProtocol.NO_TTL);
+        out.write(value);
+        out.flush();
+        int length = in.readInt();
+        EnumStorageStatus status = BinaryProtocol.statusFromCode(in.readUnsignedByte());
+        in.skipNBytes(length - 1);
+        return status;
+    }
+}
@@ -0,0 +1,76 @@
+package ru.infotecs.internship.json.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.infotecs.internship.json.JsonRequest;
+import ru.infotecs.internship.json.JsonResponseExtended;
+import ru.infotecs.internship.storage.EnumStorageStatus;
+import ru.infotecs.internship.storage.StorageException;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of encoding a request and decoding a response in the driver, comparing a new mapper per call
+ * with strings (as the driver did before) and the shared readers and writers of {@link JsonProcessor}
+ * with UTF-8 bytes. Allocation per call is reported by the GC profiler:
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="JsonProcessorBenchmark -prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonProcessorBenchmark {
+
+    private byte[] response;
+
+    private JsonRequest request;
+
+    /**
+     * Encodes the response to decode.
+     *
+     * @throws IOException if the response cannot be encoded
+     */
+    @Setup
+    public void setUp() throws IOException {
+        response = new ObjectMapper().writeValueAsBytes(
+                new JsonResponseExtended(EnumStorageStatus.VALUE_GET_OK, "myValue é\""));
+        request = new JsonRequest("myKey", "myValue é\"", 60L);
+    }
+
+    @Benchmark
+    public void decodeNewMapperAndString(Blackhole blackhole) throws IOException {
+        blackhole.consume(new ObjectMapper()
+                .readValue(new String(response, Charset.defaultCharset()), JsonResponseExtended.class));
+    }
+
+    @Benchmark
+    public void decodeSharedReaderAndBytes(Blackhole blackhole) throws StorageException {
+        blackhole.consume(JsonProcessor.parseJson(response, JsonResponseExtended.class));
+    }
+
+    @Benchmark
+    public void encodeStringFormat(Blackhole blackhole) {
+        blackhole.consume(String.format("{\"key\":\"%s\", \"value\":\"%s\", \"ttl\":%s}",
+                request.getKey(), request.getValue(), request.getTtlSeconds()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public void encodeSharedWriterAndBytes(Blackhole blackhole) throws IOException {
+        blackhole.consume(JsonProcessor.toJsonBytes(request));
+    }
+}
@@ -0,0 +1,146 @@
+package ru.infotecs.internship.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of point operations of {@link StorageMap} with uniformly random keys, the trimming task runs
+ * in the background as in the service. A share of keys is always written with a short TTL, so reads
+ * of those keys mostly miss and the trimming task removes them.
+ * <p>
+ * The number of threads is set by the JMH option {@code -t}, see
+ * {@link ru.infotecs.internship.benchmark.JmhBenchmarkRunner}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageMapBenchmark {
+
+    /**
+     * TTL of expiring records in milliseconds.
+     */
+    static final long EXPIRING_TTL_MS = 100L;
+
+    /**
+     * Number of keys in the storage.
+     */
+    @Param({"10000", "1000000"})
+    private int keyCount;
+
+    /**
+     * Length of values in characters.
+     */
+    @Param({"16", "256"})
+    private int valueSize;
+
+    /**
+     * Percentage of keys written with {@link #EXPIRING_TTL_MS}, other keys do not expire.
+     */
+    @Param({"0", "50"})
+    private int expiringPercent;
+
+    /**
+     * Share of reads in {@link #mixed}.
+     */
+    @State(Scope.Benchmark)
+    public static class ReadWriteRatio {
+
+        /**
+         * Percentage of reads, other operations are writes.
+         */
+        @Param({"50", "90", "99"})
+        private int readPercent;
+    }
+
+    private StorageMap storageMap;
+
+    private String[] keys;
+
+    private String value;
+
+    /**
+     * Fills the storage with all keys.
+     */
+    @Setup
+    public void setUp() {
+        storageMap = new StorageMap();
+        keys = new String[keyCount];
+        value = "v".repeat(valueSize);
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "key:" + i;
+            storageMap.putValueTtlMs(keys[i], value, ttlMs(i));
+        }
+    }
+
+    /**
+     * Stops the trimming task of the storage.
+     *
+     * @throws IOException if the storage cannot be closed
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        storageMap.close();
+    }
+
+    @Benchmark
+    public RecordValue getValue() {
+        return storageMap.getValue(keys[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean isKeyValid() {
+        return storageMap.isKeyValid(keys[nextIndex()]);
+    }
+
+    @Benchmark
+    public void putValueTtlMs() {
+        int index = nextIndex();
+        storageMap.putValueTtlMs(keys[index], value, ttlMs(index));
+    }
+
+    /**
+     * Removes a record and puts it back, so the number of keys stays the same.
+     */
+    @Benchmark
+    public RecordValue removeValue() {
+        int index = nextIndex();
+        RecordValue removed = storageMap.removeValue(keys[index]);
+        storageMap.putValueTtlMs(keys[index], value, ttlMs(index));
+        return removed;
+    }
+
+    @Benchmark
+    public Object mixed(ReadWriteRatio ratio) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int index = random.nextInt(keyCount);
+        if (random.nextInt(100) < ratio.readPercent) {
+            return storageMap.getValue(keys[index]);
+        }
+        return storageMap.upsertValueTtlMs(keys[index], value, ttlMs(index));
+    }
+
+    private int nextIndex() {
+        return ThreadLocalRandom.current().nextInt(keyCount);
+    }
+
+    private long ttlMs(int index) {
+        return index % 100 < expiringPercent ? EXPIRING_TTL_MS : StorageMap.MAX_TTL_MS;
+    }
+}
@@ -0,0 +1,108 @@
+package ru.infotecs.internship.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of {@link StorageMap#writeExternal} and {@link StorageMap#readExternal} of the whole storage.
+ * Records are read into the same storage every time, overwriting the records read before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageMapSerializationBenchmark {
+
+    /**
+     * Number of keys in the storage.
+     */
+    @Param({"10000", "100000"})
+    private int keyCount;
+
+    /**
+     * Length of values in characters.
+     */
+    @Param({"16", "256"})
+    private int valueSize;
+
+    /**
+     * Percentage of keys with a TTL short enough to expire during the benchmark, they are not written.
+     */
+    @Param({"0", "50"})
+    private int expiringPercent;
+
+    private StorageMap storageMap;
+
+    private StorageMap targetMap;
+
+    private ByteArrayOutputStream buffer;
+
+    private byte[] serialized;
+
+    /**
+     * Fills the storage and serializes it once for reading.
+     *
+     * @throws IOException if the storage cannot be serialized
+     */
+    @Setup
+    public void setUp() throws IOException {
+        storageMap = new StorageMap();
+        storageMap.stopTrim();
+        String value = "v".repeat(valueSize);
+        for (int i = 0; i < keyCount; i++) {
+            storageMap.putValueTtlMs("key:" + i, value,
+                    i % 100 < expiringPercent ? StorageMapBenchmark.EXPIRING_TTL_MS : StorageMap.MAX_TTL_MS);
+        }
+        targetMap = new StorageMap();
+        targetMap.stopTrim();
+        buffer = new ByteArrayOutputStream();
+        serialized = writeExternal();
+    }
+
+    /**
+     * Closes both storages.
+     *
+     * @throws IOException if a storage cannot be closed
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        storageMap.close();
+        targetMap.close();
+    }
+
+    @Benchmark
+    public byte[] writeExternal() throws IOException {
+        buffer.reset();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            storageMap.writeExternal(out);
+        }
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public StorageMap readExternal() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            targetMap.readExternal(in);
+        }
+        return targetMap;
+    }
+}
@@ -3,10 +3,24 @@ package ru.infotecs.internship.storage;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import ru.infotecs.internship.config.StorageProperties;
 
 import java.io.*;
-import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -33,11 +47,26 @@ public class StorageMapTest {
     private StorageMap storageMap;
 
 
-    private static ConcurrentHashMap<String, RecordValue> getRawStorage(StorageMap storageMap)
-            throws NoSuchFieldException, IllegalAccessException {
-        Field storageField = StorageMap.class.getDeclaredField("storage");
-        storageField.setAccessible(true);
-        return (ConcurrentHashMap<String, RecordValue>) storageField.get(storageMap);
+    private static StorageMap createBoundedStorageMap(EnumEvictionPolicy policy, long maxEntries) {
+        StorageProperties properties = new StorageProperties();
+        properties.setEvictionPolicy(policy);
+        properties.setMaxEntries(maxEntries);
+        properties.setShards(1);
+        return new StorageMap(properties);
+    }
+
+    private static StorageMap createOffHeapStorageMap() {
+        StorageProperties properties = new StorageProperties();
+        properties.setMode(EnumStorageMode.OFF_HEAP);
+        return new StorageMap(properties);
+    }
+
+    private static StorageMap createLoggedStorageMap(Path walDir, EnumFsyncPolicy fsyncPolicy) {
+        StorageProperties properties = new StorageProperties();
+        properties.setWalDir(walDir.toString());
+        properties.setWalFsyncPolicy(fsyncPolicy);
+        properties.setWalCompactionMinSize(DataSize.ofGigabytes(1));
+        return new StorageMap(properties);
     }
 
     /**
@@ -71,6 +100,12 @@ public class StorageMapTest {
         assertEquals((double) 700L, (double) recordValue.getTtlMs() / 1000, MAX_STORAGE_DELAY);
     }
 
+    @Test
+    public void putNonAsciiValueShouldKeepValue() {
+        storageMap.putValue("myKey", "значение \uD83D\uDE00");
+        assertEquals("значение \uD83D\uDE00", storageMap.getValue("myKey").getValue());
+    }
+
     @Test
     public void getValueShouldReturnNullForNonExistentKey() {
         assertNull(storageMap.getValue("nonExistentKey"));
@@ -109,6 +144,135 @@ public class StorageMapTest {
         assertNull(storageMap.removeValue("myKey"));
     }
 
+    @Test
+    public void scanShouldReturnEveryValidMatchingKeyOnce() {
+        for (int i = 0; i < 1000; i++) {
+            storageMap.putValue("tenant:" + i, "value" + i);
+        }
+        storageMap.putValue("other:1", "value");
+        Set<String> keys = new HashSet<>();
+        long cursor = 0;
+        int pageCount = 0;
+        do {
+            StorageScanPage page = storageMap.scan(cursor, "tenant:*", 100, false);
+            assertNotNull(page);
+            assertNull(page.getValues());
+            for (String key : page.getKeys()) {
+                assertTrue(keys.add(key));
+            }
+            cursor = page.getCursor();
+            pageCount++;
+        } while (cursor != 0);
+        assertEquals(1000, keys.size());
+        assertTrue(pageCount >= 10);
+        StorageScanPage page = storageMap.scan(0, "other:?", 10_000, true);
+        assertEquals(0, page.getCursor());
+        assertEquals(List.of("other:1"), page.getKeys());
+        assertEquals("value", page.getValues().get(0).getValue());
+        assertNull(storageMap.scan(12345L, null, 10, false));
+    }
+
+    @Test
+    public void scanPatternShouldMatchGlob() {
+        assertTrue(StorageScanner.matches("*", ""));
+        assertTrue(StorageScanner.matches("tenant:*:id", "tenant:entity:id"));
+        assertTrue(StorageScanner.matches("a?c*", "abcdef"));
+        assertFalse(StorageScanner.matches("a?c", "ac"));
+        assertFalse(StorageScanner.matches("tenant:*", "other:tenant:1"));
+    }
+
+    @Test
+    public void rangeShouldListKeysInOrderAcrossShards() {
+        StorageProperties properties = new StorageProperties();
+        properties.setShards(4);
+        properties.setOrderedIndex(true);
+        StorageMap orderedStorageMap = new StorageMap(properties);
+        try {
+            for (int i = 0; i < 100; i++) {
+                orderedStorageMap.putValue(String.format("tenant:entity:%03d", i), "value" + i);
+            }
+            orderedStorageMap.putValue("tenant:entitz", "value");
+            orderedStorageMap.putValue("other:entity:1", "value");
+            List<String> keys = new ArrayList<>();
+            String nextKey = "tenant:entity:";
+            do {
+                StorageRangePage page = orderedStorageMap.range(nextKey,
+                        StorageMap.prefixEnd("tenant:entity:"), 30, false);
+                keys.addAll(page.getKeys());
+                nextKey = page.getNextKey();
+            } while (nextKey != null);
+            assertEquals(100, keys.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(String.format("tenant:entity:%03d", i), keys.get(i));
+            }
+            StorageRangePage page = orderedStorageMap.range("tenant:entity:010", "tenant:entity:012", 10, true);
+            assertNull(page.getNextKey());
+            assertEquals(List.of("tenant:entity:010", "tenant:entity:011"), page.getKeys());
+            assertEquals("value11", page.getValues().get(1).getValue());
+            assertEquals(101, orderedStorageMap.countPrefix("tenant:"));
+            assertEquals(102, orderedStorageMap.countPrefix(""));
+            assertEquals(100, orderedStorageMap.removePrefix("tenant:entity:"));
+            assertEquals(List.of("other:entity:1", "tenant:entitz"),
+                    orderedStorageMap.range(null, null, 10, false).getKeys());
+            assertThrows(IllegalStateException.class, () -> storageMap.countPrefix("tenant:"));
+        } finally {
+            orderedStorageMap.stopTrim();
+        }
+    }
+
+    @Test
+    public void rangeShouldFollowExpiry() throws InterruptedException {
+        StorageProperties properties = new StorageProperties();
+        properties.setOrderedIndex(true);
+        StorageMap orderedStorageMap = new StorageMap(properties);
+        try {
+            orderedStorageMap.putValueTtlMs("tenant:1", "value", 50L);
+            orderedStorageMap.putValue("tenant:2", "value");
+            orderedStorageMap.putValueTtlMs("tenant:3", "value", 50L);
+            orderedStorageMap.putValue("tenant:3", "value");
+            Thread.sleep(100L);
+            assertEquals(List.of("tenant:2", "tenant:3"),
+                    orderedStorageMap.range("tenant:", null, 10, false).getKeys());
+            assertEquals(2, orderedStorageMap.countPrefix("tenant:"));
+            orderedStorageMap.trimShards();
+            assertEquals(2, orderedStorageMap.size());
+            assertEquals(List.of("tenant:2", "tenant:3"),
+                    orderedStorageMap.range(null, null, 10, false).getKeys());
+            orderedStorageMap.removeValue("tenant:2");
+            assertEquals(List.of("tenant:3"), orderedStorageMap.range(null, null, 10, false).getKeys());
+        } finally {
+            orderedStorageMap.stopTrim();
+        }
+    }
+
+    @Test
+    public void prefixEndShouldBoundKeysOfPrefix() {
+        assertEquals("tenant;", StorageMap.prefixEnd("tenant:"));
+        assertEquals("b", StorageMap.prefixEnd("a\uffff"));
+        assertNull(StorageMap.prefixEnd("\uffff"));
+        assertNull(StorageMap.prefixEnd(""));
+    }
+
+    @Test
+    public void metricsShouldCountOperations() throws InterruptedException {
+        storageMap.putValue("myKey", "myValue");
+        storageMap.putValue("myKey", "myValue2");
+        storageMap.putValue("expiringKey", "myValue", 1L);
+        storageMap.getValue("myKey");
+        storageMap.getValue("nonExistentKey");
+        storageMap.removeValue("myKey");
+        storageMap.removeValue("myKey");
+        Thread.sleep(2 * StorageMap.TRIM_DELAY_MS + DELTA_TIME_MS);
+        StorageMetrics metrics = storageMap.getMetrics();
+        assertEquals(1, metrics.getHitCount());
+        assertEquals(1, metrics.getMissCount());
+        assertEquals(3, metrics.getSetCount());
+        assertEquals(1, metrics.getOverwriteCount());
+        assertEquals(1, metrics.getRemoveCount());
+        assertEquals(1, metrics.getExpirationCount());
+        assertTrue(metrics.getTrimCount() > 0);
+    }
+
     @Test
     public void sameObjectsShouldBeEqual() {
         storageMap.putValue("myKey", "myValue", 1L);
@@ -152,22 +316,573 @@ public class StorageMapTest {
 
     @Test
     public void startTrimShouldStartCleanupProcess()
-            throws NoSuchFieldException, InterruptedException, IllegalAccessException {
+            throws InterruptedException {
         storageMap.putValue("myKey", "myValue", 1L);
         storageMap.putValue("myKey2", "myValue2", 1L);
         Thread.sleep(StorageMap.TRIM_DELAY_MS * 2);
-        var rawStorage = getRawStorage(storageMap);
-        assertEquals(0, rawStorage.size());
+        assertEquals(0, storageMap.size());
     }
 
     @Test
     public void stopTrimShouldDestroyCleanupProcess()
-            throws InterruptedException, NoSuchFieldException, IllegalAccessException {
+            throws InterruptedException {
         storageMap.stopTrim();
         storageMap.putValue("myKey", "myValue", 1L);
         storageMap.putValue("myKey2", "myValue2", 1L);
         Thread.sleep(StorageMap.TRIM_DELAY_MS * 2);
-        var rawStorage = getRawStorage(storageMap);
-        assertEquals(2, rawStorage.size());
+        assertEquals(2, storageMap.size());
+    }
+
+    @Test
+    public void trimShouldKeepValueOverwrittenWithLongerTtl()
+            throws InterruptedException {
+        storageMap.putValue("myKey", "myValue", 1L);
+        storageMap.putValue("myKey", "myValue2", 100L);
+        storageMap.putValue("myKey2", "myValue2", 1L);
+        Thread.sleep(StorageMap.TRIM_DELAY_MS * 2);
+        assertEquals(1, storageMap.size());
+        assertEquals("myValue2", storageMap.getValue("myKey").getValue());
+        assertEquals(1, storageMap.expiryIndexSize());
+    }
+
+    @Test
+    public void removeValueShouldRemoveKeyFromExpiryIndex() {
+        storageMap.putValue("myKey", "myValue", 100L);
+        storageMap.putValue("myKey2", "myValue2", 100L);
+        storageMap.removeValue("myKey");
+        assertEquals(1, storageMap.expiryIndexSize());
+    }
+
+    @Test
+    public void upsertValueShouldReportReplacedValidValue() {
+        assertFalse(storageMap.upsertValue("myKey", "myValue", 100L));
+        assertTrue(storageMap.upsertValue("myKey", "myValue2", 100L));
+        assertEquals("myValue2", storageMap.getValue("myKey").getValue());
+    }
+
+    @Test
+    public void upsertValueShouldNotReportReplacedExpiredValue() {
+        storageMap.stopTrim();
+        storageMap.putValueTtlMs("myKey", "myValue", -1L);
+        assertFalse(storageMap.upsertValue("myKey", "myValue2", 100L));
+    }
+
+    @Test
+    public void getExpiredValueShouldEvictRecord() {
+        storageMap.stopTrim();
+        storageMap.putValueTtlMs("myKey", "myValue", -1L);
+        assertNull(storageMap.getValue("myKey"));
+        assertEquals(0, storageMap.size());
+        assertEquals(0, storageMap.expiryIndexSize());
+    }
+
+    @Test
+    public void removeExpiredValueShouldReturnNull() {
+        storageMap.stopTrim();
+        storageMap.putValueTtlMs("myKey", "myValue", -1L);
+        assertNull(storageMap.removeValue("myKey"));
+        assertEquals(0, storageMap.size());
+    }
+
+    @Test
+    public void offHeapPutAndGetShouldBeCorrect() {
+        StorageMap offHeapStorageMap = createOffHeapStorageMap();
+        try {
+            long timeBeforePut = System.currentTimeMillis();
+            offHeapStorageMap.putValue("myKey", "значение", 700L);
+            long timeAfterPut = System.currentTimeMillis();
+            RecordValue recordValue = offHeapStorageMap.getValue("myKey");
+            assertEquals("значение", recordValue.getValue());
+            assertTrue(recordValue.getExpirationTime() >= timeBeforePut + 700_000L);
+            assertTrue(recordValue.getExpirationTime() <= timeAfterPut + 700_000L);
+            assertTrue(offHeapStorageMap.upsertValue("myKey", "myValue2", 700L));
+            assertEquals("myValue2", offHeapStorageMap.removeValue("myKey").getValue());
+            assertNull(offHeapStorageMap.getValue("myKey"));
+        } finally {
+            offHeapStorageMap.stopTrim();
+        }
+    }
+
+    @Test
+    public void everyWriteShouldGiveNewVersion() {
+        StorageMap offHeapStorageMap = createOffHeapStorageMap();
+        try {
+            for (StorageMap map : List.of(storageMap, offHeapStorageMap)) {
+                map.putValue("myKey", "myValue", 700L);
+                long version = map.getValue("myKey").getVersion();
+                assertEquals(version, map.getValue("myKey").getVersion());
+                map.putValue("myKey", "myValue", 700L);
+                assertTrue(map.getValue("myKey").getVersion() > version);
+            }
+        } finally {
+            offHeapStorageMap.stopTrim();
+        }
+    }
+
+    @Test
+    public void offHeapGetDuringOverwriteShouldFindRecord() throws InterruptedException {
+        StorageMap offHeapStorageMap = createOffHeapStorageMap();
+        try {
+            offHeapStorageMap.putValue("myKey", "myValue", 700L);
+            long endTime = System.nanoTime() + 500_000_000L;
+            Thread writer = new Thread(() -> {
+                for (int i = 0; System.nanoTime() < endTime; i++) {
+                    offHeapStorageMap.putValue("myKey", "myValue" + i, 700L);
+                }
+            });
+            List<String> misses = new ArrayList<>();
+            Thread reader = new Thread(() -> {
+                while (System.nanoTime() < endTime) {
+                    if (offHeapStorageMap.getValue("myKey") == null) {
+                        misses.add("getValue");
+                    }
+                    if (!offHeapStorageMap.isKeyValid("myKey")) {
+                        misses.add("isKeyValid");
+                    }
+                }
+            });
+            writer.start();
+            reader.start();
+            writer.join();
+            reader.join();
+            assertEquals(List.of(), misses);
+        } finally {
+            offHeapStorageMap.stopTrim();
+        }
+    }
+
+    @Test
+    public void victimRewrittenAfterSamplingShouldNotBeEvicted() {
+        for (EnumEvictionPolicy policy : EnumEvictionPolicy.values()) {
+            StorageEvictor evictor = new StorageEvictor(policy, 1L, 0L);
+            ConcurrentHashMap<String, StoredValue> storage = new ConcurrentHashMap<>();
+            ExpiryIndex expiryIndex = new ExpiryIndex();
+            storage.put("myKey", RecordValue.fromUtf8(new byte[0], 1000L));
+            expiryIndex.add("myKey", 1000L);
+
+            StorageEvictor.Victim victim = evictor.selectVictim(storage, expiryIndex);
+            assertEquals("myKey", victim.getKey());
+            assertTrue(victim.isMapped(storage.get("myKey")));
+            storage.put("myKey", RecordValue.fromUtf8(new byte[0], 1000L));
+            assertFalse(victim.isMapped(storage.get("myKey")));
+        }
+    }
+
+    @Test
+    public void offHeapRemoveShouldReuseSlot() {
+        StorageMap offHeapStorageMap = createOffHeapStorageMap();
+        try {
+            for (int i = 0; i < 1000; i++) {
+                offHeapStorageMap.putValue("myKey" + i, "myValue" + i, 100L);
+                offHeapStorageMap.removeValue("myKey" + i);
+            }
+            assertEquals(0, offHeapStorageMap.getOffHeapUsedBytes());
+            assertEquals(OffHeapArena.SLAB_SIZE, offHeapStorageMap.getOffHeapReservedBytes());
+        } finally {
+            offHeapStorageMap.stopTrim();
+        }
+    }
+
+    @Test
+    public void offHeapTrimShouldReleaseSlots() throws InterruptedException {
+        StorageMap offHeapStorageMap = createOffHeapStorageMap();
+        try {
+            offHeapStorageMap.putValue("myKey", "myValue", 1L);
+            offHeapStorageMap.putValue("myKey2", "myValue2", 1L);
+            Thread.sleep(StorageMap.TRIM_DELAY_MS * 2);
+            assertEquals(0, offHeapStorageMap.getOffHeapUsedBytes());
+        } finally {
+            offHeapStorageMap.stopTrim();
+        }
+    }
+
+    @Test
+    public void offHeapSerializationShouldBeCorrect() throws IOException, ClassNotFoundException {
+        StorageMap offHeapStorageMap = createOffHeapStorageMap();
+        StorageMap deserializedStorageMap;
+        try {
+            offHeapStorageMap.putValue("myKey", "myValue", 5L);
+            offHeapStorageMap.putValue("myKey2", "myValue2", 10L);
+            try (ByteArrayOutputStream byteOutStream = new ByteArrayOutputStream();
+                 ObjectOutputStream objectOutStream = new ObjectOutputStream(byteOutStream)) {
+                objectOutStream.writeObject(offHeapStorageMap);
+                try (ObjectInputStream objectInStream = new ObjectInputStream(
+                        new ByteArrayInputStream(byteOutStream.toByteArray()))) {
+                    deserializedStorageMap = (StorageMap) objectInStream.readObject();
+                }
+            }
+            assertEquals(offHeapStorageMap, deserializedStorageMap);
+            deserializedStorageMap.stopTrim();
+        } finally {
+            offHeapStorageMap.stopTrim();
+        }
+    }
+
+    @Test
+    public void lruEvictionShouldRemoveLeastRecentlyUsedRecord() throws InterruptedException {
+        StorageMap boundedStorageMap = createBoundedStorageMap(EnumEvictionPolicy.LRU, 3);
+        try {
+            boundedStorageMap.putValue("myKey", "myValue", 100L);
+            Thread.sleep(50);
+            boundedStorageMap.putValue("myKey2", "myValue2", 100L);
+            Thread.sleep(50);
+            boundedStorageMap.putValue("myKey3", "myValue3", 100L);
+            Thread.sleep(50);
+            boundedStorageMap.getValue("myKey");
+            boundedStorageMap.putValue("myKey4", "myValue4", 100L);
+            assertEquals(3, boundedStorageMap.size());
+            assertEquals(1, boundedStorageMap.getEvictionCount());
+            assertNull(boundedStorageMap.getValue("myKey2"));
+            assertNotNull(boundedStorageMap.getValue("myKey"));
+        } finally {
+            boundedStorageMap.stopTrim();
+        }
+    }
+
+    @Test
+    public void volatileTtlEvictionShouldRemoveNearestExpiringRecord() {
+        StorageMap boundedStorageMap = createBoundedStorageMap(EnumEvictionPolicy.VOLATILE_TTL, 2);
+        try {
+            boundedStorageMap.putValue("myKey", "myValue", 100L);
+            boundedStorageMap.putValue("myKey2", "myValue2", 10L);
+            boundedStorageMap.putValue("myKey3", "myValue3", 1000L);
+            assertEquals(2, boundedStorageMap.size());
+            assertNull(boundedStorageMap.getValue("myKey2"));
+        } finally {
+            boundedStorageMap.stopTrim();
+        }
+    }
+
+    @Test
+    public void lfuEvictionShouldKeepStorageWithinLimit() {
+        StorageMap boundedStorageMap = createBoundedStorageMap(EnumEvictionPolicy.LFU, 100);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                boundedStorageMap.putValue("myKey" + i, "myValue" + i, 100L);
+            }
+            assertEquals(100, boundedStorageMap.size());
+            assertEquals(900, boundedStorageMap.getEvictionCount());
+        } finally {
+            boundedStorageMap.stopTrim();
+        }
+    }
+
+    @Test
+    public void memoryLimitShouldBeKept() {
+        StorageProperties properties = new StorageProperties();
+        properties.setMaxMemory(DataSize.ofKilobytes(64));
+        properties.setShards(1);
+        StorageMap boundedStorageMap = new StorageMap(properties);
+        try {
+            for (int i = 0; i < 10_000; i++) {
+                boundedStorageMap.putValue("myKey" + i, "myValue" + i, 100L);
+            }
+            assertTrue(boundedStorageMap.getMemoryUsage() <= DataSize.ofKilobytes(64).toBytes());
+            assertTrue(boundedStorageMap.getEvictionCount() > 0);
+            for (int i = 0; i < 10_000; i++) {
+                boundedStorageMap.removeValue("myKey" + i);
+            }
+            assertEquals(0, boundedStorageMap.getMemoryUsage());
+        } finally {
+            boundedStorageMap.stopTrim();
+        }
+    }
+
+    @Test
+    public void shardedStorageShouldKeepAllKeys() throws Exception {
+        StorageProperties properties = new StorageProperties();
+        properties.setShards(4);
+        properties.setMaintenanceThreads(2);
+        StorageMap shardedStorageMap = new StorageMap(properties);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                shardedStorageMap.putValue("myKey" + i, "myValue" + i, 100L);
+            }
+            shardedStorageMap.putValueTtlMs("expiredKey", "myValue", -1L);
+            assertEquals(4, shardedStorageMap.getStats().get("shards"));
+            assertEquals(1001, shardedStorageMap.size());
+            shardedStorageMap.trimShards();
+            assertEquals(1000, shardedStorageMap.size());
+            assertEquals(1000, shardedStorageMap.expiryIndexSize());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("myValue" + i, shardedStorageMap.getValue("myKey" + i).getValue());
+            }
+        } finally {
+            shardedStorageMap.stopTrim();
+        }
+    }
+
+    @Test
+    public void walReplayShouldRestoreStorage(@TempDir Path walDir) throws IOException {
+        StorageMap loggedStorageMap = createLoggedStorageMap(walDir, EnumFsyncPolicy.INTERVAL);
+        for (int i = 0; i < 1000; i++) {
+            loggedStorageMap.putValue("myKey" + i, "myValue" + i, 100L);
+        }
+        loggedStorageMap.putValue("myKey0", "значение", 700L);
+        loggedStorageMap.removeValue("myKey1");
+        loggedStorageMap.close();
+
+        StorageMap restoredStorageMap = createLoggedStorageMap(walDir, EnumFsyncPolicy.INTERVAL);
+        try {
+            assertEquals(loggedStorageMap, restoredStorageMap);
+            assertEquals(999, restoredStorageMap.size());
+            assertEquals("значение", restoredStorageMap.getValue("myKey0").getValue());
+            assertEquals((double) 700L, (double) restoredStorageMap.getValue("myKey0").getTtlMs() / 1000, 1);
+            assertNull(restoredStorageMap.getValue("myKey1"));
+        } finally {
+            restoredStorageMap.close();
+        }
+    }
+
+    @Test
+    public void walAlwaysPolicyShouldRestoreStorage(@TempDir Path walDir) throws Exception {
+        StorageMap loggedStorageMap = createLoggedStorageMap(walDir, EnumFsyncPolicy.ALWAYS);
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            int writerNumber = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    loggedStorageMap.putValue("myKey" + writerNumber + "_" + i, "myValue" + i, 100L);
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        loggedStorageMap.close();
+
+        StorageMap restoredStorageMap = createLoggedStorageMap(walDir, EnumFsyncPolicy.ALWAYS);
+        try {
+            assertEquals(400, restoredStorageMap.size());
+        } finally {
+            restoredStorageMap.close();
+        }
+    }
+
+    @Test
+    public void walCompactionShouldKeepStorage(@TempDir Path walDir) throws IOException {
+        StorageMap loggedStorageMap = createLoggedStorageMap(walDir, EnumFsyncPolicy.INTERVAL);
+        for (int i = 0; i < 1000; i++) {
+            loggedStorageMap.putValue("myKey", "myValue" + i, 100L);
+        }
+        loggedStorageMap.putValue("myKey2", "myValue2", 100L);
+        loggedStorageMap.removeValue("myKey2");
+        // records are flushed in the background, so the size of the log before compaction is bounded
+        // from below by the keys and values of the logged records rather than read
+        long minSizeBeforeCompaction = 1000L * ("myKey".length() + "myValue".length());
+        loggedStorageMap.compactLog();
+        loggedStorageMap.putValue("myKey3", "myValue3", 100L);
+        loggedStorageMap.close();
+        assertTrue(loggedStorageMap.getWalSize() < minSizeBeforeCompaction);
+
+        StorageMap restoredStorageMap = createLoggedStorageMap(walDir, EnumFsyncPolicy.INTERVAL);
+        try {
+            assertEquals(2, restoredStorageMap.size());
+            assertEquals("myValue999", restoredStorageMap.getValue("myKey").getValue());
+            assertNull(restoredStorageMap.getValue("myKey2"));
+            assertEquals("myValue3", restoredStorageMap.getValue("myKey3").getValue());
+        } finally {
+            restoredStorageMap.close();
+        }
+    }
+
+    @Test
+    public void walReplayShouldCutOffTornRecord(@TempDir Path walDir) throws IOException {
+        StorageMap loggedStorageMap = createLoggedStorageMap(walDir, EnumFsyncPolicy.INTERVAL);
+        loggedStorageMap.putValue("myKey", "myValue", 100L);
+        loggedStorageMap.putValue("myKey2", "myValue2", 100L);
+        loggedStorageMap.close();
+        Path segment;
+        try (Stream<Path> files = Files.list(walDir)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        StorageMap restoredStorageMap = createLoggedStorageMap(walDir, EnumFsyncPolicy.INTERVAL);
+        try {
+            assertEquals(1, restoredStorageMap.size());
+            assertEquals("myValue", restoredStorageMap.getValue("myKey").getValue());
+            restoredStorageMap.putValue("myKey3", "myValue3", 100L);
+        } finally {
+            restoredStorageMap.close();
+        }
+        StorageMap secondRestoredStorageMap = createLoggedStorageMap(walDir, EnumFsyncPolicy.INTERVAL);
+        try {
+            assertEquals(2, secondRestoredStorageMap.size());
+        } finally {
+            secondRestoredStorageMap.close();
+        }
+    }
+
+    @Test
+    public void snapshotShouldNotSeeMutationsAfterCut() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            storageMap.putValue("myKey" + i, "myValue" + i, 100L);
+        }
+        Map<String, String> snapshot = new HashMap<>();
+        storageMap.readSnapshot(System.currentTimeMillis(), (key, recordValue) -> {
+            if (snapshot.isEmpty()) {
+                for (int i = 0; i < 100; i++) {
+                    storageMap.putValue("myKey" + i, "otherValue" + i, 100L);
+                }
+                storageMap.removeValue("myKey0");
+                storageMap.putValue("newKey", "newValue", 100L);
+            }
+            String previousValue = snapshot.put(key, recordValue.getValue());
+            assertTrue(previousValue == null || previousValue.equals(recordValue.getValue()));
+        });
+        assertEquals(100, snapshot.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("myValue" + i, snapshot.get("myKey" + i));
+        }
+        assertEquals("otherValue1", storageMap.getValue("myKey1").getValue());
+    }
+
+    @Test
+    public void requestedSnapshotShouldBeWrittenToFile(@TempDir Path snapshotDir)
+            throws IOException, InterruptedException {
+        StorageProperties properties = new StorageProperties();
+        properties.setSnapshotPath(snapshotDir.resolve("storage.dat").toString());
+        StorageMap snapshotStorageMap = new StorageMap(properties);
+        StorageMap deserializedStorageMap = null;
+        try {
+            snapshotStorageMap.putValue("myKey", "myValue", 100L);
+            snapshotStorageMap.putValue("myKey2", "myValue2", 100L);
+            assertTrue(snapshotStorageMap.requestSnapshot());
+            for (int i = 0; i < 50 && snapshotStorageMap.getStats().get("snapshotLastSuccessTime") == 0; i++) {
+                Thread.sleep(100);
+            }
+            assertTrue(snapshotStorageMap.getStats().get("snapshotSizeBytes") > 0);
+            deserializedStorageMap = new StorageMap();
+            try (InputStream in = Files.newInputStream(snapshotDir.resolve("storage.dat"))) {
+                assertEquals(2, deserializedStorageMap.load(in));
+            }
+            assertEquals(snapshotStorageMap, deserializedStorageMap);
+            assertFalse(Files.exists(snapshotDir.resolve("storage.dat.tmp")));
+        } finally {
+            snapshotStorageMap.stopTrim();
+            if (deserializedStorageMap != null) {
+                deserializedStorageMap.stopTrim();
+            }
+        }
+    }
+
+    @Test
+    public void dumpAndLoadShouldBeCorrect() throws IOException {
+        for (int i = 0; i < 10_000; i++) {
+            storageMap.putValue("myKey" + i, "значение" + i, 100L);
+        }
+        storageMap.putValue("largeKey", "x".repeat(StorageSnapshotFormat.BLOCK_SIZE * 2), 100L);
+        StorageMap loadedStorageMap = new StorageMap();
+        try (ByteArrayOutputStream byteOutStream = new ByteArrayOutputStream()) {
+            storageMap.dump(byteOutStream);
+            assertEquals(10_001, loadedStorageMap.load(new ByteArrayInputStream(byteOutStream.toByteArray())));
+            assertEquals(storageMap, loadedStorageMap);
+        } finally {
+            loadedStorageMap.stopTrim();
+        }
+    }
+
+    @Test
+    public void loadCorruptedDumpShouldFail() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            storageMap.putValue("myKey" + i, "myValue" + i, 100L);
+        }
+        byte[] dump;
+        try (ByteArrayOutputStream byteOutStream = new ByteArrayOutputStream()) {
+            storageMap.dump(byteOutStream);
+            dump = byteOutStream.toByteArray();
+        }
+        byte[] corruptedDump = dump.clone();
+        corruptedDump[corruptedDump.length / 2] ^= 1;
+        byte[] truncatedDump = Arrays.copyOf(dump, dump.length - 1);
+        StorageMap loadedStorageMap = new StorageMap();
+        try {
+            assertThrows(IOException.class, () -> loadedStorageMap.load(new ByteArrayInputStream(corruptedDump)));
+            assertThrows(IOException.class, () -> loadedStorageMap.load(new ByteArrayInputStream(truncatedDump)));
+        } finally {
+            loadedStorageMap.stopTrim();
+        }
+    }
+
+    private static byte[] dumpRecords(String keyPrefix, int count) throws IOException {
+        StorageMap dumpedStorageMap = new StorageMap();
+        try (ByteArrayOutputStream byteOutStream = new ByteArrayOutputStream()) {
+            for (int i = 0; i < count; i++) {
+                dumpedStorageMap.putValue(keyPrefix + i, "значение" + i, 100L);
+            }
+            dumpedStorageMap.dump(byteOutStream);
+            return byteOutStream.toByteArray();
+        } finally {
+            dumpedStorageMap.stopTrim();
+        }
+    }
+
+    @Test
+    public void replaceLoadShouldSwapRecords() throws IOException {
+        storageMap.putValue("oldKey", "oldValue", 100L);
+        storageMap.putValue("myKey0", "oldValue", 100L);
+        int count = StorageLoader.BATCH_SIZE * 3 + 1;
+        byte[] dump = dumpRecords("myKey", count);
+
+        assertEquals(count, storageMap.load(new ByteArrayInputStream(dump), EnumLoadMode.REPLACE));
+        assertEquals(count, storageMap.size());
+        assertNull(storageMap.getValue("oldKey"));
+        assertEquals("значение0", storageMap.getValue("myKey0").getValue());
+        assertEquals("значение" + (count - 1), storageMap.getValue("myKey" + (count - 1)).getValue());
+        assertEquals((double) 100L, (double) storageMap.getValue("myKey0").getTtlMs() / 1000, 1);
+        storageMap.putValue("newKey", "newValue");
+        assertEquals("newValue", storageMap.getValue("newKey").getValue());
+    }
+
+    @Test
+    public void mergeLoadShouldKeepRecords() throws IOException {
+        storageMap.putValue("oldKey", "oldValue", 100L);
+        storageMap.putValue("myKey0", "oldValue", 100L);
+        int count = StorageLoader.BATCH_SIZE + 1;
+        byte[] dump = dumpRecords("myKey", count);
+
+        assertEquals(count, storageMap.load(new ByteArrayInputStream(dump), EnumLoadMode.MERGE));
+        assertEquals(count + 1, storageMap.size());
+        assertEquals("oldValue", storageMap.getValue("oldKey").getValue());
+        assertEquals("значение0", storageMap.getValue("myKey0").getValue());
+    }
+
+    @Test
+    public void failedReplaceLoadShouldKeepStorage() throws IOException {
+        storageMap.putValue("oldKey", "oldValue", 100L);
+        byte[] dump = dumpRecords("myKey", StorageLoader.BATCH_SIZE * 2);
+        byte[] truncatedDump = Arrays.copyOf(dump, dump.length / 2);
+
+        assertThrows(IOException.class, () ->
+                storageMap.load(new ByteArrayInputStream(truncatedDump), EnumLoadMode.REPLACE));
+        assertEquals(1, storageMap.size());
+        assertEquals("oldValue", storageMap.getValue("oldKey").getValue());
+    }
+
+    @Test
+    public void replaceLoadShouldBeLogged(@TempDir Path walDir) throws IOException {
+        byte[] dump = dumpRecords("myKey", 100);
+        StorageMap loggedStorageMap = createLoggedStorageMap(walDir, EnumFsyncPolicy.INTERVAL);
+        try {
+            loggedStorageMap.putValue("oldKey", "oldValue", 100L);
+            loggedStorageMap.load(new ByteArrayInputStream(dump), EnumLoadMode.REPLACE);
+            loggedStorageMap.putValue("newKey", "newValue", 100L);
+        } finally {
+            loggedStorageMap.close();
+        }
+
+        StorageMap restoredStorageMap = createLoggedStorageMap(walDir, EnumFsyncPolicy.INTERVAL);
+        try {
+            assertEquals(loggedStorageMap, restoredStorageMap);
+            assertEquals(101, restoredStorageMap.size());
+            assertNull(restoredStorageMap.getValue("oldKey"));
+            assertEquals("newValue", restoredStorageMap.getValue("newKey").getValue());
+        } finally {
+            restoredStorageMap.close();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+package ru.infotecs.internship.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of one trim of {@link StorageMap} in which a share of records has expired. The storage is filled
+ * again before every trim, its own trimming task is stopped, so only the measured trim removes records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StorageMapTrimBenchmark {
+
+    /**
+     * Number of keys in the storage.
+     */
+    @Param({"100000", "1000000"})
+    private int keyCount;
+
+    /**
+     * Percentage of records which have expired before the trim.
+     */
+    @Param({"10", "50", "100"})
+    private int expiredPercent;
+
+    private StorageMap storageMap;
+
+    /**
+     * Fills a new storage and waits until the expiring records expire.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    @Setup(Level.Iteration)
+    public void setUp() throws InterruptedException {
+        storageMap = new StorageMap();
+        storageMap.stopTrim();
+        for (int i = 0; i < keyCount; i++) {
+            storageMap.putValueTtlMs("key:" + i, "value",
+                    i % 100 < expiredPercent ? 1L : StorageMap.MAX_TTL_MS);
+        }
+        Thread.sleep(2L);
+    }
+
+    @Benchmark
+    public long trim() {
+        storageMap.trimShards();
+        return storageMap.size();
+    }
+}